@@ -1,10 +1,14 @@
 package pt.isec.pa.chess;
 
 import javafx.application.Application;
+import pt.isec.pa.chess.cli.ChessCli;
 import pt.isec.pa.chess.ui.MainJFX;
 
 public class  ChessMain {
     public static void main(String[] args) {
+        if (args.length > 0 && ChessCli.isCommand(args[0])) {
+            System.exit(ChessCli.run(args, System.out));
+        }
         Application.launch(MainJFX.class, args);
     }
 }
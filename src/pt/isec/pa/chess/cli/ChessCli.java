@@ -0,0 +1,540 @@
+package pt.isec.pa.chess.cli;
+
+import pt.isec.pa.chess.model.ChessGame;
+import pt.isec.pa.chess.model.ChessGameSerialization;
+import pt.isec.pa.chess.model.GameDatabase;
+import pt.isec.pa.chess.model.data.Board;
+import pt.isec.pa.chess.model.engine.EngineBoard;
+import pt.isec.pa.chess.model.engine.Fen;
+import pt.isec.pa.chess.model.engine.MateSolver;
+import pt.isec.pa.chess.model.engine.MctsEngine;
+import pt.isec.pa.chess.model.engine.Move;
+import pt.isec.pa.chess.model.engine.PgnGame;
+import pt.isec.pa.chess.model.engine.PgnReader;
+import pt.isec.pa.chess.model.engine.PgnWriter;
+import pt.isec.pa.chess.model.engine.San;
+import pt.isec.pa.chess.server.GameRouter;
+import pt.isec.pa.chess.server.GameServer;
+import pt.isec.pa.chess.server.GameStandby;
+import pt.isec.pa.chess.server.LoadGenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ponto de entrada sem interface gráfica: usa apenas o modelo e o motor, sem carregar
+ * nenhuma classe do JavaFX, pelo que arranca depressa e pode correr em servidores e em
+ * processamento em lote. Os jogos criados aqui são silenciosos e não escrevem no ModelLog.
+ * <p>
+ * Comandos:
+ * <ul>
+ *     <li>perft &lt;profundidade&gt; [--divide] [FEN] - conta as folhas da árvore de movimentos</li>
+ *     <li>bench [--depth N] [--time ms] [--threads N] - mede o gerador de movimentos e o MCTS</li>
+ *     <li>analyse [--time ms] [--threads N] [--mate N] &lt;FEN ou ficheiro&gt; - melhor movimento</li>
+ *     <li>convert &lt;entrada&gt; &lt;saída&gt; - converte entre .paf, .pgn, .pdb, .fen e .txt</li>
+ *     <li>selfplay [--games N] [--time ms] [--threads N] [--max-plies N] [--out ficheiro] - o motor joga contra si próprio</li>
+ *     <li>validate ... - valida um arquivo de jogos (GameValidator)</li>
+ *     <li>uci - protocolo UCI no stdin e no stdout (UciEngine)</li>
+ *     <li>serve [--port N] [--standby host:port] - servidor de jogos em rede (GameServer)</li>
+ *     <li>load ... - clientes simulados contra o servidor de jogos (LoadGenerator)</li>
+ *     <li>route [--port N] [--workers N] [--worker host:port]... - distribui os jogos por vários servidores (GameRouter)</li>
+ *     <li>standby [--port N] [--replication-port N] - servidor de reserva que substitui o GameServer se este falhar (GameStandby)</li>
+ * </ul>
+ * O código de saída é 0 em caso de sucesso, 1 se a operação falhar e 2 se os argumentos
+ * forem inválidos.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see GameValidator
+ * @see UciEngine
+ */
+public final class ChessCli {
+    /** Posições usadas pelo bench (as posições de teste habituais do perft) */
+    private static final List<String> BENCH_POSITIONS = List.of(
+            Fen.START_POSITION,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8");
+    private static final List<String> COMMANDS = List.of("perft", "bench", "analyse", "convert", "selfplay", "validate", "uci", "serve", "load", "route", "standby");
+    private static final int DEFAULT_MAX_PLIES = 300;
+    private static final int FIFTY_MOVES = 100;
+
+    /**
+     * Destino dos jogos lidos por convert ou gerados por selfplay.
+     */
+    private interface GameSink extends Closeable {
+        /**
+         * Escreve um jogo.
+         * @param game Jogo a escrever
+         * @param result Resultado conhecido, ou null para o calcular a partir da posição
+         */
+        void accept(ChessGame game, String result) throws IOException;
+    }
+
+    /**
+     * Recebe os jogos lidos de um ficheiro, um de cada vez.
+     */
+    private interface GameVisitor {
+        void visit(ChessGame game) throws IOException;
+    }
+
+    private final PrintStream out;
+
+    private ChessCli(PrintStream out) {
+        this.out = out;
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out));
+    }
+
+    /**
+     * Verifica se um argumento é um comando desta classe.
+     * @param name Primeiro argumento da linha de comandos
+     * @return true se for um comando conhecido
+     */
+    public static boolean isCommand(String name) {
+        return COMMANDS.contains(name);
+    }
+
+    /**
+     * Executa um comando.
+     * @param args Argumentos, começando pelo nome do comando
+     * @param out Destino do resultado
+     * @return Código de saída
+     */
+    public static int run(String[] args, PrintStream out) {
+        if (args.length == 0 || !isCommand(args[0])) {
+            return usage(out);
+        }
+        String[] rest = Arrays.copyOfRange(args, 1, args.length);
+        ChessCli cli = new ChessCli(out);
+        try {
+            return switch (args[0]) {
+                case "perft" -> cli.perft(rest);
+                case "bench" -> cli.bench(rest);
+                case "analyse" -> cli.analyse(rest);
+                case "convert" -> cli.convert(rest);
+                case "selfplay" -> cli.selfPlay(rest);
+                case "uci" -> new UciEngine(System.in, out).run();
+                case "serve" -> GameServer.run(rest, out);
+                case "load" -> LoadGenerator.run(rest, out);
+                case "route" -> GameRouter.run(rest, out);
+                case "standby" -> GameStandby.run(rest, out);
+                default -> GameValidator.run(rest, out);
+            };
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return usage(out);
+        } catch (IOException e) {
+            out.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static int usage(PrintStream out) {
+        out.println("Usage: ChessCli <command> [options]");
+        out.println("  perft <depth> [--divide] [fen]");
+        out.println("  bench [--depth N] [--time ms] [--threads N]");
+        out.println("  analyse [--time ms] [--threads N] [--mate N] <fen | file>");
+        out.println("  convert <input> <output>       (.paf .pgn .pdb .fen .txt .csv)");
+        out.println("  selfplay [--games N] [--time ms] [--threads N] [--max-plies N] [--out file.pgn|file.pdb]");
+        out.println("  validate [--upgrade] [--threads N] <directory>");
+        out.println("  uci");
+        out.println("  serve [--port N] [--standby host:port]");
+        out.println("  load [--clients N] [--games N] [--plies N] [--engine] [--host H] [--port N]");
+        out.println("  route [--port N] [--workers N] [--worker host:port]...");
+        out.println("  standby [--port N] [--replication-port N]");
+        return 2;
+    }
+
+    private int perft(String[] args) {
+        int depth = Integer.parseInt(args[0]);
+        boolean divide = false;
+        List<String> fen = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--divide")) divide = true;
+            else fen.add(args[i]);
+        }
+        EngineBoard board = new EngineBoard();
+        if (!Fen.parse(fen.isEmpty() ? Fen.START_POSITION : String.join(" ", fen), board) || depth < 1) {
+            return usage(out);
+        }
+
+        long start = System.nanoTime();
+        long nodes;
+        if (divide) {
+            nodes = 0;
+            int[] moves = new int[EngineBoard.MAX_MOVES];
+            int count = board.generateLegalMoves(moves);
+            for (int i = 0; i < count; i++) {
+                board.makeMove(moves[i]);
+                long child = board.perft(depth - 1);
+                board.unmakeMove(moves[i]);
+                out.println(Move.toText(moves[i]).toLowerCase() + ": " + child);
+                nodes += child;
+            }
+        } else {
+            nodes = board.perft(depth);
+        }
+        long nanos = System.nanoTime() - start;
+        out.printf("nodes %d  time %.3f s  %s nps%n", nodes, nanos / 1e9, rate(nodes, nanos));
+        return 0;
+    }
+
+    private int bench(String[] args) {
+        int depth = 4;
+        long millis = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--depth" -> depth = Integer.parseInt(args[++i]);
+                case "--time" -> millis = Long.parseLong(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                default -> {
+                    return usage(out);
+                }
+            }
+        }
+
+        long totalNodes = 0;
+        long totalNanos = 0;
+        EngineBoard board = new EngineBoard();
+        for (String fen : BENCH_POSITIONS) {
+            Fen.parse(fen, board);
+            long start = System.nanoTime();
+            long nodes = board.perft(depth);
+            long nanos = System.nanoTime() - start;
+            totalNodes += nodes;
+            totalNanos += nanos;
+            out.printf("perft %d %12d  %8.1f ms  %s%n", depth, nodes, nanos / 1e6, fen);
+        }
+        out.printf("perft total %d nodes  %s nps%n", totalNodes, rate(totalNodes, totalNanos));
+
+        MctsEngine engine = new MctsEngine(threads);
+        long start = System.nanoTime();
+        engine.search(millis, 0);
+        long nanos = System.nanoTime() - start;
+        out.printf("mcts %d threads  %d playouts  %d nodes  %s playouts/s%n", threads,
+                engine.getRootVisits(), engine.getTreeSize(), rate(engine.getRootVisits(), nanos));
+        return 0;
+    }
+
+    private int analyse(String[] args) throws IOException {
+        long millis = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int mateIn = 0;
+        List<String> target = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--time" -> millis = Long.parseLong(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--mate" -> mateIn = Integer.parseInt(args[++i]);
+                default -> target.add(args[i]);
+            }
+        }
+        if (target.isEmpty()) {
+            return usage(out);
+        }
+
+        ChessGame game;
+        if (target.size() == 1 && Files.isRegularFile(Path.of(target.get(0)))) {
+            List<ChessGame> games = new ArrayList<>();
+            readGames(Path.of(target.get(0)), games::add);
+            if (games.isEmpty()) {
+                out.println("No games in " + target.get(0));
+                return 1;
+            }
+            game = games.get(games.size() - 1);
+        } else {
+            game = new ChessGame(new Board());
+            game.setSilent(true);
+            if (!game.importFen(String.join(" ", target))) {
+                out.println("Invalid FEN: " + String.join(" ", target));
+                return 1;
+            }
+        }
+
+        EngineBoard board = EngineBoard.fromGame(game);
+        out.println("fen " + Fen.toString(board));
+        String result = PgnGame.resultOf(board);
+        if (!result.equals(PgnGame.UNKNOWN)) {
+            out.println("result " + result);
+            return 0;
+        }
+
+        if (mateIn > 0) {
+            MateSolver.Result mate = new MateSolver(board, MateSolver.DEFAULT_MAX_NODES).solve(mateIn);
+            out.println("mate " + mate.status() + " " + String.join(" ", mate.line()) + " (" + mate.nodes() + " nodes)");
+        }
+
+        MctsEngine engine = new MctsEngine(threads);
+        engine.setPosition(board);
+        long start = System.nanoTime();
+        int best = search(engine, millis);
+        long nanos = System.nanoTime() - start;
+        out.printf("bestmove %s  %s  %d playouts  %s playouts/s%n", Move.toText(best).toLowerCase(),
+                San.toString(board, best), engine.getRootVisits(), rate(engine.getRootVisits(), nanos));
+        return 0;
+    }
+
+    private int convert(String[] args) throws IOException {
+        if (args.length != 2) {
+            return usage(out);
+        }
+        Path input = Path.of(args[0]);
+        Path output = Path.of(args[1]);
+        int[] count = {0};
+        try (GameSink sink = openSink(output)) {
+            readGames(input, game -> {
+                sink.accept(game, null);
+                count[0]++;
+            });
+        }
+        if (count[0] == 0) {
+            out.println("No games in " + input);
+            return 1;
+        }
+        out.println(count[0] + " game(s) written to " + output);
+        return 0;
+    }
+
+    private int selfPlay(String[] args) throws IOException {
+        int games = 1;
+        long millis = 200;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxPlies = DEFAULT_MAX_PLIES;
+        Path output = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games" -> games = Integer.parseInt(args[++i]);
+                case "--time" -> millis = Long.parseLong(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--max-plies" -> maxPlies = Integer.parseInt(args[++i]);
+                case "--out" -> output = Path.of(args[++i]);
+                default -> {
+                    return usage(out);
+                }
+            }
+        }
+
+        MctsEngine engine = new MctsEngine(threads);
+        int[] scores = new int[3];
+        try (GameSink sink = output == null ? null : openSink(output)) {
+            for (int g = 1; g <= games; g++) {
+                EngineBoard board = EngineBoard.startPosition();
+                engine.setPosition(board);
+                int[] moves = new int[maxPlies];
+                int plies = 0;
+                String result = PgnGame.resultOf(board);
+                while (result.equals(PgnGame.UNKNOWN) && plies < maxPlies) {
+                    int move = search(engine, millis);
+                    moves[plies++] = move;
+                    board.makeMove(move);
+                    engine.advance(move);
+                    result = board.getHalfmoveClock() >= FIFTY_MOVES ? PgnGame.DRAW : PgnGame.resultOf(board);
+                }
+
+                switch (result) {
+                    case PgnGame.WHITE_WINS -> scores[0]++;
+                    case PgnGame.BLACK_WINS -> scores[2]++;
+                    default -> scores[1]++;
+                }
+                out.printf("game %d: %s in %d plies%n", g, result, plies);
+
+                if (sink != null) {
+                    Map<String, String> tags = new LinkedHashMap<>();
+                    tags.put("White", "MCTS");
+                    tags.put("Black", "MCTS");
+                    ChessGame game = new PgnGame(tags, Arrays.copyOf(moves, plies), result, null).toChessGame();
+                    if (game == null) {
+                        throw new IOException("Self-play game " + g + " could not be replayed");
+                    }
+                    sink.accept(game, result);
+                }
+            }
+        }
+        out.printf("+%d =%d -%d%n", scores[0], scores[1], scores[2]);
+        return 0;
+    }
+
+    /**
+     * Lê todos os jogos de um ficheiro, pelo formato indicado pela extensão: .paf (um jogo),
+     * .pgn e .pdb (vários jogos), .fen (uma posição por linha), .txt e .csv (uma posição).
+     */
+    private static void readGames(Path file, GameVisitor visitor) throws IOException {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".paf")) {
+            ChessGame game = ChessGameSerialization.load(file.toString());
+            if (game == null) {
+                throw new IOException("Invalid game file " + file);
+            }
+            game.setSilent(true);
+            visitor.visit(game);
+        } else if (name.endsWith(".pgn")) {
+            try (PgnReader reader = new PgnReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8))) {
+                PgnGame pgn;
+                while ((pgn = reader.next()) != null) {
+                    ChessGame game = pgn.isValid() ? pgn.toChessGame() : null;
+                    if (game == null) {
+                        throw new IOException("Invalid game " + reader.getGamesRead() + " in " + file
+                                + (pgn.error() == null ? "" : ": " + pgn.error()));
+                    }
+                    game.setSilent(true);
+                    visitor.visit(game);
+                }
+            }
+        } else if (name.endsWith(GameDatabase.EXTENSION)) {
+            if (!Files.exists(file)) {
+                throw new IOException("File not found " + file);
+            }
+            try (GameDatabase database = GameDatabase.open(file)) {
+                for (int id = 0; id < database.size(); id++) {
+                    ChessGame game = database.read(id);
+                    if (game == null) {
+                        throw new IOException("Invalid game " + id + " in " + file);
+                    }
+                    game.setSilent(true);
+                    visitor.visit(game);
+                }
+            }
+        } else if (name.endsWith(".fen")) {
+            int line = 0;
+            for (String fen : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                line++;
+                if (fen.isBlank()) continue;
+                ChessGame game = new ChessGame(new Board());
+                game.setSilent(true);
+                if (!game.importFen(fen.trim())) {
+                    throw new IOException("Invalid FEN at line " + line + " of " + file);
+                }
+                visitor.visit(game);
+            }
+        } else if (name.endsWith(".txt") || name.endsWith(".csv")) {
+            String content = Files.readString(file, StandardCharsets.UTF_8);
+            if (name.endsWith(".csv")) {
+                content = content.replace("\n", "").replace("\r", "");
+            }
+            ChessGame game = new ChessGame(new Board());
+            game.setSilent(true);
+            if (!game.importPartialGameTxt(content)) {
+                throw new IOException("Invalid text position in " + file);
+            }
+            visitor.visit(game);
+        } else {
+            throw new IOException("Unknown file type " + file);
+        }
+    }
+
+    /**
+     * Abre o destino de escrita de jogos pelo formato indicado pela extensão. Os formatos
+     * .paf e .txt guardam um único jogo.
+     */
+    private static GameSink openSink(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".pgn")) {
+            PgnWriter writer = new PgnWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+            return new GameSink() {
+                @Override
+                public void accept(ChessGame game, String result) throws IOException {
+                    PgnGame pgn = PgnGame.of(game);
+                    if (pgn == null) {
+                        throw new IOException("Game with a pending promotion cannot be written to " + file);
+                    }
+                    if (result != null) {
+                        Map<String, String> tags = new LinkedHashMap<>(pgn.tags());
+                        tags.put("Result", result);
+                        pgn = new PgnGame(tags, pgn.moves(), result, null);
+                    }
+                    writer.write(pgn);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    writer.close();
+                }
+            };
+        }
+        if (name.endsWith(GameDatabase.EXTENSION)) {
+            GameDatabase database = GameDatabase.open(file);
+            return new GameSink() {
+                @Override
+                public void accept(ChessGame game, String result) throws IOException {
+                    database.append(game);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    database.close();
+                }
+            };
+        }
+        if (name.endsWith(".fen")) {
+            Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            return new GameSink() {
+                @Override
+                public void accept(ChessGame game, String result) throws IOException {
+                    writer.write(game.exportFen());
+                    writer.write(System.lineSeparator());
+                }
+
+                @Override
+                public void close() throws IOException {
+                    writer.close();
+                }
+            };
+        }
+        if (name.endsWith(".paf") || name.endsWith(".txt")) {
+            boolean binary = name.endsWith(".paf");
+            return new GameSink() {
+                private boolean written;
+
+                @Override
+                public void accept(ChessGame game, String result) throws IOException {
+                    if (written) {
+                        throw new IOException(file + " can only hold one game");
+                    }
+                    written = true;
+                    if (binary) {
+                        if (!ChessGameSerialization.save(file.toString(), game)) {
+                            throw new IOException("Could not write " + file);
+                        }
+                    } else {
+                        Files.writeString(file, game.exportPartialGameTxt(), StandardCharsets.UTF_8);
+                    }
+                }
+
+                @Override
+                public void close() {
+                    // cada jogo é gravado de imediato
+                }
+            };
+        }
+        throw new IOException("Unknown file type " + file);
+    }
+
+    /**
+     * Pesquisa durante o tempo dado; se o tempo acabar antes do primeiro playout completo
+     * (a raiz ainda não tem filhos), faz mais uma iteração para obter sempre um movimento.
+     */
+    private static int search(MctsEngine engine, long millis) {
+        int move = engine.search(millis, 0);
+        return move != Move.NONE ? move : engine.search(0, 1);
+    }
+
+    private static String rate(long count, long nanos) {
+        return nanos <= 0 ? "-" : String.format("%,d", (long) (count * 1e9 / nanos));
+    }
+}
@@ -0,0 +1,294 @@
+package pt.isec.pa.chess.cli;
+
+import pt.isec.pa.chess.model.ChessGame;
+import pt.isec.pa.chess.model.ChessGameSerialization;
+import pt.isec.pa.chess.model.GameVerifier;
+import pt.isec.pa.chess.model.data.Board;
+import pt.isec.pa.chess.model.engine.EngineBoard;
+import pt.isec.pa.chess.model.engine.Fen;
+import pt.isec.pa.chess.model.engine.PgnGame;
+import pt.isec.pa.chess.model.engine.PgnReader;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Validação em lote de um arquivo de jogos, sem interface gráfica.
+ * Percorre uma pasta (e subpastas) e verifica, em paralelo, todos os ficheiros .paf, .txt,
+ * .csv, .fen e .pgn: os jogos .paf são repetidos movimento a movimento com verificação
+ * completa de legalidade, as posições de texto e FEN são verificadas e todos os jogos PGN
+ * são lidos (cada lance SAN tem de corresponder a um movimento legal).
+ * Opcionalmente, os ficheiros .paf no formato antigo são regravados no formato compacto.
+ * <p>
+ * Uso: GameValidator [--upgrade] [--threads N] pasta
+ * <p>
+ * O código de saída é 0 se todos os ficheiros forem válidos, 1 se houver problemas e 2 se os
+ * argumentos forem inválidos.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see GameVerifier
+ */
+public final class GameValidator {
+    private static final List<String> EXTENSIONS = List.of(".paf", ".txt", ".csv", ".fen", ".pgn");
+
+    /** Resultado da validação de um ficheiro */
+    public enum Status { OK, UPGRADED, ILLEGAL, CORRUPT }
+
+    /**
+     * Relatório de um ficheiro.
+     * @param file Ficheiro
+     * @param status Resultado
+     * @param games Número de jogos ou posições lidos
+     * @param detail Descrição do primeiro problema (ou null)
+     * @param nanos Tempo de validação
+     */
+    public record Report(Path file, Status status, int games, String detail, long nanos) {
+    }
+
+    private final boolean upgrade;
+    private final int threads;
+
+    /**
+     * Cria um validador.
+     * @param upgrade true para regravar ficheiros .paf antigos no formato compacto
+     * @param threads Número de threads
+     */
+    public GameValidator(boolean upgrade, int threads) {
+        this.upgrade = upgrade;
+        this.threads = Math.max(1, threads);
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out));
+    }
+
+    /**
+     * Executa a validação a partir dos argumentos da linha de comandos.
+     * @param args Argumentos
+     * @param out Destino do relatório
+     * @return Código de saída
+     */
+    public static int run(String[] args, PrintStream out) {
+        boolean upgrade = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path root = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--upgrade" -> upgrade = true;
+                case "--threads" -> {
+                    if (++i >= args.length) return usage(out);
+                    try {
+                        threads = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException e) {
+                        return usage(out);
+                    }
+                }
+                default -> {
+                    if (root != null) return usage(out);
+                    root = Path.of(args[i]);
+                }
+            }
+        }
+        if (root == null || !Files.isDirectory(root)) {
+            return usage(out);
+        }
+
+        long start = System.nanoTime();
+        List<Report> reports;
+        try {
+            reports = new GameValidator(upgrade, threads).validate(root);
+        } catch (IOException e) {
+            out.println("Error reading " + root + ": " + e.getMessage());
+            return 1;
+        }
+
+        int games = 0;
+        int[] counts = new int[Status.values().length];
+        for (Report report : reports) {
+            out.println(format(root, report));
+            games += report.games();
+            counts[report.status().ordinal()]++;
+        }
+        out.printf("%d files, %d games, %d ok, %d upgraded, %d illegal, %d corrupt in %.1f s%n",
+                reports.size(), games, counts[Status.OK.ordinal()], counts[Status.UPGRADED.ordinal()],
+                counts[Status.ILLEGAL.ordinal()], counts[Status.CORRUPT.ordinal()], (System.nanoTime() - start) / 1e9);
+        return counts[Status.ILLEGAL.ordinal()] + counts[Status.CORRUPT.ordinal()] == 0 ? 0 : 1;
+    }
+
+    private static int usage(PrintStream out) {
+        out.println("Usage: GameValidator [--upgrade] [--threads N] <directory>");
+        return 2;
+    }
+
+    private static String format(Path root, Report report) {
+        return String.format("%-8s %9.1f ms %6d  %s%s", report.status(), report.nanos() / 1e6, report.games(),
+                root.relativize(report.file()), report.detail() == null ? "" : "  " + report.detail());
+    }
+
+    /**
+     * Valida todos os ficheiros de jogos de uma pasta e das suas subpastas.
+     * @param root Pasta a validar
+     * @return Relatórios, por ordem do caminho dos ficheiros
+     * @throws IOException Se a pasta não puder ser percorrida
+     */
+    public List<Report> validate(Path root) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile).filter(GameValidator::isGameFile).sorted().toList();
+        }
+        // os ficheiros maiores primeiro, para que nenhuma thread fique com um ficheiro grande no fim
+        List<Path> bySize = new ArrayList<>(files);
+        bySize.sort(Comparator.comparingLong(GameValidator::sizeOf).reversed());
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Report>> tasks = new ArrayList<>();
+            for (Path file : bySize) {
+                tasks.add(() -> validateFile(file));
+            }
+            List<Report> reports = new ArrayList<>();
+            for (Future<Report> future : pool.invokeAll(tasks)) {
+                reports.add(future.get());
+            }
+            reports.sort(Comparator.comparing(Report::file));
+            return reports;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Validação interrompida", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Valida um ficheiro.
+     * @param file Ficheiro a validar
+     * @return Relatório do ficheiro
+     */
+    public Report validateFile(Path file) {
+        long start = System.nanoTime();
+        Report report;
+        try {
+            String name = file.getFileName().toString().toLowerCase();
+            if (name.endsWith(".paf")) report = validatePaf(file);
+            else if (name.endsWith(".pgn")) report = validatePgn(file);
+            else if (name.endsWith(".fen")) report = validateFen(file);
+            else report = validateText(file, name.endsWith(".csv"));
+        } catch (IOException | RuntimeException e) {
+            report = new Report(file, Status.CORRUPT, 0, e.toString(), 0);
+        }
+        return new Report(report.file(), report.status(), report.games(), report.detail(), System.nanoTime() - start);
+    }
+
+    private Report validatePaf(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        boolean legacy = ChessGameSerialization.isLegacy(ByteBuffer.wrap(data));
+        ChessGame game = ChessGameSerialization.decode(ByteBuffer.wrap(data));
+        if (game == null) {
+            return new Report(file, Status.CORRUPT, 0, legacy ? "Formato antigo ilegível" : "Formato binário inválido", 0);
+        }
+        game.setSilent(true);
+        String problem = GameVerifier.verifyHistory(game);
+        if (problem != null) {
+            return new Report(file, Status.ILLEGAL, 1, problem, 0);
+        }
+        if (legacy && upgrade) {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            if (!ChessGameSerialization.save(temp.toString(), game)) {
+                Files.deleteIfExists(temp);
+                return new Report(file, Status.CORRUPT, 1, "Não foi possível regravar o ficheiro", 0);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new Report(file, Status.UPGRADED, 1, null, 0);
+        }
+        return new Report(file, Status.OK, 1, legacy ? "Formato antigo" : null, 0);
+    }
+
+    private Report validatePgn(Path file) throws IOException {
+        int games = 0;
+        int illegal = 0;
+        String first = null;
+        try (PgnReader reader = new PgnReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8))) {
+            PgnGame game;
+            while ((game = reader.next()) != null) {
+                games++;
+                if (!game.isValid()) {
+                    illegal++;
+                    if (first == null) {
+                        first = "Jogo " + games + ": " + game.error();
+                    }
+                }
+            }
+        }
+        if (illegal > 0) {
+            return new Report(file, Status.ILLEGAL, games, illegal + " jogo(s) inválido(s); " + first, 0);
+        }
+        return new Report(file, Status.OK, games, null, 0);
+    }
+
+    private Report validateFen(Path file) throws IOException {
+        EngineBoard board = new EngineBoard();
+        int positions = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) continue;
+            positions++;
+            if (!Fen.parse(line, board)) {
+                return new Report(file, Status.CORRUPT, positions, "FEN inválida na posição " + positions, 0);
+            }
+            String problem = GameVerifier.verifyPosition(board);
+            if (problem != null) {
+                return new Report(file, Status.ILLEGAL, positions, "Posição " + positions + ": " + problem, 0);
+            }
+        }
+        return new Report(file, Status.OK, positions, null, 0);
+    }
+
+    private Report validateText(Path file, boolean csv) throws IOException {
+        String content = Files.readString(file, StandardCharsets.UTF_8);
+        if (csv) {
+            content = content.replace("\n", "").replace("\r", "");
+        }
+        ChessGame game = new ChessGame(new Board());
+        game.setSilent(true);
+        if (!game.importPartialGameTxt(content)) {
+            return new Report(file, Status.CORRUPT, 0, "Formato de texto inválido", 0);
+        }
+        String problem = GameVerifier.verifyPosition(EngineBoard.fromGame(game));
+        if (problem != null) {
+            return new Report(file, Status.ILLEGAL, 1, problem, 0);
+        }
+        return new Report(file, Status.OK, 1, null, 0);
+    }
+
+    private static boolean isGameFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
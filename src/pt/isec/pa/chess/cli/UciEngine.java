@@ -0,0 +1,440 @@
+package pt.isec.pa.chess.cli;
+
+import pt.isec.pa.chess.model.engine.EngineBoard;
+import pt.isec.pa.chess.model.engine.Fen;
+import pt.isec.pa.chess.model.engine.MctsEngine;
+import pt.isec.pa.chess.model.engine.Move;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interface UCI (Universal Chess Interface) do MctsEngine, para usar o motor em gestores de
+ * torneios e interfaces gráficas de xadrez através do stdin e do stdout.
+ * <p>
+ * Os comandos são lidos numa thread e a pesquisa corre noutra, pelo que "stop", "ponderhit"
+ * e "isready" são tratados de imediato mesmo durante uma pesquisa. As respostas passam por
+ * uma fila escrita por uma thread própria: a pesquisa nunca fica à espera de quem lê o stdout.
+ * <p>
+ * Comandos suportados: uci, isready, setoption (Hash e Threads), ucinewgame, position,
+ * go (depth, nodes, movetime, wtime, btime, winc, binc, movestogo, infinite, ponder), stop,
+ * ponderhit e quit. Como o MCTS não pesquisa por profundidade, "go depth N" é tratado como
+ * um limite de N * PLAYOUTS_PER_DEPTH playouts e "go nodes N" como um limite de N playouts.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see MctsEngine
+ */
+public final class UciEngine {
+    /** Número de playouts por unidade de "go depth" */
+    public static final int PLAYOUTS_PER_DEPTH = 1000;
+
+    private static final String NAME = "PAChess MCTS";
+    private static final String AUTHOR = "Nuno Tomás Paiva & Rui Santos";
+    private static final int MIN_HASH_MB = 1;
+    private static final int MAX_HASH_MB = 2048;
+    private static final int MAX_THREADS = 512;
+    private static final long INFO_INTERVAL_MS = 1000;
+    /** Margem de segurança para a comunicação com a interface */
+    private static final long MOVE_OVERHEAD_MS = 30;
+    /** Número de lances para que se divide o tempo restante quando não é indicado movestogo */
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+    private static final int MAX_PV = 16;
+    private static final String END_OF_OUTPUT = "";
+
+    private final BufferedReader in;
+    private final PrintStream out;
+    private final BlockingQueue<String> output = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService timer;
+
+    private int hashMb = (int) (((long) MctsEngine.DEFAULT_CAPACITY * MctsEngine.BYTES_PER_NODE) >> 20);
+    private int threads = 1;
+    private MctsEngine engine;
+
+    private String startFen = Fen.START_POSITION;
+    private final List<String> moves = new ArrayList<>();
+    private EngineBoard board = EngineBoard.startPosition();
+
+    private Thread searcher;
+    private volatile boolean pondering;
+    private volatile CountDownLatch released;
+    private volatile long ponderBudget;
+    private volatile int searchId;
+
+    /**
+     * Cria o adaptador.
+     * @param in Comandos da interface (normalmente System.in)
+     * @param out Respostas do motor (normalmente System.out)
+     */
+    public UciEngine(InputStream in, PrintStream out) {
+        this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.out = out;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "uci-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.engine = createEngine();
+    }
+
+    public static void main(String[] args) {
+        System.exit(new UciEngine(System.in, System.out).run());
+    }
+
+    /**
+     * Lê e executa comandos até receber "quit" ou até ao fim do input.
+     * @return Código de saída
+     */
+    public int run() {
+        Thread writer = new Thread(this::writeOutput, "uci-output");
+        writer.setDaemon(true);
+        writer.start();
+        try {
+            String line;
+            while ((line = in.readLine()) != null && handle(line.trim())) {
+                // cada linha é um comando
+            }
+        } catch (IOException e) {
+            // fim do input: termina como com "quit"
+        } finally {
+            stopSearch();
+            timer.shutdownNow();
+            output.add(END_OF_OUTPUT);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Executa um comando.
+     * @return false se o comando for "quit"
+     */
+    private boolean handle(String line) {
+        String[] tokens = line.split("\\s+");
+        switch (tokens[0]) {
+            case "uci" -> {
+                send("id name " + NAME);
+                send("id author " + AUTHOR);
+                send("option name Hash type spin default " + hashMb + " min " + MIN_HASH_MB + " max " + MAX_HASH_MB);
+                send("option name Threads type spin default " + threads + " min 1 max " + MAX_THREADS);
+                send("option name Ponder type check default false");
+                send("uciok");
+            }
+            case "isready" -> send("readyok");
+            case "setoption" -> setOption(tokens);
+            case "ucinewgame" -> {
+                stopSearch();
+                setPosition(Fen.START_POSITION, List.of());
+            }
+            case "position" -> {
+                stopSearch();
+                position(tokens);
+            }
+            case "go" -> go(tokens);
+            case "stop" -> stopSearch();
+            case "ponderhit" -> ponderHit();
+            case "quit" -> {
+                return false;
+            }
+            default -> {
+                // comandos desconhecidos (e "debug", "register") são ignorados, como pede o protocolo
+            }
+        }
+        return true;
+    }
+
+    private void setOption(String[] tokens) {
+        String name = valueAfter(tokens, "name", "value");
+        String value = valueAfter(tokens, "value", null);
+        if (name == null || value == null) {
+            return;
+        }
+        try {
+            switch (name.toLowerCase()) {
+                case "hash" -> hashMb = Math.max(MIN_HASH_MB, Math.min(MAX_HASH_MB, Integer.parseInt(value)));
+                case "threads" -> threads = Math.max(1, Math.min(MAX_THREADS, Integer.parseInt(value)));
+                default -> {
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            send("info string invalid value for " + name + ": " + value);
+            return;
+        }
+        stopSearch();
+        engine = createEngine();
+        engine.setPosition(board);
+    }
+
+    private MctsEngine createEngine() {
+        return new MctsEngine(threads, (int) Math.min(Integer.MAX_VALUE, ((long) hashMb << 20) / MctsEngine.BYTES_PER_NODE));
+    }
+
+    /**
+     * position [startpos | fen ...] [moves ...]
+     */
+    private void position(String[] tokens) {
+        int movesAt = tokens.length;
+        for (int i = 1; i < tokens.length; i++) {
+            if (tokens[i].equals("moves")) {
+                movesAt = i;
+                break;
+            }
+        }
+        String fen;
+        if (tokens.length > 1 && tokens[1].equals("fen")) {
+            fen = String.join(" ", List.of(tokens).subList(2, movesAt));
+        } else {
+            fen = Fen.START_POSITION;
+        }
+        List<String> list = movesAt < tokens.length ? List.of(tokens).subList(movesAt + 1, tokens.length) : List.of();
+        setPosition(fen, list);
+    }
+
+    /**
+     * Define a posição. Se for a posição anterior com mais movimentos (o caso normal durante
+     * um jogo), a árvore do motor é reaproveitada com advance().
+     */
+    private void setPosition(String fen, List<String> newMoves) {
+        boolean continues = fen.equals(startFen) && newMoves.size() >= moves.size()
+                && newMoves.subList(0, moves.size()).equals(moves);
+        if (!continues) {
+            EngineBoard start = new EngineBoard();
+            if (!Fen.parse(fen, start)) {
+                send("info string invalid fen " + fen);
+                return;
+            }
+            startFen = fen;
+            moves.clear();
+            board = start;
+            engine.setPosition(board);
+        }
+        for (int i = moves.size(); i < newMoves.size(); i++) {
+            int move = board.parseMove(newMoves.get(i));
+            if (move == Move.NONE) {
+                send("info string illegal move " + newMoves.get(i));
+                return;
+            }
+            board.makeMove(move);
+            engine.advance(move);
+            moves.add(newMoves.get(i));
+        }
+    }
+
+    private void go(String[] tokens) {
+        stopSearch();
+        long[] time = new long[2];
+        long[] increment = new long[2];
+        long moveTime = 0;
+        long playouts = 0;
+        int movesToGo = 0;
+        boolean infinite = false;
+        boolean ponder = false;
+        try {
+            for (int i = 1; i < tokens.length; i++) {
+                switch (tokens[i]) {
+                    case "wtime" -> time[EngineBoard.WHITE] = Long.parseLong(tokens[++i]);
+                    case "btime" -> time[EngineBoard.BLACK] = Long.parseLong(tokens[++i]);
+                    case "winc" -> increment[EngineBoard.WHITE] = Long.parseLong(tokens[++i]);
+                    case "binc" -> increment[EngineBoard.BLACK] = Long.parseLong(tokens[++i]);
+                    case "movestogo" -> movesToGo = Integer.parseInt(tokens[++i]);
+                    case "movetime" -> moveTime = Long.parseLong(tokens[++i]);
+                    case "depth" -> playouts = Long.parseLong(tokens[++i]) * PLAYOUTS_PER_DEPTH;
+                    case "nodes" -> playouts = Long.parseLong(tokens[++i]);
+                    case "infinite" -> infinite = true;
+                    case "ponder" -> ponder = true;
+                    default -> {
+                        // searchmoves e mate não são suportados
+                    }
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            send("info string invalid go command");
+        }
+
+        int side = board.getSideToMove();
+        long budget = moveTime;
+        if (budget <= 0 && time[side] > 0) {
+            long remaining = Math.max(0, time[side] - MOVE_OVERHEAD_MS);
+            budget = remaining / (movesToGo > 0 ? movesToGo : DEFAULT_MOVES_TO_GO) + increment[side] * 3 / 4;
+            budget = Math.max(1, Math.min(budget, remaining));
+        } else if (budget > MOVE_OVERHEAD_MS) {
+            budget -= MOVE_OVERHEAD_MS;
+        }
+        // sem limites, "go" pesquisa até receber stop
+        boolean waitForStop = infinite || ponder || (budget <= 0 && playouts <= 0);
+
+        searchId++;
+        pondering = ponder;
+        ponderBudget = budget;
+        released = new CountDownLatch(waitForStop ? 1 : 0);
+        long millis = waitForStop ? 0 : budget;
+        long maxPlayouts = playouts;
+        long start = System.nanoTime();
+        ScheduledFuture<?> info = timer.scheduleAtFixedRate(() -> sendInfo(start),
+                INFO_INTERVAL_MS, INFO_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        searcher = new Thread(() -> {
+            int best = engine.search(millis, maxPlayouts);
+            awaitRelease();
+            info.cancel(false);
+            if (best == Move.NONE) {
+                best = engine.search(0, 1);
+            }
+            sendInfo(start);
+            int[] pv = engine.getPrincipalVariation(2);
+            StringBuilder sb = new StringBuilder("bestmove ").append(best == Move.NONE ? "0000" : uci(best));
+            if (pv.length == 2 && pv[0] == best) {
+                sb.append(" ponder ").append(uci(pv[1]));
+            }
+            send(sb.toString());
+        }, "uci-search");
+        searcher.start();
+    }
+
+    /**
+     * Nos modos infinite e ponder, o bestmove só pode ser enviado depois de stop ou ponderhit,
+     * mesmo que a pesquisa tenha terminado antes (por exemplo por um limite de playouts).
+     */
+    private void awaitRelease() {
+        try {
+            released.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void ponderHit() {
+        if (!pondering || searcher == null) {
+            return;
+        }
+        pondering = false;
+        long budget = ponderBudget;
+        // sem tempo definido, a pesquisa continua até stop (como em "go infinite")
+        if (budget > 0) {
+            int id = searchId;
+            released.countDown();
+            timer.schedule(() -> haltSearch(id), budget, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Termina, a partir do temporizador, a pesquisa indicada se ainda estiver a decorrer.
+     * O bestmove é enviado pela thread de pesquisa.
+     */
+    private void haltSearch(int id) {
+        Thread current = searcher;
+        while (id == searchId && current != null && current.isAlive()) {
+            engine.stop();
+            try {
+                current.join(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Termina a pesquisa em curso e espera que o bestmove seja enviado.
+     * O stop é repetido porque pode chegar antes de a thread de pesquisa ter começado.
+     */
+    private void stopSearch() {
+        Thread current = searcher;
+        if (current == null) {
+            return;
+        }
+        pondering = false;
+        released.countDown();
+        while (current.isAlive()) {
+            engine.stop();
+            try {
+                current.join(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        searcher = null;
+    }
+
+    private void sendInfo(long start) {
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        int visits = engine.getRootVisits();
+        int[] pv = engine.getPrincipalVariation(MAX_PV);
+        StringBuilder sb = new StringBuilder("info depth ").append(Math.max(1, pv.length))
+                .append(" nodes ").append(visits)
+                .append(" nps ").append(visits * 1000L / millis)
+                .append(" time ").append(millis)
+                .append(" hashfull ").append(engine.getTreeSize() * 1000L / engine.getCapacity())
+                .append(" score cp ").append(centipawns(engine.getBestScore()));
+        if (pv.length > 0) {
+            sb.append(" pv");
+            for (int move : pv) {
+                sb.append(' ').append(uci(move));
+            }
+        }
+        send(sb.toString());
+    }
+
+    /**
+     * Converte uma pontuação esperada (0 a 1) numa vantagem em centipeões, com a curva logística
+     * usual (uma vantagem de 400 centipeões corresponde a cerca de 91%).
+     */
+    static int centipawns(double score) {
+        double p = Math.max(0.001, Math.min(0.999, score));
+        return (int) Math.round(400 * Math.log10(p / (1 - p)));
+    }
+
+    private static String uci(int move) {
+        return Move.toText(move).toLowerCase();
+    }
+
+    private static String valueAfter(String[] tokens, String key, String end) {
+        StringBuilder sb = new StringBuilder();
+        boolean inside = false;
+        for (String token : tokens) {
+            if (inside && token.equals(end)) break;
+            if (inside) sb.append(sb.isEmpty() ? "" : " ").append(token);
+            if (token.equals(key)) inside = true;
+        }
+        return inside && !sb.isEmpty() ? sb.toString() : null;
+    }
+
+    private void send(String line) {
+        output.add(line);
+    }
+
+    private void writeOutput() {
+        try {
+            String line;
+            while (!(line = output.take()).equals(END_OF_OUTPUT)) {
+                out.println(line);
+                if (output.isEmpty()) {
+                    out.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.flush();
+    }
+}
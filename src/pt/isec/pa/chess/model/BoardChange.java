@@ -0,0 +1,75 @@
+package pt.isec.pa.chess.model;
+
+/**
+ * Descrição de uma alteração ao tabuleiro, enviada como novo valor de PROP_VALUE_BOARD.
+ * Permite que a vista redesenhe apenas as casas alteradas em vez de todo o tabuleiro.
+ * <p>
+ * As casas são numeradas de 0 (A1) a 63 (H8), como em MoveRecord. Várias alterações podem ser
+ * juntas numa só com merge (por exemplo, todas as alterações de um mesmo frame da interface).
+ *
+ * @param squares Máscara das casas alteradas (bit n = casa n)
+ * @param from Casa de origem da última peça movida, ou -1
+ * @param to Casa de destino da última peça movida, ou -1
+ * @param captured Casa da última peça capturada (difere do destino no en passant), ou -1
+ * @param statusChanged true se o xeque, o vencedor ou o empate podem ter mudado
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see ChessGameManager
+ */
+public record BoardChange(long squares, int from, int to, int captured, boolean statusChanged) {
+    /** Alteração de todo o tabuleiro (jogo novo, carregado, importado ou salto no histórico) */
+    public static final BoardChange FULL = new BoardChange(-1L, -1, -1, -1, true);
+
+    /**
+     * Cria a alteração provocada por um movimento (jogado, desfeito ou refeito).
+     * @param record Registo do movimento (MoveRecord)
+     * @param statusChanged true se o estado do jogo mudou
+     * @return A alteração
+     */
+    public static BoardChange of(long record, boolean statusChanged) {
+        int from = MoveRecord.from(record);
+        int to = MoveRecord.to(record);
+        long squares = 1L << from | 1L << to;
+        int captured = -1;
+        if (MoveRecord.captured(record) != 0) {
+            captured = MoveRecord.capturedSquare(record);
+            squares |= 1L << captured;
+        }
+        if (MoveRecord.isCastle(record)) {
+            squares |= to > from ? 1L << (to + 1) | 1L << (to - 1) : 1L << (to - 2) | 1L << (to + 1);
+        }
+        return new BoardChange(squares, from, to, captured, statusChanged);
+    }
+
+    /**
+     * Verifica se todo o tabuleiro mudou.
+     * @return true se todas as casas devem ser redesenhadas
+     */
+    public boolean isFull() {
+        return squares == -1L;
+    }
+
+    /**
+     * Verifica se uma casa mudou.
+     * @param square Casa (0-63)
+     * @return true se a casa foi alterada
+     */
+    public boolean isChanged(int square) {
+        return (squares & 1L << square) != 0;
+    }
+
+    /**
+     * Junta esta alteração com uma posterior.
+     * @param next Alteração seguinte (pode ser null)
+     * @return A alteração combinada; a peça movida e a captura são as da alteração mais recente
+     */
+    public BoardChange merge(BoardChange next) {
+        if (next == null) {
+            return this;
+        }
+        return new BoardChange(squares | next.squares, next.from, next.to, next.captured,
+                statusChanged || next.statusChanged);
+    }
+}
@@ -1,13 +1,19 @@
 package pt.isec.pa.chess.model;
 
 import pt.isec.pa.chess.model.data.*;
+import pt.isec.pa.chess.model.engine.EngineBoard;
+import pt.isec.pa.chess.model.engine.Fen;
+import pt.isec.pa.chess.model.engine.Move;
+import pt.isec.pa.chess.model.engine.Position;
 import pt.isec.pa.chess.model.memento.IMemento;
 import pt.isec.pa.chess.model.memento.IOriginator;
-import pt.isec.pa.chess.model.memento.Memento;
 
+import java.io.Serial;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Classe que representa um jogo de xadrez, controlando todas as regras e moves das peças.
@@ -19,12 +25,64 @@ import java.util.List;
  */
 
 public class ChessGame implements Serializable, IOriginator {
+    @Serial
+    private static final long serialVersionUID = 7180498328726361613L;
     private Board board;
     private PieceTeamEnum teamToPlay;
     private String playerWhite;
     private String playerBlack;
     private PieceTeamEnum lastTeamInCheck;
     private Pawn lastDoubleStepPawn;
+    private transient boolean silent;
+    /** Destino dos eventos do jogo (null para o ModelLog) */
+    private transient Consumer<String> logger;
+    private long[] moveHistory;
+    private int historySize;
+    /** Posição do meio-lance 0 em FEN, guardada quando o histórico começa (ver getStartFen) */
+    private String startFen;
+    /** Contador de meios-lances sem capturas nem movimentos de peão da posição importada em FEN */
+    private int startHalfmoveClock;
+    /** Meios-lances jogados antes da posição importada em FEN (a partir do número do lance) */
+    private int startPlyOffset;
+    private int ply;
+    /** Posições imutáveis já calculadas, indexadas pelo meio-lance (cache de snapshot()) */
+    private transient Position[] snapshots;
+    /** Número de vezes que restore mudou de variante (ver switchHistory) */
+    private transient int historySwitches;
+
+    /**
+     * Memento que identifica um estado do jogo pelo número de meios-lances jogados.
+     * O estado é reconstruído desfazendo ou refazendo os registos de moveHistory.
+     * Guarda também o histórico em que foi criado: um movimento jogado depois de um salto ou de
+     * um undo descarta os movimentos seguintes, mas numa cópia do histórico (ver pushRecord),
+     * pelo que o memento continua a poder voltar à variante abandonada.
+     * @param ply Número de meios-lances jogados no momento do save
+     * @param records Histórico de movimentos no momento do save (não é alterado até ply)
+     * @param historySize Número de registos do histórico no momento do save
+     */
+    private record PlyMemento(int ply, long[] records, int historySize) implements IMemento {
+        @Override
+        public Object getSnapshot() {
+            return ply;
+        }
+    }
+
+    /**
+     * Memento com uma cópia completa da posição num dado meio-lance, usado como ponto de
+     * partida pelo GameTimeline. Não inclui o histórico de movimentos, que continua a ser o do jogo.
+     * @param ply Meio-lance da posição
+     * @param pieces Peças no formato de getNormalizedText
+     * @param teamToPlay Equipa a jogar
+     * @param enPassant Casa do peão que pode ser capturado en passant (-1 se nenhum)
+     * @param lastTeamInCheck Equipa marcada em xeque
+     */
+    private record CheckpointMemento(int ply, String pieces, PieceTeamEnum teamToPlay, int enPassant,
+                                     PieceTeamEnum lastTeamInCheck) implements IMemento {
+        @Override
+        public Object getSnapshot() {
+            return ply;
+        }
+    }
 
     /**
      * Construtor que inicializa o jogo de xadrez com um tabuleiro.
@@ -35,6 +93,7 @@ public class ChessGame implements Serializable, IOriginator {
         this.lastTeamInCheck = null;
         this.teamToPlay = PieceTeamEnum.WHITE;
         this.lastDoubleStepPawn = null;
+        this.moveHistory = new long[64];
     }
 
     /**
@@ -118,6 +177,80 @@ public class ChessGame implements Serializable, IOriginator {
         return moves;
     }
 
+    /**
+     * Obtém todos os movimentos legais da equipa que tem a vez de jogar.
+     * @return Lista de movimentos no formato "E2E4" (origem seguida de destino)
+     */
+    public List<String> getLegalMoves() {
+        List<String> moves = new ArrayList<>();
+        for (Piece piece : new ArrayList<>(board.getPieces())) {
+            if (piece.getPieceColor() != teamToPlay)
+                continue;
+
+            String from = String.format("%c%d", piece.getPieceColumn(), piece.getPieceRow());
+            for (String to : getPossibleMovesWithColRow(piece.getPieceColumn(), piece.getPieceRow())) {
+                moves.add(from + to);
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Obtém a casa onde é possível capturar en passant, caso o último movimento tenha sido
+     * um avanço de duas casas de um peão.
+     * @return Casa no formato "E3" ou null se não houver captura en passant possível
+     */
+    public String getEnPassantTarget() {
+        if (lastDoubleStepPawn == null) {
+            return null;
+        }
+        int behind = lastDoubleStepPawn.getPieceColor() == PieceTeamEnum.WHITE ? -1 : 1;
+        return String.format("%c%d", lastDoubleStepPawn.getPieceColumn(), lastDoubleStepPawn.getPieceRow() + behind);
+    }
+
+    /**
+     * Ativa ou desativa o registo de eventos no ModelLog.
+     * Útil para cópias do jogo usadas em pesquisa, que executam milhares de movimentos.
+     * @param silent true para não registar eventos, false caso contrário
+     */
+    public void setSilent(boolean silent) {
+        this.silent = silent;
+    }
+
+    /**
+     * Verifica se o registo de eventos no ModelLog está desativado.
+     * @return true se o jogo estiver em modo silencioso
+     */
+    public boolean isSilent() {
+        return silent;
+    }
+
+    /**
+     * Define o destino dos eventos deste jogo, em vez do ModelLog partilhado por todo o processo.
+     * Permite usar vários jogos em threads diferentes (servidor, processamento em lote) sem
+     * os misturar no mesmo log.
+     * @param logger Destino dos eventos, ou null para voltar a usar o ModelLog
+     */
+    public void setLogger(Consumer<String> logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Regista uma mensagem no destino do jogo (por omissão o ModelLog), exceto se o jogo
+     * estiver em modo silencioso.
+     * @param message Mensagem a registar
+     */
+    private void log(String message) {
+        if (silent) {
+            return;
+        }
+        if (logger != null) {
+            logger.accept(message);
+        } else {
+            ModelLog.getInstance().addLog(message);
+        }
+    }
+
     /**
      * Obtém o tamanho do tabuleiro.
      * @return Tamanho do tabuleiro (8 para xadrez padrão)
@@ -132,6 +265,9 @@ public class ChessGame implements Serializable, IOriginator {
     public void resetChessGame() {
         this.board = new Board();
         this.teamToPlay = PieceTeamEnum.WHITE;
+        this.lastDoubleStepPawn = null;
+        this.lastTeamInCheck = null;
+        clearHistory();
     }
 
     /**
@@ -159,7 +295,7 @@ public class ChessGame implements Serializable, IOriginator {
         board.addPiece(ChessPieceFactory.createPiece(PieceTypeEnum.KING, PieceTeamEnum.BLACK, board, String.format("%c%d*", 'E', 8)));
         board.addPiece(ChessPieceFactory.createPiece(PieceTypeEnum.QUEEN, PieceTeamEnum.WHITE, board, String.format("%c%d", 'D', 1)));
         board.addPiece(ChessPieceFactory.createPiece(PieceTypeEnum.QUEEN, PieceTeamEnum.BLACK, board, String.format("%c%d", 'D', 8)));
-        ModelLog.getInstance().addLog("Novo jogo iniciado.");
+        log("Novo jogo iniciado.");
     }
 
     /**
@@ -282,7 +418,7 @@ public class ChessGame implements Serializable, IOriginator {
             }
         }
 
-        ModelLog.getInstance().addLog("EMPATE!");
+        log("EMPATE!");
         return true;
     }
 
@@ -327,7 +463,7 @@ public class ChessGame implements Serializable, IOriginator {
                 }
             }
         }
-        ModelLog.getInstance().addLog("Checkmate! Equipa perdedora: " + team);
+        log("Checkmate! Equipa perdedora: " + team);
         return true;
     }
 
@@ -368,10 +504,33 @@ public class ChessGame implements Serializable, IOriginator {
      * @return true se o movimento foi executado com sucesso, false caso contrário
      */
     public MoveResult executeMove(char colPiece, int rowPiece, char colToMove, int rowToMove) {
+        return executeMove(colPiece, rowPiece, colToMove, rowToMove, true);
+    }
+
+    /**
+     * Joga um movimento de uma sequência, sem verificar o fim do jogo (xeque-mate e empate).
+     * Quem joga a sequência verifica o fim do jogo uma vez, no fim, com getEndResult.
+     * @param move Movimento codificado (classe Move); sem promoção, o peão é promovido a rainha
+     * @return true se o movimento foi executado, false se não for legal
+     */
+    boolean playMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        MoveResult result = executeMove(MoveRecord.column(from), MoveRecord.row(from),
+                MoveRecord.column(to), MoveRecord.row(to), false);
+        if (result == MoveResult.VALID_PROMOTION) {
+            int promotion = Move.promotion(move);
+            pawnPromotion(MoveRecord.column(to), MoveRecord.row(to), promotion >= EngineBoard.KNIGHT && promotion <= EngineBoard.QUEEN
+                    ? MoveRecord.typeOf(promotion) : PieceTypeEnum.QUEEN);
+        }
+        return result != MoveResult.INVALID;
+    }
+
+    private MoveResult executeMove(char colPiece, int rowPiece, char colToMove, int rowToMove, boolean checkEnd) {
         Piece pieceToMove = board.getPiece(colPiece, rowPiece);
 
         if (pieceToMove == null || pieceToMove.getPieceColor() != this.teamToPlay) {
-            ModelLog.getInstance().addLog("Movimento inválido: peça inexistente ou da equipa errada.");
+            log("Movimento inválido: peça inexistente ou da equipa errada.");
             return MoveResult.INVALID;
         }
 
@@ -383,7 +542,7 @@ public class ChessGame implements Serializable, IOriginator {
         }
 
         if (!(possibleMoves.contains(String.format("%c%d", colToMove, rowToMove)))) {
-            ModelLog.getInstance().addLog("Movimento inválido: destino inválido para a peça.");
+            log("Movimento inválido: destino inválido para a peça.");
             return MoveResult.INVALID;
         }
 
@@ -418,67 +577,52 @@ public class ChessGame implements Serializable, IOriginator {
             board.addPiece(capturedEnPassant);
         }
         if (isInCheck) {
-            ModelLog.getInstance().addLog("Movimento inválido: deixa o rei em check.");
+            log("Movimento inválido: deixa o rei em check.");
             return MoveResult.INVALID;
         }
 
-        if (pieceToRemove != null) {
-            board.removePiece(colToMove, rowToMove);
-        }
-        if(capturedEnPassant != null) { // EN PASSANT
-            board.removePiece(capturedEnPassant.getPieceColumn(), capturedEnPassant.getPieceRow());
+        Piece captured = pieceToRemove != null ? pieceToRemove : capturedEnPassant;
+        boolean isCastle = pieceToMove instanceof King king && !king.getHasMoved() && Math.abs(colToMove - colPiece) == 2;
+        long record = MoveRecord.create(
+                MoveRecord.square(colPiece, rowPiece),
+                MoveRecord.square(colToMove, rowToMove),
+                MoveRecord.pieceCode(pieceToMove),
+                MoveRecord.pieceCode(captured),
+                captured == null ? 0 : MoveRecord.square(captured.getPieceColumn(), captured.getPieceRow()),
+                isCastle,
+                hasMoved(pieceToMove),
+                hasMoved(captured),
+                getEnPassantSquare(),
+                lastTeamInCheck);
+        if (ply == 0) {
+            startFen = exportFen();
         }
-        board.movePiece(pieceToMove, colToMove, rowToMove);
+        applyRecord(record);
+        pushRecord(record);
 
-        // ------- CASTLING -------
-        if (pieceToMove instanceof King) {
-            // 0-0 (kingside castling)
-            if (colToMove == 'G') {
-                Piece rook = board.getPiece('H', rowToMove);
-                if (rook instanceof Rook) {
-                    board.movePiece(rook, 'F', rowToMove);
-                }
-            }
-            // 0-0-0 (queenside castling)
-            else if (colToMove == 'C') {
-                Piece rook = board.getPiece('A', rowToMove);
-                if (rook instanceof Rook) {
-                    board.movePiece(rook, 'D', rowToMove);
-                }
-            }
-        }
-        // --------------------------
-
-        // ------- EN PASSANT -------
-        if (pieceToMove instanceof Pawn) {
-            int diff = Math.abs(rowToMove - rowPiece);
-            if (diff == 2) {
-                lastDoubleStepPawn = (Pawn) pieceToMove;
-            } else {
-                lastDoubleStepPawn = null;
-            }
-        } else {
-            lastDoubleStepPawn = null;
-        }
-        // --------------------------
-
-        ModelLog.getInstance().addLog("Movimento executado: " + pieceToMove.getPieceType() + " de " + colPiece + rowPiece + " para " + colToMove + rowToMove);
-        this.retrivePlayerTeam();
+        log("Movimento executado: " + pieceToMove.getPieceType() + " de " + colPiece + rowPiece + " para " + colToMove + rowToMove);
 
         // ----- MODEL LOG -----
-        boolean currentTeamInCheck = isTeamInCheck(teamToPlay);
-        if (currentTeamInCheck && lastTeamInCheck != teamToPlay) {
-            ModelLog.getInstance().addLog("Equipa " + teamToPlay + " está em check.");
-            lastTeamInCheck = teamToPlay;
-        } else if (!currentTeamInCheck && lastTeamInCheck == teamToPlay) {
-            lastTeamInCheck = null;
-        }
+        updateCheckState(true);
         // --------------------
 
         if((pieceToMove instanceof Pawn p) && isPawnPromotable(p)) {
             return MoveResult.VALID_PROMOTION;
         }
 
+        if (!checkEnd) {
+            return MoveResult.VALID;
+        }
+
+        return getEndResult();
+    }
+
+    /**
+     * Verifica se a posição atual termina o jogo (xeque-mate ou empate), como é feito depois
+     * de cada movimento jogado com executeMove.
+     * @return DRAW, CHECKMATE_WHITE ou CHECKMATE_BLACK se o jogo terminou, VALID caso contrário
+     */
+    public MoveResult getEndResult() {
         if (isDraw(PieceTeamEnum.WHITE) || isDraw(PieceTeamEnum.BLACK)) {
             return MoveResult.DRAW;
         }
@@ -499,7 +643,7 @@ public class ChessGame implements Serializable, IOriginator {
      * @return String contendo o estado do jogo
      */
     public String exportPartialGameTxt() {
-        ModelLog.getInstance().addLog("Jogo exportado.");
+        log("Jogo exportado.");
         StringBuilder sb = new StringBuilder();
 
         sb.append(teamToPlay.toString());
@@ -516,6 +660,9 @@ public class ChessGame implements Serializable, IOriginator {
      */
     public boolean importPartialGameTxt(String gameData) {
         board.getPieces().clear();
+        lastDoubleStepPawn = null;
+        lastTeamInCheck = null;
+        clearHistory();
 
         String[] parts = gameData.trim().split(",");
         if (parts.length < 1) {
@@ -527,23 +674,99 @@ public class ChessGame implements Serializable, IOriginator {
         for (int i = 1; i < parts.length; i++) {
             board.addPiece(ChessPieceFactory.createPieceFromText(parts[i].trim(), this.board));
         }
-        ModelLog.getInstance().addLog("Jogo importado com sucesso.");
+        log("Jogo importado com sucesso.");
         return true;
     }
 
+    /**
+     * Importa uma posição em notação FEN. O histórico de movimentos é descartado.
+     * Os reis e torres nas casas iniciais ficam por mover de acordo com os direitos de roque.
+     * @param fen Posição em FEN
+     * @return true se a importação foi bem sucedida, false caso contrário
+     */
+    public boolean importFen(CharSequence fen) {
+        EngineBoard parsed = new EngineBoard();
+        if (!Fen.parse(fen, parsed)) {
+            return false;
+        }
+
+        int castling = parsed.getCastling();
+        long unmoved = 0;
+        if ((castling & (EngineBoard.CASTLE_WHITE_KING | EngineBoard.CASTLE_WHITE_QUEEN)) != 0) unmoved |= 1L << 4;
+        if ((castling & EngineBoard.CASTLE_WHITE_KING) != 0) unmoved |= 1L << 7;
+        if ((castling & EngineBoard.CASTLE_WHITE_QUEEN) != 0) unmoved |= 1L;
+        if ((castling & (EngineBoard.CASTLE_BLACK_KING | EngineBoard.CASTLE_BLACK_QUEEN)) != 0) unmoved |= 1L << 60;
+        if ((castling & EngineBoard.CASTLE_BLACK_KING) != 0) unmoved |= 1L << 63;
+        if ((castling & EngineBoard.CASTLE_BLACK_QUEEN) != 0) unmoved |= 1L << 56;
+
+        Board imported = new Board();
+        for (int sq = 0; sq < 64; sq++) {
+            int code = parsed.getPiece(sq);
+            if (code != EngineBoard.EMPTY) {
+                imported.addPiece(MoveRecord.createPiece(code, sq, (unmoved & (1L << sq)) == 0, imported));
+            }
+        }
+
+        PieceTeamEnum team = parsed.getSideToMove() == EngineBoard.WHITE ? PieceTeamEnum.WHITE : PieceTeamEnum.BLACK;
+        int ep = parsed.getEpSquare();
+        int enPassant = ep < 0 ? -1 : ep + (team == PieceTeamEnum.WHITE ? -8 : 8);
+        loadState(imported, team, enPassant, null, new long[0], 0);
+        startHalfmoveClock = parsed.getHalfmoveClock();
+        startPlyOffset = 2 * (parsed.getFullmoveNumber() - 1) + (team == PieceTeamEnum.BLACK ? 1 : 0);
+        updateCheckState(false);
+        log("Jogo importado com sucesso.");
+        return true;
+    }
+
+    /**
+     * Exporta a posição atual em notação FEN.
+     * O contador de meios-lances sem capturas nem movimentos de peão é calculado a partir do
+     * histórico disponível e o número do lance a partir do meio-lance atual; ambos continuam
+     * os contadores da posição importada com importFen.
+     * @return Posição em FEN
+     */
+    public String exportFen() {
+        EngineBoard position = EngineBoard.fromGame(this);
+        int quiet = 0;
+        while (quiet < ply && MoveRecord.captured(moveHistory[ply - 1 - quiet]) == 0
+                && MoveRecord.typeOf(MoveRecord.piece(moveHistory[ply - 1 - quiet])) != PieceTypeEnum.PAWN) {
+            quiet++;
+        }
+        position.setHalfmoveClock(quiet == ply ? startHalfmoveClock + quiet : quiet);
+        position.setFullmoveNumber(1 + (startPlyOffset + ply) / 2);
+        return Fen.toString(position);
+    }
+
+    /**
+     * Obtém a posição do início do histórico (meio-lance 0) em notação FEN.
+     * A posição é guardada quando o primeiro movimento é jogado ou o jogo é carregado,
+     * pelo que o jogo não é alterado.
+     * @return Posição inicial em FEN
+     */
+    public String getStartFen() {
+        return ply == 0 ? exportFen() : startFen;
+    }
+
     /**
      * Promove um peão para outro tipo de peça.
      * @param col Coluna do peão
      * @param row Linha do peão
      * @param newPieceType Novo tipo de peça para promoção
+     * @return true se o peão foi promovido, false se não houver um peão para promover nessa casa
      */
-    public void pawnPromotion(char col, int row, PieceTypeEnum newPieceType) {
+    public boolean pawnPromotion(char col, int row, PieceTypeEnum newPieceType) {
         Piece pawn = board.getPiece(col, row);
         if (pawn instanceof Pawn p && isPawnPromotable(p)) {
             board.removePiece(col, row);
             board.addPiece(ChessPieceFactory.createPiece(newPieceType, pawn.getPieceColor(), this.board, String.format("%c%d", col, row)));
-            ModelLog.getInstance().addLog("Peão promovido para " + newPieceType);
+            if (ply > 0 && MoveRecord.to(moveHistory[ply - 1]) == MoveRecord.square(col, row)) {
+                moveHistory[ply - 1] = MoveRecord.withPromotion(moveHistory[ply - 1], newPieceType);
+                invalidateSnapshots(ply, ply);
+            }
+            log("Peão promovido para " + newPieceType);
+            return true;
         }
+        return false;
     }
 
     /**
@@ -613,25 +836,400 @@ public class ChessGame implements Serializable, IOriginator {
 
     /**
      * Salva o estado atual do jogo em um memento.
+     * O memento guarda apenas o número de meios-lances jogados; os registos dos movimentos
+     * ficam em moveHistory, com o estado necessário para os desfazer e refazer.
      * @return Memento contendo o estado do jogo
      */
     @Override
     public IMemento save() {
-        return new Memento(this);
+        return new PlyMemento(ply, moveHistory, historySize);
+    }
+
+    /**
+     * Cria o memento de um meio-lance do histórico, como se tivesse sido guardado com save()
+     * nesse meio-lance (usado para reconstruir as pilhas de undo/redo de um jogo transferido).
+     * @param ply Meio-lance
+     * @return Memento do meio-lance
+     */
+    IMemento mementoAt(int ply) {
+        return new PlyMemento(ply, moveHistory, historySize);
+    }
+
+    /**
+     * Cria o memento de um meio-lance de outra variante, como se tivesse sido guardado com save()
+     * antes de essa variante ser abandonada (ver branchOf).
+     * @param ply Meio-lance
+     * @param records Registos da variante
+     * @return Memento do meio-lance
+     */
+    IMemento mementoAt(int ply, long[] records) {
+        return new PlyMemento(ply, records, records.length);
+    }
+
+    /**
+     * Obtém os registos da variante de um memento de save(), se não for a do histórico atual.
+     * @param memento Memento a verificar
+     * @return Os registos da variante, ou null se o histórico atual contiver os movimentos
+     *         até ao meio-lance do memento
+     */
+    long[] branchOf(IMemento memento) {
+        if (!(memento instanceof PlyMemento saved) || commonPlies(saved) == saved.ply()) {
+            return null;
+        }
+        return Arrays.copyOf(saved.records(), saved.historySize());
+    }
+
+    /**
+     * Obtém o número de vezes que o histórico foi trocado pelo de outra variante ao restaurar
+     * um memento. Permite saber se um undo ou redo mudou os movimentos do histórico.
+     * @return Número de trocas
+     */
+    int getHistorySwitches() {
+        return historySwitches;
+    }
+
+    /**
+     * Cria um memento com a posição completa no meio-lance atual.
+     * Ao contrário de save(), o restore deste memento não depende de percorrer o histórico.
+     * @return Memento com a posição atual
+     */
+    public IMemento checkpoint() {
+        return new CheckpointMemento(ply, board.getNormalizedText(), teamToPlay, getEnPassantSquare(), lastTeamInCheck);
     }
 
     /**
-     * Restaura o estado do jogo a partir de um memento.
+     * Restaura o estado do jogo a partir de um memento. Um memento de save() é restaurado
+     * desfazendo ou refazendo movimentos até ao meio-lance guardado; um memento de checkpoint()
+     * repõe diretamente a posição, mantendo o histórico de movimentos.
      * @param memento Memento contendo o estado a ser restaurado
      */
     @Override
     public void restore(IMemento memento) {
-        Object obj = memento.getSnapshot();
-        if (obj instanceof ChessGame saved) {
-            this.board = saved.board;
-            this.teamToPlay = saved.teamToPlay;
-            this.lastDoubleStepPawn = saved.lastDoubleStepPawn;
-            this.lastTeamInCheck = saved.lastTeamInCheck;
+        if (memento instanceof PlyMemento saved) {
+            switchHistory(saved);
+            goToPly(saved.ply());
+        } else if (memento instanceof CheckpointMemento checkpoint && checkpoint.ply() <= historySize) {
+            Board restored = new Board();
+            if (!checkpoint.pieces().isEmpty()) {
+                for (String piece : checkpoint.pieces().split(",")) {
+                    restored.addPiece(ChessPieceFactory.createPieceFromText(piece, restored));
+                }
+            }
+            setPosition(restored, checkpoint.teamToPlay(), checkpoint.enPassant(), checkpoint.lastTeamInCheck());
+            ply = checkpoint.ply();
+        }
+    }
+
+    /**
+     * Substitui a posição e o histórico do jogo (usado ao carregar o formato binário).
+     * @param board Tabuleiro com as peças da posição atual
+     * @param teamToPlay Equipa a jogar
+     * @param enPassant Casa do peão que pode ser capturado en passant (-1 se nenhum)
+     * @param lastTeamInCheck Equipa marcada em xeque (null se nenhuma)
+     * @param records Registos dos movimentos do histórico
+     * @param ply Meio-lance da posição atual dentro do histórico
+     */
+    void loadState(Board board, PieceTeamEnum teamToPlay, int enPassant, PieceTeamEnum lastTeamInCheck,
+                   long[] records, int ply) {
+        setPosition(board, teamToPlay, enPassant, lastTeamInCheck);
+        clearHistory();
+        moveHistory = Arrays.copyOf(records, Math.max(64, records.length));
+        historySize = records.length;
+        this.ply = Math.max(0, Math.min(ply, historySize));
+        if (this.ply > 0) {
+            // o formato binário só guarda a posição atual
+            int current = this.ply;
+            goToPly(0);
+            startFen = exportFen();
+            goToPly(current);
+        }
+    }
+
+    private void setPosition(Board board, PieceTeamEnum teamToPlay, int enPassant, PieceTeamEnum lastTeamInCheck) {
+        this.board = board;
+        this.teamToPlay = teamToPlay;
+        this.lastDoubleStepPawn = enPassant < 0 ? null
+                : (board.getPiece(MoveRecord.column(enPassant), MoveRecord.row(enPassant)) instanceof Pawn p ? p : null);
+        this.lastTeamInCheck = lastTeamInCheck;
+    }
+
+    /**
+     * Obtém a casa do peão que pode ser capturado en passant.
+     * @return Casa (0-63), ou -1 se nenhum
+     */
+    int getEnPassantSquare() {
+        return lastDoubleStepPawn == null ? -1
+                : MoveRecord.square(lastDoubleStepPawn.getPieceColumn(), lastDoubleStepPawn.getPieceRow());
+    }
+
+    PieceTeamEnum getLastTeamInCheck() {
+        return lastTeamInCheck;
+    }
+
+    /**
+     * Obtém uma cópia dos registos de todos os movimentos do histórico (incluindo os que podem ser refeitos).
+     * @return Registos por ordem
+     */
+    long[] getMoveRecords() {
+        return moveHistory == null ? new long[0] : Arrays.copyOf(moveHistory, historySize);
+    }
+
+    /**
+     * Obtém o registo do último movimento jogado (o que levou ao meio-lance atual).
+     * @return Registo do movimento, ou 0 se estiver no início do histórico
+     */
+    long getLastMoveRecord() {
+        return ply == 0 ? 0 : moveHistory[ply - 1];
+    }
+
+    /**
+     * Desfaz ou refaz movimentos do histórico até chegar ao meio-lance pedido.
+     * @param target Meio-lance pretendido (limitado ao intervalo do histórico)
+     */
+    public void goToPly(int target) {
+        target = Math.max(0, Math.min(target, historySize));
+        while (ply > target) {
+            unapplyRecord(moveHistory[--ply]);
+        }
+        while (ply < target) {
+            applyRecord(moveHistory[ply++]);
+            updateCheckState(false);
+        }
+    }
+
+    /**
+     * Obtém o número de meios-lances guardados no histórico, incluindo os que podem ser refeitos.
+     * @return Número de meios-lances no histórico
+     */
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * Obtém o número de meios-lances jogados desde o início do jogo (ou da importação).
+     * @return Número de meios-lances
+     */
+    public int getPly() {
+        return ply;
+    }
+
+    /**
+     * Obtém os movimentos jogados até ao momento, no formato "E2E4" ("E7E8Q" nas promoções).
+     * @return Lista de movimentos por ordem
+     */
+    public List<String> getMoveHistory() {
+        List<String> moves = new ArrayList<>(ply);
+        for (int i = 0; i < ply; i++) {
+            moves.add(MoveRecord.toText(moveHistory[i]));
+        }
+        return moves;
+    }
+
+    /**
+     * Obtém a posição atual como um valor imutável, que pode ser entregue a outras threads
+     * (por exemplo, a um motor de análise) enquanto o jogo continua.
+     * As posições ficam em cache por meio-lance; se a do meio-lance anterior existir, a nova é
+     * derivada dela e partilha as linhas do tabuleiro que o movimento não alterou.
+     * @return Posição atual
+     */
+    public Position snapshot() {
+        if (snapshots == null || snapshots.length <= historySize) {
+            snapshots = snapshots == null ? new Position[Math.max(64, historySize + 1)]
+                    : Arrays.copyOf(snapshots, Math.max(snapshots.length * 2, historySize + 1));
+        }
+        if (snapshots[ply] == null) {
+            snapshots[ply] = ply > 0 && snapshots[ply - 1] != null
+                    ? snapshots[ply - 1].apply(MoveRecord.toMove(moveHistory[ply - 1]))
+                    : Position.fromGame(this);
+        }
+        return snapshots[ply];
+    }
+
+    /**
+     * Aplica um registo ao tabuleiro sem validações (usado ao executar e ao refazer movimentos).
+     * @param record Registo do movimento
+     */
+    private void applyRecord(long record) {
+        int from = MoveRecord.from(record);
+        int to = MoveRecord.to(record);
+        char colTo = MoveRecord.column(to);
+        int rowTo = MoveRecord.row(to);
+        Piece piece = board.getPiece(MoveRecord.column(from), MoveRecord.row(from));
+
+        if (MoveRecord.captured(record) != 0) {
+            int capturedSquare = MoveRecord.capturedSquare(record);
+            board.removePiece(MoveRecord.column(capturedSquare), MoveRecord.row(capturedSquare));
+        }
+        board.movePiece(piece, colTo, rowTo);
+        setHasMoved(piece, true);
+
+        // ------- CASTLING -------
+        if (MoveRecord.isCastle(record)) {
+            boolean kingside = colTo == 'G';
+            Piece rook = board.getPiece(kingside ? 'H' : 'A', rowTo);
+            if (rook instanceof Rook) {
+                board.movePiece(rook, kingside ? 'F' : 'D', rowTo);
+                setHasMoved(rook, true);
+            }
+        }
+        // --------------------------
+
+        PieceTypeEnum promotion = MoveRecord.promotion(record);
+        if (promotion != null) {
+            board.removePiece(colTo, rowTo);
+            board.addPiece(ChessPieceFactory.createPiece(promotion, piece.getPieceColor(), board, MoveRecord.squareName(to)));
+        }
+
+        // ------- EN PASSANT -------
+        if (piece instanceof Pawn pawn && Math.abs(MoveRecord.row(to) - MoveRecord.row(from)) == 2) {
+            lastDoubleStepPawn = pawn;
+        } else {
+            lastDoubleStepPawn = null;
+        }
+        // --------------------------
+
+        this.retrivePlayerTeam();
+    }
+
+    /**
+     * Desfaz um registo, repondo a peça movida, a peça capturada e o estado irreversível anterior.
+     * @param record Registo do movimento
+     */
+    private void unapplyRecord(long record) {
+        int from = MoveRecord.from(record);
+        int to = MoveRecord.to(record);
+        char colTo = MoveRecord.column(to);
+        int rowTo = MoveRecord.row(to);
+
+        this.retrivePlayerTeam();
+
+        Piece piece = board.getPiece(colTo, rowTo);
+        if (MoveRecord.promotion(record) != null) {
+            board.removePiece(colTo, rowTo);
+            piece = MoveRecord.createPiece(MoveRecord.piece(record), to, true, board);
+            board.addPiece(piece);
+        }
+        board.movePiece(piece, MoveRecord.column(from), MoveRecord.row(from));
+        setHasMoved(piece, MoveRecord.pieceHadMoved(record));
+
+        if (MoveRecord.isCastle(record)) {
+            boolean kingside = colTo == 'G';
+            Piece rook = board.getPiece(kingside ? 'F' : 'D', rowTo);
+            if (rook instanceof Rook) {
+                board.movePiece(rook, kingside ? 'H' : 'A', rowTo);
+                setHasMoved(rook, false);
+            }
+        }
+
+        int captured = MoveRecord.captured(record);
+        if (captured != 0) {
+            board.addPiece(MoveRecord.createPiece(captured, MoveRecord.capturedSquare(record), MoveRecord.capturedHadMoved(record), board));
+        }
+
+        int previousEnPassant = MoveRecord.previousEnPassant(record);
+        lastDoubleStepPawn = previousEnPassant < 0 ? null
+                : (board.getPiece(MoveRecord.column(previousEnPassant), MoveRecord.row(previousEnPassant)) instanceof Pawn p ? p : null);
+        lastTeamInCheck = MoveRecord.previousCheck(record);
+    }
+
+    /**
+     * Atualiza a equipa marcada em xeque depois de um movimento, registando-o no log se pedido.
+     * @param logChanges true para registar no ModelLog a entrada em xeque
+     */
+    private void updateCheckState(boolean logChanges) {
+        boolean currentTeamInCheck = isTeamInCheck(teamToPlay);
+        if (currentTeamInCheck && lastTeamInCheck != teamToPlay) {
+            if (logChanges) {
+                log("Equipa " + teamToPlay + " está em check.");
+            }
+            lastTeamInCheck = teamToPlay;
+        } else if (!currentTeamInCheck && lastTeamInCheck == teamToPlay) {
+            lastTeamInCheck = null;
+        }
+    }
+
+    /**
+     * Acrescenta um registo ao histórico, descartando os movimentos que podiam ser refeitos.
+     * Nesse caso o registo é escrito numa cópia do histórico, porque os mementos guardados na
+     * variante descartada continuam a usar o array anterior.
+     * @param record Registo do movimento
+     */
+    private void pushRecord(long record) {
+        if (moveHistory == null) {
+            moveHistory = new long[64];
+        } else if (ply == moveHistory.length || ply < historySize) {
+            moveHistory = Arrays.copyOf(moveHistory, Math.max(moveHistory.length, ply * 2));
+        }
+        moveHistory[ply++] = record;
+        invalidateSnapshots(ply, historySize);
+        historySize = ply;
+    }
+
+    private void clearHistory() {
+        invalidateSnapshots(0, historySize);
+        moveHistory = null;
+        ply = 0;
+        historySize = 0;
+        startHalfmoveClock = 0;
+        startPlyOffset = 0;
+    }
+
+    /**
+     * Obtém o número de movimentos iniciais que o histórico de um memento tem em comum com o
+     * histórico atual, até ao meio-lance do memento.
+     */
+    private int commonPlies(PlyMemento saved) {
+        if (saved.records() == moveHistory) {
+            return saved.ply();
+        }
+        int limit = Math.min(saved.ply(), historySize);
+        int common = 0;
+        while (common < limit && moveHistory[common] == saved.records()[common]) {
+            common++;
+        }
+        return common;
+    }
+
+    /**
+     * Passa a usar o histórico de um memento que pertence a outra variante: volta ao último
+     * meio-lance comum às duas variantes e troca os registos seguintes.
+     */
+    private void switchHistory(PlyMemento saved) {
+        int common = commonPlies(saved);
+        if (common == saved.ply()) {
+            return;
+        }
+        goToPly(Math.min(ply, common));
+        invalidateSnapshots(common + 1, Math.max(historySize, saved.historySize()));
+        moveHistory = Arrays.copyOf(saved.records(), Math.max(64, saved.historySize()));
+        historySize = saved.historySize();
+        historySwitches++;
+    }
+
+    /**
+     * Descarta as posições em cache entre dois meios-lances (inclusive).
+     */
+    private void invalidateSnapshots(int first, int last) {
+        if (snapshots != null) {
+            Arrays.fill(snapshots, Math.min(first, snapshots.length), Math.min(last + 1, snapshots.length), null);
+        }
+    }
+
+    static boolean hasMoved(Piece piece) {
+        if (piece instanceof King king) {
+            return king.getHasMoved();
+        }
+        if (piece instanceof Rook rook) {
+            return rook.getHasMoved();
+        }
+        return true;
+    }
+
+    private static void setHasMoved(Piece piece, boolean hasMoved) {
+        if (piece instanceof King king) {
+            king.setHadMoved(hasMoved);
+        } else if (piece instanceof Rook rook) {
+            rook.setHadMoved(hasMoved);
         }
     }
-}
\ No newline at end of file
+}
@@ -4,11 +4,24 @@ import pt.isec.pa.chess.model.data.Board;
 import pt.isec.pa.chess.model.data.Pawn;
 import pt.isec.pa.chess.model.data.PieceTeamEnum;
 import pt.isec.pa.chess.model.data.PieceTypeEnum;
+import pt.isec.pa.chess.model.engine.EngineBoard;
+import pt.isec.pa.chess.model.engine.Move;
+import pt.isec.pa.chess.model.engine.Position;
+import pt.isec.pa.chess.model.engine.Zobrist;
 import pt.isec.pa.chess.model.memento.CareTaker;
+import pt.isec.pa.chess.model.memento.IMemento;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * A classe ChessGameManager atua como uma facade para o modelo do jogo de xadrez,
@@ -21,23 +34,45 @@ import java.util.List;
  * @see ChessGame
  */
 public class ChessGameManager {
-    /** Nome da propriedade para notificação de mudanças no tabuleiro */
+    /** Nome da propriedade para notificação de mudanças no tabuleiro (o novo valor é um BoardChange) */
     public static final String PROP_VALUE_BOARD = "prop_board";
     /** Nome da propriedade para notificação de mudanças no jogador atual */
     public static final String PROP_VALUE_PLAYER = "prop_player";
+    /** Nome da propriedade para notificação da abertura de uma árvore de aberturas */
+    public static final String PROP_VALUE_EXPLORER = "prop_explorer";
 
     private final PropertyChangeSupport pcs;
+    private final Consumer<String> logger;
     private ChessGame chessGame;
-    private final CareTaker mementoManager;
+    private CareTaker mementoManager;
+    private GameTimeline timeline;
+    private OpeningExplorer explorer;
+    private MoveJournal journal;
+    private IGameReplica replica;
+    private final MoveFeed feed = new MoveFeed();
 
     /**
      * Constrói um ChessGameManager e cria uma instância ChessGame.
      *
      */
     public ChessGameManager() {
+        this(null);
+    }
+
+    /**
+     * Constrói um ChessGameManager cujos jogos registam os eventos num destino próprio,
+     * em vez do ModelLog partilhado por todo o processo.
+     *
+     * @param logger Destino dos eventos, ou null para usar o ModelLog
+     */
+    public ChessGameManager(Consumer<String> logger) {
+        this.logger = logger;
         this.chessGame = new ChessGame(new Board());
+        this.chessGame.setLogger(logger);
         this.mementoManager = new CareTaker(chessGame);
+        this.timeline = new GameTimeline(chessGame);
         this.pcs = new PropertyChangeSupport(this);
+        recordReset();
     }
 
     /**
@@ -50,6 +85,16 @@ public class ChessGameManager {
         pcs.addPropertyChangeListener(property, listener);
     }
 
+    /**
+     * Obtém o feed de movimentos do jogo, onde vários observadores (espectadores, painéis de
+     * análise) podem subscrever as alterações sem atrasar o jogo.
+     *
+     * @return O feed de movimentos
+     */
+    public MoveFeed getMoveFeed() {
+        return feed;
+    }
+
     /**
      * Verifica se uma posição no tabuleiro contém uma peça.
      *
@@ -86,7 +131,7 @@ public class ChessGameManager {
      * @return true se a exportação foi bem-sucedida, false caso contrário
      */
     public boolean exportPartialGameBin(String fileName) {
-        return ChessGameSerialization.save(fileName, this.chessGame);
+        return new DetachedGame(chessGame).writeBin(fileName);
     }
 
     /**
@@ -96,11 +141,514 @@ public class ChessGameManager {
      * @return true se a importação foi bem-sucedida, false caso contrário
      */
     public boolean importPartialGameFromFileBin(String fileName) {
-        this.chessGame = ChessGameSerialization.load(fileName);
-        mementoManager.reset();
-        pcs.firePropertyChange(PROP_VALUE_BOARD, null, null);
+        return attachGame(DetachedGame.readBin(fileName));
+    }
+
+    /**
+     * Importa o primeiro jogo de um ficheiro PGN, com todo o histórico de movimentos.
+     * O ficheiro é lido em streaming, pelo que pode ter qualquer tamanho.
+     *
+     * @param fileName O nome do ficheiro PGN
+     * @return true se a importação foi bem-sucedida, false caso contrário
+     */
+    public boolean importPgn(String fileName) {
+        return attachGame(DetachedGame.readPgn(fileName));
+    }
+
+    /**
+     * Exporta o jogo atual (até ao meio-lance atual) para um ficheiro PGN.
+     *
+     * @param fileName O nome do ficheiro PGN
+     * @return true se a exportação foi bem-sucedida, false caso contrário
+     */
+    public boolean exportPgn(String fileName) {
+        return new DetachedGame(chessGame).writePgn(fileName);
+    }
+
+    /**
+     * Importa um jogo de uma base de dados de jogos.
+     *
+     * @param fileName O nome do ficheiro da base de dados
+     * @param id O id do jogo
+     * @return true se a importação foi bem-sucedida, false caso contrário
+     */
+    public boolean importFromDatabase(String fileName, int id) {
+        return attachGame(DetachedGame.readFromDatabase(fileName, id));
+    }
+
+    /**
+     * Acrescenta o jogo atual a uma base de dados de jogos (que é criada se não existir).
+     *
+     * @param fileName O nome do ficheiro da base de dados
+     * @return O id do jogo na base de dados, ou -1 se ocorrer um erro
+     */
+    public int exportToDatabase(String fileName) {
+        return new DetachedGame(chessGame).writeToDatabase(fileName);
+    }
+
+    /**
+     * Obtém uma cópia do jogo atual, que pode ser gravada noutra thread sem interferir com o jogo.
+     *
+     * @return A cópia do jogo
+     */
+    public DetachedGame detachGame() {
+        return DetachedGame.copyOf(chessGame);
+    }
+
+    /**
+     * Exporta o jogo num registo binário compacto, para ser transferido para outro processo:
+     * o formato .paf (posição, nomes e registos compactos do histórico) precedido das pilhas de
+     * undo e redo, que guardam apenas meios-lances. Um ponto de undo de uma variante abandonada
+     * (ver ChessGame.branchOf) é guardado como -1 - meio-lance, seguido dos registos da variante.
+     *
+     * @return O registo do jogo
+     */
+    public byte[] exportRecord() {
+        List<List<IMemento>> stacks = List.of(mementoManager.getHistory(), mementoManager.getRedoHistory());
+        ByteBuffer game = ChessGameSerialization.encode(chessGame);
+        List<long[]> branches = new ArrayList<>();
+        int size = 2 * Integer.BYTES + game.remaining();
+        for (List<IMemento> stack : stacks) {
+            for (IMemento memento : stack) {
+                long[] branch = chessGame.branchOf(memento);
+                branches.add(branch);
+                size += Integer.BYTES + (branch == null ? 0 : Integer.BYTES + branch.length * Long.BYTES);
+            }
+        }
+        ByteBuffer record = ByteBuffer.allocate(size);
+        int next = 0;
+        for (List<IMemento> stack : stacks) {
+            record.putInt(stack.size());
+            for (IMemento memento : stack) {
+                int ply = memento.getSnapshot() instanceof Integer saved ? saved : chessGame.getPly();
+                long[] branch = branches.get(next++);
+                if (branch == null) {
+                    record.putInt(ply);
+                    continue;
+                }
+                record.putInt(-1 - ply).putInt(branch.length);
+                for (long move : branch) {
+                    record.putLong(move);
+                }
+            }
+        }
+        return record.put(game).array();
+    }
+
+    /**
+     * Substitui o jogo atual por um jogo exportado com exportRecord, com as pilhas de undo e redo.
+     *
+     * @param record O registo do jogo
+     * @return true se o jogo foi carregado, false se o registo for inválido
+     */
+    public boolean importRecord(byte[] record) {
+        List<List<IMemento>> stacks = new ArrayList<>();
+        ChessGame loaded;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            int[][] plies = new int[2][];
+            long[][][] branches = new long[2][][];
+            for (int s = 0; s < 2; s++) {
+                int size = buffer.getInt();
+                if (size < 0 || size > buffer.remaining() / Integer.BYTES) {
+                    return false;
+                }
+                plies[s] = new int[size];
+                branches[s] = new long[size][];
+                for (int i = 0; i < plies[s].length; i++) {
+                    int ply = buffer.getInt();
+                    if (ply >= 0) {
+                        plies[s][i] = ply;
+                        continue;
+                    }
+                    plies[s][i] = -1 - ply;
+                    int length = buffer.getInt();
+                    if (length < plies[s][i] || length > buffer.remaining() / Long.BYTES) {
+                        return false;
+                    }
+                    branches[s][i] = new long[length];
+                    buffer.asLongBuffer().get(branches[s][i]);
+                    buffer.position(buffer.position() + length * Long.BYTES);
+                }
+            }
+            if (ChessGameSerialization.isLegacy(buffer)) {
+                return false;
+            }
+            loaded = ChessGameSerialization.decode(buffer);
+            if (loaded == null) {
+                return false;
+            }
+            for (int s = 0; s < 2; s++) {
+                List<IMemento> mementos = new ArrayList<>(plies[s].length);
+                for (int i = 0; i < plies[s].length; i++) {
+                    int ply = plies[s][i];
+                    if (branches[s][i] != null && ChessGameSerialization.canReplay(loaded, branches[s][i])) {
+                        mementos.add(loaded.mementoAt(ply, branches[s][i]));
+                    } else if (branches[s][i] == null && ply <= loaded.getHistorySize()) {
+                        mementos.add(loaded.mementoAt(ply));
+                    } else {
+                        return false;
+                    }
+                }
+                stacks.add(mementos);
+            }
+        } catch (BufferUnderflowException e) {
+            return false;
+        }
+        replaceGame(loaded, stacks.get(0), stacks.get(1));
+        return true;
+    }
+
+    /**
+     * Substitui o jogo atual por um jogo lido com DetachedGame (por exemplo, numa thread de fundo).
+     * O jogo passa a pertencer ao ChessGameManager e não deve voltar a ser usado.
+     *
+     * @param game O jogo a mostrar
+     * @return true se o jogo foi carregado, false se for null
+     */
+    public boolean attachGame(DetachedGame game) {
+        if (game == null) {
+            return false;
+        }
+        replaceGame(game.getGame());
+        return true;
+    }
+
+    /**
+     * Obtém o número de jogos de uma base de dados de jogos.
+     *
+     * @param fileName O nome do ficheiro da base de dados
+     * @return O número de jogos, ou -1 se o ficheiro não puder ser aberto
+     */
+    public int getDatabaseSize(String fileName) {
+        return databaseSize(Path.of(fileName));
+    }
+
+    /**
+     * Procura, numa base de dados de jogos, os jogos que passaram pela posição atual do tabuleiro.
+     * O índice de posições (ficheiro ".pix" ao lado da base de dados) é construído na primeira
+     * procura e reconstruído sempre que a base de dados tiver jogos que ainda não estão indexados.
+     *
+     * @param fileName O nome do ficheiro da base de dados
+     * @param limit O número máximo de jogos a devolver
+     * @return Os jogos encontrados (id, meio-lance e movimento seguinte), ou null se ocorrer um erro
+     */
+    public List<PositionIndex.Hit> findGamesReachingPosition(String fileName, int limit) {
+        return findGamesReachingPosition(fileName, getPositionKey(), limit);
+    }
+
+    /**
+     * Procura, numa base de dados de jogos, os jogos que passaram por uma posição.
+     * Não depende do jogo atual, pelo que pode ser chamado noutra thread.
+     *
+     * @param fileName O nome do ficheiro da base de dados
+     * @param key A chave da posição (getPositionKey)
+     * @param limit O número máximo de jogos a devolver
+     * @return Os jogos encontrados, ou null se ocorrer um erro
+     */
+    public static List<PositionIndex.Hit> findGamesReachingPosition(String fileName, long key, int limit) {
+        try (PositionIndex index = openPositionIndex(Path.of(fileName))) {
+            if (index == null) {
+                return null;
+            }
+            return index.find(key, limit);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Obtém a chave de Zobrist da posição atual do tabuleiro.
+     *
+     * @return A chave da posição
+     */
+    public long getPositionKey() {
+        return Zobrist.hash(chessGame.snapshot());
+    }
+
+    /**
+     * Abre a árvore de aberturas de uma base de dados de jogos, construindo-a (e ao índice de
+     * posições) se não existir ou se a base de dados tiver jogos novos. A árvore fica mapeada
+     * em memória até ser aberta outra.
+     *
+     * @param fileName O nome do ficheiro da base de dados
+     * @return true se a árvore foi aberta, false caso contrário
+     */
+    public boolean openExplorer(String fileName) {
+        return attachExplorer(loadExplorer(fileName));
+    }
+
+    /**
+     * Abre (ou constrói) a árvore de aberturas de uma base de dados de jogos sem a associar ao
+     * ChessGameManager. Não altera o estado do jogo, podendo ser usado numa thread de fundo; a
+     * árvore devolvida é depois passada a attachExplorer.
+     *
+     * @param fileName O nome do ficheiro da base de dados
+     * @return A árvore de aberturas, ou null se ocorrer um erro
+     */
+    public static OpeningExplorer loadExplorer(String fileName) {
+        Path database = Path.of(fileName);
+        Path file = OpeningExplorer.pathFor(database);
+        OpeningExplorer opened = null;
+        try {
+            if (Files.exists(file)) {
+                opened = OpeningExplorer.open(file);
+                if (opened != null && opened.getGames() != databaseSize(database)) {
+                    opened.close();
+                    opened = null;
+                }
+            }
+            if (opened == null) {
+                try (PositionIndex index = openPositionIndex(database)) {
+                    if (index == null) {
+                        return null;
+                    }
+                    opened = OpeningExplorer.build(index, file, OpeningExplorer.DEFAULT_DEPTH);
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return opened;
+    }
+
+    /**
+     * Passa a usar uma árvore de aberturas aberta com loadExplorer, fechando a anterior.
+     *
+     * @param opened A árvore de aberturas
+     * @return true se a árvore foi associada, false se for null
+     */
+    public boolean attachExplorer(OpeningExplorer opened) {
+        if (opened == null) {
+            return false;
+        }
+        closeExplorer();
+        explorer = opened;
+        pcs.firePropertyChange(PROP_VALUE_EXPLORER, null, null);
+        return true;
+    }
+
+    /**
+     * Verifica se existe uma árvore de aberturas aberta.
+     *
+     * @return true se existir, false caso contrário
+     */
+    public boolean hasExplorer() {
+        return explorer != null;
+    }
+
+    /**
+     * Obtém os movimentos jogados na base de dados a partir da posição atual do tabuleiro.
+     *
+     * @return As estatísticas de cada movimento, ou uma lista vazia se não houver árvore aberta
+     */
+    public List<OpeningExplorer.MoveStats> getExplorerMoves() {
+        if (explorer == null) {
+            return List.of();
+        }
+        return explorer.lookup(getPositionKey());
+    }
+
+    private void closeExplorer() {
+        if (explorer == null) {
+            return;
+        }
+        try {
+            explorer.close();
+        } catch (IOException ignored) {
+            // o ficheiro só é lido
+        }
+        explorer = null;
+    }
+
+    private static int databaseSize(Path database) {
+        if (!Files.exists(database)) {
+            return -1;
+        }
+        try (GameDatabase games = GameDatabase.open(database)) {
+            return games.size();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static PositionIndex openPositionIndex(Path database) throws IOException {
+        if (!Files.exists(database)) {
+            return null;
+        }
+        Path file = PositionIndex.pathFor(database);
+        try (GameDatabase games = GameDatabase.open(database)) {
+            if (Files.exists(file)) {
+                PositionIndex index = PositionIndex.open(file);
+                if (index != null && index.getGames() == games.size()) {
+                    return index;
+                }
+                if (index != null) {
+                    index.close();
+                }
+            }
+            return PositionIndex.build(games, file, Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    private void replaceGame(ChessGame loaded) {
+        replaceGame(loaded, List.of(), List.of());
+    }
+
+    private void replaceGame(ChessGame loaded, List<IMemento> undo, List<IMemento> redo) {
+        this.chessGame = loaded;
+        this.chessGame.setLogger(logger);
+        this.mementoManager = new CareTaker(chessGame);
+        this.mementoManager.setHistory(undo, redo);
+        this.timeline = new GameTimeline(chessGame);
+        recordReset();
+        pcs.firePropertyChange(PROP_VALUE_BOARD, null, BoardChange.FULL);
         pcs.firePropertyChange(PROP_VALUE_PLAYER, null, getTeamToPlay());
-        return this.chessGame != null;
+    }
+
+    /**
+     * Inicia a gravação automática do jogo: um snapshot do jogo atual e um diário onde cada
+     * movimento é acrescentado assim que é jogado. Se a aplicação terminar de forma inesperada,
+     * o jogo pode ser recuperado com recoverAutosave.
+     *
+     * @param baseName O caminho base dos ficheiros (sem extensão)
+     * @return true se a gravação automática foi iniciada, false caso contrário
+     */
+    public boolean startAutosave(String baseName) {
+        stopAutosave(false);
+        try {
+            journal = MoveJournal.create(Path.of(baseName), chessGame);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Termina a gravação automática.
+     *
+     * @param discard true para apagar os ficheiros (fim normal da aplicação), false para os manter
+     */
+    public void stopAutosave(boolean discard) {
+        if (journal == null) {
+            return;
+        }
+        if (discard) {
+            journal.discard();
+        } else {
+            try {
+                journal.close();
+            } catch (IOException ignored) {
+                // o diário já foi escrito
+            }
+        }
+        journal = null;
+    }
+
+    /**
+     * Passa a manter uma réplica do jogo (por exemplo, num servidor de reserva): a réplica recebe
+     * já o estado atual e depois cada alteração, sem que o jogo seja enviado de novo a cada movimento.
+     *
+     * @param replica A réplica, ou null para deixar de a manter
+     */
+    public void setReplica(IGameReplica replica) {
+        this.replica = replica;
+        if (replica != null) {
+            replica.checkpoint(exportRecord());
+        }
+    }
+
+    /**
+     * Verifica se existe uma gravação automática que pode ser recuperada.
+     *
+     * @param baseName O caminho base dos ficheiros (sem extensão)
+     * @return true se existir, false caso contrário
+     */
+    public boolean hasAutosave(String baseName) {
+        return MoveJournal.exists(Path.of(baseName));
+    }
+
+    /**
+     * Recupera o jogo de uma gravação automática: o último snapshot mais os movimentos do diário.
+     *
+     * @param baseName O caminho base dos ficheiros (sem extensão)
+     * @return true se a recuperação foi bem-sucedida, false caso contrário
+     */
+    public boolean recoverAutosave(String baseName) {
+        ChessGame recovered = MoveJournal.recover(Path.of(baseName));
+        if (recovered == null) {
+            return false;
+        }
+        replaceGame(recovered);
+        return true;
+    }
+
+    private void recordMove() {
+        feed.moved(MoveRecord.toMove(chessGame.getLastMoveRecord()), chessGame.getPly());
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.appendLastMove(chessGame);
+            if (journal.size() >= MoveJournal.CHECKPOINT_ENTRIES) {
+                journal.checkpoint(chessGame);
+            }
+        } catch (IOException e) {
+            stopAutosave(false);
+        }
+    }
+
+    private void replicateLastMove() {
+        if (replica != null) {
+            replica.moved(new int[]{MoveRecord.toMove(chessGame.getLastMoveRecord()) & 0x7FFF});
+        }
+    }
+
+    private void recordPly() {
+        feed.wentTo(chessGame.getPly());
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.appendGoTo(chessGame.getPly());
+        } catch (IOException e) {
+            stopAutosave(false);
+        }
+    }
+
+    /**
+     * Regista um undo ou redo. Se o memento restaurado pertencia a outra variante (um movimento
+     * jogado depois de um salto substituiu os movimentos seguintes), o histórico mudou: os
+     * checkpoints da linha temporal são refeitos e o jogo é registado por inteiro.
+     * @return true se o histórico mudou
+     */
+    private boolean recordRestore(int switches) {
+        if (chessGame.getHistorySwitches() == switches) {
+            recordPly();
+            return false;
+        }
+        timeline.rebuild();
+        recordReset();
+        return true;
+    }
+
+    private void recordReset() {
+        feed.reset(chessGame.getStartFen(), MoveFeed.movesOf(chessGame.getMoveRecords()), chessGame.getPly());
+        recordCheckpoint();
+    }
+
+    private void recordCheckpoint() {
+        if (replica != null) {
+            replica.checkpoint(exportRecord());
+        }
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.checkpoint(chessGame);
+        } catch (IOException e) {
+            stopAutosave(false);
+        }
     }
 
     /**
@@ -126,16 +674,153 @@ public class ChessGameManager {
         mementoManager.save();
         MoveResult result = chessGame.executeMove(colPiece, rowPiece, colToMove, rowToMove);
         if (result == MoveResult.INVALID) {
-            pcs.firePropertyChange(PROP_VALUE_BOARD, null, null);
             mementoManager.discardLastSave();
             return result;
         }
+        if (result != MoveResult.VALID_PROMOTION) {
+            timeline.onMovePlayed();
+            recordMove();
+            replicateLastMove();
+        }
 
-        pcs.firePropertyChange(PROP_VALUE_BOARD, null, null);
+        long record = chessGame.getLastMoveRecord();
+        boolean statusChanged = result != MoveResult.VALID || MoveRecord.previousCheck(record) != chessGame.getLastTeamInCheck();
+        pcs.firePropertyChange(PROP_VALUE_BOARD, null, BoardChange.of(record, statusChanged));
         pcs.firePropertyChange(PROP_VALUE_PLAYER, oldTeamEnum, getTeamToPlay());
         return result;
     }
 
+    /**
+     * Joga uma sequência de movimentos numa só operação, por exemplo ao importar a lista de
+     * movimentos de um jogo. A sequência é jogada por inteiro ou não é jogada: todos os
+     * movimentos são validados antes do primeiro ser jogado. Guarda um único ponto de undo
+     * (um undo desfaz toda a sequência), envia uma única notificação no fim e verifica o fim
+     * do jogo uma vez, depois do último movimento (o resultado é dado por getWinner).
+     *
+     * @param moves Os movimentos codificados como na classe Move (sem promoção, o peão é promovido a rainha)
+     * @return -1 se todos os movimentos foram jogados, ou o índice do primeiro movimento inválido
+     *         (nesse caso nenhum movimento é jogado)
+     */
+    public int applyMoves(int[] moves) {
+        int failed = validateMoves(moves);
+        if (failed != -1 || moves.length == 0) {
+            return failed;
+        }
+        PieceTeamEnum oldTeamEnum = getTeamToPlay();
+        boolean wasInCheck = chessGame.getLastTeamInCheck() != null;
+        IMemento before = chessGame.save();
+        mementoManager.save();
+        BoardChange change = null;
+        for (int i = 0; i < moves.length; i++) {
+            if (!chessGame.playMove(moves[i])) {
+                // as regras do ChessGame recusaram um movimento aceite pelo EngineBoard: repõe o
+                // jogo e volta a registá-lo por inteiro, como depois de um undo para outra variante
+                chessGame.restore(before);
+                mementoManager.discardLastSave();
+                timeline.rebuild();
+                recordReset();
+                return i;
+            }
+            timeline.onMovePlayed();
+            recordMove();
+            BoardChange moveChange = BoardChange.of(chessGame.getLastMoveRecord(), false);
+            change = change == null ? moveChange : change.merge(moveChange);
+        }
+        if (replica != null) {
+            long[] records = chessGame.getMoveRecords();
+            int[] replicated = new int[moves.length];
+            for (int i = 0; i < moves.length; i++) {
+                replicated[i] = MoveRecord.toMove(records[chessGame.getPly() - moves.length + i]) & 0x7FFF;
+            }
+            replica.moved(replicated);
+        }
+        // o fim do jogo é verificado uma vez, como o executeMove faz depois de cada movimento
+        MoveResult end = chessGame.getEndResult();
+        boolean statusChanged = end != MoveResult.VALID || wasInCheck != (chessGame.getLastTeamInCheck() != null);
+        pcs.firePropertyChange(PROP_VALUE_BOARD, null, change.merge(BoardChange.of(chessGame.getLastMoveRecord(), statusChanged)));
+        pcs.firePropertyChange(PROP_VALUE_PLAYER, oldTeamEnum, getTeamToPlay());
+        return -1;
+    }
+
+    /**
+     * Valida uma sequência de movimentos numa cópia da posição atual.
+     * @return -1 se todos forem legais, ou o índice do primeiro movimento inválido
+     */
+    private int validateMoves(int[] moves) {
+        EngineBoard board = EngineBoard.fromGame(chessGame);
+        int[] legal = new int[EngineBoard.MAX_MOVES];
+        for (int i = 0; i < moves.length; i++) {
+            int count = board.generateLegalMoves(legal);
+            int found = Move.NONE;
+            for (int j = 0; j < count && found == Move.NONE; j++) {
+                if (matches(legal[j], moves[i])) {
+                    found = legal[j];
+                }
+            }
+            if (found == Move.NONE) {
+                return i;
+            }
+            board.makeMove(found);
+        }
+        return -1;
+    }
+
+    private static boolean matches(int legal, int move) {
+        if (Move.from(legal) != Move.from(move) || Move.to(legal) != Move.to(move)) {
+            return false;
+        }
+        int promotion = Move.promotion(move);
+        return Move.promotion(legal) == EngineBoard.EMPTY
+                || Move.promotion(legal) == (promotion >= EngineBoard.KNIGHT && promotion <= EngineBoard.QUEEN ? promotion : EngineBoard.QUEEN);
+    }
+
+
+    /**
+     * Joga uma sequência de movimentos em texto ("E2E4", "E7E8Q" nas promoções).
+     *
+     * @param moves Os movimentos por ordem
+     * @return -1 se todos os movimentos foram jogados, ou o índice do primeiro movimento inválido
+     * @see #applyMoves(int[])
+     */
+    public int applyMoves(List<String> moves) {
+        int[] encoded = new int[moves.size()];
+        int count = 0;
+        for (String text : moves) {
+            int move = parseMove(text);
+            if (move == Move.NONE) {
+                break;
+            }
+            encoded[count++] = move;
+        }
+        if (count < moves.size()) {
+            int failed = validateMoves(Arrays.copyOf(encoded, count));
+            return failed == -1 ? count : failed;
+        }
+        return applyMoves(encoded);
+    }
+
+    private static int parseMove(String text) {
+        if (text == null || text.length() < 4 || text.length() > 5) {
+            return Move.NONE;
+        }
+        char colFrom = Character.toUpperCase(text.charAt(0));
+        char colTo = Character.toUpperCase(text.charAt(2));
+        int rowFrom = text.charAt(1) - '0';
+        int rowTo = text.charAt(3) - '0';
+        if (colFrom < 'A' || colFrom > 'H' || colTo < 'A' || colTo > 'H'
+                || rowFrom < 1 || rowFrom > 8 || rowTo < 1 || rowTo > 8) {
+            return Move.NONE;
+        }
+        int promotion = 0;
+        if (text.length() == 5) {
+            promotion = "NBRQ".indexOf(Character.toUpperCase(text.charAt(4))) + 2;
+            if (promotion < 2) {
+                return Move.NONE;
+            }
+        }
+        return Move.encode(MoveRecord.square(colFrom, rowFrom), MoveRecord.square(colTo, rowTo), promotion, 0);
+    }
+
     /**
      * Verifica se uma operação de undo está disponível.
      *
@@ -153,8 +838,16 @@ public class ChessGameManager {
             return;
         }
 
+        int oldPly = chessGame.getPly();
+        long undone = chessGame.getLastMoveRecord();
+        int switches = chessGame.getHistorySwitches();
         mementoManager.undo();
-        pcs.firePropertyChange(PROP_VALUE_BOARD, null, null);
+        boolean switched = recordRestore(switches);
+        if (!switched && replica != null) {
+            replica.undone();
+        }
+        pcs.firePropertyChange(PROP_VALUE_BOARD, null,
+                !switched && chessGame.getPly() == oldPly - 1 ? BoardChange.of(undone, true) : BoardChange.FULL);
         pcs.firePropertyChange(PROP_VALUE_PLAYER, null, getTeamToPlay());
     }
 
@@ -174,11 +867,65 @@ public class ChessGameManager {
         if (!mementoManager.hasRedo()) {
             return;
         }
+        int oldPly = chessGame.getPly();
+        int switches = chessGame.getHistorySwitches();
         mementoManager.redo();
-        pcs.firePropertyChange(PROP_VALUE_BOARD, null, null);
+        boolean switched = recordRestore(switches);
+        if (!switched && replica != null) {
+            replica.redone();
+        }
+        pcs.firePropertyChange(PROP_VALUE_BOARD, null,
+                !switched && chessGame.getPly() == oldPly + 1 ? BoardChange.of(chessGame.getLastMoveRecord(), true) : BoardChange.FULL);
         pcs.firePropertyChange(PROP_VALUE_PLAYER, null, getTeamToPlay());
     }
 
+    /**
+     * Salta para um meio-lance do jogo (modo de aprendizagem).
+     * O salto pode ser desfeito com undo.
+     *
+     * @param ply O meio-lance pretendido (0 é a posição inicial)
+     */
+    public void goToPly(int ply) {
+        if (ply == chessGame.getPly() || ply < 0 || ply > chessGame.getHistorySize()) {
+            return;
+        }
+        mementoManager.save();
+        timeline.goToPly(ply);
+        recordPly();
+        if (replica != null) {
+            replica.wentTo(ply);
+        }
+        pcs.firePropertyChange(PROP_VALUE_BOARD, null, BoardChange.FULL);
+        pcs.firePropertyChange(PROP_VALUE_PLAYER, null, getTeamToPlay());
+    }
+
+    /**
+     * Obtém a posição atual como um valor imutável, que pode ser usado noutras threads.
+     *
+     * @return A posição atual
+     */
+    public Position getPosition() {
+        return chessGame.snapshot();
+    }
+
+    /**
+     * Obtém o meio-lance atual do jogo.
+     *
+     * @return O número de meios-lances jogados até à posição atual
+     */
+    public int getPly() {
+        return chessGame.getPly();
+    }
+
+    /**
+     * Obtém o número de meios-lances guardados no histórico, incluindo os que podem ser refeitos.
+     *
+     * @return O número de meios-lances no histórico
+     */
+    public int getHistorySize() {
+        return chessGame.getHistorySize();
+    }
+
     /**
      * Obtém o nome do jogador branco.
      *
@@ -195,6 +942,7 @@ public class ChessGameManager {
      */
     public void setPlayerWhite(String playerWhite) {
         this.chessGame.setPlayerWhite(playerWhite);
+        recordCheckpoint();
     }
 
     /**
@@ -213,6 +961,7 @@ public class ChessGameManager {
      */
     public void setPlayerBlack(String playerBlack) {
         this.chessGame.setPlayerBlack(playerBlack);
+        recordCheckpoint();
     }
 
     /**
@@ -304,7 +1053,9 @@ public class ChessGameManager {
     public void start() {
         chessGame.startCompleteGame();
         mementoManager.reset();
-        pcs.firePropertyChange(PROP_VALUE_BOARD, null, null);
+        timeline.rebuild();
+        recordReset();
+        pcs.firePropertyChange(PROP_VALUE_BOARD, null, BoardChange.FULL);
         pcs.firePropertyChange(PROP_VALUE_PLAYER, null, getTeamToPlay());
     }
 
@@ -317,11 +1068,31 @@ public class ChessGameManager {
     public boolean importPartialGameTxt(String gameData) {
         boolean result = chessGame.importPartialGameTxt(gameData);
         mementoManager.reset();
-        pcs.firePropertyChange(PROP_VALUE_BOARD, null, null);
+        timeline.rebuild();
+        recordReset();
+        pcs.firePropertyChange(PROP_VALUE_BOARD, null, BoardChange.FULL);
         pcs.firePropertyChange(PROP_VALUE_PLAYER, null, getTeamToPlay());
         return result;
     }
 
+    /**
+     * Importa uma posição em notação FEN.
+     *
+     * @param fen A posição em FEN
+     * @return true se a importação foi bem-sucedida, false caso contrário
+     */
+    public boolean importFen(String fen) {
+        if (!chessGame.importFen(fen)) {
+            return false;
+        }
+        mementoManager.reset();
+        timeline.rebuild();
+        recordReset();
+        pcs.firePropertyChange(PROP_VALUE_BOARD, null, BoardChange.FULL);
+        pcs.firePropertyChange(PROP_VALUE_PLAYER, null, getTeamToPlay());
+        return true;
+    }
+
     /**
      * Verifica se um peão específico pode ser promovido.
      *
@@ -338,11 +1109,18 @@ public class ChessGameManager {
      * @param col A coluna do peão (A-H)
      * @param row A linha do peão (1-8)
      * @param newPieceType O tipo para promover (RAINHA, TORRE, BISPO ou CAVALO)
+     * @return true se o peão foi promovido, false se não houver uma promoção pendente nessa casa
      */
-    public void pawnPromotion(char col, int row, PieceTypeEnum newPieceType) {
-        chessGame.pawnPromotion(col, row, newPieceType);
-        pcs.firePropertyChange(PROP_VALUE_BOARD, null, null);
+    public boolean pawnPromotion(char col, int row, PieceTypeEnum newPieceType) {
+        if (!chessGame.pawnPromotion(col, row, newPieceType)) {
+            return false;
+        }
+        timeline.onMovePlayed();
+        recordMove();
+        replicateLastMove();
+        pcs.firePropertyChange(PROP_VALUE_BOARD, null, BoardChange.of(chessGame.getLastMoveRecord(), true));
         pcs.firePropertyChange(PROP_VALUE_PLAYER, null, null);
+        return true;
     }
 
     /**
@@ -353,4 +1131,13 @@ public class ChessGameManager {
     public String exportPartialGameTxt() {
         return chessGame.exportPartialGameTxt();
     }
-}
\ No newline at end of file
+
+    /**
+     * Exporta a posição atual em notação FEN.
+     *
+     * @return A posição em FEN
+     */
+    public String exportFen() {
+        return chessGame.exportFen();
+    }
+}
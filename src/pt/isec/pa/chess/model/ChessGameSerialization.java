@@ -1,15 +1,58 @@
 package pt.isec.pa.chess.model;
 
+import pt.isec.pa.chess.model.data.Board;
+import pt.isec.pa.chess.model.data.Piece;
+import pt.isec.pa.chess.model.data.PieceTeamEnum;
+import pt.isec.pa.chess.model.data.PieceTypeEnum;
+
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
+/**
+ * Gravação e leitura de jogos em ficheiros .paf.
+ * <p>
+ * O formato atual é binário e versionado: "PAF" + versão, as peças (um nibble por casa, pela
+ * ordem A1..H8), uma máscara com os reis e torres que ainda não se moveram (direitos de roque),
+ * a equipa a jogar, a equipa em xeque, a casa do peão en passant, os nomes dos jogadores e os
+ * registos compactos (MoveRecord) do histórico. Cada nome é precedido do seu tamanho em bytes;
+ * desde a versão 2, o tamanho 0xFFFF indica um jogador sem nome (null), distinto do nome vazio,
+ * enquanto na versão 1 o tamanho 0 era lido como null. Os ficheiros antigos, gravados com
+ * ObjectOutputStream, continuam a ser lidos.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see MoveRecord
+ */
 public class ChessGameSerialization {
+    private static final byte[] MAGIC = {'P', 'A', 'F'};
+    /** Versão atual do formato binário */
+    public static final int VERSION = 2;
+
+    /** Tamanho dos campos de tamanho fixo: magic, versão, peças, máscara, 3 bytes de estado, 2 tamanhos de nome, 2 ints */
+    private static final int HEADER_SIZE = 3 + 1 + 32 + 8 + 3 + 2 * 2 + 2 * 4;
+    private static final int MAX_NAME_BYTES = 0xFFFE;
+    /** Tamanho de nome que indica um jogador sem nome (a partir da versão 2) */
+    private static final int NO_NAME = 0xFFFF;
+    private static final int NO_TEAM = 0;
+
     private ChessGameSerialization(){
      //construtor privado que impede alguem de criar uma instacia desta classe
     }
 
     public static boolean save (String filename, ChessGame game) {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filename))) {
-            out.writeObject(game);
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = encode(game);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
             return true;
         } catch (Exception e) {
             return false;
@@ -17,10 +60,290 @@ public class ChessGameSerialization {
     }
 
     public static ChessGame load(String filename) {
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(filename))) {
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // lê até encher o buffer
+            }
+            buffer.flip();
+            return decode(buffer);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Converte um jogo para o formato binário.
+     * @param game Jogo a converter
+     * @return Buffer pronto a ler (posição 0, limite no fim dos dados)
+     */
+    public static ByteBuffer encode(ChessGame game) {
+        long[] records = game.getMoveRecords();
+        byte[] white = nameBytes(game.getPlayerWhite());
+        byte[] black = nameBytes(game.getPlayerBlack());
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + nameLength(white) + nameLength(black) + records.length * 8);
+
+        buffer.put(MAGIC).put((byte) VERSION);
+
+        long unmoved = 0;
+        for (int sq = 0; sq < 64; sq += 2) {
+            buffer.put((byte) (pieceCode(game, sq) | pieceCode(game, sq + 1) << 4));
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            Piece piece = game.getPieceAt(MoveRecord.column(sq), MoveRecord.row(sq));
+            if (piece != null && !ChessGame.hasMoved(piece)) {
+                unmoved |= 1L << sq;
+            }
+        }
+        buffer.putLong(unmoved);
+
+        buffer.put(teamCode(game.getTeamToPlay()));
+        buffer.put(teamCode(game.getLastTeamInCheck()));
+        buffer.put((byte) game.getEnPassantSquare());
+
+        putName(buffer, white);
+        putName(buffer, black);
+
+        buffer.putInt(records.length).putInt(game.getPly());
+        for (long record : records) {
+            buffer.putLong(record);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Lê um jogo a partir de um buffer, no formato binário ou no formato antigo (serialização Java).
+     * @param buffer Dados do ficheiro
+     * @return O jogo, ou null se os dados forem inválidos ou de uma versão fora de 1..VERSION
+     */
+    public static ChessGame decode(ByteBuffer buffer) {
+        if (!hasMagic(buffer)) {
+            return decodeLegacy(buffer);
+        }
+        try {
+            buffer.position(buffer.position() + MAGIC.length);
+            int version = buffer.get();
+            if (version < 1 || version > VERSION) {
+                return null;
+            }
+
+            int[] squares = new int[64];
+            for (int sq = 0; sq < 64; sq += 2) {
+                int packed = buffer.get();
+                squares[sq] = packed & 15;
+                squares[sq + 1] = (packed >> 4) & 15;
+            }
+            for (int code : squares) {
+                if (code != 0 && MoveRecord.typeOf(code) == null) {
+                    return null;
+                }
+            }
+            long unmoved = buffer.getLong();
+
+            byte teamCode = buffer.get();
+            byte checkCode = buffer.get();
+            PieceTeamEnum teamToPlay = teamOf(teamCode);
+            PieceTeamEnum lastTeamInCheck = teamOf(checkCode);
+            int enPassant = buffer.get();
+            String white = getName(buffer, version);
+            String black = getName(buffer, version);
+
+            int count = buffer.getInt();
+            int ply = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / 8 || ply < 0 || ply > count || teamToPlay == null
+                    || (lastTeamInCheck == null && checkCode != NO_TEAM) || enPassant < -1) {
+                return null;
+            }
+            long[] records = new long[count];
+            buffer.asLongBuffer().get(records);
+            buffer.position(buffer.position() + count * 8);
+            int[] start = startSquares(squares, records, ply);
+            if (start == null || !canReplay(start, records)) {
+                return null;
+            }
+
+            Board board = new Board();
+            for (int sq = 0; sq < 64; sq++) {
+                if (squares[sq] != 0) {
+                    board.addPiece(MoveRecord.createPiece(squares[sq], sq, (unmoved & (1L << sq)) == 0, board));
+                }
+            }
+            ChessGame game = new ChessGame(board);
+            game.loadState(board, teamToPlay, enPassant, lastTeamInCheck, records, ply);
+            game.setPlayerWhite(white);
+            game.setPlayerBlack(black);
+            return game;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Verifica se os registos de outra variante do jogo (por exemplo, de um ponto de undo
+     * transferido com o jogo) podem ser refeitos a partir da posição inicial do jogo.
+     * @param game Jogo
+     * @param records Registos da variante
+     * @return true se todos os registos forem válidos e corresponderem às peças do tabuleiro
+     */
+    static boolean canReplay(ChessGame game, long[] records) {
+        int[] squares = new int[64];
+        for (int sq = 0; sq < 64; sq++) {
+            squares[sq] = pieceCode(game, sq);
+        }
+        int[] start = startSquares(squares, game.getMoveRecords(), game.getPly());
+        return start != null && canReplay(start, records);
+    }
+
+    /**
+     * Desfaz os registos até ao meio-lance 0 numa cópia das peças, verificando que cada
+     * movimento pode ser desfeito: a peça (ou a peça promovida) está no destino, a origem e a
+     * casa da captura estão livres.
+     * @param squares Peças da posição no meio-lance ply
+     * @param records Registos do histórico
+     * @param ply Meio-lance da posição
+     * @return As peças da posição inicial, ou null se algum registo não corresponder à posição
+     */
+    private static int[] startSquares(int[] squares, long[] records, int ply) {
+        int[] board = squares.clone();
+        for (int i = ply - 1; i >= 0; i--) {
+            long record = records[i];
+            int from = MoveRecord.from(record);
+            int to = MoveRecord.to(record);
+            int capturedSquare = MoveRecord.capturedSquare(record);
+            if (!MoveRecord.isValid(record) || board[to] != MoveRecord.placedPiece(record) || board[from] != 0) {
+                return null;
+            }
+            board[to] = 0;
+            board[from] = MoveRecord.piece(record);
+            if (MoveRecord.isCastle(record)) {
+                moveRook(board, to, false);
+            }
+            if (MoveRecord.captured(record) != 0) {
+                if (board[capturedSquare] != 0) {
+                    return null;
+                }
+                board[capturedSquare] = MoveRecord.captured(record);
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Refaz todos os registos a partir da posição inicial, numa cópia das peças, verificando que
+     * a peça movida está na origem e a peça capturada na casa da captura.
+     */
+    private static boolean canReplay(int[] start, long[] records) {
+        int[] board = start.clone();
+        for (long record : records) {
+            int from = MoveRecord.from(record);
+            int to = MoveRecord.to(record);
+            int capturedSquare = MoveRecord.capturedSquare(record);
+            if (!MoveRecord.isValid(record) || board[from] != MoveRecord.piece(record)
+                    || (MoveRecord.captured(record) != 0 && board[capturedSquare] != MoveRecord.captured(record))) {
+                return false;
+            }
+            if (MoveRecord.captured(record) != 0) {
+                board[capturedSquare] = 0;
+            }
+            board[from] = 0;
+            board[to] = MoveRecord.placedPiece(record);
+            if (MoveRecord.isCastle(record)) {
+                moveRook(board, to, true);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Move a torre de um roque (como em ChessGame, só se houver uma torre na casa de partida).
+     * @param kingTo Destino do rei
+     * @param forward true ao jogar o roque, false ao desfazê-lo
+     */
+    private static void moveRook(int[] board, int kingTo, boolean forward) {
+        boolean kingside = (kingTo & 7) == 6;
+        int corner = kingTo - (kingTo & 7) + (kingside ? 7 : 0);
+        int inner = kingTo + (kingside ? -1 : 1);
+        int from = forward ? corner : inner;
+        int to = forward ? inner : corner;
+        if (MoveRecord.typeOf(board[from]) == PieceTypeEnum.ROOK) {
+            board[to] = board[from];
+            board[from] = 0;
+        }
+    }
+
+    /**
+     * Verifica se os dados estão no formato antigo (serialização Java).
+     * @param buffer Dados do ficheiro (a posição não é alterada)
+     * @return true se os dados não começarem pelo cabeçalho do formato binário
+     */
+    public static boolean isLegacy(ByteBuffer buffer) {
+        return !hasMagic(buffer);
+    }
+
+    private static ChessGame decodeLegacy(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
             return (ChessGame) in.readObject();
         } catch (Exception e) {
             return null;
         }
     }
+
+    private static boolean hasMagic(ByteBuffer buffer) {
+        if (buffer.remaining() < MAGIC.length + 1) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(buffer.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int pieceCode(ChessGame game, int sq) {
+        return MoveRecord.pieceCode(game.getPieceAt(MoveRecord.column(sq), MoveRecord.row(sq)));
+    }
+
+    private static byte teamCode(PieceTeamEnum team) {
+        return (byte) (team == null ? NO_TEAM : team.ordinal() + 1);
+    }
+
+    private static PieceTeamEnum teamOf(byte code) {
+        return code <= NO_TEAM || code > PieceTeamEnum.values().length ? null : PieceTeamEnum.values()[code - 1];
+    }
+
+    /**
+     * Obtém os bytes de um nome em UTF-8, ou null se o jogador não tiver nome.
+     */
+    private static byte[] nameBytes(String name) {
+        if (name == null) {
+            return null;
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return bytes.length > MAX_NAME_BYTES ? Arrays.copyOf(bytes, MAX_NAME_BYTES) : bytes;
+    }
+
+    private static int nameLength(byte[] name) {
+        return name == null ? 0 : name.length;
+    }
+
+    private static void putName(ByteBuffer buffer, byte[] name) {
+        if (name == null) {
+            buffer.putShort((short) NO_NAME);
+        } else {
+            buffer.putShort((short) name.length).put(name);
+        }
+    }
+
+    private static String getName(ByteBuffer buffer, int version) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (version == 1 ? length == 0 : length == NO_NAME) {
+            return null;
+        }
+        byte[] name = new byte[length];
+        buffer.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
 }
@@ -0,0 +1,186 @@
+package pt.isec.pa.chess.model;
+
+import pt.isec.pa.chess.model.engine.PgnGame;
+import pt.isec.pa.chess.model.engine.PgnReader;
+import pt.isec.pa.chess.model.engine.PgnWriter;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Jogo independente do ChessGameManager, que pode ser lido ou escrito em ficheiros numa thread
+ * de fundo sem tocar no jogo que está a ser mostrado.
+ * <p>
+ * Para gravar, obtém-se uma cópia com ChessGameManager.detachGame() (na thread da interface)
+ * e escreve-se a cópia noutra thread; para abrir, lê-se o jogo noutra thread e entrega-se ao
+ * ChessGameManager com attachGame(...) (na thread da interface).
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see ChessGameManager
+ */
+public final class DetachedGame {
+    private final ChessGame game;
+
+    DetachedGame(ChessGame game) {
+        this.game = game;
+    }
+
+    ChessGame getGame() {
+        return game;
+    }
+
+    /**
+     * Cria uma cópia de um jogo, com todo o histórico.
+     * @param game Jogo a copiar
+     * @return Cópia independente
+     */
+    static DetachedGame copyOf(ChessGame game) {
+        return new DetachedGame(ChessGameSerialization.decode(ChessGameSerialization.encode(game)));
+    }
+
+    /**
+     * Lê um jogo de um ficheiro .paf.
+     * @param fileName Nome do ficheiro
+     * @return O jogo, ou null se o ficheiro não puder ser lido
+     */
+    public static DetachedGame readBin(String fileName) {
+        ChessGame loaded = ChessGameSerialization.load(fileName);
+        return loaded == null ? null : new DetachedGame(loaded);
+    }
+
+    /**
+     * Lê um jogo do conteúdo de um ficheiro .paf, já lido (por exemplo, por blocos, com progresso).
+     * @param data Conteúdo do ficheiro
+     * @return O jogo, ou null se o conteúdo for inválido
+     */
+    public static DetachedGame fromBin(byte[] data) {
+        ChessGame loaded = ChessGameSerialization.decode(ByteBuffer.wrap(data));
+        return loaded == null ? null : new DetachedGame(loaded);
+    }
+
+    /**
+     * Lê o primeiro jogo de um ficheiro PGN.
+     * @param fileName Nome do ficheiro
+     * @return O jogo, ou null se o ficheiro não puder ser lido ou o jogo for inválido
+     */
+    public static DetachedGame readPgn(String fileName) {
+        PgnGame pgn;
+        try (PgnReader reader = new PgnReader(new InputStreamReader(Files.newInputStream(Path.of(fileName)), StandardCharsets.UTF_8))) {
+            pgn = reader.next();
+        } catch (IOException e) {
+            return null;
+        }
+        return fromPgn(pgn);
+    }
+
+    /**
+     * Lê o primeiro jogo do conteúdo de um ficheiro PGN, já lido.
+     * @param text Conteúdo do ficheiro
+     * @return O jogo, ou null se o jogo for inválido
+     */
+    public static DetachedGame fromPgn(String text) {
+        try (PgnReader reader = new PgnReader(new StringReader(text))) {
+            return fromPgn(reader.next());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static DetachedGame fromPgn(PgnGame pgn) {
+        ChessGame loaded = pgn == null || !pgn.isValid() ? null : pgn.toChessGame();
+        return loaded == null ? null : new DetachedGame(loaded);
+    }
+
+    /**
+     * Lê um jogo de uma base de dados de jogos.
+     * @param fileName Nome do ficheiro da base de dados
+     * @param id Id do jogo
+     * @return O jogo, ou null se não existir
+     */
+    public static DetachedGame readFromDatabase(String fileName, int id) {
+        try (GameDatabase database = GameDatabase.open(Path.of(fileName))) {
+            ChessGame loaded = database.read(id);
+            return loaded == null ? null : new DetachedGame(loaded);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Grava o jogo num ficheiro .paf.
+     * @param fileName Nome do ficheiro
+     * @return true se a gravação foi bem-sucedida
+     */
+    public boolean writeBin(String fileName) {
+        return ChessGameSerialization.save(fileName, game);
+    }
+
+    /**
+     * Obtém o conteúdo do ficheiro .paf do jogo, para ser escrito noutra thread.
+     * @return Conteúdo do ficheiro
+     */
+    public byte[] toBin() {
+        ByteBuffer encoded = ChessGameSerialization.encode(game);
+        byte[] data = new byte[encoded.remaining()];
+        encoded.get(data);
+        return data;
+    }
+
+    /**
+     * Grava o jogo (até ao meio-lance atual) num ficheiro PGN.
+     * @param fileName Nome do ficheiro
+     * @return true se a gravação foi bem-sucedida, false se ocorrer um erro ou houver uma promoção pendente
+     */
+    public boolean writePgn(String fileName) {
+        PgnGame pgn = PgnGame.of(game);
+        if (pgn == null) {
+            return false;
+        }
+        try (PgnWriter writer = new PgnWriter(Files.newBufferedWriter(Path.of(fileName), StandardCharsets.UTF_8))) {
+            writer.write(pgn);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Obtém o jogo (até ao meio-lance atual) em PGN, para ser escrito noutra thread.
+     * @return O texto PGN, ou null se houver uma promoção pendente
+     */
+    public String toPgn() {
+        PgnGame pgn = PgnGame.of(game);
+        if (pgn == null) {
+            return null;
+        }
+        StringWriter text = new StringWriter();
+        try (PgnWriter writer = new PgnWriter(text)) {
+            writer.write(pgn);
+        } catch (IOException e) {
+            // não acontece ao escrever num StringWriter
+            throw new IllegalStateException(e);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Acrescenta o jogo a uma base de dados de jogos (que é criada se não existir).
+     * @param fileName Nome do ficheiro da base de dados
+     * @return Id do jogo na base de dados, ou -1 se ocorrer um erro
+     */
+    public int writeToDatabase(String fileName) {
+        try (GameDatabase database = GameDatabase.open(Path.of(fileName))) {
+            return database.append(game);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package pt.isec.pa.chess.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Base de dados de jogos num único ficheiro, para coleções grandes demais para um ficheiro .paf
+ * por jogo. Cada jogo é acrescentado no formato binário de ChessGameSerialization, precedido
+ * do seu tamanho; um ficheiro de índice separado (".idx") guarda o offset de cada jogo, por
+ * ordem de id. A leitura por id é feita sobre o ficheiro mapeado em memória, em janelas de
+ * tamanho fixo, sem copiar o ficheiro para o heap.
+ * <p>
+ * As leituras podem ser feitas por várias threads; as escritas são sincronizadas.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see ChessGameSerialization
+ */
+public class GameDatabase implements Closeable {
+    /** Extensão do ficheiro de dados */
+    public static final String EXTENSION = ".pdb";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    /** Tamanho de cada janela mapeada; as janelas sobrepõem-se em OVERLAP bytes */
+    private static final long WINDOW = 1L << 28;
+    private static final long OVERLAP = 1L << 20;
+
+    private final FileChannel data;
+    private final FileChannel index;
+    private long[] offsets;
+    private int count;
+    private long dataSize;
+    private MappedByteBuffer[] windows;
+
+    private GameDatabase(FileChannel data, FileChannel index) {
+        this.data = data;
+        this.index = index;
+        this.offsets = new long[1024];
+        this.windows = new MappedByteBuffer[0];
+    }
+
+    /**
+     * Abre (ou cria) uma base de dados.
+     * Entradas do índice que apontem para lá do fim dos dados, por exemplo depois de uma
+     * escrita interrompida, são descartadas; jogos completos que não estejam no índice (por
+     * exemplo se o ".idx" foi truncado ou apagado) voltam a ser indexados.
+     * @param file Ficheiro de dados (o índice fica ao lado, com a extensão ".idx" acrescentada)
+     * @return Base de dados aberta
+     * @throws IOException Se os ficheiros não puderem ser abertos
+     */
+    public static GameDatabase open(Path file) throws IOException {
+        FileChannel data = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        FileChannel index;
+        try {
+            index = FileChannel.open(file.resolveSibling(file.getFileName() + INDEX_SUFFIX),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        } catch (IOException e) {
+            data.close();
+            throw e;
+        }
+        GameDatabase db = new GameDatabase(data, index);
+        db.loadIndex();
+        return db;
+    }
+
+    private void loadIndex() throws IOException {
+        long entries = index.size() / Long.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        dataSize = data.size();
+        long previous = -1;
+        while (count < entries) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), (entries - count) * Long.BYTES));
+            while (buffer.hasRemaining() && index.read(buffer, (long) count * Long.BYTES + buffer.position()) >= 0) {
+                // lê até encher o buffer
+            }
+            buffer.flip();
+            while (buffer.remaining() >= Long.BYTES) {
+                long offset = buffer.getLong();
+                if (offset <= previous || offset >= dataSize) {
+                    recover();
+                    return;
+                }
+                add(offset);
+                previous = offset;
+            }
+        }
+        recover();
+    }
+
+    /**
+     * Obtém o fim de um jogo completo.
+     * @return Offset seguinte ao jogo que começa em offset, ou -1 se não houver um jogo completo
+     */
+    private long recordEnd(long offset) throws IOException {
+        if (offset < 0 || offset + Integer.BYTES > dataSize) {
+            return -1;
+        }
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        while (length.hasRemaining() && data.read(length, offset + length.position()) >= 0) {
+            // lê os 4 bytes do tamanho
+        }
+        if (length.hasRemaining() || length.getInt(0) < 0) {
+            return -1;
+        }
+        long end = offset + Integer.BYTES + length.getInt(0);
+        return end <= dataSize ? end : -1;
+    }
+
+    /**
+     * Acerta o índice com os dados: descarta as entradas do índice a mais, volta a indexar os
+     * jogos completos que estão depois do último indexado e descarta os bytes de uma escrita
+     * que não chegou ao fim.
+     */
+    private void recover() throws IOException {
+        while (count > 0 && recordEnd(offsets[count - 1]) < 0) {
+            count--;
+        }
+        int indexed = count;
+        long end = count == 0 ? 0 : recordEnd(offsets[count - 1]);
+        for (long next = recordEnd(end); next >= 0; next = recordEnd(end)) {
+            add(end);
+            end = next;
+        }
+        if (dataSize > end) {
+            data.truncate(end);
+            dataSize = end;
+        }
+        if (index.size() > (long) indexed * Long.BYTES) {
+            index.truncate((long) indexed * Long.BYTES);
+        }
+        for (int id = indexed; id < count; id++) {
+            writeEntry(id);
+        }
+    }
+
+    private void writeEntry(int id) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(Long.BYTES).putLong(offsets[id]).flip();
+        while (entry.hasRemaining()) {
+            index.write(entry, (long) id * Long.BYTES + entry.position());
+        }
+    }
+
+    private void add(long offset) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count++] = offset;
+    }
+
+    /**
+     * Acrescenta um jogo à base de dados.
+     * @param game Jogo a guardar
+     * @return Id do jogo
+     * @throws IOException Se ocorrer um erro de escrita
+     */
+    public synchronized int append(ChessGame game) throws IOException {
+        ByteBuffer encoded = ChessGameSerialization.encode(game);
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + encoded.remaining());
+        record.putInt(encoded.remaining()).put(encoded).flip();
+
+        long offset = dataSize;
+        while (record.hasRemaining()) {
+            data.write(record, offset + record.position());
+        }
+        dataSize = offset + record.limit();
+        add(offset);
+        writeEntry(count - 1);
+        return count - 1;
+    }
+
+    /**
+     * Lê um jogo pelo seu id.
+     * @param id Id do jogo (0 a size() - 1)
+     * @return O jogo, ou null se o id não existir ou os dados estiverem corrompidos
+     */
+    public ChessGame read(int id) {
+        ByteBuffer record = record(id);
+        return record == null ? null : ChessGameSerialization.decode(record);
+    }
+
+    /**
+     * Obtém os bytes de um jogo, no formato de ChessGameSerialization, sem os descodificar.
+     * @param id Id do jogo
+     * @return Buffer só de leitura com o jogo, ou null se o id não existir
+     */
+    public ByteBuffer record(int id) {
+        long offset;
+        synchronized (this) {
+            if (id < 0 || id >= count) {
+                return null;
+            }
+            offset = offsets[id];
+        }
+        try {
+            ByteBuffer window = windowFor(offset, Integer.BYTES);
+            int start = (int) (offset % WINDOW);
+            int length = window.getInt(start);
+            if (length < 0 || Integer.BYTES + (long) length > OVERLAP) {
+                return readDirect(offset + Integer.BYTES, length);
+            }
+            window = windowFor(offset, Integer.BYTES + length);
+            return window.slice(start + Integer.BYTES, length);
+        } catch (IOException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Obtém o número de jogos guardados.
+     * @return Número de jogos
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        windows = new MappedByteBuffer[0];
+        try {
+            index.close();
+        } finally {
+            data.close();
+        }
+    }
+
+    /**
+     * Obtém a janela mapeada que contém [offset, offset + length), mapeando-a (ou voltando a
+     * mapeá-la, se o ficheiro cresceu) quando necessário.
+     */
+    private synchronized ByteBuffer windowFor(long offset, int length) throws IOException {
+        int w = (int) (offset / WINDOW);
+        if (w >= windows.length) {
+            windows = Arrays.copyOf(windows, w + 1);
+        }
+        long start = (long) w * WINDOW;
+        MappedByteBuffer window = windows[w];
+        if (window == null || start + window.capacity() < offset + length) {
+            long size = Math.min(WINDOW + OVERLAP, dataSize - start);
+            window = data.map(FileChannel.MapMode.READ_ONLY, start, size);
+            windows[w] = window;
+        }
+        return window.asReadOnlyBuffer();
+    }
+
+    private ByteBuffer readDirect(long position, int length) throws IOException {
+        if (length < 0) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && data.read(buffer, position + buffer.position()) >= 0) {
+            // lê o jogo completo
+        }
+        return buffer.flip();
+    }
+}
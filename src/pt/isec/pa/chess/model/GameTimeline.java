@@ -0,0 +1,102 @@
+package pt.isec.pa.chess.model;
+
+import pt.isec.pa.chess.model.memento.IMemento;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Linha temporal de um jogo que permite saltar para qualquer meio-lance.
+ * Guarda uma posição completa (checkpoint) a cada intervalo de meios-lances; os movimentos
+ * entre checkpoints são os registos compactos que o ChessGame já guarda. Um salto repõe o
+ * checkpoint mais próximo e refaz no máximo "intervalo" movimentos, em vez de percorrer
+ * todo o histórico.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see ChessGame
+ */
+public final class GameTimeline {
+    /** Intervalo por omissão, em meios-lances, entre checkpoints */
+    public static final int DEFAULT_INTERVAL = 16;
+
+    private final ChessGame game;
+    private final int interval;
+    private final List<IMemento> checkpoints;
+
+    /**
+     * Cria a linha temporal de um jogo com o intervalo por omissão.
+     * @param game Jogo a acompanhar
+     */
+    public GameTimeline(ChessGame game) {
+        this(game, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Cria a linha temporal de um jogo.
+     * @param game Jogo a acompanhar
+     * @param interval Número de meios-lances entre checkpoints
+     */
+    public GameTimeline(ChessGame game, int interval) {
+        this.game = game;
+        this.interval = Math.max(1, interval);
+        this.checkpoints = new ArrayList<>();
+        rebuild();
+    }
+
+    /**
+     * Reconstrói todos os checkpoints a partir do histórico do jogo.
+     * Deve ser chamado sempre que o jogo é reiniciado ou carregado.
+     */
+    public void rebuild() {
+        checkpoints.clear();
+        int current = game.getPly();
+        game.goToPly(0);
+        checkpoints.add(game.checkpoint());
+        for (int p = interval; p <= game.getHistorySize(); p += interval) {
+            game.goToPly(p);
+            checkpoints.add(game.checkpoint());
+        }
+        game.goToPly(current);
+    }
+
+    /**
+     * Atualiza os checkpoints depois de um movimento jogado: descarta os que pertenciam a
+     * uma variante abandonada e cria um novo se o meio-lance atual for múltiplo do intervalo.
+     */
+    public void onMovePlayed() {
+        int ply = game.getPly();
+        int valid = (ply - 1) / interval + 1;
+        while (checkpoints.size() > valid) {
+            checkpoints.remove(checkpoints.size() - 1);
+        }
+        if (ply % interval == 0) {
+            checkpoints.add(game.checkpoint());
+        }
+    }
+
+    /**
+     * Salta para um meio-lance do histórico, pelo caminho mais curto: movimentos a partir
+     * da posição atual ou a partir do checkpoint anterior ao destino.
+     * @param target Meio-lance pretendido
+     */
+    public void goToPly(int target) {
+        target = Math.max(0, Math.min(target, game.getHistorySize()));
+        int index = Math.min(target / interval, checkpoints.size() - 1);
+        int checkpointPly = index * interval;
+
+        if (Math.abs(target - game.getPly()) > target - checkpointPly) {
+            game.restore(checkpoints.get(index));
+        }
+        game.goToPly(target);
+    }
+
+    /**
+     * Obtém o intervalo entre checkpoints.
+     * @return Número de meios-lances entre checkpoints
+     */
+    public int getInterval() {
+        return interval;
+    }
+}
@@ -0,0 +1,96 @@
+package pt.isec.pa.chess.model;
+
+import pt.isec.pa.chess.model.engine.EngineBoard;
+import pt.isec.pa.chess.model.engine.Move;
+
+/**
+ * Verificação completa de jogos gravados: a posição tem de ser possível e cada movimento do
+ * histórico tem de ser legal na posição em que foi jogado, segundo o gerador de movimentos
+ * legais do EngineBoard.
+ * Não altera o estado visível dos jogos e não escreve no ModelLog, pelo que pode ser usado
+ * em várias threads ao mesmo tempo (um jogo por thread).
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see EngineBoard
+ */
+public final class GameVerifier {
+    private GameVerifier() {
+        //construtor privado que impede alguem de criar uma instacia desta classe
+    }
+
+    /**
+     * Verifica se uma posição é possível: um rei de cada cor, nenhum peão na primeira ou na
+     * última fila e o rei da equipa que não joga fora de xeque.
+     * @param board Posição a verificar
+     * @return null se a posição for válida, ou a descrição do problema
+     */
+    public static String verifyPosition(EngineBoard board) {
+        int whiteKings = 0;
+        int blackKings = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            int piece = board.getPiece(sq);
+            int type = EngineBoard.pieceType(piece);
+            if (type == EngineBoard.KING) {
+                if (EngineBoard.pieceColor(piece) == EngineBoard.WHITE) whiteKings++;
+                else blackKings++;
+            } else if (type == EngineBoard.PAWN && (sq < 8 || sq >= 56)) {
+                return "Peão na casa " + EngineBoard.squareName(sq);
+            }
+        }
+        if (whiteKings != 1 || blackKings != 1) {
+            return "Número de reis inválido (" + whiteKings + " brancos, " + blackKings + " pretos)";
+        }
+        int waiting = board.getSideToMove() == EngineBoard.WHITE ? EngineBoard.BLACK : EngineBoard.WHITE;
+        if (board.isInCheck(waiting)) {
+            return "A equipa que não joga está em xeque";
+        }
+        return null;
+    }
+
+    /**
+     * Verifica a posição inicial e todos os movimentos do histórico de um jogo (incluindo os
+     * que podem ser refeitos). O jogo volta ao meio-lance em que estava.
+     * @param game Jogo a verificar
+     * @return null se o jogo for válido, ou a descrição do primeiro problema
+     */
+    public static String verifyHistory(ChessGame game) {
+        long[] records = game.getMoveRecords();
+        int current = game.getPly();
+        boolean silent = game.isSilent();
+        game.setSilent(true);
+        EngineBoard board;
+        try {
+            game.goToPly(0);
+            board = EngineBoard.fromGame(game);
+        } finally {
+            game.goToPly(current);
+            game.setSilent(silent);
+        }
+
+        String problem = verifyPosition(board);
+        if (problem != null) {
+            return "Posição inicial inválida: " + problem;
+        }
+        int[] moves = new int[EngineBoard.MAX_MOVES];
+        for (int ply = 0; ply < records.length; ply++) {
+            int wanted = MoveRecord.toMove(records[ply]) & 0x7FFF;
+            int count = board.generateLegalMoves(moves);
+            int legal = Move.NONE;
+            for (int i = 0; i < count && legal == Move.NONE; i++) {
+                if ((moves[i] & 0x7FFF) == wanted) {
+                    legal = moves[i];
+                }
+            }
+            if (legal == Move.NONE) {
+                return "Movimento ilegal no meio-lance " + (ply + 1) + ": " + Move.toText(wanted);
+            }
+            if (EngineBoard.pieceType(board.getPiece(Move.from(legal))) != (MoveRecord.piece(records[ply]) & 7)) {
+                return "Registo corrompido no meio-lance " + (ply + 1) + ": " + Move.toText(wanted);
+            }
+            board.makeMove(legal);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,45 @@
+package pt.isec.pa.chess.model;
+
+/**
+ * Réplica de um jogo noutro processo (por exemplo, um servidor de reserva), mantida pelo
+ * ChessGameManager à medida que o jogo muda.
+ * <p>
+ * Tal como no MoveJournal, o estado completo só é enviado quando o jogo é substituído (jogo
+ * novo, importado, FEN); cada movimento aceite é enviado como um pequeno registo que a réplica
+ * repete sobre a sua cópia do jogo, pela mesma ordem. Os métodos são chamados na thread do
+ * jogo, pelo que não devem esperar pela rede.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see ChessGameManager#setReplica(IGameReplica)
+ */
+public interface IGameReplica {
+    /**
+     * O jogo foi substituído.
+     * @param record Registo compacto do jogo (ChessGameManager.exportRecord)
+     */
+    void checkpoint(byte[] record);
+
+    /**
+     * Foram jogados movimentos, com um único ponto de undo.
+     * @param moves Movimentos em 15 bits (origem | destino &lt;&lt; 6 | promoção &lt;&lt; 12)
+     */
+    void moved(int[] moves);
+
+    /**
+     * Foi desfeito o último ponto de undo.
+     */
+    void undone();
+
+    /**
+     * Foi refeito o último ponto de undo desfeito.
+     */
+    void redone();
+
+    /**
+     * O jogo saltou para um meio-lance do histórico.
+     * @param ply Meio-lance
+     */
+    void wentTo(int ply);
+}
@@ -10,6 +10,10 @@ import java.util.List;
  * Singleton responsável por manter e divulgar logs de eventos do modelo de jogo de xadrez.
  * Utiliza o padrão Observer através de PropertyChangeSupport para notificar os listeners
  * sempre que um novo log é adicionado ou os logs são limpos.
+ * <p>
+ * Os logs podem ser adicionados por várias threads (por exemplo, jogos carregados ou analisados
+ * em segundo plano): o acesso à lista é sincronizado e os listeners são notificados fora do
+ * bloqueio, na thread que adicionou o log.
  *
  * @author Nuno Tomás Paiva & Rui Santos
  * @version final
@@ -38,7 +42,7 @@ public class ModelLog {
      *
      * @return a instância singleton de ModelLog
      */
-    public static ModelLog getInstance() {
+    public static synchronized ModelLog getInstance() {
         if (instance == null) {
             instance = new ModelLog();
         }
@@ -51,24 +55,32 @@ public class ModelLog {
      * @param log a mensagem de log a adicionar
      */
     public void addLog(String log) {
-        logs.add(log);
+        synchronized (logs) {
+            logs.add(log);
+        }
         pcs.firePropertyChange(PROP_LOG, null, log);
     }
 
     /**
-     * Obtém uma lista imutável com todos os logs registados.
+     * Obtém uma cópia imutável de todos os logs registados.
+     * A cópia não muda com os logs adicionados depois, pelo que pode ser percorrida enquanto
+     * outras threads adicionam logs.
      *
      * @return uma List imutável contendo todas as mensagens de log
      */
     public List<String> getLogs() {
-        return Collections.unmodifiableList(logs);
+        synchronized (logs) {
+            return Collections.unmodifiableList(new ArrayList<>(logs));
+        }
     }
 
     /**
      * Remove todas as entradas de log e notifica os ouvintes da limpeza.
      */
     public void clearLogs() {
-        logs.clear();
+        synchronized (logs) {
+            logs.clear();
+        }
         pcs.firePropertyChange(PROP_LOG, null, null);
     }
 
@@ -0,0 +1,377 @@
+package pt.isec.pa.chess.model;
+
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Difusão dos movimentos de um jogo para vários observadores (Flow.Publisher), por exemplo
+ * espectadores ligados ao servidor de jogos ou painéis da própria aplicação.
+ * <p>
+ * Cada alteração é um delta de 4 bytes: um movimento jogado (movimento em 15 bits e o
+ * meio-lance a que leva) ou uma navegação no histórico (undo, redo, ir para um meio-lance).
+ * O meio-lance ocupa os 16 bits de cima e o bit 15 distingue as navegações, pelo que só são
+ * difundidos jogos até MAX_PLY meios-lances: ao passar esse limite, o feed termina.
+ * Os observadores recebem lotes de deltas: tudo o que se acumulou enquanto o observador estava
+ * ocupado ou sem pedidos (request) é entregue de uma vez. A entrega corre num Executor, nunca
+ * na thread do jogo.
+ * <p>
+ * Cada observador tem a sua fila, limitada a capacity deltas. Um observador lento que deixe a
+ * fila encher não atrasa o jogo nem os outros observadores: os seus deltas pendentes são
+ * descartados e recebe a seguir um lote completo (snapshot) com o estado atual. O primeiro
+ * lote de cada observador é sempre um snapshot.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see ChessGameManager
+ */
+public final class MoveFeed implements Flow.Publisher<MoveFeed.Batch> {
+    /** Número de deltas pendentes por observador a partir do qual se envia um snapshot */
+    public static final int DEFAULT_CAPACITY = 256;
+    /** Maior meio-lance que cabe num delta */
+    public static final int MAX_PLY = 0xFFFF;
+
+    private static final int GOTO_BIT = 0x8000;
+    private static final int MOVE_MASK = 0x7FFF;
+
+    /**
+     * Lote de alterações.
+     * @param startFen Posição inicial do jogo se o lote for um snapshot (o histórico completo
+     *                 a partir dessa posição), ou null se os deltas continuarem o lote anterior
+     * @param deltas Deltas, pela ordem em que aconteceram
+     */
+    public record Batch(String startFen, int[] deltas) {
+        /**
+         * Verifica se o lote substitui todo o estado anterior.
+         * @return true se for um snapshot
+         */
+        public boolean isSnapshot() {
+            return startFen != null;
+        }
+
+        /**
+         * Verifica se um delta é uma navegação no histórico.
+         * @param delta Delta
+         * @return true para undo, redo ou ir para um meio-lance; false para um movimento jogado
+         */
+        public static boolean isGoTo(int delta) {
+            return (delta & GOTO_BIT) != 0;
+        }
+
+        /**
+         * Obtém o meio-lance em que o jogo fica depois do delta.
+         * @param delta Delta
+         * @return Meio-lance
+         */
+        public static int ply(int delta) {
+            return delta >>> 16;
+        }
+
+        /**
+         * Obtém o movimento de um delta de movimento.
+         * @param delta Delta
+         * @return Movimento em 15 bits (origem | destino &lt;&lt; 6 | promoção &lt;&lt; 12)
+         */
+        public static int move(int delta) {
+            return delta & MOVE_MASK;
+        }
+    }
+
+    private final Executor executor;
+    private final int capacity;
+    private final CopyOnWriteArrayList<FeedSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // estado atual, para os snapshots (protegido pelo lock do feed)
+    private String startFen;
+    private int[] history = new int[64];
+    private int historySize;
+    private int ply;
+    private boolean closed;
+
+    /**
+     * Cria um feed que entrega os lotes no ForkJoinPool comum.
+     */
+    public MoveFeed() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Cria um feed.
+     * @param executor Executor onde os lotes são entregues
+     * @param capacity Número máximo de deltas pendentes por observador
+     */
+    public MoveFeed(Executor executor, int capacity) {
+        this.executor = executor;
+        this.capacity = Math.max(1, capacity);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Batch> subscriber) {
+        FeedSubscription subscription = new FeedSubscription(subscriber);
+        boolean isClosed;
+        synchronized (this) {
+            isClosed = closed;
+            if (!isClosed) {
+                subscriptions.add(subscription);
+            }
+        }
+        subscriber.onSubscribe(subscription);
+        if (isClosed) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * Obtém o número de observadores.
+     * @return Número de subscrições ativas
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Publica um movimento jogado, que leva o jogo ao meio-lance dado e substitui os
+     * movimentos que podiam ser refeitos.
+     * @param move Movimento em 15 bits
+     * @param newPly Meio-lance depois do movimento
+     */
+    public synchronized void moved(int move, int newPly) {
+        if (newPly > MAX_PLY) {
+            overflow();
+            return;
+        }
+        if (newPly > history.length) {
+            history = Arrays.copyOf(history, Math.max(newPly, history.length * 2));
+        }
+        history[newPly - 1] = move & MOVE_MASK;
+        historySize = newPly;
+        ply = newPly;
+        publish(newPly << 16 | (move & MOVE_MASK), false);
+    }
+
+    /**
+     * Publica uma navegação no histórico.
+     * @param newPly Meio-lance em que o jogo ficou
+     */
+    public synchronized void wentTo(int newPly) {
+        if (newPly > MAX_PLY) {
+            overflow();
+            return;
+        }
+        ply = newPly;
+        publish(newPly << 16 | GOTO_BIT, false);
+    }
+
+    /**
+     * Substitui todo o estado (jogo novo, importado ou carregado); os observadores recebem um snapshot.
+     * @param fen Posição inicial do jogo
+     * @param moves Movimentos do histórico, em 15 bits (incluindo os que podem ser refeitos)
+     * @param currentPly Meio-lance atual
+     */
+    public synchronized void reset(String fen, int[] moves, int currentPly) {
+        if (moves.length > MAX_PLY) {
+            overflow();
+            return;
+        }
+        startFen = fen;
+        history = Arrays.copyOf(moves, Math.max(64, moves.length));
+        historySize = moves.length;
+        ply = currentPly;
+        publish(0, true);
+    }
+
+    /**
+     * Termina o feed: os observadores recebem o que está pendente e depois onComplete.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        for (FeedSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * O jogo passou MAX_PLY meios-lances: os observadores recebem o que está pendente e
+     * depois onComplete, em vez de deltas com o meio-lance errado.
+     */
+    private void overflow() {
+        if (!closed) {
+            close();
+        }
+    }
+
+    /**
+     * Acrescenta um delta às filas dos observadores. Chamado com o lock do feed, para que um
+     * snapshot nunca fique entre a alteração do estado e o delta correspondente.
+     */
+    private void publish(int delta, boolean fullState) {
+        for (FeedSubscription subscription : subscriptions) {
+            subscription.offer(delta, fullState);
+        }
+    }
+
+    private Batch snapshot() {
+        int[] deltas = new int[historySize + (ply < historySize ? 1 : 0)];
+        for (int i = 0; i < historySize; i++) {
+            deltas[i] = (i + 1) << 16 | history[i];
+        }
+        if (ply < historySize) {
+            deltas[historySize] = ply << 16 | GOTO_BIT;
+        }
+        return new Batch(startFen, deltas);
+    }
+
+    /**
+     * Subscrição de um observador, com a sua fila de deltas e os seus pedidos.
+     * As entregas são feitas por uma única tarefa de cada vez no executor do feed; wip conta
+     * os pedidos de entrega que chegaram entretanto, para que nenhum se perca.
+     */
+    private final class FeedSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super Batch> subscriber;
+        private final AtomicInteger wip = new AtomicInteger();
+        private int[] pending = new int[16];
+        private int size;
+        private boolean resync = true;
+        private long demand;
+        private boolean completing;
+        private boolean done;
+
+        FeedSubscription(Flow.Subscriber<? super Batch> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void offer(int delta, boolean fullState) {
+            synchronized (this) {
+                if (done) return;
+                if (fullState || resync || size >= capacity) {
+                    resync = true;
+                    size = 0;
+                } else {
+                    if (size == pending.length) {
+                        pending = Arrays.copyOf(pending, Math.min(capacity, size * 2));
+                    }
+                    pending[size++] = delta;
+                }
+            }
+            schedule();
+        }
+
+        void complete() {
+            synchronized (this) {
+                completing = true;
+            }
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("request(" + n + ")"));
+                return;
+            }
+            synchronized (this) {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                done = true;
+                size = 0;
+            }
+            subscriptions.remove(this);
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                while (deliver()) {
+                    // entrega lotes enquanto houver pedidos e deltas
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Entrega um lote (ou onComplete), se houver pedidos e alguma coisa para entregar.
+         * @return true se entregou um lote e pode haver mais
+         */
+        private boolean deliver() {
+            Batch batch;
+            synchronized (MoveFeed.this) {
+                synchronized (this) {
+                    if (done) {
+                        return false;
+                    }
+                    if (demand > 0 && (resync || size > 0)) {
+                        demand--;
+                        batch = resync ? snapshot() : new Batch(null, Arrays.copyOf(pending, size));
+                        resync = false;
+                        size = 0;
+                    } else if (completing && !resync && size == 0) {
+                        done = true;
+                        batch = null;
+                    } else {
+                        return false;
+                    }
+                }
+            }
+            if (batch == null) {
+                subscriptions.remove(this);
+                subscriber.onComplete();
+                return false;
+            }
+            try {
+                subscriber.onNext(batch);
+            } catch (RuntimeException e) {
+                fail(e);
+                return false;
+            }
+            return true;
+        }
+
+        private void fail(Throwable error) {
+            boolean notify;
+            synchronized (this) {
+                notify = !done;
+                done = true;
+            }
+            subscriptions.remove(this);
+            if (notify) {
+                subscriber.onError(error);
+            }
+        }
+    }
+
+    /**
+     * Converte os registos do histórico de um jogo em movimentos no formato dos deltas.
+     * @param records Registos de MoveRecord
+     * @return Movimentos em 15 bits
+     */
+    static int[] movesOf(long[] records) {
+        int[] moves = new int[records.length];
+        for (int i = 0; i < records.length; i++) {
+            moves[i] = MoveRecord.toMove(records[i]) & MOVE_MASK;
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,299 @@
+package pt.isec.pa.chess.model;
+
+import pt.isec.pa.chess.model.data.PieceTypeEnum;
+import pt.isec.pa.chess.model.engine.Move;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Gravação automática de um jogo em curso, resistente a falhas: um snapshot completo (".paf")
+ * e um diário (".paj") onde cada movimento aceite é acrescentado em 2 bytes.
+ * <p>
+ * Cada entrada do diário é um short: um movimento (origem | destino &lt;&lt; 6 | promoção &lt;&lt; 12)
+ * ou, com o bit 15 ligado, uma navegação no histórico (undo, redo, ir para um meio-lance) com o
+ * meio-lance de destino. As entradas são escritas no ficheiro logo que acontecem, pelo que
+ * sobrevivem ao fim abrupto da aplicação; a sincronização com o disco (force) é feita em lote,
+ * no máximo a cada FORCE_INTERVAL_MS, por uma thread de fundo.
+ * <p>
+ * O cabeçalho do diário guarda o CRC do snapshot a que se aplica: a recuperação só repete o
+ * diário sobre esse snapshot, pelo que uma falha a meio de um checkpoint nunca mistura um
+ * snapshot novo com entradas antigas.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see ChessGameSerialization
+ */
+public final class MoveJournal implements Closeable {
+    /** Extensão do snapshot */
+    public static final String SNAPSHOT_EXTENSION = ".paf";
+    /** Extensão do diário */
+    public static final String JOURNAL_EXTENSION = ".paj";
+    /** Intervalo máximo entre sincronizações com o disco */
+    public static final long FORCE_INTERVAL_MS = 200;
+    /** Número de entradas a partir do qual convém fazer um checkpoint */
+    public static final int CHECKPOINT_ENTRIES = 512;
+
+    private static final byte[] MAGIC = {'P', 'A', 'J', 1};
+    private static final int HEADER = MAGIC.length + Long.BYTES;
+    private static final int GOTO_BIT = 0x8000;
+
+    private final Path base;
+    private final Path snapshot;
+    private final FileChannel channel;
+    private final ByteBuffer entry = ByteBuffer.allocate(Short.BYTES);
+    private final ScheduledExecutorService forcer;
+    private volatile boolean dirty;
+    private long position;
+
+    private MoveJournal(Path base, Path snapshot, FileChannel channel) {
+        this.base = base;
+        this.snapshot = snapshot;
+        this.channel = channel;
+        this.forcer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "move-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        forcer.scheduleWithFixedDelay(this::force, FORCE_INTERVAL_MS, FORCE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Inicia a gravação automática de um jogo, substituindo uma gravação anterior com o mesmo nome.
+     * @param base Caminho base (sem extensão) do snapshot e do diário
+     * @param game Jogo atual, gravado como primeiro snapshot
+     * @return O diário aberto
+     * @throws IOException Se os ficheiros não puderem ser escritos
+     */
+    public static MoveJournal create(Path base, ChessGame game) throws IOException {
+        Path snapshot = base.resolveSibling(base.getFileName() + SNAPSHOT_EXTENSION);
+        Path journal = base.resolveSibling(base.getFileName() + JOURNAL_EXTENSION);
+        FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE);
+        MoveJournal moveJournal = new MoveJournal(base, snapshot, channel);
+        try {
+            moveJournal.checkpoint(game);
+        } catch (IOException e) {
+            moveJournal.close();
+            throw e;
+        }
+        return moveJournal;
+    }
+
+    /**
+     * Verifica se existe uma gravação automática para recuperar.
+     * @param base Caminho base (sem extensão)
+     * @return true se existir um snapshot
+     */
+    public static boolean exists(Path base) {
+        return Files.exists(base.resolveSibling(base.getFileName() + SNAPSHOT_EXTENSION));
+    }
+
+    /**
+     * Recupera um jogo: lê o último snapshot e repete sobre ele as entradas do diário.
+     * Uma entrada incompleta no fim do diário (escrita interrompida) é ignorada.
+     * @param base Caminho base (sem extensão)
+     * @return O jogo recuperado, ou null se não existir um snapshot válido
+     */
+    public static ChessGame recover(Path base) {
+        Path snapshot = base.resolveSibling(base.getFileName() + SNAPSHOT_EXTENSION);
+        Path journal = base.resolveSibling(base.getFileName() + JOURNAL_EXTENSION);
+        byte[] data;
+        try {
+            data = Files.readAllBytes(snapshot);
+        } catch (IOException e) {
+            return null;
+        }
+        ChessGame game = ChessGameSerialization.decode(ByteBuffer.wrap(data));
+        if (game == null) {
+            return null;
+        }
+        game.setSilent(true);
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // lê o diário completo
+            }
+            buffer.flip();
+            if (hasHeader(buffer, checksum(data))) {
+                buffer.position(HEADER);
+                while (buffer.remaining() >= Short.BYTES && replay(game, buffer.getShort() & 0xFFFF)) {
+                    // repete as entradas até ao fim ou até uma entrada inválida
+                }
+            }
+        } catch (IOException e) {
+            // sem diário: fica o estado do snapshot
+        }
+        game.setSilent(false);
+        return game;
+    }
+
+    /**
+     * Apaga uma gravação automática.
+     * @param base Caminho base (sem extensão)
+     */
+    public static void delete(Path base) {
+        try {
+            Files.deleteIfExists(base.resolveSibling(base.getFileName() + JOURNAL_EXTENSION));
+            Files.deleteIfExists(base.resolveSibling(base.getFileName() + SNAPSHOT_EXTENSION));
+        } catch (IOException ignored) {
+            // não há nada a recuperar
+        }
+    }
+
+    /**
+     * Regista o último movimento jogado no jogo.
+     * @param game Jogo onde o movimento acabou de ser jogado
+     * @throws IOException Se ocorrer um erro de escrita
+     */
+    public void appendLastMove(ChessGame game) throws IOException {
+        append(MoveRecord.toMove(game.getLastMoveRecord()) & 0x7FFF);
+    }
+
+    /**
+     * Regista uma navegação no histórico (undo, redo ou ir para um meio-lance).
+     * @param ply Meio-lance de destino
+     * @throws IOException Se ocorrer um erro de escrita
+     */
+    public void appendGoTo(int ply) throws IOException {
+        append(GOTO_BIT | Math.min(ply, GOTO_BIT - 1));
+    }
+
+    /**
+     * Obtém o número de entradas escritas desde o último checkpoint.
+     * @return Número de entradas
+     */
+    public synchronized int size() {
+        return (int) ((position - HEADER) / Short.BYTES);
+    }
+
+    /**
+     * Grava um snapshot completo do jogo e esvazia o diário.
+     * O snapshot é escrito num ficheiro temporário e só depois substitui o anterior.
+     * @param game Jogo a gravar
+     * @throws IOException Se ocorrer um erro de escrita
+     */
+    public synchronized void checkpoint(ChessGame game) throws IOException {
+        ByteBuffer encoded = ChessGameSerialization.encode(game);
+        byte[] data = new byte[encoded.remaining()];
+        encoded.get(data);
+
+        Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER).put(MAGIC).putLong(checksum(data)).flip();
+        channel.truncate(0);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(false);
+        position = HEADER;
+        dirty = false;
+    }
+
+    /**
+     * Sincroniza com o disco as entradas ainda não sincronizadas.
+     */
+    public void force() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Sincroniza o diário e fecha-o; a gravação continua em disco e pode ser recuperada.
+     */
+    @Override
+    public void close() throws IOException {
+        forcer.shutdownNow();
+        try {
+            force();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Fecha o diário e apaga a gravação, por exemplo quando a aplicação termina normalmente.
+     */
+    public void discard() {
+        try {
+            close();
+        } catch (IOException ignored) {
+            // os ficheiros são apagados de seguida
+        }
+        delete(base);
+    }
+
+    private synchronized void append(int value) throws IOException {
+        entry.clear();
+        entry.putShort((short) value).flip();
+        while (entry.hasRemaining()) {
+            channel.write(entry, position + entry.position());
+        }
+        position += Short.BYTES;
+        dirty = true;
+    }
+
+    private static boolean replay(ChessGame game, int value) {
+        if ((value & GOTO_BIT) != 0) {
+            game.goToPly(value & ~GOTO_BIT);
+            return true;
+        }
+        int from = Move.from(value);
+        int to = Move.to(value);
+        MoveResult result = game.executeMove(MoveRecord.column(from), MoveRecord.row(from),
+                MoveRecord.column(to), MoveRecord.row(to));
+        if (result == MoveResult.VALID_PROMOTION) {
+            PieceTypeEnum type = MoveRecord.typeOf(Move.promotion(value));
+            if (type == null) {
+                return false;
+            }
+            game.pawnPromotion(MoveRecord.column(to), MoveRecord.row(to), type);
+        }
+        return result != MoveResult.INVALID;
+    }
+
+    private static boolean hasHeader(ByteBuffer buffer, long checksum) {
+        if (buffer.remaining() < HEADER) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return buffer.getLong(MAGIC.length) == checksum;
+    }
+
+    private static long checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,259 @@
+package pt.isec.pa.chess.model;
+
+import pt.isec.pa.chess.model.data.*;
+import pt.isec.pa.chess.model.engine.Move;
+
+/**
+ * Registo compacto de um movimento jogado, guardado num único long.
+ * Para além do movimento em si, guarda o estado irreversível necessário para o desfazer
+ * (peça capturada, flags "hasMoved", en passant e xeque anteriores).
+ * <p>
+ * Bits 0-5: origem, 6-11: destino, 12-15: peça movida, 16-19: peça capturada,
+ * 20-25: casa da captura, 26-28: promoção, 29: roque, 30: a peça movida já se tinha movido,
+ * 31: a peça capturada já se tinha movido, 32-38: casa do peão en passant anterior + 1,
+ * 39-40: equipa em xeque anterior (0 nenhuma, 1 brancas, 2 pretas).
+ * <p>
+ * As casas são numeradas de 0 (A1) a 63 (H8) e as peças seguem a ordem " PNBRQK",
+ * com o bit 8 ativo nas peças pretas.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ */
+public final class MoveRecord {
+    private static final String PIECE_LETTERS = " PNBRQK";
+    private static final int BLACK_BIT = 8;
+
+    private MoveRecord() {
+        //construtor privado que impede alguem de criar uma instacia desta classe
+    }
+
+    /**
+     * Cria o registo de um movimento.
+     * @param from Casa de origem (0-63)
+     * @param to Casa de destino (0-63)
+     * @param piece Código da peça movida
+     * @param captured Código da peça capturada (0 se nenhuma)
+     * @param capturedSquare Casa da peça capturada (difere do destino no en passant)
+     * @param castle true se o movimento for um roque
+     * @param pieceHadMoved Estado "hasMoved" da peça movida antes do movimento
+     * @param capturedHadMoved Estado "hasMoved" da peça capturada
+     * @param previousEnPassant Casa do peão que podia ser capturado en passant antes do movimento (-1 se nenhum)
+     * @param previousCheck Equipa que estava marcada em xeque antes do movimento (null se nenhuma)
+     * @return Registo compactado
+     */
+    public static long create(int from, int to, int piece, int captured, int capturedSquare, boolean castle,
+                              boolean pieceHadMoved, boolean capturedHadMoved, int previousEnPassant,
+                              PieceTeamEnum previousCheck) {
+        long checkBits = previousCheck == null ? 0 : (previousCheck == PieceTeamEnum.WHITE ? 1 : 2);
+        return from
+                | ((long) to << 6)
+                | ((long) piece << 12)
+                | ((long) captured << 16)
+                | ((long) capturedSquare << 20)
+                | (castle ? 1L << 29 : 0)
+                | (pieceHadMoved ? 1L << 30 : 0)
+                | (capturedHadMoved ? 1L << 31 : 0)
+                | ((long) (previousEnPassant + 1) << 32)
+                | (checkBits << 39);
+    }
+
+    public static int from(long record) {
+        return (int) (record & 63);
+    }
+
+    public static int to(long record) {
+        return (int) ((record >>> 6) & 63);
+    }
+
+    public static int piece(long record) {
+        return (int) ((record >>> 12) & 15);
+    }
+
+    public static int captured(long record) {
+        return (int) ((record >>> 16) & 15);
+    }
+
+    public static int capturedSquare(long record) {
+        return (int) ((record >>> 20) & 63);
+    }
+
+    public static PieceTypeEnum promotion(long record) {
+        int type = (int) ((record >>> 26) & 7);
+        return type == 0 ? null : typeOf(type);
+    }
+
+    public static boolean isCastle(long record) {
+        return (record & (1L << 29)) != 0;
+    }
+
+    public static boolean pieceHadMoved(long record) {
+        return (record & (1L << 30)) != 0;
+    }
+
+    public static boolean capturedHadMoved(long record) {
+        return (record & (1L << 31)) != 0;
+    }
+
+    public static int previousEnPassant(long record) {
+        return (int) ((record >>> 32) & 127) - 1;
+    }
+
+    public static PieceTeamEnum previousCheck(long record) {
+        int bits = (int) ((record >>> 39) & 3);
+        return bits == 0 ? null : (bits == 1 ? PieceTeamEnum.WHITE : PieceTeamEnum.BLACK);
+    }
+
+    /**
+     * Verifica se os campos de um registo lido de fora (ficheiro, rede) são válidos: peça movida,
+     * peça capturada, promoção, en passant e xeque anteriores. Não verifica se o movimento
+     * corresponde à posição.
+     * @param record Registo a verificar
+     * @return true se o registo for válido
+     */
+    public static boolean isValid(long record) {
+        int promotion = (int) ((record >>> 26) & 7);
+        return typeOf(piece(record)) != null
+                && (captured(record) == 0 || typeOf(captured(record)) != null)
+                && from(record) != to(record)
+                && (promotion == 0 || (promotion >= 2 && promotion <= 5))
+                && previousEnPassant(record) < 64
+                && ((record >>> 39) & 3) != 3
+                && (record >>> 41) == 0;
+    }
+
+    /**
+     * Obtém o código da peça que fica na casa de destino (a peça promovida, se houver promoção).
+     * @param record Registo do movimento
+     * @return Código da peça
+     */
+    public static int placedPiece(long record) {
+        int promotion = (int) ((record >>> 26) & 7);
+        return promotion == 0 ? piece(record) : (piece(record) & BLACK_BIT) | promotion;
+    }
+
+    /**
+     * Devolve uma cópia do registo com a promoção preenchida.
+     * @param record Registo original
+     * @param type Tipo da peça promovida
+     * @return Registo com a promoção
+     */
+    public static long withPromotion(long record, PieceTypeEnum type) {
+        return (record & ~(7L << 26)) | ((long) PIECE_LETTERS.indexOf(letterOf(type)) << 26);
+    }
+
+    /**
+     * Obtém o movimento em texto, no formato "E2E4" ou "E7E8Q" nas promoções.
+     * @param record Registo do movimento
+     * @return Texto do movimento
+     */
+    public static String toText(long record) {
+        String text = squareName(from(record)) + squareName(to(record));
+        PieceTypeEnum promotion = promotion(record);
+        return promotion == null ? text : text + letterOf(promotion);
+    }
+
+    /**
+     * Converte o registo para a codificação de movimentos dos motores (classe Move).
+     * @param record Registo do movimento
+     * @return Movimento codificado
+     */
+    public static int toMove(long record) {
+        int from = from(record);
+        int to = to(record);
+        int flags = 0;
+        if (isCastle(record)) {
+            flags |= Move.FLAG_CASTLE;
+        }
+        if ((piece(record) & 7) == 1) {
+            if (captured(record) != 0 && capturedSquare(record) != to) {
+                flags |= Move.FLAG_EN_PASSANT;
+            }
+            if (Math.abs(to - from) == 16) {
+                flags |= Move.FLAG_DOUBLE_PUSH;
+            }
+        }
+        return Move.encode(from, to, (int) ((record >>> 26) & 7), flags);
+    }
+
+    // ---------- casas e peças ----------
+
+    public static int square(char col, int row) {
+        return (row - 1) * 8 + (Character.toUpperCase(col) - 'A');
+    }
+
+    public static char column(int square) {
+        return (char) ('A' + (square & 7));
+    }
+
+    public static int row(int square) {
+        return (square >> 3) + 1;
+    }
+
+    public static String squareName(int square) {
+        return "" + column(square) + row(square);
+    }
+
+    /**
+     * Obtém o código compacto de uma peça.
+     * @param piece Peça (pode ser null)
+     * @return Código da peça, ou 0 se for null
+     */
+    public static int pieceCode(Piece piece) {
+        if (piece == null) {
+            return 0;
+        }
+        int code = PIECE_LETTERS.indexOf(letterOf(piece.getPieceTypeEnum()));
+        return piece.getPieceColor() == PieceTeamEnum.BLACK ? code | BLACK_BIT : code;
+    }
+
+    public static PieceTeamEnum teamOf(int code) {
+        return (code & BLACK_BIT) != 0 ? PieceTeamEnum.BLACK : PieceTeamEnum.WHITE;
+    }
+
+    public static PieceTypeEnum typeOf(int code) {
+        return switch (code & 7) {
+            case 1 -> PieceTypeEnum.PAWN;
+            case 2 -> PieceTypeEnum.KNIGHT;
+            case 3 -> PieceTypeEnum.BISHOP;
+            case 4 -> PieceTypeEnum.ROOK;
+            case 5 -> PieceTypeEnum.QUEEN;
+            case 6 -> PieceTypeEnum.KING;
+            default -> null;
+        };
+    }
+
+    public static char letterOf(PieceTypeEnum type) {
+        return switch (type) {
+            case PAWN -> 'P';
+            case KNIGHT -> 'N';
+            case BISHOP -> 'B';
+            case ROOK -> 'R';
+            case QUEEN -> 'Q';
+            case KING -> 'K';
+        };
+    }
+
+    /**
+     * Cria uma peça a partir do seu código compacto.
+     * @param code Código da peça
+     * @param square Casa da peça
+     * @param hasMoved Estado "hasMoved" (só usado por reis e torres)
+     * @param board Tabuleiro a que a peça pertence
+     * @return Nova peça
+     */
+    public static Piece createPiece(int code, int square, boolean hasMoved, Board board) {
+        char col = column(square);
+        int row = row(square);
+        PieceTeamEnum team = teamOf(code);
+        return switch (typeOf(code)) {
+            case PAWN -> new Pawn(col, row, team, board);
+            case KNIGHT -> new Knight(col, row, team, board);
+            case BISHOP -> new Bishop(col, row, team, board);
+            case ROOK -> new Rook(col, row, team, board, hasMoved);
+            case QUEEN -> new Queen(col, row, team, board);
+            case KING -> new King(col, row, team, board, hasMoved);
+            case null -> null;
+        };
+    }
+}
@@ -0,0 +1,304 @@
+package pt.isec.pa.chess.model;
+
+import pt.isec.pa.chess.model.engine.Move;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Árvore de aberturas de uma GameDatabase: para cada posição das primeiras jogadas, os
+ * movimentos jogados a partir dela, em quantos jogos e com que resultados.
+ * <p>
+ * As estatísticas são agregadas a partir do PositionIndex e guardadas num ficheiro (".pex")
+ * com uma tabela de hash de endereçamento aberto (chave de Zobrist da posição, primeiro
+ * movimento, número de movimentos) seguida dos movimentos de todas as posições. O ficheiro é
+ * mapeado em memória quando é aberto e as procuras leem diretamente do mapeamento, sem
+ * carregar a árvore para o heap.
+ * A base de dados não guarda o rating dos jogadores, pelo que só são agregados jogos e resultados.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see PositionIndex
+ */
+public final class OpeningExplorer implements Closeable {
+    /** Extensão acrescentada ao nome da base de dados */
+    public static final String SUFFIX = ".pex";
+    /** Número de meios-lances de cada jogo que entram na árvore */
+    public static final int DEFAULT_DEPTH = 40;
+
+    private static final int MAGIC = 0x50455831; // "PEX1"
+    private static final int HEADER = 32;
+    private static final int SLOT_BYTES = 16;
+    /** Cada movimento ocupa 5 ints: movimento, jogos, vitórias das brancas, empates, vitórias das pretas */
+    private static final int MOVE_BYTES = 20;
+    private static final int CHUNK_BYTES = 1 << 30;
+
+    /**
+     * Estatísticas de um movimento numa posição.
+     * @param move Movimento ("E2E4")
+     * @param games Número de jogos em que foi jogado
+     * @param whiteWins Jogos ganhos pelas brancas
+     * @param draws Jogos empatados
+     * @param blackWins Jogos ganhos pelas pretas
+     */
+    public record MoveStats(String move, int games, int whiteWins, int draws, int blackWins) {
+        /**
+         * Obtém a pontuação das brancas nos jogos terminados (vitória 1, empate 0.5).
+         * @return Pontuação entre 0 e 1, ou -1 se nenhum jogo terminou
+         */
+        public double whiteScore() {
+            int finished = whiteWins + draws + blackWins;
+            return finished == 0 ? -1 : (whiteWins + draws / 2.0) / finished;
+        }
+    }
+
+    private final FileChannel channel;
+    private final int games;
+    private final int mask;
+    private final ByteBuffer[] slots;
+    private final ByteBuffer[] moves;
+
+    private OpeningExplorer(FileChannel channel, int games, int slotCount, int moveCount) throws IOException {
+        this.channel = channel;
+        this.games = games;
+        this.mask = slotCount - 1;
+        this.slots = map(channel, HEADER, slotCount, SLOT_BYTES);
+        this.moves = map(channel, HEADER + (long) slotCount * SLOT_BYTES, moveCount, MOVE_BYTES);
+    }
+
+    /**
+     * Obtém o caminho da árvore de aberturas de uma base de dados.
+     * @param database Ficheiro da base de dados
+     * @return Ficheiro da árvore
+     */
+    public static Path pathFor(Path database) {
+        return database.resolveSibling(database.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Abre uma árvore de aberturas existente, mapeando-a em memória.
+     * @param file Ficheiro da árvore
+     * @return A árvore, ou null se o ficheiro não for válido
+     * @throws IOException Se o ficheiro não puder ser lido
+     */
+    public static OpeningExplorer open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // lê o cabeçalho
+        }
+        header.flip();
+        if (header.remaining() < HEADER || header.getInt() != MAGIC) {
+            channel.close();
+            return null;
+        }
+        int games = header.getInt();
+        int slotCount = header.getInt();
+        int moveCount = header.getInt();
+        if (Integer.bitCount(slotCount) != 1 || moveCount < 0
+                || channel.size() < HEADER + (long) slotCount * SLOT_BYTES + (long) moveCount * MOVE_BYTES) {
+            channel.close();
+            return null;
+        }
+        return new OpeningExplorer(channel, games, slotCount, moveCount);
+    }
+
+    /**
+     * Constrói a árvore de aberturas a partir do índice de posições de uma base de dados.
+     * Cada jogo conta uma só vez por posição e movimento, mesmo que a posição se repita.
+     * @param index Índice de posições da base de dados
+     * @param file Ficheiro da árvore (é substituído)
+     * @param depth Número de meios-lances de cada jogo a considerar
+     * @return A árvore aberta
+     * @throws IOException Se ocorrer um erro de escrita
+     */
+    public static OpeningExplorer build(PositionIndex index, Path file, int depth) throws IOException {
+        long[] positionKeys = new long[1024];
+        int[] positionFirst = new int[1024];
+        int[] positionCount = new int[1024];
+        int positions = 0;
+        int[] stats = new int[1024 * 5];
+        int moveCount = 0;
+
+        int[] groupLastGame = new int[16];
+        long size = index.size();
+        long i = 0;
+        while (i < size) {
+            long key = index.keyAt(i);
+            int first = moveCount;
+            for (; i < size && index.keyAt(i) == key; i++) {
+                long value = index.valueAt(i);
+                int ply = (int) ((value >>> 18) & PositionIndex.MAX_PLY);
+                int move = (int) (value & 0x7FFF);
+                if (ply >= depth || move == Move.NONE) {
+                    continue;
+                }
+                int game = (int) (value >>> 32);
+                int result = (int) ((value >>> 16) & 3);
+
+                int m = first;
+                while (m < moveCount && stats[m * 5] != move) {
+                    m++;
+                }
+                if (m == moveCount) {
+                    if ((moveCount + 1) * 5 > stats.length) {
+                        stats = Arrays.copyOf(stats, stats.length * 2);
+                    }
+                    if (m - first == groupLastGame.length) {
+                        groupLastGame = Arrays.copyOf(groupLastGame, groupLastGame.length * 2);
+                    }
+                    Arrays.fill(stats, m * 5, m * 5 + 5, 0);
+                    stats[m * 5] = move;
+                    groupLastGame[m - first] = -1;
+                    moveCount++;
+                } else if (groupLastGame[m - first] == game) {
+                    continue;
+                }
+                groupLastGame[m - first] = game;
+                stats[m * 5 + 1]++;
+                switch (result) {
+                    case PositionIndex.RESULT_WHITE -> stats[m * 5 + 2]++;
+                    case PositionIndex.RESULT_DRAW -> stats[m * 5 + 3]++;
+                    case PositionIndex.RESULT_BLACK -> stats[m * 5 + 4]++;
+                    default -> {
+                        // jogo sem resultado
+                    }
+                }
+            }
+            if (moveCount == first) {
+                continue;
+            }
+            sortByGames(stats, first, moveCount);
+            if (positions == positionKeys.length) {
+                positionKeys = Arrays.copyOf(positionKeys, positions * 2);
+                positionFirst = Arrays.copyOf(positionFirst, positions * 2);
+                positionCount = Arrays.copyOf(positionCount, positions * 2);
+            }
+            positionKeys[positions] = key;
+            positionFirst[positions] = first;
+            positionCount[positions++] = moveCount - first;
+        }
+
+        int slotCount = Integer.highestOneBit(Math.max(2, positions * 2 - 1)) << 1;
+        int[] table = new int[slotCount];
+        Arrays.fill(table, -1);
+        for (int p = 0; p < positions; p++) {
+            int slot = (int) positionKeys[p] & (slotCount - 1);
+            while (table[slot] >= 0) {
+                slot = (slot + 1) & (slotCount - 1);
+            }
+            table[slot] = p;
+        }
+
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            buffer.putInt(MAGIC).putInt(index.getGames()).putInt(slotCount).putInt(moveCount)
+                    .putInt(depth).putInt(0).putLong(0);
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (buffer.remaining() < SLOT_BYTES) flush(out, buffer);
+                int p = table[slot];
+                if (p < 0) {
+                    buffer.putLong(0).putInt(0).putInt(0);
+                } else {
+                    buffer.putLong(positionKeys[p]).putInt(positionFirst[p]).putInt(positionCount[p]);
+                }
+            }
+            for (int m = 0; m < moveCount * 5; m++) {
+                if (buffer.remaining() < Integer.BYTES) flush(out, buffer);
+                buffer.putInt(stats[m]);
+            }
+            flush(out, buffer);
+        }
+        return open(file);
+    }
+
+    /**
+     * Obtém o número de jogos da base de dados no momento em que a árvore foi construída.
+     * @return Número de jogos
+     */
+    public int getGames() {
+        return games;
+    }
+
+    /**
+     * Obtém os movimentos jogados a partir de uma posição, do mais jogado para o menos jogado.
+     * @param key Chave de Zobrist da posição
+     * @return Lista de estatísticas (vazia se a posição não estiver na árvore)
+     */
+    public List<MoveStats> lookup(long key) {
+        int slot = (int) key & mask;
+        while (true) {
+            ByteBuffer chunk = chunk(slots, slot, SLOT_BYTES);
+            int at = offset(slot, SLOT_BYTES);
+            int count = chunk.getInt(at + 12);
+            if (count == 0) {
+                return List.of();
+            }
+            if (chunk.getLong(at) == key) {
+                int first = chunk.getInt(at + 8);
+                List<MoveStats> result = new ArrayList<>(count);
+                for (int m = first; m < first + count; m++) {
+                    ByteBuffer entries = chunk(moves, m, MOVE_BYTES);
+                    int e = offset(m, MOVE_BYTES);
+                    result.add(new MoveStats(Move.toText(entries.getInt(e)), entries.getInt(e + 4),
+                            entries.getInt(e + 8), entries.getInt(e + 12), entries.getInt(e + 16)));
+                }
+                return result;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static void sortByGames(int[] stats, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && stats[j * 5 + 1] > stats[(j - 1) * 5 + 1]; j--) {
+                for (int f = 0; f < 5; f++) {
+                    int tmp = stats[j * 5 + f];
+                    stats[j * 5 + f] = stats[(j - 1) * 5 + f];
+                    stats[(j - 1) * 5 + f] = tmp;
+                }
+            }
+        }
+    }
+
+    private static void flush(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static ByteBuffer[] map(FileChannel channel, long position, int count, int recordBytes) throws IOException {
+        int perChunk = CHUNK_BYTES / recordBytes;
+        ByteBuffer[] chunks = new ByteBuffer[Math.max(1, (count + perChunk - 1) / perChunk)];
+        for (int c = 0; c < chunks.length; c++) {
+            long first = (long) c * perChunk;
+            long length = Math.max(0, Math.min(perChunk, count - first));
+            chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, position + first * recordBytes, length * recordBytes);
+        }
+        return chunks;
+    }
+
+    private static ByteBuffer chunk(ByteBuffer[] chunks, int record, int recordBytes) {
+        return chunks[record / (CHUNK_BYTES / recordBytes)];
+    }
+
+    private static int offset(int record, int recordBytes) {
+        return record % (CHUNK_BYTES / recordBytes) * recordBytes;
+    }
+}
@@ -0,0 +1,534 @@
+package pt.isec.pa.chess.model;
+
+import pt.isec.pa.chess.model.engine.EngineBoard;
+import pt.isec.pa.chess.model.engine.Move;
+import pt.isec.pa.chess.model.engine.PgnGame;
+import pt.isec.pa.chess.model.engine.Zobrist;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Índice secundário de uma GameDatabase: para cada posição (chave de Zobrist) de cada jogo,
+ * guarda o id do jogo, o meio-lance, o movimento jogado a seguir e o resultado do jogo.
+ * <p>
+ * No ficheiro, as entradas estão em dois arrays de longs ordenados pela chave (sem sinal):
+ * as chaves e os valores. A procura é uma pesquisa binária sobre o ficheiro mapeado em
+ * memória, pelo que responde em milissegundos mesmo com milhões de jogos.
+ * <p>
+ * A construção reproduz os jogos em paralelo; cada thread ordena as suas entradas em blocos de
+ * tamanho limitado, gravados em ficheiros temporários, que são depois intercalados no ficheiro
+ * do índice. A memória usada não depende do número de entradas.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see GameDatabase
+ * @see Zobrist
+ */
+public final class PositionIndex implements Closeable {
+    /** Extensão acrescentada ao nome da base de dados */
+    public static final String SUFFIX = ".pix";
+    /** Meio-lance máximo indexado (limitado pelos bits reservados no valor) */
+    public static final int MAX_PLY = (1 << 14) - 1;
+
+    public static final int RESULT_UNKNOWN = 0;
+    public static final int RESULT_WHITE = 1;
+    public static final int RESULT_BLACK = 2;
+    public static final int RESULT_DRAW = 3;
+
+    private static final int MAGIC = 0x50495831; // "PIX1"
+    private static final int HEADER = 16;
+    private static final int CHUNK = 1 << 27;
+    /** Entradas ordenadas em memória por cada thread antes de serem gravadas num bloco (16 MB) */
+    private static final int RUN_ENTRIES = 1 << 20;
+    private static final int RUN_BUFFER = 1 << 15;
+    private static final int IO_BUFFER = 1 << 16;
+
+    /**
+     * Um jogo que passou pela posição procurada.
+     * @param gameId Id do jogo na base de dados
+     * @param ply Meio-lance em que a posição ocorreu
+     * @param nextMove Movimento jogado a seguir ("E2E4"), ou null se o jogo acabou nessa posição
+     * @param result Resultado do jogo (RESULT_*)
+     */
+    public record Hit(int gameId, int ply, String nextMove, int result) {
+    }
+
+    private final FileChannel channel;
+    private final int games;
+    private final long size;
+    private final LongBuffer[] keys;
+    private final LongBuffer[] values;
+
+    private PositionIndex(FileChannel channel, int games, long size) throws IOException {
+        this.channel = channel;
+        this.games = games;
+        this.size = size;
+        this.keys = map(channel, HEADER, size);
+        this.values = map(channel, HEADER + size * Long.BYTES, size);
+    }
+
+    /**
+     * Obtém o caminho do índice de uma base de dados.
+     * @param database Ficheiro da base de dados
+     * @return Ficheiro do índice
+     */
+    public static Path pathFor(Path database) {
+        return database.resolveSibling(database.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Abre um índice existente.
+     * @param file Ficheiro do índice
+     * @return O índice, ou null se o ficheiro não for um índice válido
+     * @throws IOException Se o ficheiro não puder ser lido
+     */
+    public static PositionIndex open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // lê o cabeçalho
+        }
+        header.flip();
+        if (header.remaining() < HEADER || header.getInt() != MAGIC) {
+            channel.close();
+            return null;
+        }
+        int games = header.getInt();
+        long size = header.getLong();
+        if (size < 0 || channel.size() < HEADER + size * 2 * Long.BYTES) {
+            channel.close();
+            return null;
+        }
+        return new PositionIndex(channel, games, size);
+    }
+
+    /**
+     * Constrói o índice de uma base de dados e grava-o em disco.
+     * @param database Base de dados a indexar
+     * @param file Ficheiro do índice (é substituído)
+     * @param threads Número de threads usadas na construção
+     * @return O índice aberto
+     * @throws IOException Se ocorrer um erro de leitura ou escrita
+     */
+    public static PositionIndex build(GameDatabase database, Path file, int threads) throws IOException {
+        return build(database, file, threads, RUN_ENTRIES);
+    }
+
+    /**
+     * Constrói o índice com blocos de, no máximo, runEntries entradas por thread.
+     */
+    static PositionIndex build(GameDatabase database, Path file, int threads, int runEntries) throws IOException {
+        int games = database.size();
+        threads = Math.max(1, threads);
+        Path directory = file.toAbsolutePath().getParent();
+        List<Run> runs = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> parts = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = (int) ((long) games * t / threads);
+                int last = (int) ((long) games * (t + 1) / threads);
+                parts.add(pool.submit(() -> {
+                    collect(database, first, last, new RunWriter(directory, runEntries, runs));
+                    return null;
+                }));
+            }
+            // espera por todas as threads antes de apagar os blocos, mesmo que uma falhe
+            ExecutionException failure = null;
+            for (Future<?> part : parts) {
+                try {
+                    part.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) failure = e;
+                }
+            }
+            if (failure != null) {
+                throw new IOException("Erro ao construir o índice", failure.getCause());
+            }
+
+            merge(file, games, runs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pool.shutdownNow();
+            throw new IOException("Construção do índice interrompida", e);
+        } finally {
+            pool.shutdown();
+            synchronized (runs) {
+                for (Run run : runs) {
+                    Files.deleteIfExists(run.file());
+                }
+            }
+        }
+        return open(file);
+    }
+
+    /**
+     * Obtém o número de jogos da base de dados no momento em que o índice foi construído.
+     * @return Número de jogos indexados
+     */
+    public int getGames() {
+        return games;
+    }
+
+    /**
+     * Obtém o número de entradas (posições de todos os jogos).
+     * @return Número de entradas
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Conta os jogos (entradas) que passaram por uma posição.
+     * @param key Chave de Zobrist da posição
+     * @return Número de entradas
+     */
+    public long count(long key) {
+        return upperBound(key) - lowerBound(key);
+    }
+
+    /**
+     * Procura os jogos que passaram por uma posição, por ordem de id.
+     * @param key Chave de Zobrist da posição
+     * @param limit Número máximo de resultados
+     * @return Lista de ocorrências
+     */
+    public List<Hit> find(long key, int limit) {
+        List<Hit> hits = new ArrayList<>();
+        for (long i = lowerBound(key); i < size && hits.size() < limit && get(keys, i) == key; i++) {
+            long value = get(values, i);
+            int move = (int) (value & 0x7FFF);
+            hits.add(new Hit((int) (value >>> 32), (int) ((value >>> 18) & MAX_PLY),
+                    move == 0 ? null : Move.toText(move), (int) ((value >>> 16) & 3)));
+        }
+        return hits;
+    }
+
+    /**
+     * Obtém a chave da entrada i (as entradas estão ordenadas pela chave, sem sinal).
+     */
+    long keyAt(long i) {
+        return get(keys, i);
+    }
+
+    /**
+     * Obtém o valor compactado da entrada i: id do jogo (bits 32-63), meio-lance (bits 18-31),
+     * resultado (bits 16-17) e movimento seguinte (bits 0-14, 0 se o jogo acabou).
+     */
+    long valueAt(long i) {
+        return get(values, i);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // ---------- construção ----------
+
+    /**
+     * Bloco de entradas ordenado, gravado num ficheiro temporário como pares (chave, valor).
+     * @param file Ficheiro temporário
+     * @param size Número de entradas
+     */
+    private record Run(Path file, long size) {
+    }
+
+    /**
+     * Entradas de uma thread: são acumuladas num buffer de tamanho fixo que, quando fica cheio,
+     * é ordenado e gravado num novo bloco.
+     */
+    private static final class RunWriter {
+        private final Path directory;
+        private final List<Run> runs;
+        private final long[] keys;
+        private final long[] values;
+        private int size;
+
+        RunWriter(Path directory, int capacity, List<Run> runs) {
+            this.directory = directory;
+            this.runs = runs;
+            this.keys = new long[capacity];
+            this.values = new long[capacity];
+        }
+
+        void add(long key, long value) throws IOException {
+            if (size == keys.length) {
+                writeRun();
+            }
+            keys[size] = key;
+            values[size++] = value;
+        }
+
+        void writeRun() throws IOException {
+            if (size == 0) return;
+            sort(keys, values, 0, size - 1);
+            Path file = Files.createTempFile(directory, "pix", ".run");
+            // registado antes de ser escrito, para que build o apague mesmo que a escrita falhe
+            runs.add(new Run(file, size));
+            try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER);
+                for (int i = 0; i < size; i++) {
+                    if (buffer.remaining() < 2 * Long.BYTES) {
+                        flush(out, buffer);
+                    }
+                    buffer.putLong(keys[i]).putLong(values[i]);
+                }
+                flush(out, buffer);
+            }
+            size = 0;
+        }
+    }
+
+    /**
+     * Leitura sequencial de um bloco, uma entrada de cada vez.
+     */
+    private static final class RunReader implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(RUN_BUFFER).flip();
+        private long remaining;
+        long key;
+        long value;
+
+        RunReader(Run run) throws IOException {
+            channel = FileChannel.open(run.file(), StandardOpenOption.READ);
+            remaining = run.size();
+        }
+
+        /**
+         * Avança para a entrada seguinte.
+         * @return false se o bloco terminou
+         */
+        boolean next() throws IOException {
+            if (remaining == 0) return false;
+            if (buffer.remaining() < 2 * Long.BYTES) {
+                buffer.compact();
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // enche o buffer
+                }
+                buffer.flip();
+                if (buffer.remaining() < 2 * Long.BYTES) {
+                    throw new EOFException("Bloco do índice truncado");
+                }
+            }
+            key = buffer.getLong();
+            value = buffer.getLong();
+            remaining--;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static void collect(GameDatabase database, int first, int last, RunWriter entries) throws IOException {
+        long[] plyKeys = new long[64];
+        int[] plyMoves = new int[64];
+        for (int id = first; id < last; id++) {
+            ChessGame game = database.read(id);
+            if (game == null) continue;
+            game.setSilent(true);
+            long[] records = game.getMoveRecords();
+            game.goToPly(0);
+            EngineBoard board = EngineBoard.fromGame(game);
+
+            int plies = Math.min(records.length, MAX_PLY);
+            if (plyKeys.length <= plies) {
+                plyKeys = new long[plies + 1];
+                plyMoves = new int[plies + 1];
+            }
+            for (int ply = 0; ply < plies; ply++) {
+                plyKeys[ply] = Zobrist.hash(board);
+                int move = MoveRecord.toMove(records[ply]);
+                plyMoves[ply] = move & 0x7FFF;
+                board.makeMove(move);
+            }
+            plyKeys[plies] = Zobrist.hash(board);
+            plyMoves[plies] = 0;
+
+            long result = resultCode(board);
+            for (int ply = 0; ply <= plies; ply++) {
+                entries.add(plyKeys[ply], ((long) id << 32) | ((long) ply << 18) | (result << 16) | plyMoves[ply]);
+            }
+        }
+        entries.writeRun();
+    }
+
+    private static long resultCode(EngineBoard board) {
+        return switch (PgnGame.resultOf(board)) {
+            case PgnGame.WHITE_WINS -> RESULT_WHITE;
+            case PgnGame.BLACK_WINS -> RESULT_BLACK;
+            case PgnGame.DRAW -> RESULT_DRAW;
+            default -> RESULT_UNKNOWN;
+        };
+    }
+
+    /**
+     * Quicksort dos pares entre lo e hi (inclusive), por chave e depois por valor.
+     */
+    private static void sort(long[] keys, long[] values, int lo, int hi) {
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            long pivotKey = keys[mid];
+            long pivotValue = values[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (compare(keys[i], values[i], pivotKey, pivotValue) < 0) i++;
+                while (compare(keys[j], values[j], pivotKey, pivotValue) > 0) j--;
+                if (i <= j) {
+                    swap(keys, values, i++, j--);
+                }
+            }
+            if (j - lo < hi - i) {
+                sort(keys, values, lo, j);
+                lo = i;
+            } else {
+                sort(keys, values, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && compare(keys[j], values[j], keys[j - 1], values[j - 1]) < 0; j--) {
+                swap(keys, values, j, j - 1);
+            }
+        }
+    }
+
+    private static int compare(long keyA, long valueA, long keyB, long valueB) {
+        int c = Long.compareUnsigned(keyA, keyB);
+        return c != 0 ? c : Long.compare(valueA, valueB);
+    }
+
+    private static void swap(long[] keys, long[] values, int a, int b) {
+        long key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        long value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+    }
+
+    /**
+     * Intercala os blocos (k-way merge, com uma fila de prioridade ordenada pela entrada atual de
+     * cada bloco) e grava o índice: as chaves a seguir ao cabeçalho e os valores depois de todas
+     * as chaves, em duas posições do ficheiro escritas em simultâneo.
+     */
+    private static void merge(Path file, int games, List<Run> runs) throws IOException {
+        long size = 0;
+        for (Run run : runs) {
+            size += run.size();
+        }
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runs.size()),
+                (a, b) -> compare(a.key, a.value, b.key, b.value));
+        List<RunReader> readers = new ArrayList<>();
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Run run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            ByteBuffer keyBuffer = ByteBuffer.allocate(IO_BUFFER);
+            ByteBuffer valueBuffer = ByteBuffer.allocate(IO_BUFFER);
+            keyBuffer.putInt(MAGIC).putInt(games).putLong(size);
+            long keyPosition = 0;
+            long valuePosition = HEADER + size * Long.BYTES;
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                if (keyBuffer.remaining() < Long.BYTES) {
+                    keyPosition = flush(out, keyBuffer, keyPosition);
+                    valuePosition = flush(out, valueBuffer, valuePosition);
+                }
+                keyBuffer.putLong(reader.key);
+                valueBuffer.putLong(reader.value);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            flush(out, keyBuffer, keyPosition);
+            flush(out, valueBuffer, valuePosition);
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static void flush(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static long flush(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+        buffer.clear();
+        return position;
+    }
+
+    // ---------- procura ----------
+
+    private static LongBuffer[] map(FileChannel channel, long position, long count) throws IOException {
+        LongBuffer[] chunks = new LongBuffer[(int) ((count + CHUNK - 1) / CHUNK)];
+        for (int c = 0; c < chunks.length; c++) {
+            long first = (long) c * CHUNK;
+            long length = Math.min(CHUNK, count - first);
+            chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, position + first * Long.BYTES, length * Long.BYTES)
+                    .asLongBuffer();
+        }
+        return chunks;
+    }
+
+    private static long get(LongBuffer[] chunks, long i) {
+        return chunks[(int) (i / CHUNK)].get((int) (i % CHUNK));
+    }
+
+    private long lowerBound(long key) {
+        long lo = 0;
+        long hi = size;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(get(keys, mid), key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private long upperBound(long key) {
+        long lo = 0;
+        long hi = size;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(get(keys, mid), key) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
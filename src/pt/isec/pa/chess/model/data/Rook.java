@@ -7,7 +7,7 @@ public class Rook extends Piece {
 
     public Rook(char pieceColumn, int pieceRow, PieceTeamEnum pieceColor, Board board, boolean hasMoved) {
         super('R', pieceColumn, pieceRow, pieceColor, board);
-        this.hasMoved = false;
+        this.hasMoved = hasMoved;
     }
 
     public boolean getHasMoved() {
@@ -0,0 +1,630 @@
+package pt.isec.pa.chess.model.engine;
+
+import pt.isec.pa.chess.model.ChessGame;
+import pt.isec.pa.chess.model.data.King;
+import pt.isec.pa.chess.model.data.Piece;
+import pt.isec.pa.chess.model.data.PieceTeamEnum;
+import pt.isec.pa.chess.model.data.Rook;
+
+/**
+ * Representação compacta e mutável de uma posição (mailbox de 64 casas) com gerador
+ * de movimentos legais e make/unmake, pensada para os motores de pesquisa.
+ * As casas são numeradas de 0 (A1) a 63 (H8): casa = (linha - 1) * 8 + (coluna - 'A').
+ * Não é thread-safe: cada thread de pesquisa usa a sua própria cópia.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see Move
+ */
+public final class EngineBoard {
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    public static final int EMPTY = 0;
+    public static final int PAWN = 1;
+    public static final int KNIGHT = 2;
+    public static final int BISHOP = 3;
+    public static final int ROOK = 4;
+    public static final int QUEEN = 5;
+    public static final int KING = 6;
+    /** Bit que marca uma peça preta no código da peça */
+    public static final int BLACK_BIT = 8;
+
+    public static final int CASTLE_WHITE_KING = 1;
+    public static final int CASTLE_WHITE_QUEEN = 2;
+    public static final int CASTLE_BLACK_KING = 4;
+    public static final int CASTLE_BLACK_QUEEN = 8;
+
+    /** Número máximo de movimentos gerados numa posição */
+    public static final int MAX_MOVES = 256;
+
+    private static final int[][] KNIGHT_TARGETS = new int[64][];
+    private static final int[][] KING_TARGETS = new int[64][];
+    /** RAYS[casa][direção]: casas percorridas a partir da casa; direções 0-3 ortogonais, 4-7 diagonais */
+    private static final int[][][] RAYS = new int[64][8][];
+    private static final int[] CASTLE_MASK = new int[64];
+
+    static {
+        int[][] knightDeltas = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}};
+        int[][] kingDeltas = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+        for (int sq = 0; sq < 64; sq++) {
+            KNIGHT_TARGETS[sq] = targets(sq, knightDeltas);
+            KING_TARGETS[sq] = targets(sq, kingDeltas);
+            for (int d = 0; d < 8; d++) {
+                int[] ray = new int[7];
+                int n = 0;
+                int r = sq >> 3, f = sq & 7;
+                while (true) {
+                    r += kingDeltas[d][0];
+                    f += kingDeltas[d][1];
+                    if (r < 0 || r > 7 || f < 0 || f > 7) break;
+                    ray[n++] = r * 8 + f;
+                }
+                RAYS[sq][d] = java.util.Arrays.copyOf(ray, n);
+            }
+            CASTLE_MASK[sq] = 15;
+        }
+        CASTLE_MASK[4] = 15 & ~(CASTLE_WHITE_KING | CASTLE_WHITE_QUEEN);
+        CASTLE_MASK[7] = 15 & ~CASTLE_WHITE_KING;
+        CASTLE_MASK[0] = 15 & ~CASTLE_WHITE_QUEEN;
+        CASTLE_MASK[60] = 15 & ~(CASTLE_BLACK_KING | CASTLE_BLACK_QUEEN);
+        CASTLE_MASK[63] = 15 & ~CASTLE_BLACK_KING;
+        CASTLE_MASK[56] = 15 & ~CASTLE_BLACK_QUEEN;
+    }
+
+    static int[] knightTargets(int sq) {
+        return KNIGHT_TARGETS[sq];
+    }
+
+    static int[] kingTargets(int sq) {
+        return KING_TARGETS[sq];
+    }
+
+    static int[] ray(int sq, int direction) {
+        return RAYS[sq][direction];
+    }
+
+    static int castleMask(int sq) {
+        return CASTLE_MASK[sq];
+    }
+
+    private static int[] targets(int sq, int[][] deltas) {
+        int[] result = new int[deltas.length];
+        int n = 0;
+        for (int[] d : deltas) {
+            int r = (sq >> 3) + d[0], f = (sq & 7) + d[1];
+            if (r >= 0 && r <= 7 && f >= 0 && f <= 7) {
+                result[n++] = r * 8 + f;
+            }
+        }
+        return java.util.Arrays.copyOf(result, n);
+    }
+
+    private final byte[] squares;
+    private final int[] kingSquare;
+    private int sideToMove;
+    private int castling;
+    private int epSquare;
+    private int halfmoveClock;
+    private int fullmoveNumber;
+    private long[] history;
+    private int ply;
+
+    /**
+     * Cria um tabuleiro vazio com as brancas a jogar.
+     */
+    public EngineBoard() {
+        squares = new byte[64];
+        kingSquare = new int[]{-1, -1};
+        sideToMove = WHITE;
+        epSquare = -1;
+        fullmoveNumber = 1;
+        history = new long[64];
+    }
+
+    /**
+     * Cria um tabuleiro com a posição inicial do xadrez.
+     * @return Tabuleiro na posição inicial
+     */
+    public static EngineBoard startPosition() {
+        EngineBoard board = new EngineBoard();
+        int[] backRank = {ROOK, KNIGHT, BISHOP, QUEEN, KING, BISHOP, KNIGHT, ROOK};
+        for (int f = 0; f < 8; f++) {
+            board.setPiece(f, backRank[f]);
+            board.setPiece(8 + f, PAWN);
+            board.setPiece(48 + f, PAWN | BLACK_BIT);
+            board.setPiece(56 + f, backRank[f] | BLACK_BIT);
+        }
+        board.castling = 15;
+        return board;
+    }
+
+    /**
+     * Converte a posição atual de um ChessGame para um EngineBoard.
+     * Os direitos de roque são deduzidos do estado "hasMoved" do rei e das torres.
+     * @param game Jogo a converter
+     * @return Tabuleiro com a mesma posição
+     */
+    public static EngineBoard fromGame(ChessGame game) {
+        EngineBoard board = new EngineBoard();
+        for (int sq = 0; sq < 64; sq++) {
+            Piece piece = game.getPieceAt(column(sq), row(sq));
+            if (piece == null) continue;
+            int code = switch (piece.getPieceTypeEnum()) {
+                case PAWN -> PAWN;
+                case KNIGHT -> KNIGHT;
+                case BISHOP -> BISHOP;
+                case ROOK -> ROOK;
+                case QUEEN -> QUEEN;
+                case KING -> KING;
+            };
+            board.setPiece(sq, piece.getPieceColor() == PieceTeamEnum.WHITE ? code : code | BLACK_BIT);
+        }
+        board.sideToMove = game.getTeamToPlay() == PieceTeamEnum.WHITE ? WHITE : BLACK;
+
+        if (canCastle(game, 'E', 1, 'H')) board.castling |= CASTLE_WHITE_KING;
+        if (canCastle(game, 'E', 1, 'A')) board.castling |= CASTLE_WHITE_QUEEN;
+        if (canCastle(game, 'E', 8, 'H')) board.castling |= CASTLE_BLACK_KING;
+        if (canCastle(game, 'E', 8, 'A')) board.castling |= CASTLE_BLACK_QUEEN;
+
+        String ep = game.getEnPassantTarget();
+        board.epSquare = ep == null ? -1 : square(ep.charAt(0), ep.charAt(1) - '0');
+        return board;
+    }
+
+    private static boolean canCastle(ChessGame game, char kingCol, int row, char rookCol) {
+        Piece king = game.getPieceAt(kingCol, row);
+        Piece rook = game.getPieceAt(rookCol, row);
+        return king instanceof King k && !k.getHasMoved()
+                && rook instanceof Rook r && !r.getHasMoved()
+                && k.getPieceColor() == r.getPieceColor();
+    }
+
+    /**
+     * Cria uma cópia independente deste tabuleiro (sem o histórico de undo).
+     * @return Cópia do tabuleiro
+     */
+    public EngineBoard copy() {
+        EngineBoard board = new EngineBoard();
+        board.copyFrom(this);
+        return board;
+    }
+
+    /**
+     * Copia a posição de outro tabuleiro para este, sem alocar memória.
+     * @param other Tabuleiro de origem
+     */
+    public void copyFrom(EngineBoard other) {
+        System.arraycopy(other.squares, 0, squares, 0, 64);
+        kingSquare[WHITE] = other.kingSquare[WHITE];
+        kingSquare[BLACK] = other.kingSquare[BLACK];
+        sideToMove = other.sideToMove;
+        castling = other.castling;
+        epSquare = other.epSquare;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+        ply = 0;
+    }
+
+    // ---------- casas e peças ----------
+
+    public static int square(char col, int row) {
+        return (row - 1) * 8 + (Character.toUpperCase(col) - 'A');
+    }
+
+    public static char column(int sq) {
+        return (char) ('A' + (sq & 7));
+    }
+
+    public static int row(int sq) {
+        return (sq >> 3) + 1;
+    }
+
+    public static String squareName(int sq) {
+        return "" + column(sq) + row(sq);
+    }
+
+    public static int pieceType(int piece) {
+        return piece & 7;
+    }
+
+    public static int pieceColor(int piece) {
+        return (piece >> 3) & 1;
+    }
+
+    /**
+     * Obtém a letra de um tipo de peça, como em ChessPieceFactory ("P", "N", "B", "R", "Q", "K").
+     * @param type Tipo de peça (PAWN a KING)
+     * @return Letra maiúscula do tipo
+     */
+    public static char pieceLetter(int type) {
+        return " PNBRQK".charAt(type);
+    }
+
+    public int getPiece(int sq) {
+        return squares[sq];
+    }
+
+    /**
+     * Coloca uma peça numa casa (ou esvazia a casa com EMPTY).
+     * @param sq Casa (0-63)
+     * @param piece Código da peça (tipo, com BLACK_BIT se for preta)
+     */
+    public void setPiece(int sq, int piece) {
+        int old = squares[sq];
+        if (pieceType(old) == KING && kingSquare[pieceColor(old)] == sq) {
+            kingSquare[pieceColor(old)] = -1;
+        }
+        squares[sq] = (byte) piece;
+        if (pieceType(piece) == KING) {
+            kingSquare[pieceColor(piece)] = sq;
+        }
+    }
+
+    public int getSideToMove() {
+        return sideToMove;
+    }
+
+    public void setSideToMove(int sideToMove) {
+        this.sideToMove = sideToMove;
+    }
+
+    public int getCastling() {
+        return castling;
+    }
+
+    public void setCastling(int castling) {
+        this.castling = castling;
+    }
+
+    public int getEpSquare() {
+        return epSquare;
+    }
+
+    public void setEpSquare(int epSquare) {
+        this.epSquare = epSquare;
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public void setHalfmoveClock(int halfmoveClock) {
+        this.halfmoveClock = halfmoveClock;
+    }
+
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    public void setFullmoveNumber(int fullmoveNumber) {
+        this.fullmoveNumber = fullmoveNumber;
+    }
+
+    public int getKingSquare(int side) {
+        return kingSquare[side];
+    }
+
+    // ---------- ataques ----------
+
+    /**
+     * Verifica se uma casa é atacada por alguma peça de uma equipa.
+     * @param sq Casa a verificar
+     * @param bySide Equipa atacante (WHITE ou BLACK)
+     * @return true se a casa estiver atacada
+     */
+    public boolean isAttacked(int sq, int bySide) {
+        int colorBit = bySide == WHITE ? 0 : BLACK_BIT;
+        int f = sq & 7;
+        int pawnRank = (sq >> 3) + (bySide == WHITE ? -1 : 1);
+        if (pawnRank >= 0 && pawnRank <= 7) {
+            if (f > 0 && squares[pawnRank * 8 + f - 1] == (PAWN | colorBit)) return true;
+            if (f < 7 && squares[pawnRank * 8 + f + 1] == (PAWN | colorBit)) return true;
+        }
+        for (int t : KNIGHT_TARGETS[sq]) {
+            if (squares[t] == (KNIGHT | colorBit)) return true;
+        }
+        for (int t : KING_TARGETS[sq]) {
+            if (squares[t] == (KING | colorBit)) return true;
+        }
+        for (int d = 0; d < 8; d++) {
+            int slider = d < 4 ? ROOK : BISHOP;
+            for (int t : RAYS[sq][d]) {
+                int p = squares[t];
+                if (p == EMPTY) continue;
+                if (pieceColor(p) == bySide && (pieceType(p) == slider || pieceType(p) == QUEEN)) return true;
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Verifica se o rei de uma equipa está em xeque.
+     * @param side Equipa (WHITE ou BLACK)
+     * @return true se o rei estiver atacado; false se não houver rei
+     */
+    public boolean isInCheck(int side) {
+        return kingSquare[side] >= 0 && isAttacked(kingSquare[side], side ^ 1);
+    }
+
+    // ---------- geração de movimentos ----------
+
+    /**
+     * Gera os movimentos legais da equipa a jogar.
+     * @param moves Array de destino com pelo menos MAX_MOVES posições
+     * @return Número de movimentos gerados
+     */
+    public int generateLegalMoves(int[] moves) {
+        int count = generatePseudoLegalMoves(moves);
+        int legal = 0;
+        int side = sideToMove;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            makeMove(move);
+            if (!isInCheck(side)) {
+                moves[legal++] = move;
+            }
+            unmakeMove(move);
+        }
+        return legal;
+    }
+
+    /**
+     * Gera os movimentos pseudo-legais (podem deixar o próprio rei em xeque).
+     * @param moves Array de destino com pelo menos MAX_MOVES posições
+     * @return Número de movimentos gerados
+     */
+    public int generatePseudoLegalMoves(int[] moves) {
+        int n = 0;
+        int side = sideToMove;
+        for (int sq = 0; sq < 64; sq++) {
+            int p = squares[sq];
+            if (p == EMPTY || pieceColor(p) != side) continue;
+
+            switch (pieceType(p)) {
+                case PAWN -> n = generatePawnMoves(sq, moves, n);
+                case KNIGHT -> n = generateStepMoves(sq, KNIGHT_TARGETS[sq], moves, n);
+                case BISHOP -> n = generateSlidingMoves(sq, 4, 8, moves, n);
+                case ROOK -> n = generateSlidingMoves(sq, 0, 4, moves, n);
+                case QUEEN -> n = generateSlidingMoves(sq, 0, 8, moves, n);
+                case KING -> {
+                    n = generateStepMoves(sq, KING_TARGETS[sq], moves, n);
+                    n = generateCastling(sq, moves, n);
+                }
+                default -> {
+                }
+            }
+        }
+        return n;
+    }
+
+    private int generatePawnMoves(int sq, int[] moves, int n) {
+        int side = sideToMove;
+        int dir = side == WHITE ? 8 : -8;
+        int rank = sq >> 3;
+        int startRank = side == WHITE ? 1 : 6;
+        int to = sq + dir;
+        if (to < 0 || to > 63) return n;
+
+        if (squares[to] == EMPTY) {
+            n = addPawnMove(sq, to, 0, moves, n);
+            if (rank == startRank && squares[to + dir] == EMPTY) {
+                moves[n++] = Move.encode(sq, to + dir, 0, Move.FLAG_DOUBLE_PUSH);
+            }
+        }
+        int f = sq & 7;
+        for (int df = -1; df <= 1; df += 2) {
+            if (f + df < 0 || f + df > 7) continue;
+            int target = to + df;
+            int p = squares[target];
+            if (p != EMPTY && pieceColor(p) != side) {
+                n = addPawnMove(sq, target, 0, moves, n);
+            } else if (target == epSquare) {
+                moves[n++] = Move.encode(sq, target, 0, Move.FLAG_EN_PASSANT);
+            }
+        }
+        return n;
+    }
+
+    private int addPawnMove(int from, int to, int flags, int[] moves, int n) {
+        int rank = to >> 3;
+        if (rank == 0 || rank == 7) {
+            for (int promo = QUEEN; promo >= KNIGHT; promo--) {
+                moves[n++] = Move.encode(from, to, promo, flags);
+            }
+        } else {
+            moves[n++] = Move.encode(from, to, 0, flags);
+        }
+        return n;
+    }
+
+    private int generateStepMoves(int sq, int[] targets, int[] moves, int n) {
+        for (int t : targets) {
+            int p = squares[t];
+            if (p == EMPTY || pieceColor(p) != sideToMove) {
+                moves[n++] = Move.encode(sq, t, 0, 0);
+            }
+        }
+        return n;
+    }
+
+    private int generateSlidingMoves(int sq, int firstDir, int lastDir, int[] moves, int n) {
+        for (int d = firstDir; d < lastDir; d++) {
+            for (int t : RAYS[sq][d]) {
+                int p = squares[t];
+                if (p == EMPTY) {
+                    moves[n++] = Move.encode(sq, t, 0, 0);
+                    continue;
+                }
+                if (pieceColor(p) != sideToMove) {
+                    moves[n++] = Move.encode(sq, t, 0, 0);
+                }
+                break;
+            }
+        }
+        return n;
+    }
+
+    private int generateCastling(int sq, int[] moves, int n) {
+        int side = sideToMove;
+        int home = side == WHITE ? 4 : 60;
+        if (sq != home) return n;
+        int kingSide = side == WHITE ? CASTLE_WHITE_KING : CASTLE_BLACK_KING;
+        int queenSide = side == WHITE ? CASTLE_WHITE_QUEEN : CASTLE_BLACK_QUEEN;
+        if ((castling & (kingSide | queenSide)) == 0 || isAttacked(sq, side ^ 1)) return n;
+
+        if ((castling & kingSide) != 0
+                && squares[sq + 1] == EMPTY && squares[sq + 2] == EMPTY
+                && !isAttacked(sq + 1, side ^ 1) && !isAttacked(sq + 2, side ^ 1)) {
+            moves[n++] = Move.encode(sq, sq + 2, 0, Move.FLAG_CASTLE);
+        }
+        if ((castling & queenSide) != 0
+                && squares[sq - 1] == EMPTY && squares[sq - 2] == EMPTY && squares[sq - 3] == EMPTY
+                && !isAttacked(sq - 1, side ^ 1) && !isAttacked(sq - 2, side ^ 1)) {
+            moves[n++] = Move.encode(sq, sq - 2, 0, Move.FLAG_CASTLE);
+        }
+        return n;
+    }
+
+    // ---------- make / unmake ----------
+
+    /**
+     * Aplica um movimento (gerado por este tabuleiro) e guarda o estado irreversível para o unmake.
+     * @param move Movimento codificado
+     */
+    public void makeMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int promotion = Move.promotion(move);
+        int flags = Move.flags(move);
+        int piece = squares[from];
+        int captured = squares[to];
+        int side = sideToMove;
+
+        if (ply == history.length) {
+            history = java.util.Arrays.copyOf(history, ply * 2);
+        }
+        history[ply++] = captured | ((long) castling << 4) | ((long) (epSquare + 1) << 8) | ((long) halfmoveClock << 16);
+
+        if ((flags & Move.FLAG_EN_PASSANT) != 0) {
+            squares[to + (side == WHITE ? -8 : 8)] = EMPTY;
+        }
+        squares[to] = (byte) (promotion != EMPTY ? promotion | (side == WHITE ? 0 : BLACK_BIT) : piece);
+        squares[from] = EMPTY;
+
+        if ((flags & Move.FLAG_CASTLE) != 0) {
+            if (to > from) {
+                squares[from + 1] = squares[from + 3];
+                squares[from + 3] = EMPTY;
+            } else {
+                squares[from - 1] = squares[from - 4];
+                squares[from - 4] = EMPTY;
+            }
+        }
+        if (pieceType(piece) == KING) {
+            kingSquare[side] = to;
+        }
+
+        castling &= castleMask(from) & castleMask(to);
+        epSquare = (flags & Move.FLAG_DOUBLE_PUSH) != 0 ? (from + to) / 2 : -1;
+        halfmoveClock = pieceType(piece) == PAWN || captured != EMPTY ? 0 : halfmoveClock + 1;
+        if (side == BLACK) fullmoveNumber++;
+        sideToMove = side ^ 1;
+    }
+
+    /**
+     * Desfaz o último movimento aplicado com makeMove.
+     * @param move O mesmo movimento passado ao makeMove
+     */
+    public void unmakeMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int flags = Move.flags(move);
+        int side = sideToMove ^ 1;
+        long state = history[--ply];
+
+        sideToMove = side;
+        if (side == BLACK) fullmoveNumber--;
+        castling = (int) (state >> 4) & 15;
+        epSquare = (int) ((state >> 8) & 127) - 1;
+        halfmoveClock = (int) (state >> 16);
+
+        int piece = squares[to];
+        if (Move.promotion(move) != EMPTY) {
+            piece = PAWN | (side == WHITE ? 0 : BLACK_BIT);
+        }
+        squares[from] = (byte) piece;
+        squares[to] = (byte) (state & 15);
+
+        if ((flags & Move.FLAG_EN_PASSANT) != 0) {
+            squares[to + (side == WHITE ? -8 : 8)] = (byte) (PAWN | (side == WHITE ? BLACK_BIT : 0));
+        }
+        if ((flags & Move.FLAG_CASTLE) != 0) {
+            if (to > from) {
+                squares[from + 3] = squares[from + 1];
+                squares[from + 1] = EMPTY;
+            } else {
+                squares[from - 4] = squares[from - 1];
+                squares[from - 1] = EMPTY;
+            }
+        }
+        if (pieceType(piece) == KING) {
+            kingSquare[side] = from;
+        }
+    }
+
+    /**
+     * Procura entre os movimentos legais aquele que corresponde ao texto dado ("E2E4", "E7E8Q").
+     * @param text Movimento em texto
+     * @return Movimento codificado, ou Move.NONE se não for legal
+     */
+    public int parseMove(String text) {
+        int[] moves = new int[MAX_MOVES];
+        int count = generateLegalMoves(moves);
+        for (int i = 0; i < count; i++) {
+            if (Move.toText(moves[i]).equalsIgnoreCase(text)
+                    || (text.length() == 4 && Move.promotion(moves[i]) == QUEEN
+                    && Move.toText(moves[i]).substring(0, 4).equalsIgnoreCase(text))) {
+                return moves[i];
+            }
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Conta os nós folha da árvore de movimentos legais até à profundidade dada (perft).
+     * Usado para validar o gerador de movimentos.
+     * @param depth Profundidade em meios-lances
+     * @return Número de folhas
+     */
+    public long perft(int depth) {
+        if (depth == 0) return 1;
+        int[] moves = new int[MAX_MOVES];
+        int count = generateLegalMoves(moves);
+        if (depth == 1) return count;
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            makeMove(moves[i]);
+            nodes += perft(depth - 1);
+            unmakeMove(moves[i]);
+        }
+        return nodes;
+    }
+
+    /**
+     * Verifica se não há material suficiente para qualquer equipa dar mate (rei contra rei,
+     * rei e peça menor contra rei).
+     * @return true se a posição for empate por material insuficiente
+     */
+    public boolean isInsufficientMaterial() {
+        int minors = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            int type = pieceType(squares[sq]);
+            if (type == PAWN || type == ROOK || type == QUEEN) return false;
+            if (type == KNIGHT || type == BISHOP) minors++;
+        }
+        return minors <= 1;
+    }
+}
@@ -0,0 +1,308 @@
+package pt.isec.pa.chess.model.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Leitura e escrita de posições em notação FEN (Forsyth-Edwards Notation).
+ * A leitura é feita carácter a carácter diretamente para um EngineBoard, a partir de um
+ * CharSequence, sem criar Strings intermédias; um ByteBuffer (ASCII) é lido através de uma
+ * vista CharSequence sobre os seus bytes. Um mesmo EngineBoard pode ser reutilizado para ler
+ * milhões de linhas. A casa en passant e os contadores de meios-lances e de lances são
+ * opcionais na leitura.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see EngineBoard
+ */
+public final class Fen {
+    /** Posição inicial do xadrez */
+    public static final String START_POSITION = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private static final String PIECE_CHARS = " PNBRQK";
+
+    /**
+     * Vista de texto ASCII sobre os bytes de um buffer (índices absolutos, sem cópia).
+     */
+    private record AsciiView(ByteBuffer buffer) implements CharSequence {
+        @Override
+        public int length() {
+            return buffer.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            StringBuilder text = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                text.append(charAt(i));
+            }
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+
+    /**
+     * Destino dos caracteres escritos.
+     */
+    @FunctionalInterface
+    private interface CharSink {
+        void put(char c);
+    }
+
+    private Fen() {
+        //construtor privado que impede alguem de criar uma instacia desta classe
+    }
+
+    /**
+     * Lê uma posição FEN para um tabuleiro.
+     * @param text Texto com a posição
+     * @param board Tabuleiro de destino (o conteúdo anterior é substituído)
+     * @return true se o texto for uma posição FEN válida
+     */
+    public static boolean parse(CharSequence text, EngineBoard board) {
+        return parse(text, 0, text.length(), board) >= 0;
+    }
+
+    /**
+     * Lê uma posição FEN entre dois índices de um texto, por exemplo uma linha de um ficheiro maior.
+     * @param text Texto com a posição
+     * @param start Índice do primeiro carácter
+     * @param end Índice a seguir ao último carácter que pode ser lido
+     * @param board Tabuleiro de destino
+     * @return Índice a seguir ao último carácter lido, ou -1 se a posição for inválida (por exemplo
+     *         um direito de roque sem o rei e a torre nas casas iniciais)
+     */
+    public static int parse(CharSequence text, int start, int end, EngineBoard board) {
+        for (int sq = 0; sq < 64; sq++) {
+            board.setPiece(sq, EngineBoard.EMPTY);
+        }
+        int i = skipSpaces(text, start, end);
+
+        // ------- PEÇAS -------
+        int rank = 7;
+        int file = 0;
+        int whiteKings = 0;
+        int blackKings = 0;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == ' ') break;
+            if (c == '/') {
+                if (file != 8 || rank == 0) return -1;
+                rank--;
+                file = 0;
+            } else if (c >= '1' && c <= '8') {
+                file += c - '0';
+                if (file > 8) return -1;
+            } else {
+                int type = PIECE_CHARS.indexOf(Character.toUpperCase(c));
+                if (type <= 0 || file > 7) return -1;
+                if (c == 'K') whiteKings++;
+                if (c == 'k') blackKings++;
+                board.setPiece(rank * 8 + file, Character.isUpperCase(c) ? type : type | EngineBoard.BLACK_BIT);
+                file++;
+            }
+        }
+        if (rank != 0 || file != 8) return -1;
+        if (whiteKings != 1 || blackKings != 1) return -1;
+
+        // ------- EQUIPA A JOGAR -------
+        i = skipSpaces(text, i, end);
+        if (i >= end) return -1;
+        char side = text.charAt(i++);
+        if (side == 'w') {
+            board.setSideToMove(EngineBoard.WHITE);
+        } else if (side == 'b') {
+            board.setSideToMove(EngineBoard.BLACK);
+        } else {
+            return -1;
+        }
+
+        // ------- ROQUE -------
+        i = skipSpaces(text, i, end);
+        int castling = 0;
+        if (i < end && text.charAt(i) == '-') {
+            i++;
+        } else {
+            for (; i < end && text.charAt(i) != ' '; i++) {
+                switch (text.charAt(i)) {
+                    case 'K' -> castling |= EngineBoard.CASTLE_WHITE_KING;
+                    case 'Q' -> castling |= EngineBoard.CASTLE_WHITE_QUEEN;
+                    case 'k' -> castling |= EngineBoard.CASTLE_BLACK_KING;
+                    case 'q' -> castling |= EngineBoard.CASTLE_BLACK_QUEEN;
+                    default -> {
+                        return -1;
+                    }
+                }
+            }
+        }
+        // cada direito de roque exige o rei e a torre nas casas iniciais
+        if (!hasCastlingPieces(board, castling, EngineBoard.CASTLE_WHITE_KING, 4, 7, 0)
+                || !hasCastlingPieces(board, castling, EngineBoard.CASTLE_WHITE_QUEEN, 4, 0, 0)
+                || !hasCastlingPieces(board, castling, EngineBoard.CASTLE_BLACK_KING, 60, 63, EngineBoard.BLACK_BIT)
+                || !hasCastlingPieces(board, castling, EngineBoard.CASTLE_BLACK_QUEEN, 60, 56, EngineBoard.BLACK_BIT)) {
+            return -1;
+        }
+        board.setCastling(castling);
+
+        // ------- EN PASSANT -------
+        // a casa fica atrás do peão que avançou duas casas: linha 6 se as brancas jogam, 3 se as pretas
+        i = skipSpaces(text, i, end);
+        int ep = -1;
+        if (i < end && text.charAt(i) == '-') {
+            i++;
+        } else if (i + 1 < end) {
+            char col = Character.toUpperCase(text.charAt(i));
+            char row = text.charAt(i + 1);
+            if (col < 'A' || col > 'H' || row != (side == 'w' ? '6' : '3')) return -1;
+            ep = EngineBoard.square(col, row - '0');
+            i += 2;
+        } else if (i < end) {
+            return -1;
+        }
+        board.setEpSquare(ep);
+
+        // ------- CONTADORES (opcionais) -------
+        board.setHalfmoveClock(0);
+        board.setFullmoveNumber(1);
+        int next = skipSpaces(text, i, end);
+        if (next < end && isDigit(text.charAt(next))) {
+            int value = 0;
+            for (i = next; i < end && isDigit(text.charAt(i)); i++) {
+                value = value * 10 + text.charAt(i) - '0';
+            }
+            board.setHalfmoveClock(value);
+            next = skipSpaces(text, i, end);
+            if (next < end && isDigit(text.charAt(next))) {
+                value = 0;
+                for (i = next; i < end && isDigit(text.charAt(i)); i++) {
+                    value = value * 10 + text.charAt(i) - '0';
+                }
+                board.setFullmoveNumber(Math.max(1, value));
+            }
+        }
+        return i;
+    }
+
+    private static boolean hasCastlingPieces(EngineBoard board, int castling, int right, int king, int rook, int color) {
+        return (castling & right) == 0
+                || board.getPiece(king) == (EngineBoard.KING | color) && board.getPiece(rook) == (EngineBoard.ROOK | color);
+    }
+
+    /**
+     * Lê uma posição FEN a partir da posição atual de um buffer (texto ASCII) até ao fim da
+     * linha. Em caso de sucesso, a posição do buffer avança para o fim da linha.
+     * @param buffer Buffer com o texto
+     * @param board Tabuleiro de destino
+     * @return true se a linha for uma posição FEN válida
+     */
+    public static boolean parse(ByteBuffer buffer, EngineBoard board) {
+        int end = buffer.position();
+        while (end < buffer.limit() && buffer.get(end) != '\n') {
+            end++;
+        }
+        if (parse(new AsciiView(buffer), buffer.position(), end, board) < 0) {
+            return false;
+        }
+        buffer.position(end < buffer.limit() ? end + 1 : end);
+        return true;
+    }
+
+    /**
+     * Escreve a posição de um tabuleiro em FEN.
+     * @param board Tabuleiro a escrever
+     * @param out Destino do texto
+     * @return O próprio out
+     */
+    public static StringBuilder write(EngineBoard board, StringBuilder out) {
+        write(board, out::append);
+        return out;
+    }
+
+    /**
+     * Escreve a posição de um tabuleiro em FEN (ASCII), a partir da posição atual do buffer.
+     * @param board Tabuleiro a escrever
+     * @param out Buffer de destino (são precisos no máximo 90 bytes)
+     */
+    public static void write(EngineBoard board, ByteBuffer out) {
+        write(board, c -> out.put((byte) c));
+    }
+
+    /**
+     * Obtém a posição de um tabuleiro em FEN.
+     * @param board Tabuleiro a escrever
+     * @return Texto FEN
+     */
+    public static String toString(EngineBoard board) {
+        return write(board, new StringBuilder(90)).toString();
+    }
+
+    private static void write(EngineBoard board, CharSink out) {
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                int piece = board.getPiece(rank * 8 + file);
+                if (piece == EngineBoard.EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    out.put((char) ('0' + empty));
+                    empty = 0;
+                }
+                char letter = EngineBoard.pieceLetter(EngineBoard.pieceType(piece));
+                out.put(EngineBoard.pieceColor(piece) == EngineBoard.WHITE ? letter : Character.toLowerCase(letter));
+            }
+            if (empty > 0) out.put((char) ('0' + empty));
+            if (rank > 0) out.put('/');
+        }
+
+        out.put(' ');
+        out.put(board.getSideToMove() == EngineBoard.WHITE ? 'w' : 'b');
+        out.put(' ');
+        int castling = board.getCastling();
+        if (castling == 0) out.put('-');
+        if ((castling & EngineBoard.CASTLE_WHITE_KING) != 0) out.put('K');
+        if ((castling & EngineBoard.CASTLE_WHITE_QUEEN) != 0) out.put('Q');
+        if ((castling & EngineBoard.CASTLE_BLACK_KING) != 0) out.put('k');
+        if ((castling & EngineBoard.CASTLE_BLACK_QUEEN) != 0) out.put('q');
+        out.put(' ');
+        int ep = board.getEpSquare();
+        if (ep < 0) {
+            out.put('-');
+        } else {
+            out.put(Character.toLowerCase(EngineBoard.column(ep)));
+            out.put((char) ('0' + EngineBoard.row(ep)));
+        }
+        out.put(' ');
+        putNumber(out, board.getHalfmoveClock());
+        out.put(' ');
+        putNumber(out, board.getFullmoveNumber());
+    }
+
+    private static void putNumber(CharSink out, int value) {
+        if (value >= 10) {
+            putNumber(out, value / 10);
+        }
+        out.put((char) ('0' + value % 10));
+    }
+
+    private static int skipSpaces(CharSequence text, int i, int end) {
+        while (i < end && (text.charAt(i) == ' ' || text.charAt(i) == '\t' || text.charAt(i) == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
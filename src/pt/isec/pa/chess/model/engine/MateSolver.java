@@ -0,0 +1,238 @@
+package pt.isec.pa.chess.model.engine;
+
+import pt.isec.pa.chess.model.ChessGame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolve problemas de mate em N lances com depth-first proof-number search (df-pn).
+ * Os movimentos são gerados e jogados sobre um EngineBoard (make/unmake), como no MctsEngine,
+ * e a tabela de transposição é indexada pela chave de Zobrist da posição combinada com o
+ * número de meios-lances que faltam: a mesma posição alcançada por ordens de lances diferentes
+ * partilha a entrada. A pesquisa trabalha numa cópia da posição, pelo que o jogo original não
+ * é alterado.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see EngineBoard
+ * @see Zobrist
+ */
+public class MateSolver {
+    /** Número máximo de nós visitados por omissão antes de desistir */
+    public static final long DEFAULT_MAX_NODES = 200_000;
+
+    private static final int INF = Integer.MAX_VALUE / 4;
+    /** Multiplicador que separa, na chave da tabela, a mesma posição com profundidades diferentes */
+    private static final long PLIES_KEY = 0x9E37_79B9_7F4A_7C15L;
+
+    /**
+     * Estado final de uma pesquisa.
+     */
+    public enum Status {
+        /** Existe um mate forçado dentro do limite de lances */
+        PROVEN,
+        /** Está provado que não existe mate forçado dentro do limite de lances */
+        DISPROVEN,
+        /** O limite de nós foi atingido antes de se chegar a uma conclusão */
+        UNKNOWN
+    }
+
+    /**
+     * Resultado de uma pesquisa.
+     *
+     * @param status Estado final da pesquisa
+     * @param line Linha de mate no formato "E2E4" (com sufixo da promoção, ex. "E7E8Q"); vazia se não houver mate
+     * @param nodes Número de nós visitados
+     */
+    public record Result(Status status, List<String> line, long nodes) {
+    }
+
+    private final EngineBoard board;
+    private final int attacker;
+    private final long maxNodes;
+    private final Map<Long, int[]> table;
+    private long nodes;
+
+    /**
+     * Cria um solver para a posição atual do jogo. O atacante é a equipa que tem a vez de jogar.
+     * @param game Jogo a analisar (não é alterado)
+     */
+    public MateSolver(ChessGame game) {
+        this(EngineBoard.fromGame(game), DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * Cria um solver para a posição atual do jogo com um limite de nós.
+     * @param game Jogo a analisar (não é alterado)
+     * @param maxNodes Número máximo de nós a visitar em toda a pesquisa
+     */
+    public MateSolver(ChessGame game, long maxNodes) {
+        this(EngineBoard.fromGame(game), maxNodes);
+    }
+
+    /**
+     * Cria um solver para uma posição com um limite de nós. O atacante é a equipa que tem a vez de jogar.
+     * @param board Posição a analisar (não é alterada)
+     * @param maxNodes Número máximo de nós a visitar em toda a pesquisa
+     */
+    public MateSolver(EngineBoard board, long maxNodes) {
+        this.board = board.copy();
+        this.attacker = board.getSideToMove();
+        this.maxNodes = maxNodes;
+        this.table = new HashMap<>();
+    }
+
+    /**
+     * Procura o mate mais curto com no máximo mateIn lances do atacante.
+     * @param mateIn Número máximo de lances do atacante (N de "mate em N")
+     * @return Resultado da pesquisa com a linha de mate, se existir
+     */
+    public Result solve(int mateIn) {
+        nodes = 0;
+        for (int n = 1; n <= mateIn; n++) {
+            table.clear();
+            int plies = 2 * n - 1;
+            mid(key(plies), plies, INF, INF);
+
+            int[] root = table.get(key(plies));
+            if (root[0] == 0) {
+                return new Result(Status.PROVEN, extractLine(plies), nodes);
+            }
+            if (root[1] != 0) {
+                return new Result(Status.UNKNOWN, List.of(), nodes);
+            }
+        }
+        return new Result(Status.DISPROVEN, List.of(), nodes);
+    }
+
+    /**
+     * Chave da posição atual do tabuleiro quando faltam plies meios-lances.
+     */
+    private long key(int plies) {
+        return Zobrist.hash(board) + plies * PLIES_KEY;
+    }
+
+    /**
+     * Expande um nó até que o seu proof number ou disproof number atinja o limite dado.
+     * @param key Chave do nó (posição atual do tabuleiro e meios-lances que faltam)
+     */
+    private void mid(long key, int plies, int thPn, int thDn) {
+        nodes++;
+        boolean orNode = board.getSideToMove() == attacker;
+        int[] moves = generateMoves();
+
+        if (moves.length == 0) {
+            boolean mated = board.isInCheck(board.getSideToMove());
+            table.put(key, !orNode && mated ? new int[]{0, INF} : new int[]{INF, 0});
+            return;
+        }
+        if (plies == 0) {
+            table.put(key, new int[]{INF, 0});
+            return;
+        }
+
+        long[] childKeys = new long[moves.length];
+        for (int i = 0; i < moves.length; i++) {
+            board.makeMove(moves[i]);
+            childKeys[i] = key(plies - 1);
+            board.unmakeMove(moves[i]);
+        }
+
+        while (true) {
+            int pn = orNode ? INF : 0;
+            int dn = orNode ? 0 : INF;
+            int best = -1;
+            int bestSelector = Integer.MAX_VALUE;
+            int second = INF;
+            int bestPn = 0, bestDn = 0;
+
+            for (int i = 0; i < childKeys.length; i++) {
+                int[] entry = table.get(childKeys[i]);
+                int cpn = entry == null ? 1 : entry[0];
+                int cdn = entry == null ? 1 : entry[1];
+                int selector = orNode ? cpn : cdn;
+
+                if (selector < bestSelector) {
+                    second = Math.min(second, bestSelector);
+                    bestSelector = selector;
+                    best = i;
+                    bestPn = cpn;
+                    bestDn = cdn;
+                } else if (selector < second) {
+                    second = selector;
+                }
+
+                if (orNode) {
+                    pn = Math.min(pn, cpn);
+                    dn = Math.min(INF, dn + cdn);
+                } else {
+                    pn = Math.min(INF, pn + cpn);
+                    dn = Math.min(dn, cdn);
+                }
+            }
+
+            if (pn >= thPn || dn >= thDn || nodes >= maxNodes) {
+                table.put(key, new int[]{pn, dn});
+                return;
+            }
+
+            int childThPn, childThDn;
+            if (orNode) {
+                childThPn = Math.min(thPn, second + 1);
+                childThDn = Math.min(INF, thDn - dn + bestDn);
+            } else {
+                childThPn = Math.min(INF, thPn - pn + bestPn);
+                childThDn = Math.min(thDn, second + 1);
+            }
+
+            board.makeMove(moves[best]);
+            mid(childKeys[best], plies - 1, childThPn, childThDn);
+            board.unmakeMove(moves[best]);
+        }
+    }
+
+    /**
+     * Reconstrói a linha de mate a partir da tabela: em cada nó segue um filho provado.
+     */
+    private List<String> extractLine(int plies) {
+        List<String> line = new ArrayList<>();
+        int[] played = new int[plies];
+
+        for (int ply = 0; ply < plies; ply++) {
+            int next = Move.NONE;
+            for (int move : generateMoves()) {
+                board.makeMove(move);
+                int[] entry = table.get(key(plies - ply - 1));
+                board.unmakeMove(move);
+                if (entry != null && entry[0] == 0) {
+                    next = move;
+                    break;
+                }
+            }
+            if (next == Move.NONE) {
+                break;
+            }
+            line.add(Move.toText(next));
+            board.makeMove(next);
+            played[line.size() - 1] = next;
+        }
+
+        for (int i = line.size() - 1; i >= 0; i--) {
+            board.unmakeMove(played[i]);
+        }
+        return line;
+    }
+
+    /**
+     * Gera os movimentos legais da equipa a jogar (as promoções já vêm expandidas nas quatro peças).
+     */
+    private int[] generateMoves() {
+        int[] moves = new int[EngineBoard.MAX_MOVES];
+        return Arrays.copyOf(moves, board.generateLegalMoves(moves));
+    }
+}
@@ -0,0 +1,427 @@
+package pt.isec.pa.chess.model.engine;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Motor alternativo baseado em Monte Carlo Tree Search com seleção UCT.
+ * Várias threads pesquisam a mesma árvore em paralelo usando "virtual loss": a visita é
+ * contada logo na descida, antes de se conhecer o resultado, o que afasta as outras threads
+ * do mesmo caminho. Os nós vivem em arrays primitivos reutilizados (NodePool) e a árvore é
+ * reaproveitada entre lances através de advance().
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see EngineBoard
+ */
+public final class MctsEngine {
+    /** Capacidade de nós por omissão */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+    /** Memória ocupada por cada nó de capacidade (dois pools de 6 ints e o mapa de cópia) */
+    public static final int BYTES_PER_NODE = 13 * Integer.BYTES;
+
+    private static final double EXPLORATION = 1.41;
+    private static final int MAX_PLAYOUT_PLIES = 200;
+    private static final int MAX_TREE_DEPTH = 256;
+    private static final int DRAW = -1;
+    /** Vantagem (em centipeões) a partir da qual um playout interrompido conta como vitória */
+    private static final int PLAYOUT_WIN_MARGIN = 300;
+
+    private static final int UNEXPANDED = 0;
+    private static final int EXPANDING = 1;
+    private static final int EXPANDED = 2;
+
+    /**
+     * Conjunto de arrays paralelos que guardam os nós da árvore. Os filhos de um nó ocupam
+     * um bloco contíguo que começa em firstChild. O score é guardado em meios pontos
+     * (vitória = 2, empate = 1) do ponto de vista de quem jogou o movimento do nó.
+     */
+    private static final class NodePool {
+        final int[] firstChild;
+        final int[] childCount;
+        final int[] move;
+        final AtomicIntegerArray visits;
+        final AtomicIntegerArray score;
+        final AtomicIntegerArray state;
+        final AtomicInteger size;
+
+        NodePool(int capacity) {
+            firstChild = new int[capacity];
+            childCount = new int[capacity];
+            move = new int[capacity];
+            visits = new AtomicIntegerArray(capacity);
+            score = new AtomicIntegerArray(capacity);
+            state = new AtomicIntegerArray(capacity);
+            size = new AtomicInteger();
+        }
+
+        int capacity() {
+            return move.length;
+        }
+
+        void init(int node, int nodeMove) {
+            move[node] = nodeMove;
+            firstChild[node] = 0;
+            childCount[node] = 0;
+            visits.set(node, 0);
+            score.set(node, 0);
+            state.set(node, UNEXPANDED);
+        }
+
+        void copyNode(NodePool from, int src, int dst) {
+            move[dst] = from.move[src];
+            visits.set(dst, from.visits.get(src));
+            score.set(dst, from.score.get(src));
+            firstChild[dst] = 0;
+            childCount[dst] = 0;
+            int st = from.state.get(src);
+            state.set(dst, st == EXPANDED && from.childCount[src] == 0 ? EXPANDED : UNEXPANDED);
+        }
+    }
+
+    private final int threads;
+    private NodePool pool;
+    private NodePool spare;
+    private final int[] copyMap;
+    private EngineBoard rootBoard;
+    private volatile boolean stopped;
+    private volatile boolean full;
+
+    /**
+     * Cria um motor MCTS com a capacidade de nós por omissão.
+     * @param threads Número de threads de pesquisa
+     */
+    public MctsEngine(int threads) {
+        this(threads, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Cria um motor MCTS.
+     * @param threads Número de threads de pesquisa
+     * @param capacity Número máximo de nós da árvore
+     */
+    public MctsEngine(int threads, int capacity) {
+        this.threads = Math.max(1, threads);
+        this.pool = new NodePool(capacity);
+        this.spare = new NodePool(capacity);
+        this.copyMap = new int[capacity];
+        setPosition(EngineBoard.startPosition());
+    }
+
+    /**
+     * Define uma nova posição de raiz e descarta a árvore atual.
+     * @param board Posição a analisar (é copiada)
+     */
+    public void setPosition(EngineBoard board) {
+        rootBoard = board.copy();
+        pool.size.set(1);
+        pool.init(0, Move.NONE);
+        full = false;
+    }
+
+    /**
+     * Avança a raiz com um movimento jogado, reaproveitando a subárvore correspondente.
+     * Deve ser chamado entre pesquisas, nunca durante uma.
+     * @param move Movimento jogado na posição de raiz
+     */
+    public void advance(int move) {
+        int child = -1;
+        if (pool.state.get(0) == EXPANDED) {
+            int first = pool.firstChild[0];
+            for (int i = 0; i < pool.childCount[0]; i++) {
+                if (pool.move[first + i] == move) {
+                    child = first + i;
+                    break;
+                }
+            }
+        }
+
+        rootBoard.makeMove(move);
+        rootBoard = rootBoard.copy();
+        if (child < 0) {
+            setPosition(rootBoard);
+            return;
+        }
+        compactFrom(child);
+    }
+
+    /**
+     * Copia a subárvore com raiz em node para o pool de reserva, por largura, e troca os pools.
+     */
+    private void compactFrom(int node) {
+        NodePool from = pool;
+        NodePool to = spare;
+        int size = 1;
+        to.copyNode(from, node, 0);
+        to.move[0] = Move.NONE;
+        copyMap[0] = node;
+
+        for (int i = 0; i < size; i++) {
+            int src = copyMap[i];
+            int count = from.childCount[src];
+            if (from.state.get(src) != EXPANDED || count == 0 || size + count > to.capacity()) {
+                continue;
+            }
+            int first = from.firstChild[src];
+            to.firstChild[i] = size;
+            to.childCount[i] = count;
+            to.state.set(i, EXPANDED);
+            for (int c = 0; c < count; c++) {
+                to.copyNode(from, first + c, size);
+                copyMap[size++] = first + c;
+            }
+        }
+
+        to.size.set(size);
+        spare = from;
+        pool = to;
+        full = size >= to.capacity();
+    }
+
+    /**
+     * Pesquisa a posição de raiz durante um tempo ou número de iterações.
+     * @param millis Tempo máximo em milissegundos (0 para ilimitado)
+     * @param maxIterations Número máximo de iterações somando todas as threads (0 para ilimitado)
+     * @return Melhor movimento (o filho da raiz mais visitado), ou Move.NONE se não houver movimentos
+     */
+    public int search(long millis, long maxIterations) {
+        stopped = false;
+        long deadline = millis > 0 ? System.currentTimeMillis() + millis : Long.MAX_VALUE;
+        AtomicInteger iterations = new AtomicInteger();
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            long seed = System.nanoTime() + t;
+            workers[t] = new Thread(() -> {
+                EngineBoard board = new EngineBoard();
+                int[] moves = new int[EngineBoard.MAX_MOVES];
+                int[] path = new int[MAX_TREE_DEPTH + 2];
+                SplittableRandom random = new SplittableRandom(seed);
+                Evaluator evaluator = new Evaluator();
+                while (!stopped && System.currentTimeMillis() < deadline
+                        && (maxIterations <= 0 || iterations.getAndIncrement() < maxIterations)) {
+                    iterate(board, moves, path, random, evaluator);
+                }
+            }, "mcts-" + t);
+            workers[t].start();
+        }
+
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                stopped = true;
+                Thread.currentThread().interrupt();
+            }
+        }
+        return getBestMove();
+    }
+
+    /**
+     * Pede às threads de pesquisa que terminem assim que possível.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Obtém o movimento da raiz com mais visitas.
+     * @return Melhor movimento, ou Move.NONE se a raiz não tiver filhos
+     */
+    public int getBestMove() {
+        NodePool p = pool;
+        if (p.state.get(0) != EXPANDED) return Move.NONE;
+        int best = Move.NONE;
+        int bestVisits = -1;
+        int first = p.firstChild[0];
+        for (int i = 0; i < p.childCount[0]; i++) {
+            int v = p.visits.get(first + i);
+            if (v > bestVisits) {
+                bestVisits = v;
+                best = p.move[first + i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Obtém a pontuação esperada do melhor movimento da raiz, do ponto de vista de quem joga.
+     * Pode ser chamado durante uma pesquisa.
+     * @return Valor entre 0 (derrota) e 1 (vitória), ou 0.5 se a raiz não tiver filhos visitados
+     */
+    public double getBestScore() {
+        NodePool p = pool;
+        if (p.state.get(0) != EXPANDED) return 0.5;
+        int best = -1;
+        int bestVisits = 0;
+        int first = p.firstChild[0];
+        for (int i = 0; i < p.childCount[0]; i++) {
+            int v = p.visits.get(first + i);
+            if (v > bestVisits) {
+                bestVisits = v;
+                best = first + i;
+            }
+        }
+        return best < 0 ? 0.5 : p.score.get(best) / (2.0 * bestVisits);
+    }
+
+    /**
+     * Obtém a variante principal: a partir da raiz, segue sempre o filho mais visitado.
+     * Pode ser chamado durante uma pesquisa.
+     * @param maxLength Número máximo de movimentos
+     * @return Movimentos da variante principal (vazio se a raiz não tiver filhos)
+     */
+    public int[] getPrincipalVariation(int maxLength) {
+        NodePool p = pool;
+        int[] line = new int[maxLength];
+        int length = 0;
+        int node = 0;
+        while (length < maxLength && p.state.get(node) == EXPANDED && p.childCount[node] > 0) {
+            int first = p.firstChild[node];
+            int best = -1;
+            int bestVisits = 0;
+            for (int i = 0; i < p.childCount[node]; i++) {
+                int v = p.visits.get(first + i);
+                if (v > bestVisits) {
+                    bestVisits = v;
+                    best = first + i;
+                }
+            }
+            if (best < 0) break;
+            line[length++] = p.move[best];
+            node = best;
+        }
+        return Arrays.copyOf(line, length);
+    }
+
+    /**
+     * Obtém o número de visitas da raiz.
+     * @return Número de playouts que passaram pela raiz
+     */
+    public int getRootVisits() {
+        return pool.visits.get(0);
+    }
+
+    /**
+     * Obtém o número de nós ocupados na árvore.
+     * @return Número de nós
+     */
+    public int getTreeSize() {
+        return Math.min(pool.size.get(), pool.capacity());
+    }
+
+    /**
+     * Obtém o número máximo de nós da árvore.
+     * @return Capacidade
+     */
+    public int getCapacity() {
+        return pool.capacity();
+    }
+
+    // ---------- iteração ----------
+
+    private void iterate(EngineBoard board, int[] moves, int[] path, SplittableRandom random, Evaluator evaluator) {
+        NodePool p = pool;
+        board.copyFrom(rootBoard);
+        int rootSide = board.getSideToMove();
+
+        int node = 0;
+        int depth = 0;
+        path[0] = node;
+        p.visits.incrementAndGet(node);
+
+        while (p.state.get(node) == EXPANDED && p.childCount[node] > 0 && depth < MAX_TREE_DEPTH) {
+            node = selectChild(p, node);
+            board.makeMove(p.move[node]);
+            p.visits.incrementAndGet(node);
+            path[++depth] = node;
+        }
+
+        if (p.state.get(node) == UNEXPANDED && !full && p.state.compareAndSet(node, UNEXPANDED, EXPANDING)) {
+            if (expand(p, node, board, moves) && p.childCount[node] > 0) {
+                node = p.firstChild[node] + random.nextInt(p.childCount[node]);
+                board.makeMove(p.move[node]);
+                p.visits.incrementAndGet(node);
+                path[++depth] = node;
+            }
+        }
+
+        int winner = playout(board, moves, random, evaluator);
+        for (int d = 0; d <= depth; d++) {
+            int mover = rootSide ^ (d & 1) ^ 1;
+            int points = winner == DRAW ? 1 : (winner == mover ? 2 : 0);
+            if (points > 0) {
+                p.score.addAndGet(path[d], points);
+            }
+        }
+    }
+
+    private int selectChild(NodePool p, int node) {
+        int first = p.firstChild[node];
+        int count = p.childCount[node];
+        double logParent = Math.log(Math.max(1, p.visits.get(node)));
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+
+        for (int c = first; c < first + count; c++) {
+            int v = p.visits.get(c);
+            if (v == 0) {
+                return c;
+            }
+            double value = p.score.get(c) / (2.0 * v) + EXPLORATION * Math.sqrt(logParent / v);
+            if (value > bestValue) {
+                bestValue = value;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Cria os filhos de um nó. Só a thread que ganhou o compareAndSet chega aqui.
+     * @return false se o pool estiver cheio e o nó continuar como folha
+     */
+    private boolean expand(NodePool p, int node, EngineBoard board, int[] moves) {
+        int count = board.generateLegalMoves(moves);
+        int first = p.size.getAndAdd(count);
+        if (first + count > p.capacity()) {
+            full = true;
+            p.state.set(node, UNEXPANDED);
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            p.init(first + i, moves[i]);
+        }
+        p.firstChild[node] = first;
+        p.childCount[node] = count;
+        p.state.set(node, EXPANDED);
+        return true;
+    }
+
+    /**
+     * Joga movimentos aleatórios até ao fim do jogo ou até ao limite de meios-lances.
+     * Se o limite for atingido, o Evaluator decide se alguma equipa tem vantagem decisiva.
+     * @return Equipa vencedora (EngineBoard.WHITE ou BLACK) ou DRAW
+     */
+    private int playout(EngineBoard board, int[] moves, SplittableRandom random, Evaluator evaluator) {
+        for (int ply = 0; ply < MAX_PLAYOUT_PLIES; ply++) {
+            int count = board.generateLegalMoves(moves);
+            if (count == 0) {
+                int side = board.getSideToMove();
+                return board.isInCheck(side) ? side ^ 1 : DRAW;
+            }
+            if (board.getHalfmoveClock() >= 100 || board.isInsufficientMaterial()) {
+                return DRAW;
+            }
+            board.makeMove(moves[random.nextInt(count)]);
+        }
+        int score = evaluator.evaluate(board);
+        if (Math.abs(score) < PLAYOUT_WIN_MARGIN) {
+            return DRAW;
+        }
+        return score > 0 ? board.getSideToMove() : board.getSideToMove() ^ 1;
+    }
+}
@@ -0,0 +1,59 @@
+package pt.isec.pa.chess.model.engine;
+
+/**
+ * Codificação compacta de movimentos num int, usada pelo EngineBoard e pelos motores de pesquisa.
+ * Bits 0-5: casa de origem, bits 6-11: casa de destino, bits 12-14: tipo da promoção, bits 15+: flags.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see EngineBoard
+ */
+public final class Move {
+    /** Valor que representa a ausência de movimento */
+    public static final int NONE = 0;
+    /** Captura en passant */
+    public static final int FLAG_EN_PASSANT = 1;
+    /** Roque (pequeno ou grande) */
+    public static final int FLAG_CASTLE = 2;
+    /** Avanço de duas casas de um peão */
+    public static final int FLAG_DOUBLE_PUSH = 4;
+
+    private Move() {
+        //construtor privado que impede alguem de criar uma instacia desta classe
+    }
+
+    public static int encode(int from, int to, int promotion, int flags) {
+        return from | (to << 6) | (promotion << 12) | (flags << 15);
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    public static int promotion(int move) {
+        return (move >>> 12) & 7;
+    }
+
+    public static int flags(int move) {
+        return move >>> 15;
+    }
+
+    /**
+     * Converte um movimento para texto no formato usado por ChessGame ("E2E4", "E7E8Q").
+     * @param move Movimento codificado
+     * @return Texto do movimento
+     */
+    public static String toText(int move) {
+        StringBuilder sb = new StringBuilder(5);
+        sb.append(EngineBoard.squareName(from(move))).append(EngineBoard.squareName(to(move)));
+        if (promotion(move) != EngineBoard.EMPTY) {
+            sb.append(EngineBoard.pieceLetter(promotion(move)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,152 @@
+package pt.isec.pa.chess.model.engine;
+
+import pt.isec.pa.chess.model.ChessGame;
+import pt.isec.pa.chess.model.MoveResult;
+import pt.isec.pa.chess.model.data.Board;
+import pt.isec.pa.chess.model.data.PieceTypeEnum;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Um jogo lido de (ou a escrever para) um ficheiro PGN: as tags, os movimentos já resolvidos
+ * contra as regras e o resultado.
+ *
+ * @param tags Tags do cabeçalho, pela ordem do ficheiro (por exemplo "White", "Black", "FEN")
+ * @param moves Movimentos codificados (classe Move), a partir da posição inicial do jogo
+ * @param result Resultado ("1-0", "0-1", "1/2-1/2" ou "*")
+ * @param error Descrição do primeiro erro encontrado, ou null se o jogo foi lido sem erros;
+ *              os movimentos anteriores ao erro são mantidos
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see PgnReader
+ * @see PgnWriter
+ */
+public record PgnGame(Map<String, String> tags, int[] moves, String result, String error) {
+    public static final String WHITE_WINS = "1-0";
+    public static final String BLACK_WINS = "0-1";
+    public static final String DRAW = "1/2-1/2";
+    public static final String UNKNOWN = "*";
+
+    /**
+     * Cria um PgnGame a partir do histórico de um ChessGame (até ao meio-lance atual).
+     * @param game Jogo de origem
+     * @return Jogo PGN equivalente, ou null se algum movimento não puder ser escrito
+     *         (por exemplo, uma promoção cuja peça ainda não foi escolhida)
+     */
+    public static PgnGame of(ChessGame game) {
+        String startFen = game.getStartFen();
+        EngineBoard board = new EngineBoard();
+        Fen.parse(startFen, board);
+
+        List<String> history = game.getMoveHistory();
+        int[] moves = new int[history.size()];
+        for (int i = 0; i < moves.length; i++) {
+            String text = history.get(i);
+            moves[i] = board.parseMove(text);
+            // parseMove completa "E7E8" com uma dama: no histórico, isso é uma promoção pendente
+            if (moves[i] == Move.NONE || (Move.promotion(moves[i]) != EngineBoard.EMPTY && text.length() == 4)) {
+                return null;
+            }
+            board.makeMove(moves[i]);
+        }
+
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("Event", "?");
+        tags.put("Site", "?");
+        tags.put("Date", "????.??.??");
+        tags.put("Round", "?");
+        tags.put("White", game.getPlayerWhite() == null ? "?" : game.getPlayerWhite());
+        tags.put("Black", game.getPlayerBlack() == null ? "?" : game.getPlayerBlack());
+        String result = resultOf(board);
+        tags.put("Result", result);
+        if (!startFen.equals(Fen.START_POSITION)) {
+            tags.put("SetUp", "1");
+            tags.put("FEN", startFen);
+        }
+        return new PgnGame(tags, moves, result, null);
+    }
+
+    /**
+     * Obtém o resultado de uma posição final: mate, empate por afogamento ou material, ou "*".
+     * @param board Posição a analisar
+     * @return Resultado em notação PGN
+     */
+    public static String resultOf(EngineBoard board) {
+        if (board.generateLegalMoves(new int[EngineBoard.MAX_MOVES]) == 0) {
+            if (!board.isInCheck(board.getSideToMove())) return DRAW;
+            return board.getSideToMove() == EngineBoard.WHITE ? BLACK_WINS : WHITE_WINS;
+        }
+        return board.isInsufficientMaterial() ? DRAW : UNKNOWN;
+    }
+
+    /**
+     * Obtém a posição inicial do jogo em FEN (a tag "FEN" ou a posição inicial do xadrez).
+     * @return Posição inicial em FEN
+     */
+    public String getStartFen() {
+        return tags.getOrDefault("FEN", Fen.START_POSITION);
+    }
+
+    /**
+     * Obtém o valor de uma tag.
+     * @param name Nome da tag
+     * @return Valor, ou null se não existir
+     */
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    public boolean isValid() {
+        return error == null;
+    }
+
+    /**
+     * Obtém os movimentos no formato usado por ChessGame ("E2E4", "E7E8Q").
+     * @return Lista de movimentos
+     */
+    public List<String> getMoveTexts() {
+        List<String> texts = new ArrayList<>(moves.length);
+        for (int move : moves) {
+            texts.add(Move.toText(move));
+        }
+        return texts;
+    }
+
+    /**
+     * Reproduz o jogo num novo ChessGame, com os nomes dos jogadores das tags.
+     * @return O jogo, ou null se a posição inicial ou algum movimento não for aceite
+     */
+    public ChessGame toChessGame() {
+        ChessGame game = new ChessGame(new Board());
+        game.setSilent(true);
+        if (!game.importFen(getStartFen())) {
+            return null;
+        }
+        for (int move : moves) {
+            char colFrom = EngineBoard.column(Move.from(move));
+            int rowFrom = EngineBoard.row(Move.from(move));
+            char colTo = EngineBoard.column(Move.to(move));
+            int rowTo = EngineBoard.row(Move.to(move));
+            MoveResult result = game.executeMove(colFrom, rowFrom, colTo, rowTo);
+            if (result == MoveResult.VALID_PROMOTION) {
+                game.pawnPromotion(colTo, rowTo, switch (Move.promotion(move)) {
+                    case EngineBoard.KNIGHT -> PieceTypeEnum.KNIGHT;
+                    case EngineBoard.BISHOP -> PieceTypeEnum.BISHOP;
+                    case EngineBoard.ROOK -> PieceTypeEnum.ROOK;
+                    default -> PieceTypeEnum.QUEEN;
+                });
+            } else if (result == MoveResult.INVALID) {
+                return null;
+            }
+        }
+        game.setPlayerWhite(getTag("White"));
+        game.setPlayerBlack(getTag("Black"));
+        game.setSilent(false);
+        return game;
+    }
+}
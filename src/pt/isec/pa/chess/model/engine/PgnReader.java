@@ -0,0 +1,218 @@
+package pt.isec.pa.chess.model.engine;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Leitor de ficheiros PGN em streaming: devolve um jogo de cada vez, lendo apenas o texto
+ * desse jogo, pelo que a memória usada não depende do tamanho do ficheiro.
+ * Os movimentos SAN são resolvidos contra as regras à medida que são lidos; comentários,
+ * variantes e NAGs são ignorados.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see PgnGame
+ * @see San
+ */
+public class PgnReader implements Closeable {
+    private final Reader in;
+    private final StringBuilder token;
+    private final EngineBoard start;
+    private final EngineBoard board;
+    private final int[] moveBuffer;
+    private int[] moves;
+    private int pushedBack;
+    private long gamesRead;
+
+    /**
+     * Cria um leitor sobre um Reader (é usado um BufferedReader se ainda não o for).
+     * @param in Origem do texto
+     */
+    public PgnReader(Reader in) {
+        this.in = in instanceof BufferedReader ? in : new BufferedReader(in);
+        this.token = new StringBuilder(32);
+        this.start = new EngineBoard();
+        this.board = new EngineBoard();
+        this.moveBuffer = new int[EngineBoard.MAX_MOVES];
+        this.moves = new int[256];
+        this.pushedBack = -2;
+    }
+
+    /**
+     * Lê o próximo jogo do ficheiro.
+     * @return O jogo, ou null se não houver mais jogos
+     * @throws IOException Se ocorrer um erro de leitura
+     */
+    public PgnGame next() throws IOException {
+        Map<String, String> tags = new LinkedHashMap<>();
+        int count = 0;
+        boolean inMoves = false;
+        String result = null;
+        String error = null;
+
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                if (tags.isEmpty() && !inMoves) return null;
+                break;
+            }
+            if (Character.isWhitespace(c)) continue;
+
+            if (c == '[') {
+                if (inMoves) {
+                    pushedBack = c;
+                    break;
+                }
+                readTag(tags);
+            } else if (c == '{') {
+                skipUntil('}');
+            } else if (c == ';' || c == '%') {
+                skipUntil('\n');
+            } else if (c == '(') {
+                skipVariation();
+            } else if (c == '$') {
+                readToken(c);
+            } else {
+                if (!inMoves) {
+                    inMoves = true;
+                    String fen = tags.get("FEN");
+                    if (fen == null) {
+                        start.copyFrom(EngineBoard.startPosition());
+                    } else if (!Fen.parse(fen, start)) {
+                        error = "FEN inválida: " + fen;
+                    }
+                    board.copyFrom(start);
+                }
+                readToken(c);
+                if (isResult(token)) {
+                    result = token.toString();
+                    break;
+                }
+                token.delete(0, skipMoveNumber(token));
+                if (token.isEmpty() || error != null) continue;
+
+                int move = San.parse(board, token, moveBuffer);
+                if (move == Move.NONE) {
+                    error = "Movimento inválido no meio-lance " + (count + 1) + ": " + token;
+                    continue;
+                }
+                if (count == moves.length) {
+                    moves = Arrays.copyOf(moves, count * 2);
+                }
+                moves[count++] = move;
+                board.makeMove(move);
+            }
+        }
+
+        gamesRead++;
+        if (result == null) {
+            result = tags.getOrDefault("Result", PgnGame.UNKNOWN);
+        }
+        return new PgnGame(tags, Arrays.copyOf(moves, count), result, error);
+    }
+
+    /**
+     * Obtém o número de jogos lidos até ao momento.
+     * @return Número de jogos
+     */
+    public long getGamesRead() {
+        return gamesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private int read() throws IOException {
+        if (pushedBack != -2) {
+            int c = pushedBack;
+            pushedBack = -2;
+            return c;
+        }
+        return in.read();
+    }
+
+    private void readTag(Map<String, String> tags) throws IOException {
+        token.setLength(0);
+        int c = read();
+        while (c >= 0 && Character.isWhitespace(c)) c = read();
+        while (c >= 0 && !Character.isWhitespace(c) && c != '"' && c != ']') {
+            token.append((char) c);
+            c = read();
+        }
+        String name = token.toString();
+        while (c >= 0 && c != '"' && c != ']') c = read();
+
+        token.setLength(0);
+        if (c == '"') {
+            c = read();
+            while (c >= 0 && c != '"') {
+                if (c == '\\') c = read();
+                if (c >= 0) token.append((char) c);
+                c = read();
+            }
+            while (c >= 0 && c != ']') c = read();
+        }
+        if (!name.isEmpty()) {
+            tags.put(name, token.toString());
+        }
+    }
+
+    private void readToken(int first) throws IOException {
+        token.setLength(0);
+        token.append((char) first);
+        int c = read();
+        while (c >= 0 && !Character.isWhitespace(c) && "{}()[];$".indexOf(c) < 0) {
+            token.append((char) c);
+            c = read();
+        }
+        if (c >= 0 && !Character.isWhitespace(c)) {
+            pushedBack = c;
+        }
+    }
+
+    private void skipUntil(int end) throws IOException {
+        int c = read();
+        while (c >= 0 && c != end) c = read();
+    }
+
+    private void skipVariation() throws IOException {
+        int depth = 1;
+        while (depth > 0) {
+            int c = read();
+            if (c < 0) return;
+            if (c == '(') depth++;
+            else if (c == ')') depth--;
+            else if (c == '{') skipUntil('}');
+            else if (c == ';') skipUntil('\n');
+        }
+    }
+
+    private static boolean isResult(CharSequence text) {
+        return contentEquals(text, PgnGame.WHITE_WINS) || contentEquals(text, PgnGame.BLACK_WINS)
+                || contentEquals(text, PgnGame.DRAW) || contentEquals(text, PgnGame.UNKNOWN);
+    }
+
+    private static boolean contentEquals(CharSequence text, String value) {
+        return text.length() == value.length() && value.contentEquals(text);
+    }
+
+    /**
+     * Obtém o índice onde começa o movimento, depois de um número de lance ("12." ou "12...").
+     */
+    private static int skipMoveNumber(CharSequence text) {
+        int i = 0;
+        while (i < text.length() && Character.isDigit(text.charAt(i))) i++;
+        if (i == text.length()) return i;
+        if (i == 0 || text.charAt(i) != '.') return 0;
+        while (i < text.length() && text.charAt(i) == '.') i++;
+        return i;
+    }
+}
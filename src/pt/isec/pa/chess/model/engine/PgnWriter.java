@@ -0,0 +1,98 @@
+package pt.isec.pa.chess.model.engine;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Escritor de ficheiros PGN: escreve um jogo de cada vez, com as tags e os movimentos em SAN
+ * (linhas de no máximo 80 caracteres, como recomenda a norma).
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see PgnGame
+ * @see San
+ */
+public class PgnWriter implements Closeable, Flushable {
+    private static final int MAX_LINE = 80;
+
+    private final Writer out;
+    private final EngineBoard board;
+    private final StringBuilder line;
+    private final StringBuilder word;
+
+    /**
+     * Cria um escritor sobre um Writer.
+     * @param out Destino do texto
+     */
+    public PgnWriter(Writer out) {
+        this.out = out;
+        this.board = new EngineBoard();
+        this.line = new StringBuilder(MAX_LINE + 16);
+        this.word = new StringBuilder(16);
+    }
+
+    /**
+     * Escreve um jogo, seguido de uma linha em branco.
+     * @param game Jogo a escrever
+     * @throws IOException Se ocorrer um erro de escrita ou a posição inicial for inválida
+     */
+    public void write(PgnGame game) throws IOException {
+        if (!Fen.parse(game.getStartFen(), board)) {
+            throw new IOException("FEN inválida: " + game.getStartFen());
+        }
+
+        for (Map.Entry<String, String> tag : game.tags().entrySet()) {
+            out.write('[');
+            out.write(tag.getKey());
+            out.write(" \"");
+            out.write(tag.getValue().replace("\\", "\\\\").replace("\"", "\\\""));
+            out.write("\"]\n");
+        }
+        out.write('\n');
+
+        line.setLength(0);
+        for (int i = 0; i < game.moves().length; i++) {
+            int move = game.moves()[i];
+            word.setLength(0);
+            if (board.getSideToMove() == EngineBoard.WHITE) {
+                word.append(board.getFullmoveNumber()).append(". ");
+            } else if (i == 0) {
+                word.append(board.getFullmoveNumber()).append("... ");
+            }
+            San.write(board, move, word);
+            board.makeMove(move);
+            append(word);
+        }
+        word.setLength(0);
+        word.append(game.result());
+        append(word);
+        out.write(line.toString());
+        out.write("\n\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void append(CharSequence text) throws IOException {
+        if (!line.isEmpty() && line.length() + 1 + text.length() > MAX_LINE) {
+            out.write(line.toString());
+            out.write('\n');
+            line.setLength(0);
+        }
+        if (!line.isEmpty()) {
+            line.append(' ');
+        }
+        line.append(text);
+    }
+}
@@ -0,0 +1,307 @@
+package pt.isec.pa.chess.model.engine;
+
+import pt.isec.pa.chess.model.ChessGame;
+
+import java.util.Arrays;
+
+/**
+ * Posição de xadrez imutável, que partilha estrutura com a posição de onde foi derivada.
+ * As casas estão guardadas em oito arrays, um por linha; apply() copia apenas as linhas
+ * alteradas pelo movimento (normalmente uma ou duas) e reutiliza as restantes.
+ * Como nunca é modificada, uma Position pode ser partilhada entre threads sem sincronização,
+ * por exemplo entregue a uma thread de análise enquanto o jogo continua.
+ * <p>
+ * As funções estáticas legalMoves, apply e status são puras: não alteram a posição e não
+ * dependem de estado partilhado, pelo que muitas threads podem analisar as mesmas posições ao
+ * mesmo tempo sem locks nem cópias defensivas (ao contrário de ChessGame e Board, cujas peças
+ * são movidas durante a verificação da legalidade). Cada thread usa um EngineBoard próprio
+ * como área de trabalho.
+ * <p>
+ * As peças e os movimentos seguem a codificação do EngineBoard e da classe Move.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see EngineBoard
+ */
+public final class Position {
+    /**
+     * Estado de uma posição.
+     */
+    public enum Status {
+        PLAYING, CHECK, CHECKMATE, STALEMATE, FIFTY_MOVES, INSUFFICIENT_MATERIAL;
+
+        /**
+         * Verifica se o jogo terminou nesta posição.
+         * @return true para xeque-mate ou empate
+         */
+        public boolean isGameOver() {
+            return this != PLAYING && this != CHECK;
+        }
+    }
+
+    private static final ThreadLocal<EngineBoard> SCRATCH = ThreadLocal.withInitial(EngineBoard::new);
+
+    private final byte[][] ranks;
+    private final int sideToMove;
+    private final int castling;
+    private final int epSquare;
+    private final int halfmoveClock;
+    private final int fullmoveNumber;
+
+    private Position(byte[][] ranks, int sideToMove, int castling, int epSquare, int halfmoveClock, int fullmoveNumber) {
+        this.ranks = ranks;
+        this.sideToMove = sideToMove;
+        this.castling = castling;
+        this.epSquare = epSquare;
+        this.halfmoveClock = halfmoveClock;
+        this.fullmoveNumber = fullmoveNumber;
+    }
+
+    /**
+     * Cria a posição inicial do xadrez.
+     * @return Posição inicial
+     */
+    public static Position startPosition() {
+        return of(EngineBoard.startPosition());
+    }
+
+    /**
+     * Cria uma posição com o estado atual de um ChessGame.
+     * @param game Jogo de origem
+     * @return Posição equivalente
+     */
+    public static Position fromGame(ChessGame game) {
+        return of(EngineBoard.fromGame(game));
+    }
+
+    /**
+     * Cria uma posição a partir de uma FEN.
+     * @param fen Posição em FEN
+     * @return Posição, ou null se a FEN não for válida
+     */
+    public static Position fromFen(String fen) {
+        EngineBoard board = new EngineBoard();
+        return fen != null && Fen.parse(fen, board) ? of(board) : null;
+    }
+
+    /**
+     * Cria uma posição a partir de um EngineBoard (o tabuleiro não fica ligado à posição).
+     * @param board Tabuleiro de origem
+     * @return Posição equivalente
+     */
+    public static Position of(EngineBoard board) {
+        byte[][] ranks = new byte[8][8];
+        for (int sq = 0; sq < 64; sq++) {
+            ranks[sq >> 3][sq & 7] = (byte) board.getPiece(sq);
+        }
+        return new Position(ranks, board.getSideToMove(), board.getCastling(), board.getEpSquare(),
+                board.getHalfmoveClock(), board.getFullmoveNumber());
+    }
+
+    /**
+     * Aplica um movimento e devolve a nova posição; esta posição não é alterada.
+     * O movimento não é validado e deve ser legal nesta posição.
+     * @param move Movimento codificado (ver Move)
+     * @return Posição resultante
+     */
+    public Position apply(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int promotion = Move.promotion(move);
+        int flags = Move.flags(move);
+        int piece = getPiece(from);
+        int captured = getPiece(to);
+        int side = sideToMove;
+        byte[][] next = ranks.clone();
+
+        if ((flags & Move.FLAG_EN_PASSANT) != 0) {
+            set(next, to + (side == EngineBoard.WHITE ? -8 : 8), EngineBoard.EMPTY);
+        }
+        set(next, to, promotion != EngineBoard.EMPTY ? promotion | (side == EngineBoard.WHITE ? 0 : EngineBoard.BLACK_BIT) : piece);
+        set(next, from, EngineBoard.EMPTY);
+
+        if ((flags & Move.FLAG_CASTLE) != 0) {
+            int rookFrom = to > from ? from + 3 : from - 4;
+            int rookTo = to > from ? from + 1 : from - 1;
+            set(next, rookTo, getPiece(rookFrom));
+            set(next, rookFrom, EngineBoard.EMPTY);
+        }
+
+        return new Position(next, side ^ 1,
+                castling & EngineBoard.castleMask(from) & EngineBoard.castleMask(to),
+                (flags & Move.FLAG_DOUBLE_PUSH) != 0 ? (from + to) / 2 : -1,
+                EngineBoard.pieceType(piece) == EngineBoard.PAWN || captured != EngineBoard.EMPTY ? 0 : halfmoveClock + 1,
+                side == EngineBoard.BLACK ? fullmoveNumber + 1 : fullmoveNumber);
+    }
+
+    /**
+     * Obtém os movimentos legais de uma posição.
+     * @param position Posição
+     * @return Movimentos legais (codificados como em Move), pela ordem do gerador
+     */
+    public static int[] legalMoves(Position position) {
+        EngineBoard board = SCRATCH.get();
+        position.copyTo(board);
+        int[] moves = new int[EngineBoard.MAX_MOVES];
+        return Arrays.copyOf(moves, board.generateLegalMoves(moves));
+    }
+
+    /**
+     * Valida e aplica um movimento, devolvendo a nova posição; a posição recebida não é alterada.
+     * Basta indicar a origem, o destino e a promoção (as flags são obtidas do movimento legal
+     * correspondente); numa promoção sem peça indicada o peão é promovido a rainha.
+     * @param position Posição
+     * @param move Movimento (classe Move)
+     * @return Posição resultante, ou null se o movimento não for legal
+     */
+    public static Position apply(Position position, int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int promotion = Move.promotion(move);
+        for (int legal : legalMoves(position)) {
+            if (Move.from(legal) != from || Move.to(legal) != to) {
+                continue;
+            }
+            int legalPromotion = Move.promotion(legal);
+            if (legalPromotion == promotion || (promotion == EngineBoard.EMPTY && legalPromotion == EngineBoard.QUEEN)) {
+                return position.apply(legal);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Obtém o estado de uma posição: xeque, xeque-mate ou empate (afogamento, regra dos 50
+     * lances, material insuficiente). A repetição de posições depende do histórico e não é
+     * considerada.
+     * @param position Posição
+     * @return Estado da posição
+     */
+    public static Status status(Position position) {
+        EngineBoard board = SCRATCH.get();
+        position.copyTo(board);
+        boolean inCheck = board.isInCheck(position.sideToMove);
+        if (board.generateLegalMoves(new int[EngineBoard.MAX_MOVES]) == 0) {
+            return inCheck ? Status.CHECKMATE : Status.STALEMATE;
+        }
+        if (position.halfmoveClock >= 100) {
+            return Status.FIFTY_MOVES;
+        }
+        if (board.isInsufficientMaterial()) {
+            return Status.INSUFFICIENT_MATERIAL;
+        }
+        return inCheck ? Status.CHECK : Status.PLAYING;
+    }
+
+    /**
+     * Altera uma casa em next, copiando a linha apenas se ainda for partilhada com esta posição.
+     */
+    private void set(byte[][] next, int sq, int piece) {
+        int rank = sq >> 3;
+        if (next[rank] == ranks[rank]) {
+            next[rank] = ranks[rank].clone();
+        }
+        next[rank][sq & 7] = (byte) piece;
+    }
+
+    /**
+     * Copia esta posição para um EngineBoard, por exemplo para ser pesquisada por um motor.
+     * @param board Tabuleiro de destino (o conteúdo anterior é substituído)
+     */
+    public void copyTo(EngineBoard board) {
+        for (int sq = 0; sq < 64; sq++) {
+            board.setPiece(sq, getPiece(sq));
+        }
+        board.setSideToMove(sideToMove);
+        board.setCastling(castling);
+        board.setEpSquare(epSquare);
+        board.setHalfmoveClock(halfmoveClock);
+        board.setFullmoveNumber(fullmoveNumber);
+    }
+
+    /**
+     * Cria um EngineBoard com esta posição.
+     * @return Novo tabuleiro
+     */
+    public EngineBoard toEngineBoard() {
+        EngineBoard board = new EngineBoard();
+        copyTo(board);
+        return board;
+    }
+
+    /**
+     * Obtém a posição em FEN.
+     * @return Posição em FEN
+     */
+    public String toFen() {
+        EngineBoard board = SCRATCH.get();
+        copyTo(board);
+        return Fen.toString(board);
+    }
+
+    /**
+     * Conta as linhas do tabuleiro que esta posição partilha (a mesma instância) com outra.
+     * @param other Outra posição
+     * @return Número de linhas partilhadas (0-8)
+     */
+    public int sharedRanks(Position other) {
+        int shared = 0;
+        for (int r = 0; r < 8; r++) {
+            if (ranks[r] == other.ranks[r]) shared++;
+        }
+        return shared;
+    }
+
+    public int getPiece(int sq) {
+        return ranks[sq >> 3][sq & 7];
+    }
+
+    public int getSideToMove() {
+        return sideToMove;
+    }
+
+    public int getCastling() {
+        return castling;
+    }
+
+    public int getEpSquare() {
+        return epSquare;
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    /**
+     * Duas posições são iguais se tiverem as mesmas peças, a mesma equipa a jogar e os mesmos
+     * direitos de roque e en passant (os contadores de meios-lances não são comparados,
+     * como na regra da repetição).
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Position other)) return false;
+        if (sideToMove != other.sideToMove || castling != other.castling || epSquare != other.epSquare) {
+            return false;
+        }
+        for (int r = 0; r < 8; r++) {
+            if (ranks[r] != other.ranks[r] && !Arrays.equals(ranks[r], other.ranks[r])) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = sideToMove * 31 + castling;
+        hash = hash * 31 + epSquare;
+        for (byte[] rank : ranks) {
+            hash = hash * 31 + Arrays.hashCode(rank);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,217 @@
+package pt.isec.pa.chess.model.engine;
+
+/**
+ * Conversão entre movimentos codificados (classe Move) e a notação algébrica padrão (SAN)
+ * usada nos ficheiros PGN, por exemplo "Nf3", "exd5", "O-O", "e8=Q+".
+ * Ambas as conversões precisam da posição antes do movimento, para resolver ambiguidades
+ * e marcar xeques.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see PgnReader
+ * @see PgnWriter
+ */
+public final class San {
+    private static final String PIECE_CHARS = " PNBRQK";
+
+    private San() {
+        //construtor privado que impede alguem de criar uma instacia desta classe
+    }
+
+    /**
+     * Procura o movimento legal descrito por um texto SAN. Aceita as variações mais comuns:
+     * "0-0" em vez de "O-O", promoção sem "=", sufixos "+", "#", "!" e "?".
+     * @param board Posição antes do movimento
+     * @param san Texto do movimento
+     * @return Movimento codificado, ou Move.NONE se o texto não corresponder a exatamente um movimento legal
+     */
+    public static int parse(EngineBoard board, CharSequence san) {
+        return parse(board, san, new int[EngineBoard.MAX_MOVES]);
+    }
+
+    /**
+     * Igual a parse(board, san), usando um buffer de movimentos do chamador.
+     * @param board Posição antes do movimento
+     * @param san Texto do movimento
+     * @param moves Buffer com pelo menos EngineBoard.MAX_MOVES posições
+     * @return Movimento codificado, ou Move.NONE
+     */
+    public static int parse(EngineBoard board, CharSequence san, int[] moves) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        if (end < 2) {
+            return Move.NONE;
+        }
+
+        int count = board.generateLegalMoves(moves);
+
+        if (isCastle(san, end)) {
+            boolean queenSide = end >= 5;
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                if ((Move.flags(move) & Move.FLAG_CASTLE) != 0 && (Move.to(move) < Move.from(move)) == queenSide) {
+                    return move;
+                }
+            }
+            return Move.NONE;
+        }
+
+        int promotion = EngineBoard.EMPTY;
+        int typeChar = PIECE_CHARS.indexOf(san.charAt(end - 1));
+        if (typeChar > EngineBoard.PAWN && typeChar < EngineBoard.KING) {
+            promotion = typeChar;
+            end--;
+            if (end > 0 && san.charAt(end - 1) == '=') end--;
+        }
+        if (end < 2) {
+            return Move.NONE;
+        }
+
+        int to = squareAt(san, end - 2);
+        if (to < 0) {
+            return Move.NONE;
+        }
+
+        int start = 0;
+        int type = EngineBoard.PAWN;
+        int first = PIECE_CHARS.indexOf(san.charAt(0));
+        if (first > EngineBoard.PAWN) {
+            type = first;
+            start = 1;
+        }
+        int fromFile = -1;
+        int fromRank = -1;
+        for (int i = start; i < end - 2; i++) {
+            char c = san.charAt(i);
+            if (c >= 'a' && c <= 'h') fromFile = c - 'a';
+            else if (c >= '1' && c <= '8') fromRank = c - '1';
+            else if (c != 'x' && c != ':' && c != '-') return Move.NONE;
+        }
+
+        int found = Move.NONE;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int from = Move.from(move);
+            if (Move.to(move) != to
+                    || EngineBoard.pieceType(board.getPiece(from)) != type
+                    || Move.promotion(move) != promotion
+                    || (fromFile >= 0 && (from & 7) != fromFile)
+                    || (fromRank >= 0 && (from >> 3) != fromRank)) {
+                continue;
+            }
+            if (found != Move.NONE) {
+                return Move.NONE;
+            }
+            found = move;
+        }
+        return found;
+    }
+
+    /**
+     * Escreve um movimento em SAN.
+     * @param board Posição antes do movimento (fica inalterada)
+     * @param move Movimento legal nessa posição
+     * @param out Destino do texto
+     * @return O próprio out
+     */
+    public static StringBuilder write(EngineBoard board, int move, StringBuilder out) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int type = EngineBoard.pieceType(board.getPiece(from));
+        boolean capture = board.getPiece(to) != EngineBoard.EMPTY || (Move.flags(move) & Move.FLAG_EN_PASSANT) != 0;
+
+        if ((Move.flags(move) & Move.FLAG_CASTLE) != 0) {
+            out.append(to > from ? "O-O" : "O-O-O");
+        } else if (type == EngineBoard.PAWN) {
+            if (capture) {
+                out.append(file(from)).append('x');
+            }
+            appendSquare(out, to);
+            if (Move.promotion(move) != EngineBoard.EMPTY) {
+                out.append('=').append(EngineBoard.pieceLetter(Move.promotion(move)));
+            }
+        } else {
+            out.append(EngineBoard.pieceLetter(type));
+            appendDisambiguation(board, move, type, out);
+            if (capture) {
+                out.append('x');
+            }
+            appendSquare(out, to);
+        }
+
+        board.makeMove(move);
+        if (board.isInCheck(board.getSideToMove())) {
+            out.append(board.generateLegalMoves(new int[EngineBoard.MAX_MOVES]) == 0 ? '#' : '+');
+        }
+        board.unmakeMove(move);
+        return out;
+    }
+
+    /**
+     * Obtém um movimento em SAN.
+     * @param board Posição antes do movimento
+     * @param move Movimento legal nessa posição
+     * @return Texto SAN
+     */
+    public static String toString(EngineBoard board, int move) {
+        return write(board, move, new StringBuilder(8)).toString();
+    }
+
+    private static void appendDisambiguation(EngineBoard board, int move, int type, StringBuilder out) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int[] moves = new int[EngineBoard.MAX_MOVES];
+        int count = board.generateLegalMoves(moves);
+        boolean ambiguous = false;
+        boolean sameFile = false;
+        boolean sameRank = false;
+
+        for (int i = 0; i < count; i++) {
+            int other = Move.from(moves[i]);
+            if (other == from || Move.to(moves[i]) != to
+                    || EngineBoard.pieceType(board.getPiece(other)) != type) {
+                continue;
+            }
+            ambiguous = true;
+            if ((other & 7) == (from & 7)) sameFile = true;
+            if ((other >> 3) == (from >> 3)) sameRank = true;
+        }
+        if (!ambiguous) {
+            return;
+        }
+        if (!sameFile) {
+            out.append(file(from));
+        } else if (!sameRank) {
+            out.append((char) ('1' + (from >> 3)));
+        } else {
+            out.append(file(from)).append((char) ('1' + (from >> 3)));
+        }
+    }
+
+    private static boolean isCastle(CharSequence san, int end) {
+        if (end != 3 && end != 5) return false;
+        for (int i = 0; i < end; i++) {
+            char c = san.charAt(i);
+            if (i % 2 == 1 ? c != '-' : c != 'O' && c != '0') return false;
+        }
+        return true;
+    }
+
+    private static int squareAt(CharSequence san, int i) {
+        char file = san.charAt(i);
+        char rank = san.charAt(i + 1);
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') return -1;
+        return (rank - '1') * 8 + (file - 'a');
+    }
+
+    private static char file(int sq) {
+        return (char) ('a' + (sq & 7));
+    }
+
+    private static void appendSquare(StringBuilder out, int sq) {
+        out.append(file(sq)).append((char) ('1' + (sq >> 3)));
+    }
+}
@@ -0,0 +1,85 @@
+package pt.isec.pa.chess.model.engine;
+
+import java.util.SplittableRandom;
+
+/**
+ * Chaves de Zobrist: um número aleatório de 64 bits por peça e casa, pela equipa a jogar,
+ * por combinação de direitos de roque e pela coluna en passant. A chave de uma posição é o
+ * XOR das chaves dos seus elementos; posições iguais têm sempre a mesma chave e posições
+ * diferentes colidem com probabilidade desprezável.
+ * As chaves são geradas com uma semente fixa, pelo que são estáveis entre execuções e
+ * podem ser guardadas em ficheiros (por exemplo, no índice de posições).
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see EngineBoard
+ */
+public final class Zobrist {
+    private static final long SEED = 0x5EED_C0FF_EE15_EC0DL;
+
+    private static final long[][] PIECE_SQUARE = new long[16][64];
+    private static final long[] CASTLING = new long[16];
+    private static final long[] EN_PASSANT_FILE = new long[8];
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (long[] squares : PIECE_SQUARE) {
+            for (int sq = 0; sq < 64; sq++) {
+                squares[sq] = random.nextLong();
+            }
+        }
+        for (int i = 0; i < CASTLING.length; i++) {
+            CASTLING[i] = i == 0 ? 0 : random.nextLong();
+        }
+        for (int f = 0; f < 8; f++) {
+            EN_PASSANT_FILE[f] = random.nextLong();
+        }
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {
+        //construtor privado que impede alguem de criar uma instacia desta classe
+    }
+
+    /**
+     * Calcula a chave de uma posição.
+     * @param board Posição
+     * @return Chave de 64 bits
+     */
+    public static long hash(EngineBoard board) {
+        long key = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            int piece = board.getPiece(sq);
+            if (piece != EngineBoard.EMPTY) {
+                key ^= PIECE_SQUARE[piece][sq];
+            }
+        }
+        return key ^ state(board.getSideToMove(), board.getCastling(), board.getEpSquare());
+    }
+
+    /**
+     * Calcula a chave de uma posição imutável (igual à do EngineBoard equivalente).
+     * @param position Posição
+     * @return Chave de 64 bits
+     */
+    public static long hash(Position position) {
+        long key = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            int piece = position.getPiece(sq);
+            if (piece != EngineBoard.EMPTY) {
+                key ^= PIECE_SQUARE[piece][sq];
+            }
+        }
+        return key ^ state(position.getSideToMove(), position.getCastling(), position.getEpSquare());
+    }
+
+    private static long state(int sideToMove, int castling, int epSquare) {
+        long key = CASTLING[castling];
+        if (epSquare >= 0) {
+            key ^= EN_PASSANT_FILE[epSquare & 7];
+        }
+        return sideToMove == EngineBoard.BLACK ? key ^ BLACK_TO_MOVE : key;
+    }
+}
@@ -2,6 +2,7 @@ package pt.isec.pa.chess.model.memento;
 
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.List;
 
 public class CareTaker {
     IOriginator originator;
@@ -37,6 +38,19 @@ public class CareTaker {
         }
     }
 
+    public List<IMemento> getHistory() {
+        return List.copyOf(history);
+    }
+
+    public List<IMemento> getRedoHistory() {
+        return List.copyOf(redoHist);
+    }
+
+    public void setHistory(List<IMemento> history, List<IMemento> redoHist) {
+        this.history = new ArrayDeque<>(history);
+        this.redoHist = new ArrayDeque<>(redoHist);
+    }
+
     public void reset() {
         history.clear();
         redoHist.clear();
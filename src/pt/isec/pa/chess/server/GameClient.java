@@ -0,0 +1,222 @@
+package pt.isec.pa.chess.server;
+
+import pt.isec.pa.chess.model.MoveFeed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Cliente do GameServer: envia um pedido e espera pela resposta.
+ * Não é thread-safe; cada thread deve usar o seu próprio cliente.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see GameProtocol
+ */
+public class GameClient implements Closeable {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * Liga-se a um servidor em localhost.
+     * @param port Porto do servidor
+     * @throws IOException Se a ligação falhar
+     */
+    public GameClient(int port) throws IOException {
+        this(InetAddress.getLoopbackAddress().getHostAddress(), port);
+    }
+
+    /**
+     * Liga-se a um servidor.
+     * @param host Endereço do servidor
+     * @param port Porto do servidor
+     * @throws IOException Se a ligação falhar
+     */
+    public GameClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Abre um jogo, criando-o se não existir.
+     * @param gameId Id do jogo, ou 0 para um jogo novo
+     * @return Estado do jogo (com o id atribuído)
+     * @throws IOException Se a ligação falhar
+     */
+    public GameProtocol.Reply open(long gameId) throws IOException {
+        out.writeByte(GameProtocol.OP_OPEN);
+        out.writeLong(gameId);
+        return reply();
+    }
+
+    /**
+     * Joga um movimento.
+     * @param move Movimento codificado (classe Move)
+     * @return Resposta do servidor
+     * @throws IOException Se a ligação falhar
+     */
+    public GameProtocol.Reply move(int move) throws IOException {
+        out.writeByte(GameProtocol.OP_MOVE);
+        out.writeShort(GameProtocol.encodeMove(move));
+        return reply();
+    }
+
+    /**
+     * Joga uma sequência de movimentos num só pedido.
+     * @param moves Movimentos codificados (classe Move), no máximo 65535
+     * @return Resposta do servidor (CODE_INVALID, sem nenhum movimento jogado, se algum falhar)
+     * @throws IOException Se a ligação falhar
+     */
+    public GameProtocol.Reply moves(int[] moves) throws IOException {
+        out.writeByte(GameProtocol.OP_MOVES);
+        out.writeShort(moves.length);
+        for (int move : moves) {
+            out.writeShort(GameProtocol.encodeMove(move));
+        }
+        return reply();
+    }
+
+    public GameProtocol.Reply undo() throws IOException {
+        out.writeByte(GameProtocol.OP_UNDO);
+        return reply();
+    }
+
+    public GameProtocol.Reply redo() throws IOException {
+        out.writeByte(GameProtocol.OP_REDO);
+        return reply();
+    }
+
+    public GameProtocol.Reply reset() throws IOException {
+        out.writeByte(GameProtocol.OP_RESET);
+        return reply();
+    }
+
+    /**
+     * Salta para um meio-lance do histórico do jogo (pode ser desfeito com undo).
+     * @param ply Meio-lance, de 0 ao tamanho do histórico
+     * @return Resposta do servidor (CODE_INVALID se o meio-lance não existir)
+     * @throws IOException Se a ligação falhar
+     */
+    public GameProtocol.Reply goToPly(int ply) throws IOException {
+        out.writeByte(GameProtocol.OP_GOTO);
+        out.writeShort(ply);
+        return reply();
+    }
+
+    /**
+     * Substitui a posição do jogo.
+     * @param fen Posição em FEN
+     * @return Resposta do servidor
+     * @throws IOException Se a ligação falhar
+     */
+    public GameProtocol.Reply setFen(String fen) throws IOException {
+        out.writeByte(GameProtocol.OP_SET_FEN);
+        out.writeUTF(fen);
+        return reply();
+    }
+
+    /**
+     * Obtém a posição do jogo.
+     * @return Posição em FEN, ou null se nenhum jogo estiver aberto
+     * @throws IOException Se a ligação falhar
+     */
+    public String getFen() throws IOException {
+        out.writeByte(GameProtocol.OP_FEN);
+        out.flush();
+        byte code = in.readByte();
+        String fen = in.readUTF();
+        return code == GameProtocol.CODE_OK ? fen : null;
+    }
+
+    /**
+     * Termina o jogo aberto e liberta a sessão no servidor.
+     * @return Resposta do servidor
+     * @throws IOException Se a ligação falhar
+     */
+    public GameProtocol.Reply closeGame() throws IOException {
+        out.writeByte(GameProtocol.OP_CLOSE);
+        return reply();
+    }
+
+    /**
+     * Passa a ligação a espectador de um jogo; a seguir só pode ser usado nextBatch.
+     * @param gameId Id do jogo
+     * @return Estado do jogo, ou CODE_ERROR se o jogo não existir
+     * @throws IOException Se a ligação falhar
+     */
+    public GameProtocol.Reply watch(long gameId) throws IOException {
+        out.writeByte(GameProtocol.OP_WATCH);
+        out.writeLong(gameId);
+        return reply();
+    }
+
+    /**
+     * Espera pelo lote seguinte do jogo observado.
+     * @return O lote (o primeiro é sempre um snapshot), ou null se o jogo tiver sido fechado
+     * @throws IOException Se a ligação falhar
+     */
+    public MoveFeed.Batch nextBatch() throws IOException {
+        return GameProtocol.readBatch(in);
+    }
+
+    /**
+     * Retira um jogo do servidor, para ser alojado noutro com attach.
+     * @param gameId Id do jogo
+     * @return Registo compacto do jogo, ou null se o jogo não existir
+     * @throws IOException Se a ligação falhar
+     */
+    public byte[] detach(long gameId) throws IOException {
+        out.writeByte(GameProtocol.OP_DETACH);
+        out.writeLong(gameId);
+        out.flush();
+        byte code = in.readByte();
+        byte[] record = new byte[in.readInt()];
+        in.readFully(record);
+        return code == GameProtocol.CODE_OK ? record : null;
+    }
+
+    /**
+     * Aloja no servidor um jogo retirado de outro com detach.
+     * @param gameId Id do jogo
+     * @param record Registo compacto do jogo
+     * @return Estado do jogo, ou CODE_INVALID se o registo for inválido
+     * @throws IOException Se a ligação falhar
+     */
+    public GameProtocol.Reply attach(long gameId, byte[] record) throws IOException {
+        out.writeByte(GameProtocol.OP_ATTACH);
+        out.writeLong(gameId);
+        out.writeInt(record.length);
+        out.write(record);
+        return reply();
+    }
+
+    /**
+     * Fecha a ligação; o jogo continua no servidor.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.writeByte(GameProtocol.OP_QUIT);
+            out.flush();
+        } catch (IOException ignored) {
+            // a ligação já estava fechada
+        } finally {
+            socket.close();
+        }
+    }
+
+    private GameProtocol.Reply reply() throws IOException {
+        out.flush();
+        return GameProtocol.Reply.read(in);
+    }
+}
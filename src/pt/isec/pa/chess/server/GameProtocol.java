@@ -0,0 +1,182 @@
+package pt.isec.pa.chess.server;
+
+import pt.isec.pa.chess.model.MoveFeed;
+import pt.isec.pa.chess.model.engine.Move;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Protocolo binário entre o GameServer e os clientes.
+ * <p>
+ * Cada pedido é um byte com a operação seguido dos seus argumentos:
+ * <ul>
+ *     <li>OP_OPEN long id - abre (ou cria) o jogo com esse id; 0 pede ao servidor um id novo</li>
+ *     <li>OP_MOVE short movimento - origem | destino &lt;&lt; 6 | promoção &lt;&lt; 12 (como em Move)</li>
+ *     <li>OP_UNDO, OP_REDO, OP_RESET - desfaz, refaz, ou recomeça o jogo</li>
+ *     <li>OP_SET_FEN utf - substitui a posição por uma posição FEN</li>
+ *     <li>OP_FEN - pede a posição atual em FEN</li>
+ *     <li>OP_CLOSE - termina o jogo e liberta a sessão no servidor</li>
+ *     <li>OP_QUIT - fecha a ligação (o jogo continua disponível para outra ligação)</li>
+ *     <li>OP_WATCH long id - passa a ligação a espectador do jogo com esse id</li>
+ *     <li>OP_MOVES short n, n × short movimento - joga uma sequência de movimentos de uma vez</li>
+ *     <li>OP_DETACH long id - retira o jogo do servidor; a resposta é o código seguido do registo
+ *     compacto do jogo (int tamanho e bytes)</li>
+ *     <li>OP_ATTACH long id, int tamanho, bytes - aloja um jogo retirado de outro servidor; um
+ *     registo maior que MAX_RECORD_SIZE é descartado e recebe CODE_INVALID</li>
+ *     <li>OP_GOTO short meio-lance - salta para um meio-lance do histórico</li>
+ * </ul>
+ * Uma operação desconhecida não tem argumentos e recebe CODE_ERROR; a ligação continua.
+ * Cada pedido tem exatamente uma resposta, pela mesma ordem, pelo que um cliente pode enviar
+ * vários pedidos seguidos antes de ler as respostas. A resposta a OP_FEN é um byte com o código
+ * seguido da FEN (utf); as restantes são um Reply de 12 bytes.
+ * <p>
+ * Depois da resposta a OP_WATCH (se for CODE_OK) a ligação só recebe lotes do MoveFeed do jogo:
+ * um byte FRAME_SNAPSHOT (seguido da FEN inicial, utf) ou FRAME_DELTAS, o número de deltas (int)
+ * e os deltas (int cada). FRAME_END indica que o jogo foi fechado. Um espectador lento não
+ * atrasa o jogo: recebe um snapshot em vez dos deltas que não conseguiu acompanhar.
+ * <p>
+ * OP_DETACH e OP_ATTACH são usados pelo GameRouter para mudar jogos de servidor.
+ * <p>
+ * A replicação de um GameServer para um GameStandby usa uma ligação própria, com registos
+ * REPL_... (byte tipo, long id do jogo e os argumentos): REPL_CHECKPOINT int tamanho e o registo
+ * compacto do jogo, REPL_MOVES short n e n × short movimento, REPL_GOTO short meio-lance;
+ * REPL_UNDO, REPL_REDO e REPL_CLOSE não têm argumentos. O standby responde com o número total
+ * de registos já aplicados (long), no máximo uma vez por cada lote de registos recebido.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see GameServer
+ * @see GameClient
+ * @see GameReplicator
+ */
+public final class GameProtocol {
+    private GameProtocol() {
+        //construtor privado que impede alguem de criar uma instacia desta classe
+    }
+
+    /** Porto por omissão */
+    public static final int DEFAULT_PORT = 7878;
+    /** Porto de replicação do GameStandby por omissão */
+    public static final int DEFAULT_REPLICATION_PORT = 7879;
+
+    public static final byte OP_OPEN = 1;
+    public static final byte OP_MOVE = 2;
+    public static final byte OP_UNDO = 3;
+    public static final byte OP_REDO = 4;
+    public static final byte OP_RESET = 5;
+    public static final byte OP_SET_FEN = 6;
+    public static final byte OP_FEN = 7;
+    public static final byte OP_CLOSE = 8;
+    public static final byte OP_QUIT = 9;
+    public static final byte OP_WATCH = 10;
+    public static final byte OP_MOVES = 11;
+    public static final byte OP_DETACH = 12;
+    public static final byte OP_ATTACH = 13;
+    public static final byte OP_GOTO = 14;
+
+    /** Tamanho máximo do registo de um jogo em OP_ATTACH */
+    public static final int MAX_RECORD_SIZE = 1 << 24;
+
+    public static final byte REPL_CHECKPOINT = 1;
+    public static final byte REPL_MOVES = 2;
+    public static final byte REPL_UNDO = 3;
+    public static final byte REPL_REDO = 4;
+    public static final byte REPL_GOTO = 5;
+    public static final byte REPL_CLOSE = 6;
+
+    public static final byte FRAME_DELTAS = 0;
+    public static final byte FRAME_SNAPSHOT = 1;
+    public static final byte FRAME_END = 2;
+
+    /** O pedido foi executado */
+    public static final byte CODE_OK = 0;
+    /** O movimento (ou a FEN) não é válido; o jogo não mudou */
+    public static final byte CODE_INVALID = 1;
+    /** O pedido não pode ser executado (por exemplo, nenhum jogo aberto) */
+    public static final byte CODE_ERROR = 2;
+
+    public static final byte STATUS_PLAYING = 0;
+    public static final byte STATUS_CHECK = 1;
+    public static final byte STATUS_WHITE_WINS = 2;
+    public static final byte STATUS_BLACK_WINS = 3;
+    public static final byte STATUS_DRAW = 4;
+
+    /**
+     * Resposta a um pedido.
+     * @param code CODE_OK, CODE_INVALID ou CODE_ERROR
+     * @param gameId Id do jogo aberto (0 se nenhum)
+     * @param ply Meio-lance atual do jogo
+     * @param status Estado do jogo (STATUS_...)
+     */
+    public record Reply(byte code, long gameId, int ply, byte status) {
+        /**
+         * Verifica se o pedido foi executado.
+         * @return true se o código for CODE_OK
+         */
+        public boolean isOk() {
+            return code == CODE_OK;
+        }
+
+        /**
+         * Verifica se o jogo terminou.
+         * @return true se houver um vencedor ou empate
+         */
+        public boolean isGameOver() {
+            return status >= STATUS_WHITE_WINS;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(code);
+            out.writeLong(gameId);
+            out.writeShort(ply);
+            out.writeByte(status);
+        }
+
+        static Reply read(DataInputStream in) throws IOException {
+            return new Reply(in.readByte(), in.readLong(), in.readUnsignedShort(), in.readByte());
+        }
+    }
+
+    static void writeBatch(DataOutputStream out, MoveFeed.Batch batch) throws IOException {
+        if (batch.isSnapshot()) {
+            out.writeByte(FRAME_SNAPSHOT);
+            out.writeUTF(batch.startFen());
+        } else {
+            out.writeByte(FRAME_DELTAS);
+        }
+        int[] deltas = batch.deltas();
+        out.writeInt(deltas.length);
+        for (int delta : deltas) {
+            out.writeInt(delta);
+        }
+    }
+
+    /**
+     * Lê um lote enviado a um espectador.
+     * @return O lote, ou null se o jogo tiver sido fechado
+     */
+    static MoveFeed.Batch readBatch(DataInputStream in) throws IOException {
+        byte frame = in.readByte();
+        if (frame == FRAME_END) {
+            return null;
+        }
+        String fen = frame == FRAME_SNAPSHOT ? in.readUTF() : null;
+        int[] deltas = new int[in.readInt()];
+        for (int i = 0; i < deltas.length; i++) {
+            deltas[i] = in.readInt();
+        }
+        return new MoveFeed.Batch(fen, deltas);
+    }
+
+    /**
+     * Codifica um movimento para OP_MOVE.
+     * @param move Movimento codificado (classe Move)
+     * @return Movimento em 15 bits
+     */
+    public static int encodeMove(int move) {
+        return Move.encode(Move.from(move), Move.to(move), Move.promotion(move), 0);
+    }
+}
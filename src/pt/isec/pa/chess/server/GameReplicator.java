@@ -0,0 +1,299 @@
+package pt.isec.pa.chess.server;
+
+import pt.isec.pa.chess.model.IGameReplica;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Replicação dos jogos de um GameServer para um GameStandby, através de uma única ligação.
+ * <p>
+ * Cada alteração de um jogo é um registo de poucos bytes (ver GameProtocol.REPL_...): um
+ * movimento ocupa 13 bytes e o jogo completo só é enviado quando é criado ou substituído.
+ * Os registos de todos os jogos são acumulados num buffer e escritos em lote por uma thread
+ * própria; o standby confirma quantos registos já aplicou, também em lote.
+ * <p>
+ * Antes de alterar um jogo, a sessão espera que a alteração anterior desse jogo esteja
+ * confirmada (await). Assim, se o servidor falhar, o standby perde no máximo a última alteração
+ * de cada jogo. Se o standby não confirmar dentro de ACK_TIMEOUT_MS, a replicação é terminada
+ * para que os jogos não fiquem parados à espera dele.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see GameStandby
+ * @see IGameReplica
+ */
+public final class GameReplicator implements Closeable {
+    /** Tempo máximo de espera pela confirmação do standby */
+    public static final long ACK_TIMEOUT_MS = 2000;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasRecords = lock.newCondition();
+    private final Condition hasAcks = lock.newCondition();
+    private final Thread writer;
+    // protegidos pelo lock
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private DataOutputStream records = new DataOutputStream(buffer);
+    private long sent;
+    private long acked;
+    private boolean connected = true;
+    private boolean closing;
+
+    /**
+     * Réplica de um jogo no standby. Os métodos de IGameReplica são chamados pelo
+     * ChessGameManager da sessão, com o lock da sessão.
+     */
+    final class Replica implements IGameReplica {
+        private final long gameId;
+        /** Número do último registo deste jogo */
+        private long last;
+
+        private Replica(long gameId) {
+            this.gameId = gameId;
+        }
+
+        @Override
+        public void checkpoint(byte[] record) {
+            last = send(GameProtocol.REPL_CHECKPOINT, gameId, data -> {
+                data.writeInt(record.length);
+                data.write(record);
+            });
+        }
+
+        @Override
+        public void moved(int[] moves) {
+            last = send(GameProtocol.REPL_MOVES, gameId, data -> {
+                data.writeShort(moves.length);
+                for (int move : moves) {
+                    data.writeShort(move);
+                }
+            });
+        }
+
+        @Override
+        public void undone() {
+            last = send(GameProtocol.REPL_UNDO, gameId, null);
+        }
+
+        @Override
+        public void redone() {
+            last = send(GameProtocol.REPL_REDO, gameId, null);
+        }
+
+        @Override
+        public void wentTo(int ply) {
+            last = send(GameProtocol.REPL_GOTO, gameId, data -> data.writeShort(ply));
+        }
+
+        /**
+         * Espera que o standby confirme todas as alterações já enviadas deste jogo.
+         * @return true se estão confirmadas, false se a replicação terminou
+         */
+        boolean await() {
+            return awaitAcked(last);
+        }
+
+        /**
+         * Retira o jogo do standby (o jogo foi fechado ou transferido).
+         */
+        void close() {
+            send(GameProtocol.REPL_CLOSE, gameId, null);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Payload {
+        void write(DataOutputStream data) throws IOException;
+    }
+
+    /**
+     * Liga-se a um standby e começa a replicação.
+     * @param host Endereço do standby
+     * @param port Porto de replicação do standby
+     * @throws IOException Se a ligação falhar
+     */
+    public GameReplicator(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = socket.getOutputStream();
+        writer = Thread.ofPlatform().daemon().name("replication-writer").start(this::writeLoop);
+        Thread.ofPlatform().daemon().name("replication-acks").start(this::ackLoop);
+    }
+
+    /**
+     * Cria a réplica de um jogo; o ChessGameManager do jogo deve passar a usá-la (setReplica).
+     * @param gameId Id do jogo
+     * @return A réplica
+     */
+    Replica replicate(long gameId) {
+        return new Replica(gameId);
+    }
+
+    /**
+     * Verifica se a replicação está ativa.
+     * @return false se o standby deixou de responder ou a replicação foi terminada
+     */
+    public boolean isConnected() {
+        lock.lock();
+        try {
+            return connected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Obtém o número de registos enviados que o standby ainda não confirmou.
+     * @return Número de registos
+     */
+    public long getUnacknowledged() {
+        lock.lock();
+        try {
+            return sent - acked;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Envia os registos pendentes e termina a replicação. O standby considera que o servidor
+     * terminou e passa a servir os jogos.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closing = true;
+            hasRecords.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join(ACK_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        disconnect();
+    }
+
+    /**
+     * Acrescenta um registo ao buffer.
+     * @return O número do registo, ou 0 se a replicação terminou
+     */
+    private long send(byte kind, long gameId, Payload payload) {
+        lock.lock();
+        try {
+            if (!connected || closing) {
+                return 0;
+            }
+            records.writeByte(kind);
+            records.writeLong(gameId);
+            if (payload != null) {
+                payload.write(records);
+            }
+            hasRecords.signal();
+            return ++sent;
+        } catch (IOException e) {
+            // não acontece ao escrever num ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean awaitAcked(long record) {
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(ACK_TIMEOUT_MS);
+            while (connected && acked < record) {
+                if (remaining <= 0) {
+                    disconnect();
+                    return false;
+                }
+                remaining = hasAcks.awaitNanos(remaining);
+            }
+            return connected;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                ByteArrayOutputStream batch;
+                lock.lock();
+                try {
+                    while (connected && !closing && buffer.size() == 0) {
+                        hasRecords.await();
+                    }
+                    if (!connected || buffer.size() == 0) {
+                        return;
+                    }
+                    batch = buffer;
+                    buffer = new ByteArrayOutputStream(Math.max(32, batch.size()));
+                    records = new DataOutputStream(buffer);
+                } finally {
+                    lock.unlock();
+                }
+                batch.writeTo(out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            disconnect();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void ackLoop() {
+        try {
+            while (true) {
+                long applied = in.readLong();
+                lock.lock();
+                try {
+                    acked = Math.max(acked, applied);
+                    hasAcks.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            disconnect();
+        }
+    }
+
+    private void disconnect() {
+        lock.lock();
+        try {
+            connected = false;
+            buffer.reset();
+            hasRecords.signalAll();
+            hasAcks.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // a ligação já estava fechada
+        }
+    }
+}
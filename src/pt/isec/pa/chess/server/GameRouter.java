@@ -0,0 +1,831 @@
+package pt.isec.pa.chess.server;
+
+import pt.isec.pa.chess.model.MoveFeed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Router que distribui os jogos por vários workers (processos GameServer, na mesma máquina ou
+ * noutras) para que o número de jogos não fique limitado pela heap e pelo GC de uma só JVM.
+ * <p>
+ * Os clientes ligam-se ao router com o mesmo GameProtocol que usariam com um GameServer e não
+ * notam a diferença: o router atribui os ids dos jogos, escolhe o worker de cada jogo por
+ * consistent hashing do id e reencaminha os pedidos. Quando um worker é acrescentado ou retirado
+ * só mudam de worker os jogos cujo ponto no anel passa a pertencer a outro worker; cada um é
+ * transferido com o seu registo compacto (OP_DETACH / OP_ATTACH), com o histórico e as pilhas de
+ * undo/redo. Os espectadores de um jogo transferido passam a receber os lotes do novo worker.
+ * Um worker retirado só é terminado depois de todos os seus jogos terem sido transferidos.
+ * <p>
+ * Uso: GameRouter [--port N] [--workers N] [--worker host:port]...
+ * <p>
+ * --workers lança N workers locais (uma JVM cada). Depois de iniciado, o router aceita comandos
+ * no stdin: "add" (lança mais um worker), "add host:port", "remove i" e "status".
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see GameServer
+ * @see GameProtocol
+ */
+public final class GameRouter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 12;
+    /** Pontos de cada worker no anel, para que os jogos fiquem bem distribuídos */
+    private static final int VIRTUAL_NODES = 128;
+    /** Tentativas de transferir os jogos de um worker que vai ser retirado */
+    private static final int REMOVE_ATTEMPTS = 3;
+    private static final GameProtocol.Reply OK = new GameProtocol.Reply(GameProtocol.CODE_OK, 0, 0, GameProtocol.STATUS_PLAYING);
+    private static final GameProtocol.Reply ERROR = new GameProtocol.Reply(GameProtocol.CODE_ERROR, 0, 0, GameProtocol.STATUS_PLAYING);
+
+    /**
+     * Um worker: um GameServer, lançado pelo router (process) ou já existente (process null).
+     * @param host Endereço do worker
+     * @param port Porto do worker
+     * @param process Processo do worker, ou null se não foi lançado pelo router
+     */
+    public record Worker(String host, int port, Process process) {
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    /**
+     * Pedido a um worker, feito com o lock do jogo.
+     */
+    @FunctionalInterface
+    private interface Request {
+        GameProtocol.Reply send(GameClient client) throws IOException;
+    }
+
+    /**
+     * Onde está um jogo. O lock é detido enquanto um pedido é reencaminhado e enquanto o jogo é
+     * transferido, pelo que nenhum pedido chega a um worker que já não tem o jogo.
+     */
+    private static final class Route {
+        private final long id;
+        private final ReentrantLock lock = new ReentrantLock();
+        /** Worker onde o jogo está (protegido pelo lock) */
+        private Worker worker;
+        /** Número de transferências do jogo (protegido pelo lock) */
+        private int moves;
+        /**
+         * Registo do jogo retirado do worker antigo que nenhum worker aceitou, ou null
+         * (protegido pelo lock). O jogo é devolvido ao seu worker no pedido seguinte.
+         */
+        private byte[] detached;
+
+        Route(long id, Worker worker) {
+            this.id = id;
+            this.worker = worker;
+        }
+    }
+
+    /**
+     * Ligações de uma ligação de cliente aos workers, uma por worker, abertas quando são precisas.
+     * Um jogo transferido tem de ser aberto de novo no worker, mesmo que volte ao mesmo worker.
+     */
+    private final class Upstreams implements Closeable {
+        private record Opened(long gameId, int moves) {
+        }
+
+        private final Map<Worker, GameClient> clients = new HashMap<>();
+        private final Map<Worker, Opened> opened = new HashMap<>();
+
+        /**
+         * Obtém uma ligação ao worker do jogo, com o jogo aberto.
+         * Tem de ser chamado com o lock do jogo.
+         */
+        GameClient forGame(Route route) throws IOException {
+            if (!new Opened(route.id, route.moves).equals(opened.get(route.worker)) && !open(route).isOk()) {
+                throw new IOException("worker " + route.worker + " did not open game " + route.id);
+            }
+            return clients.get(route.worker);
+        }
+
+        /**
+         * Abre (ou cria) o jogo no seu worker. Tem de ser chamado com o lock do jogo.
+         * @return A resposta do worker
+         */
+        GameProtocol.Reply open(Route route) throws IOException {
+            GameClient client = clients.get(route.worker);
+            if (client == null) {
+                client = connect(route.worker);
+                clients.put(route.worker, client);
+            }
+            opened.remove(route.worker);
+            GameProtocol.Reply reply = client.open(route.id);
+            if (reply.isOk()) {
+                opened.put(route.worker, new Opened(route.id, route.moves));
+            }
+            return reply;
+        }
+
+        /**
+         * Esquece a ligação a um worker que falhou.
+         */
+        void drop(Worker worker) {
+            opened.remove(worker);
+            closeQuietly(clients.remove(worker));
+        }
+
+        @Override
+        public void close() {
+            for (GameClient client : clients.values()) {
+                closeQuietly(client);
+            }
+            clients.clear();
+            opened.clear();
+        }
+    }
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final Set<Closeable> sockets = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Long, Route> routes = new ConcurrentHashMap<>();
+    private final List<Worker> workers = new CopyOnWriteArrayList<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Thread acceptor;
+    /**
+     * Protege o anel: as rotas novas são criadas com o read lock e o anel é substituído com o
+     * write lock, pelo que nenhuma rota criada com o anel antigo escapa à transferência.
+     */
+    private final ReentrantReadWriteLock ringLock = new ReentrantReadWriteLock();
+    /** Anel de consistent hashing; é substituído (nunca alterado) quando os workers mudam */
+    private NavigableMap<Long, Worker> ring = new TreeMap<>();
+
+    /**
+     * Cria o router, sem workers, e começa a aceitar ligações em localhost.
+     * @param port Porto (0 para um porto livre qualquer)
+     * @throws IOException Se o porto não puder ser usado
+     */
+    public GameRouter(int port) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        connections = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("route-", 0).factory());
+        acceptor = new Thread(this::acceptLoop, "game-router");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out));
+    }
+
+    /**
+     * Inicia o router a partir dos argumentos da linha de comandos e trata os comandos do stdin.
+     * @param args [--port N] [--workers N] [--worker host:port]...
+     * @param out Destino das mensagens
+     * @return Código de saída
+     */
+    public static int run(String[] args, PrintStream out) {
+        int port = GameProtocol.DEFAULT_PORT;
+        int spawn = 0;
+        List<String> remote = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port" -> port = Integer.parseInt(args[++i]);
+                    case "--workers" -> spawn = Integer.parseInt(args[++i]);
+                    case "--worker" -> remote.add(args[++i]);
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            out.println("Usage: GameRouter [--port N] [--workers N] [--worker host:port]...");
+            return 2;
+        }
+        try (GameRouter router = new GameRouter(port)) {
+            for (String address : remote) {
+                if (router.addWorker(address) == null) {
+                    out.println("Error: invalid worker " + address);
+                    return 2;
+                }
+            }
+            for (int i = 0; i < spawn; i++) {
+                router.spawnWorker();
+            }
+            out.println("Game router listening on port " + router.getPort() + " with " + router.getWorkers().size() + " workers");
+            router.commandLoop(out);
+            router.acceptor.join();
+            return 0;
+        } catch (IOException e) {
+            out.println("Error: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    private void commandLoop(PrintStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] words = line.trim().split("\\s+");
+            try {
+                switch (words[0]) {
+                    case "add" -> {
+                        Worker worker = words.length > 1 ? addWorker(words[1]) : spawnWorker();
+                        out.println(worker == null ? "Invalid worker" : "Added " + worker);
+                    }
+                    case "remove" -> {
+                        try {
+                            int moved = removeWorker(workers.get(Integer.parseInt(words[1])));
+                            out.println(moved < 0 ? "Cannot remove the last worker" : "Removed, " + moved + " games moved");
+                        } catch (IOException e) {
+                            out.println("Error: " + e.getMessage());
+                        }
+                    }
+                    case "status" -> {
+                        out.println(routes.size() + " games");
+                        Map<Worker, Integer> counts = new HashMap<>();
+                        for (Route route : routes.values()) {
+                            counts.merge(route.worker, 1, Integer::sum);
+                        }
+                        for (int i = 0; i < workers.size(); i++) {
+                            out.println(i + " " + workers.get(i) + " " + counts.getOrDefault(workers.get(i), 0) + " games");
+                        }
+                    }
+                    case "" -> {
+                        // linha vazia
+                    }
+                    default -> out.println("Commands: add [host:port], remove <index>, status");
+                }
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                out.println("Commands: add [host:port], remove <index>, status");
+            }
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Obtém o número de jogos conhecidos pelo router.
+     * @return Número de jogos
+     */
+    public int getGameCount() {
+        return routes.size();
+    }
+
+    public List<Worker> getWorkers() {
+        return List.copyOf(workers);
+    }
+
+    /**
+     * Obtém o worker onde está um jogo.
+     * @param gameId Id do jogo
+     * @return O worker, ou null se o jogo não existir
+     */
+    public Worker getWorker(long gameId) {
+        Route route = routes.get(gameId);
+        if (route == null) {
+            return null;
+        }
+        route.lock.lock();
+        try {
+            return route.worker;
+        } finally {
+            route.lock.unlock();
+        }
+    }
+
+    /**
+     * Lança um worker local numa JVM nova (com o mesmo java e classpath) e acrescenta-o ao anel.
+     * @return O worker
+     * @throws IOException Se o worker não arrancar
+     */
+    public Worker spawnWorker() throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                GameServer.class.getName(), "--port", "0", "--exit-with-parent")
+                .redirectErrorStream(true)
+                .start();
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line = output.readLine();
+        if (line == null || !line.startsWith(GameServer.LISTENING)) {
+            process.destroy();
+            throw new IOException("worker did not start: " + line);
+        }
+        // o resto da saída do worker é descartado, para que o worker nunca bloqueie a escrever
+        Thread.ofVirtual().start(() -> {
+            try {
+                while (output.readLine() != null) {
+                    // descartar
+                }
+            } catch (IOException ignored) {
+                // o worker terminou
+            }
+        });
+        Worker worker = new Worker(InetAddress.getLoopbackAddress().getHostAddress(),
+                Integer.parseInt(line.substring(GameServer.LISTENING.length()).trim()), process);
+        addWorker(worker);
+        return worker;
+    }
+
+    /**
+     * Acrescenta um worker já em execução.
+     * @param address host:port
+     * @return O worker, ou null se o endereço for inválido
+     */
+    public Worker addWorker(String address) {
+        int colon = address.lastIndexOf(':');
+        try {
+            Worker worker = new Worker(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)), null);
+            addWorker(worker);
+            return worker;
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Acrescenta um worker ao anel e transfere para ele os jogos que lhe passam a pertencer.
+     * @param worker Worker
+     * @return Número de jogos transferidos
+     */
+    public synchronized int addWorker(Worker worker) {
+        workers.add(worker);
+        return rebalance();
+    }
+
+    /**
+     * Retira um worker do anel, transfere os seus jogos para os restantes workers e termina-o
+     * se tiver sido lançado pelo router. Se algum jogo não puder ser transferido, mesmo depois
+     * de REMOVE_ATTEMPTS tentativas, o worker volta ao anel e não é terminado.
+     * @param worker Worker
+     * @return Número de jogos transferidos, ou -1 se for o único worker
+     * @throws IOException Se algum jogo não puder ser transferido
+     */
+    public synchronized int removeWorker(Worker worker) throws IOException {
+        int index = workers.indexOf(worker);
+        if (index < 0 || workers.size() == 1) {
+            return -1;
+        }
+        workers.remove(index);
+        int moved = 0;
+        int remaining = 0;
+        for (int attempt = 0; attempt < REMOVE_ATTEMPTS; attempt++) {
+            moved += rebalance();
+            remaining = countGames(worker);
+            if (remaining == 0) {
+                break;
+            }
+        }
+        if (remaining > 0) {
+            workers.add(index, worker);
+            rebalance();
+            throw new IOException(remaining + " games could not be moved from worker " + worker);
+        }
+        if (worker.process() != null) {
+            worker.process().destroy();
+        }
+        return moved;
+    }
+
+    /**
+     * Conta os jogos que estão num worker.
+     */
+    private int countGames(Worker worker) {
+        int count = 0;
+        for (Route route : routes.values()) {
+            route.lock.lock();
+            try {
+                if (route.worker == worker) {
+                    count++;
+                }
+            } finally {
+                route.lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reconstrói o anel com os workers atuais e transfere os jogos que mudaram de worker.
+     * Os jogos criados depois de o anel ser substituído já usam o anel novo.
+     */
+    private int rebalance() {
+        NavigableMap<Long, Worker> next = new TreeMap<>();
+        for (Worker worker : workers) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                next.put(mix(((long) worker.toString().hashCode() << 32) ^ i), worker);
+            }
+        }
+        List<Route> current;
+        ringLock.writeLock().lock();
+        try {
+            ring = next;
+            current = List.copyOf(routes.values());
+        } finally {
+            ringLock.writeLock().unlock();
+        }
+        int moved = 0;
+        Map<Worker, GameClient> admin = new HashMap<>();
+        try {
+            for (Route route : current) {
+                Worker target = lookup(next, route.id);
+                route.lock.lock();
+                try {
+                    if ((route.worker != target || route.detached != null) && transfer(route, target, admin)) {
+                        moved++;
+                    }
+                } finally {
+                    route.lock.unlock();
+                }
+            }
+        } finally {
+            for (GameClient client : admin.values()) {
+                closeQuietly(client);
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Transfere um jogo para outro worker. Tem de ser chamado com o lock do jogo.
+     * Se o worker novo não aceitar o jogo, o jogo volta ao worker antigo; se também este falhar,
+     * o registo fica na rota até um worker o aceitar.
+     * @return true se o jogo mudou de worker
+     */
+    private boolean transfer(Route route, Worker target, Map<Worker, GameClient> admin) {
+        Worker previous = route.worker;
+        if (route.detached == null) {
+            try {
+                route.detached = admin(previous, admin).detach(route.id);
+            } catch (IOException e) {
+                // o worker antigo não responde: o jogo fica onde estava
+                closeQuietly(admin.remove(previous));
+                return false;
+            }
+            if (route.detached == null) {
+                // o jogo ainda não tinha sido criado no worker antigo
+                route.worker = target;
+                route.moves++;
+                return false;
+            }
+        }
+        if (attach(route, target, admin)) {
+            return previous != target;
+        }
+        attach(route, previous, admin);
+        return false;
+    }
+
+    /**
+     * Aloja num worker o registo retirado de um jogo. Tem de ser chamado com o lock do jogo.
+     * @return true se o worker aceitou o jogo
+     */
+    private boolean attach(Route route, Worker worker, Map<Worker, GameClient> admin) {
+        try {
+            if (!admin(worker, admin).attach(route.id, route.detached).isOk()) {
+                return false;
+            }
+        } catch (IOException e) {
+            closeQuietly(admin.remove(worker));
+            return false;
+        }
+        route.detached = null;
+        route.worker = worker;
+        route.moves++;
+        return true;
+    }
+
+    /**
+     * Devolve ao seu worker um jogo que ficou retirado numa transferência falhada.
+     * Tem de ser chamado com o lock do jogo.
+     * @return true se o jogo está num worker
+     */
+    private boolean reattach(Route route) {
+        if (route.detached == null) {
+            return true;
+        }
+        Map<Worker, GameClient> admin = new HashMap<>();
+        try {
+            return attach(route, route.worker, admin);
+        } finally {
+            for (GameClient client : admin.values()) {
+                closeQuietly(client);
+            }
+        }
+    }
+
+    private GameClient admin(Worker worker, Map<Worker, GameClient> admin) throws IOException {
+        GameClient client = admin.get(worker);
+        if (client == null) {
+            client = connect(worker);
+            admin.put(worker, client);
+        }
+        return client;
+    }
+
+    private static Worker lookup(NavigableMap<Long, Worker> ring, long gameId) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, Worker> entry = ring.ceilingEntry(mix(gameId));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * Espalha os bits de um valor (finalizador do SplitMix64), para que ids seguidos fiquem
+     * em pontos afastados do anel.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * Pára de aceitar ligações, fecha as ligações abertas e termina os workers lançados pelo router.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Closeable socket : sockets) {
+            closeQuietly(socket);
+        }
+        connections.shutdown();
+        for (Worker worker : workers) {
+            if (worker.process() != null) {
+                worker.process().destroy();
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                // o router foi fechado, ou a ligação falhou antes de ser aceite
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             Upstreams upstreams = new Upstreams();
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE))) {
+            long gameId = 0;
+            while (true) {
+                byte op = in.readByte();
+                if (op == GameProtocol.OP_QUIT) {
+                    break;
+                }
+                if (op == GameProtocol.OP_OPEN) {
+                    long requested = in.readLong();
+                    GameProtocol.Reply reply = forward(requested == 0 ? create() : requested, upstreams, null);
+                    gameId = reply.isOk() ? reply.gameId() : 0;
+                    reply.write(out);
+                } else if (op == GameProtocol.OP_WATCH) {
+                    watch(in.readLong(), out);
+                    break;
+                } else if (op == GameProtocol.OP_DETACH || op == GameProtocol.OP_ATTACH) {
+                    // só os workers mudam jogos de servidor; os argumentos não são lidos
+                    break;
+                } else {
+                    handle(op, gameId, upstreams, in, out);
+                    if (op == GameProtocol.OP_CLOSE) {
+                        gameId = 0;
+                    }
+                }
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            // o cliente fechou a ligação
+        } catch (IOException e) {
+            // ligação perdida: os jogos continuam nos workers
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    /**
+     * Reencaminha um pedido sobre o jogo aberto, com os mesmos argumentos e a mesma resposta
+     * que teria num GameServer (uma operação desconhecida recebe CODE_ERROR).
+     */
+    private void handle(byte op, long gameId, Upstreams upstreams, DataInputStream in, DataOutputStream out) throws IOException {
+        GameProtocol.Reply reply;
+        switch (op) {
+            case GameProtocol.OP_MOVE -> {
+                int move = in.readUnsignedShort();
+                reply = forward(gameId, upstreams, client -> client.move(move));
+            }
+            case GameProtocol.OP_MOVES -> {
+                int[] moves = new int[in.readUnsignedShort()];
+                for (int i = 0; i < moves.length; i++) {
+                    moves[i] = in.readUnsignedShort();
+                }
+                reply = forward(gameId, upstreams, client -> client.moves(moves));
+            }
+            case GameProtocol.OP_UNDO -> reply = forward(gameId, upstreams, GameClient::undo);
+            case GameProtocol.OP_REDO -> reply = forward(gameId, upstreams, GameClient::redo);
+            case GameProtocol.OP_RESET -> reply = forward(gameId, upstreams, GameClient::reset);
+            case GameProtocol.OP_GOTO -> {
+                int ply = in.readUnsignedShort();
+                reply = forward(gameId, upstreams, client -> client.goToPly(ply));
+            }
+            case GameProtocol.OP_SET_FEN -> {
+                String fen = in.readUTF();
+                reply = forward(gameId, upstreams, client -> client.setFen(fen));
+            }
+            case GameProtocol.OP_FEN -> {
+                String[] fen = new String[1];
+                reply = forward(gameId, upstreams, client -> {
+                    fen[0] = client.getFen();
+                    return fen[0] == null ? ERROR : OK;
+                });
+                out.writeByte(reply.isOk() ? GameProtocol.CODE_OK : GameProtocol.CODE_ERROR);
+                out.writeUTF(reply.isOk() ? fen[0] : "");
+                return;
+            }
+            case GameProtocol.OP_CLOSE -> reply = close(gameId, upstreams);
+            default -> reply = ERROR;
+        }
+        reply.write(out);
+    }
+
+    /**
+     * Envia um pedido ao worker de um jogo, com o jogo aberto na ligação a esse worker.
+     * @param gameId Id do jogo (0 se nenhum jogo estiver aberto)
+     * @param request Pedido, ou null para abrir o jogo (criando-o se não existir)
+     * @return A resposta do worker, ou CODE_ERROR se não houver jogo aberto ou o worker falhar
+     */
+    private GameProtocol.Reply forward(long gameId, Upstreams upstreams, Request request) {
+        while (gameId != 0) {
+            Route route = route(gameId);
+            if (route == null) {
+                return ERROR;
+            }
+            route.lock.lock();
+            try {
+                if (routes.get(gameId) != route) {
+                    continue; // o jogo foi fechado entretanto
+                }
+                if (!reattach(route)) {
+                    return ERROR;
+                }
+                try {
+                    return request == null ? upstreams.open(route) : request.send(upstreams.forGame(route));
+                } catch (IOException e) {
+                    upstreams.drop(route.worker);
+                    return ERROR;
+                }
+            } finally {
+                route.lock.unlock();
+            }
+        }
+        return ERROR;
+    }
+
+    /**
+     * Termina um jogo no seu worker e esquece-o.
+     */
+    private GameProtocol.Reply close(long gameId, Upstreams upstreams) {
+        Route route = routes.get(gameId);
+        if (route == null) {
+            return gameId == 0 ? ERROR : OK;
+        }
+        route.lock.lock();
+        try {
+            GameProtocol.Reply reply = forward(gameId, upstreams, GameClient::closeGame);
+            routes.remove(gameId, route);
+            return reply;
+        } finally {
+            route.lock.unlock();
+        }
+    }
+
+    /**
+     * Obtém a rota de um jogo, atribuindo-lhe um worker pelo anel se o jogo ainda não existir.
+     * @return A rota, ou null se não houver workers
+     */
+    private Route route(long gameId) {
+        Route route = routes.get(gameId);
+        if (route != null) {
+            return route;
+        }
+        ringLock.readLock().lock();
+        try {
+            Worker worker = lookup(ring, gameId);
+            return worker == null ? null : routes.computeIfAbsent(gameId, id -> new Route(id, worker));
+        } finally {
+            ringLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Atribui um id a um jogo novo.
+     */
+    private long create() {
+        long id;
+        do {
+            id = nextId.getAndIncrement();
+        } while (routes.containsKey(id));
+        return id;
+    }
+
+    /**
+     * Envia a um espectador os lotes do jogo, a partir do worker onde o jogo estiver. Quando o
+     * jogo muda de worker, o espectador passa a receber os lotes do novo worker (começando por
+     * um snapshot); só recebe FRAME_END quando o jogo é fechado.
+     */
+    private void watch(long gameId, DataOutputStream out) throws IOException {
+        Route route = routes.get(gameId);
+        Worker worker = route == null ? null : getWorker(gameId);
+        boolean first = true;
+        while (worker != null) {
+            GameClient client = connect(worker);
+            sockets.add(client);
+            try {
+                GameProtocol.Reply reply = client.watch(gameId);
+                if (first) {
+                    reply.write(out);
+                    out.flush();
+                    if (!reply.isOk()) {
+                        return;
+                    }
+                    first = false;
+                }
+                if (reply.isOk()) {
+                    MoveFeed.Batch batch;
+                    while ((batch = client.nextBatch()) != null) {
+                        GameProtocol.writeBatch(out, batch);
+                        out.flush();
+                    }
+                }
+            } finally {
+                sockets.remove(client);
+                closeQuietly(client);
+            }
+            // uma transferência retira o jogo do worker com o lock do jogo, pelo que aqui o worker já foi atualizado
+            Worker previous = worker;
+            route.lock.lock();
+            try {
+                worker = routes.get(gameId) == route && route.worker != previous ? route.worker : null;
+            } finally {
+                route.lock.unlock();
+            }
+        }
+        if (first) {
+            ERROR.write(out);
+        } else {
+            out.writeByte(GameProtocol.FRAME_END);
+        }
+        out.flush();
+    }
+
+    private static GameClient connect(Worker worker) throws IOException {
+        return new GameClient(worker.host(), worker.port());
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // já estava fechado
+        }
+    }
+}
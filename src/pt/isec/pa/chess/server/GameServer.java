@@ -0,0 +1,451 @@
+package pt.isec.pa.chess.server;
+
+import pt.isec.pa.chess.model.MoveFeed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Servidor TCP local que aloja muitos jogos em simultâneo, cada um numa GameSession com o
+ * seu próprio ChessGameManager.
+ * <p>
+ * Cada ligação corre numa thread virtual, pelo que milhares de ligações abertas custam pouca
+ * memória e nenhuma thread do sistema fica parada à espera da rede. As respostas são enviadas
+ * em lote: o buffer de saída só é despejado quando não há mais pedidos já recebidos para tratar.
+ * <p>
+ * Com replicateTo (--standby) os jogos são replicados para um GameStandby, que passa a
+ * servir os jogos se este servidor falhar.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see GameProtocol
+ * @see GameSession
+ * @see GameStandby
+ */
+public class GameServer implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 12;
+    /** Início da linha escrita por run quando o servidor está pronto, seguida do porto */
+    static final String LISTENING = "Game server listening on port ";
+    private static final long WATCH_POLL_MS = 1000;
+
+    /**
+     * Espectador ligado ao MoveFeed de um jogo. Pede um lote de cada vez: o lote seguinte só é
+     * pedido depois de o anterior ter sido escrito na ligação, pelo que a rede é a única fila.
+     */
+    private static final class Spectator implements Flow.Subscriber<MoveFeed.Batch> {
+        private static final MoveFeed.Batch END = new MoveFeed.Batch(null, new int[0]);
+        private final BlockingQueue<MoveFeed.Batch> batches = new ArrayBlockingQueue<>(2);
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(MoveFeed.Batch batch) {
+            batches.offer(batch);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            batches.offer(END);
+        }
+
+        @Override
+        public void onComplete() {
+            batches.offer(END);
+        }
+    }
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final ConcurrentHashMap<Long, GameSession> sessions = new ConcurrentHashMap<>();
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Thread acceptor;
+    private volatile GameReplicator replicator;
+
+    /**
+     * Cria o servidor e começa a aceitar ligações em localhost.
+     * @param port Porto (0 para um porto livre qualquer)
+     * @throws IOException Se o porto não puder ser usado
+     */
+    public GameServer(int port) throws IOException {
+        this(port, Map.of());
+    }
+
+    /**
+     * Cria o servidor já com jogos (os jogos de um GameStandby promovido).
+     * @param port Porto (0 para um porto livre qualquer)
+     * @param games Jogos, por id
+     * @throws IOException Se o porto não puder ser usado
+     */
+    GameServer(int port, Map<Long, GameSession> games) throws IOException {
+        sessions.putAll(games);
+        nextId.set(games.keySet().stream().mapToLong(Long::longValue).max().orElse(0) + 1);
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        connections = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("session-", 0).factory());
+        acceptor = new Thread(this::acceptLoop, "game-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out));
+    }
+
+    /**
+     * Inicia o servidor a partir dos argumentos da linha de comandos e espera até ser terminado.
+     * Com --exit-with-parent o servidor termina quando o processo que o lançou terminar (é assim
+     * que o GameRouter lança os seus workers). Com --standby os jogos são replicados para um
+     * GameStandby.
+     * @param args [--port N] [--exit-with-parent] [--standby host:port]
+     * @param out Destino das mensagens
+     * @return Código de saída
+     */
+    public static int run(String[] args, PrintStream out) {
+        int port = GameProtocol.DEFAULT_PORT;
+        boolean exitWithParent = false;
+        String standby = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port" -> port = Integer.parseInt(args[++i]);
+                    case "--exit-with-parent" -> exitWithParent = true;
+                    case "--standby" -> standby = args[++i];
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            out.println("Usage: GameServer [--port N] [--exit-with-parent] [--standby host:port]");
+            return 2;
+        }
+        try (GameServer server = new GameServer(port)) {
+            if (standby != null) {
+                int colon = standby.lastIndexOf(':');
+                server.replicateTo(standby.substring(0, colon), Integer.parseInt(standby.substring(colon + 1)));
+                out.println("Replicating to standby " + standby);
+            }
+            out.println(LISTENING + server.getPort());
+            out.flush();
+            if (exitWithParent) {
+                ProcessHandle.current().parent().ifPresent(parent -> parent.onExit().thenRun(() -> System.exit(0)));
+            }
+            server.join();
+            return 0;
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            out.println("Error: invalid standby " + standby);
+            return 2;
+        } catch (IOException e) {
+            out.println("Error: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    /**
+     * Passa a replicar os jogos para um GameStandby, a começar pelos jogos já alojados.
+     * @param host Endereço do standby
+     * @param port Porto de replicação do standby
+     * @throws IOException Se a ligação ao standby falhar
+     */
+    public void replicateTo(String host, int port) throws IOException {
+        GameReplicator previous = replicator;
+        replicator = new GameReplicator(host, port);
+        for (GameSession session : sessions.values()) {
+            session.replicate(replicator);
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Obtém a replicação para o standby.
+     * @return A replicação, ou null se o servidor não tiver standby
+     */
+    public GameReplicator getReplicator() {
+        return replicator;
+    }
+
+    /**
+     * Espera até o servidor ser fechado.
+     * @throws InterruptedException Se a thread for interrompida
+     */
+    void join() throws InterruptedException {
+        acceptor.join();
+    }
+
+    /**
+     * Obtém o porto onde o servidor está à escuta.
+     * @return Porto local
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Obtém o número de jogos alojados.
+     * @return Número de sessões
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Obtém o número de ligações abertas.
+     * @return Número de ligações
+     */
+    public int getConnectionCount() {
+        return sockets.size();
+    }
+
+    /**
+     * Obtém um jogo alojado.
+     * @param id Id do jogo
+     * @return A sessão, ou null se não existir
+     */
+    public GameSession getSession(long id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Pára de aceitar ligações e fecha as ligações abertas.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // a ligação já estava fechada
+            }
+        }
+        connections.shutdown();
+        if (replicator != null) {
+            replicator.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                // o servidor foi fechado, ou a ligação falhou antes de ser aceite
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE))) {
+            GameSession session = null;
+            while (true) {
+                byte op = in.readByte();
+                if (op == GameProtocol.OP_QUIT) {
+                    break;
+                }
+                if (op == GameProtocol.OP_OPEN) {
+                    session = open(in.readLong());
+                    session.state().write(out);
+                } else if (op == GameProtocol.OP_DETACH) {
+                    GameSession detached = sessions.remove(in.readLong());
+                    byte[] record = detached == null ? new byte[0] : detached.exportRecord();
+                    if (detached != null) {
+                        detached.close();
+                    }
+                    out.writeByte(detached == null ? GameProtocol.CODE_ERROR : GameProtocol.CODE_OK);
+                    out.writeInt(record.length);
+                    out.write(record);
+                } else if (op == GameProtocol.OP_ATTACH) {
+                    long id = in.readLong();
+                    int size = in.readInt();
+                    if (size < 0) {
+                        break;
+                    }
+                    GameSession restored = null;
+                    if (size > GameProtocol.MAX_RECORD_SIZE) {
+                        in.skipNBytes(size);
+                    } else {
+                        byte[] record = new byte[size];
+                        in.readFully(record);
+                        restored = id == 0 ? null : GameSession.restore(id, record);
+                    }
+                    if (restored == null) {
+                        new GameProtocol.Reply(GameProtocol.CODE_INVALID, id, 0, GameProtocol.STATUS_PLAYING).write(out);
+                    } else {
+                        GameSession replaced = sessions.put(id, restored);
+                        if (replaced != null) {
+                            replaced.close();
+                        }
+                        replicate(restored);
+                        restored.state().write(out);
+                    }
+                } else if (op == GameProtocol.OP_WATCH) {
+                    GameSession watched = sessions.get(in.readLong());
+                    if (watched == null) {
+                        new GameProtocol.Reply(GameProtocol.CODE_ERROR, 0, 0, GameProtocol.STATUS_PLAYING).write(out);
+                    } else {
+                        watched.state().write(out);
+                        watch(socket, watched, out);
+                        break;
+                    }
+                } else {
+                    handle(op, session, in, out);
+                    if (op == GameProtocol.OP_CLOSE) {
+                        session = null;
+                    }
+                }
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            // o cliente fechou a ligação
+        } catch (IOException e) {
+            // ligação perdida: o jogo continua disponível
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    /**
+     * Envia a um espectador os lotes do jogo até o jogo ser fechado ou a ligação cair.
+     */
+    private void watch(Socket socket, GameSession session, DataOutputStream out) throws IOException {
+        Spectator spectator = new Spectator();
+        session.getMoveFeed().subscribe(spectator);
+        try {
+            while (!socket.isClosed()) {
+                MoveFeed.Batch batch = spectator.batches.poll(WATCH_POLL_MS, TimeUnit.MILLISECONDS);
+                if (batch == Spectator.END) {
+                    out.writeByte(GameProtocol.FRAME_END);
+                    out.flush();
+                    return;
+                }
+                if (batch != null) {
+                    GameProtocol.writeBatch(out, batch);
+                    out.flush();
+                    spectator.subscription.request(1);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            spectator.subscription.cancel();
+        }
+    }
+
+    /**
+     * Trata um pedido sobre o jogo aberto. Uma operação desconhecida recebe CODE_ERROR.
+     */
+    private void handle(byte op, GameSession session, DataInputStream in, DataOutputStream out) throws IOException {
+        GameProtocol.Reply reply;
+        switch (op) {
+            case GameProtocol.OP_MOVE -> {
+                int move = in.readUnsignedShort();
+                reply = session == null ? null : session.move(move);
+            }
+            case GameProtocol.OP_MOVES -> {
+                int[] moves = new int[in.readUnsignedShort()];
+                for (int i = 0; i < moves.length; i++) {
+                    moves[i] = in.readUnsignedShort();
+                }
+                reply = session == null ? null : session.moves(moves);
+            }
+            case GameProtocol.OP_UNDO -> reply = session == null ? null : session.undo();
+            case GameProtocol.OP_REDO -> reply = session == null ? null : session.redo();
+            case GameProtocol.OP_RESET -> reply = session == null ? null : session.reset();
+            case GameProtocol.OP_GOTO -> {
+                int ply = in.readUnsignedShort();
+                reply = session == null ? null : session.goToPly(ply);
+            }
+            case GameProtocol.OP_SET_FEN -> {
+                String fen = in.readUTF();
+                reply = session == null ? null : session.setFen(fen);
+            }
+            case GameProtocol.OP_FEN -> {
+                out.writeByte(session == null ? GameProtocol.CODE_ERROR : GameProtocol.CODE_OK);
+                out.writeUTF(session == null ? "" : session.getFen());
+                return;
+            }
+            case GameProtocol.OP_CLOSE -> {
+                if (session != null && sessions.remove(session.getId(), session)) {
+                    session.close();
+                }
+                reply = session == null ? null : new GameProtocol.Reply(GameProtocol.CODE_OK, 0, 0, GameProtocol.STATUS_PLAYING);
+            }
+            default -> reply = null;
+        }
+        if (reply == null) {
+            reply = new GameProtocol.Reply(GameProtocol.CODE_ERROR, 0, 0, GameProtocol.STATUS_PLAYING);
+        }
+        reply.write(out);
+    }
+
+    /**
+     * Abre um jogo pelo id, criando-o se não existir. O id 0 cria sempre um jogo novo.
+     */
+    private GameSession open(long id) {
+        if (id == 0) {
+            long newId;
+            GameSession created;
+            do {
+                newId = nextId.getAndIncrement();
+                created = new GameSession(newId);
+            } while (sessions.putIfAbsent(newId, created) != null);
+            return replicate(created);
+        }
+        GameSession session = sessions.get(id);
+        if (session != null) {
+            return session;
+        }
+        GameSession created = new GameSession(id);
+        session = sessions.putIfAbsent(id, created);
+        return session != null ? session : replicate(created);
+    }
+
+    /**
+     * Passa a replicar um jogo acabado de alojar, se o servidor tiver standby.
+     */
+    private GameSession replicate(GameSession session) {
+        GameReplicator current = replicator;
+        if (current != null) {
+            session.replicate(current);
+        }
+        return session;
+    }
+}
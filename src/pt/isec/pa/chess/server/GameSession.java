@@ -0,0 +1,330 @@
+package pt.isec.pa.chess.server;
+
+import pt.isec.pa.chess.model.ChessGameManager;
+import pt.isec.pa.chess.model.MoveFeed;
+import pt.isec.pa.chess.model.MoveResult;
+import pt.isec.pa.chess.model.WinnerEnum;
+import pt.isec.pa.chess.model.data.PieceTypeEnum;
+import pt.isec.pa.chess.model.engine.EngineBoard;
+import pt.isec.pa.chess.model.engine.Move;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Um jogo alojado no GameServer, com o seu próprio ChessGameManager.
+ * Cada sessão tem o seu estado e não partilha nada com as outras: os eventos do jogo não vão
+ * para o ModelLog (que é de todo o processo) e o ChessGameManager não tem listeners.
+ * Várias ligações podem usar o mesmo jogo; os pedidos são executados um de cada vez.
+ * <p>
+ * Usa um ReentrantLock em vez de synchronized para que as threads virtuais à espera do jogo
+ * não prendam a thread do sistema que as executa.
+ * <p>
+ * Se o servidor tiver um standby, cada alteração só começa depois de o standby ter confirmado
+ * a alteração anterior do jogo (ver GameReplicator).
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see GameServer
+ */
+public final class GameSession {
+    private final long id;
+    private final ChessGameManager manager;
+    private final ReentrantLock lock = new ReentrantLock();
+    private byte status = GameProtocol.STATUS_PLAYING;
+    private GameReplicator.Replica replica;
+
+    /**
+     * Cria uma sessão com um jogo novo na posição inicial.
+     * @param id Id do jogo
+     */
+    public GameSession(long id) {
+        this.id = id;
+        this.manager = new ChessGameManager(message -> {
+            // as sessões do servidor não guardam o log dos jogos
+        });
+        this.manager.start();
+    }
+
+    /**
+     * Cria uma sessão com um jogo transferido de outro servidor.
+     * @param id Id do jogo
+     * @param record Registo do jogo (exportRecord)
+     * @return A sessão, ou null se o registo for inválido
+     */
+    public static GameSession restore(long id, byte[] record) {
+        GameSession session = new GameSession(id);
+        if (!session.manager.importRecord(record)) {
+            return null;
+        }
+        session.status = session.computeStatus();
+        return session;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Exporta o jogo (com o histórico e as pilhas de undo/redo) para ser transferido.
+     * @return Registo compacto do jogo
+     */
+    public byte[] exportRecord() {
+        lock.lock();
+        try {
+            return manager.exportRecord();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Obtém o feed de movimentos do jogo, para os espectadores.
+     * @return O feed de movimentos
+     */
+    public MoveFeed getMoveFeed() {
+        return manager.getMoveFeed();
+    }
+
+    /**
+     * Passa a replicar o jogo para um standby, a começar pelo estado atual.
+     * @param replicator Replicação do servidor
+     */
+    void replicate(GameReplicator replicator) {
+        lock.lock();
+        try {
+            replica = replicator.replicate(id);
+            manager.setReplica(replica);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Termina a sessão: os espectadores recebem os últimos lotes e depois o fim do jogo, e o
+     * jogo é retirado do standby.
+     */
+    void close() {
+        lock.lock();
+        try {
+            if (replica != null) {
+                manager.setReplica(null);
+                replica.close();
+                replica = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        manager.getMoveFeed().close();
+    }
+
+    /**
+     * Joga um movimento.
+     * @param move Movimento em 15 bits (GameProtocol.encodeMove)
+     * @return Resposta com CODE_INVALID se o movimento não for legal
+     */
+    public GameProtocol.Reply move(int move) {
+        lock.lock();
+        try {
+            awaitReplica();
+            if (status >= GameProtocol.STATUS_WHITE_WINS) {
+                return reply(GameProtocol.CODE_INVALID);
+            }
+            int from = Move.from(move);
+            int to = Move.to(move);
+            MoveResult result = manager.executeMove(EngineBoard.column(from), EngineBoard.row(from),
+                    EngineBoard.column(to), EngineBoard.row(to));
+            switch (result) {
+                case INVALID -> {
+                    return reply(GameProtocol.CODE_INVALID);
+                }
+                case VALID_PROMOTION -> {
+                    manager.pawnPromotion(EngineBoard.column(to), EngineBoard.row(to), promotionType(Move.promotion(move)));
+                    status = computeStatus();
+                }
+                case CHECKMATE_WHITE -> status = GameProtocol.STATUS_WHITE_WINS;
+                case CHECKMATE_BLACK -> status = GameProtocol.STATUS_BLACK_WINS;
+                case DRAW -> status = GameProtocol.STATUS_DRAW;
+                default -> status = manager.getIsAnyTeamInCheck() ? GameProtocol.STATUS_CHECK : GameProtocol.STATUS_PLAYING;
+            }
+            return reply(GameProtocol.CODE_OK);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Joga uma sequência de movimentos de uma só vez (um único ponto de undo).
+     * @param moves Movimentos em 15 bits (GameProtocol.encodeMove)
+     * @return Resposta com CODE_INVALID se algum movimento não for legal (nesse caso nenhum
+     *         movimento é jogado)
+     */
+    public GameProtocol.Reply moves(int[] moves) {
+        lock.lock();
+        try {
+            awaitReplica();
+            if (status >= GameProtocol.STATUS_WHITE_WINS) {
+                return reply(GameProtocol.CODE_INVALID);
+            }
+            int failed = manager.applyMoves(moves);
+            status = computeStatus();
+            return reply(failed == -1 ? GameProtocol.CODE_OK : GameProtocol.CODE_INVALID);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Desfaz o último movimento.
+     * @return Resposta com CODE_INVALID se não houver nada a desfazer
+     */
+    public GameProtocol.Reply undo() {
+        lock.lock();
+        try {
+            awaitReplica();
+            if (!manager.hasUndo()) {
+                return reply(GameProtocol.CODE_INVALID);
+            }
+            manager.undo();
+            status = computeStatus();
+            return reply(GameProtocol.CODE_OK);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Refaz o último movimento desfeito.
+     * @return Resposta com CODE_INVALID se não houver nada a refazer
+     */
+    public GameProtocol.Reply redo() {
+        lock.lock();
+        try {
+            awaitReplica();
+            if (!manager.hasRedo()) {
+                return reply(GameProtocol.CODE_INVALID);
+            }
+            manager.redo();
+            status = computeStatus();
+            return reply(GameProtocol.CODE_OK);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Recomeça o jogo na posição inicial.
+     * @return Resposta
+     */
+    public GameProtocol.Reply reset() {
+        lock.lock();
+        try {
+            awaitReplica();
+            manager.start();
+            status = GameProtocol.STATUS_PLAYING;
+            return reply(GameProtocol.CODE_OK);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Substitui a posição por uma posição FEN.
+     * @param fen Posição em FEN
+     * @return Resposta com CODE_INVALID se a FEN não for válida
+     */
+    public GameProtocol.Reply setFen(String fen) {
+        lock.lock();
+        try {
+            awaitReplica();
+            if (!manager.importFen(fen)) {
+                return reply(GameProtocol.CODE_INVALID);
+            }
+            status = computeStatus();
+            return reply(GameProtocol.CODE_OK);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Salta para um meio-lance do histórico.
+     * @param ply Meio-lance
+     * @return Resposta com CODE_INVALID se o meio-lance não existir
+     */
+    public GameProtocol.Reply goToPly(int ply) {
+        lock.lock();
+        try {
+            awaitReplica();
+            if (ply < 0 || ply > manager.getHistorySize()) {
+                return reply(GameProtocol.CODE_INVALID);
+            }
+            manager.goToPly(ply);
+            status = computeStatus();
+            return reply(GameProtocol.CODE_OK);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Obtém a posição atual em FEN.
+     * @return Posição em FEN
+     */
+    public String getFen() {
+        lock.lock();
+        try {
+            return manager.exportFen();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Obtém o estado atual do jogo.
+     * @return Resposta com CODE_OK
+     */
+    public GameProtocol.Reply state() {
+        lock.lock();
+        try {
+            return reply(GameProtocol.CODE_OK);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Espera que o standby confirme a alteração anterior, para que uma falha do servidor nunca
+     * perca mais do que a última alteração do jogo.
+     */
+    private void awaitReplica() {
+        if (replica != null) {
+            replica.await();
+        }
+    }
+
+    private GameProtocol.Reply reply(byte code) {
+        return new GameProtocol.Reply(code, id, manager.getPly(), status);
+    }
+
+    private byte computeStatus() {
+        WinnerEnum winner = manager.getWinner();
+        if (winner == null) {
+            return manager.getIsAnyTeamInCheck() ? GameProtocol.STATUS_CHECK : GameProtocol.STATUS_PLAYING;
+        }
+        return switch (winner) {
+            case WHITE -> GameProtocol.STATUS_WHITE_WINS;
+            case BLACK -> GameProtocol.STATUS_BLACK_WINS;
+            case DRAW -> GameProtocol.STATUS_DRAW;
+        };
+    }
+
+    private static PieceTypeEnum promotionType(int type) {
+        return switch (type) {
+            case EngineBoard.KNIGHT -> PieceTypeEnum.KNIGHT;
+            case EngineBoard.BISHOP -> PieceTypeEnum.BISHOP;
+            case EngineBoard.ROOK -> PieceTypeEnum.ROOK;
+            default -> PieceTypeEnum.QUEEN;
+        };
+    }
+}
@@ -0,0 +1,252 @@
+package pt.isec.pa.chess.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Servidor de reserva (hot standby) de um GameServer.
+ * <p>
+ * Recebe numa ligação de replicação os registos de cada jogo do servidor principal
+ * (GameReplicator) e repete-os, pela mesma ordem, no seu próprio ChessGameManager de cada jogo,
+ * confirmando em lote quantos registos já aplicou. Não aceita clientes enquanto o servidor
+ * principal estiver ligado; quando a ligação de replicação termina (o servidor principal falhou
+ * ou foi fechado) é promovido: passa a servir os jogos replicados num GameServer, no porto dos
+ * clientes, com os mesmos ids, históricos e pilhas de undo/redo.
+ * <p>
+ * Uso: GameStandby [--port N] [--replication-port N]
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see GameReplicator
+ * @see GameServer
+ */
+public class GameStandby implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ServerSocket replicationSocket;
+    private final int clientPort;
+    private final ConcurrentHashMap<Long, GameSession> sessions = new ConcurrentHashMap<>();
+    private final Thread replicator;
+    private volatile GameServer server;
+    private volatile long applied;
+    private volatile boolean closed;
+
+    /**
+     * Cria o standby e espera pela ligação do servidor principal em localhost.
+     * @param replicationPort Porto de replicação (0 para um porto livre qualquer)
+     * @param clientPort Porto onde os clientes são servidos depois da promoção (0 para um porto livre qualquer)
+     * @throws IOException Se o porto de replicação não puder ser usado
+     */
+    public GameStandby(int replicationPort, int clientPort) throws IOException {
+        this.clientPort = clientPort;
+        replicationSocket = new ServerSocket();
+        replicationSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), replicationPort), 1);
+        replicator = new Thread(this::replicate, "game-standby");
+        replicator.setDaemon(true);
+        replicator.start();
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out));
+    }
+
+    /**
+     * Inicia o standby a partir dos argumentos da linha de comandos e, depois da promoção,
+     * serve os jogos até ser terminado.
+     * @param args [--port N] [--replication-port N]
+     * @param out Destino das mensagens
+     * @return Código de saída
+     */
+    public static int run(String[] args, PrintStream out) {
+        int port = GameProtocol.DEFAULT_PORT;
+        int replicationPort = GameProtocol.DEFAULT_REPLICATION_PORT;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port" -> port = Integer.parseInt(args[++i]);
+                    case "--replication-port" -> replicationPort = Integer.parseInt(args[++i]);
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            out.println("Usage: GameStandby [--port N] [--replication-port N]");
+            return 2;
+        }
+        try (GameStandby standby = new GameStandby(replicationPort, port)) {
+            out.println("Standby waiting for the primary server on port " + standby.getReplicationPort());
+            out.flush();
+            standby.replicator.join();
+            GameServer promoted = standby.getServer();
+            if (promoted == null) {
+                out.println("Error: replication ended without a promotion (invalid record or port " + port + " in use)");
+                return 1;
+            }
+            out.println("Primary server lost, " + promoted.getSessionCount() + " games replicated");
+            out.println(GameServer.LISTENING + promoted.getPort());
+            out.flush();
+            promoted.join();
+            return 0;
+        } catch (IOException e) {
+            out.println("Error: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    public int getReplicationPort() {
+        return replicationSocket.getLocalPort();
+    }
+
+    /**
+     * Obtém o número de jogos replicados.
+     * @return Número de jogos
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Obtém o número de registos de replicação aplicados.
+     * @return Número de registos
+     */
+    public long getAppliedCount() {
+        return applied;
+    }
+
+    /**
+     * Obtém um jogo replicado.
+     * @param id Id do jogo
+     * @return A sessão, ou null se não existir
+     */
+    public GameSession getSession(long id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Obtém o servidor que serve os jogos depois da promoção.
+     * @return O servidor, ou null se o standby ainda não foi promovido
+     */
+    public GameServer getServer() {
+        return server;
+    }
+
+    /**
+     * Espera pela promoção do standby.
+     * @param millis Tempo máximo de espera
+     * @return O servidor, ou null se o standby não foi promovido nesse tempo
+     * @throws InterruptedException Se a thread for interrompida
+     */
+    public GameServer awaitPromotion(long millis) throws InterruptedException {
+        replicator.join(millis);
+        return server;
+    }
+
+    /**
+     * Fecha a ligação de replicação e, se o standby já foi promovido, o servidor.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        replicationSocket.close();
+        GameServer promoted = server;
+        if (promoted != null) {
+            promoted.close();
+        }
+    }
+
+    /**
+     * Aceita a ligação do servidor principal, aplica os seus registos até a ligação terminar
+     * e promove o standby. Um registo inválido, ou que o standby não consegue repetir, termina a
+     * replicação sem promover o standby, porque o servidor principal continua a funcionar.
+     */
+    private void replicate() {
+        boolean primaryLost = false;
+        try (Socket socket = replicationSocket.accept();
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            replicationSocket.close();
+            socket.setTcpNoDelay(true);
+            long count = 0;
+            while (apply(in)) {
+                applied = ++count;
+                if (in.available() == 0) {
+                    out.writeLong(count);
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // o servidor principal terminou ou falhou
+            primaryLost = true;
+        }
+        if (!primaryLost || closed) {
+            return;
+        }
+        try {
+            server = new GameServer(clientPort, sessions);
+        } catch (IOException e) {
+            // o porto dos clientes está ocupado: run indica o erro
+        }
+    }
+
+    /**
+     * Aplica um registo de replicação. Os movimentos, undo, redo e saltos são repetidos pela
+     * mesma ordem do servidor principal, pelo que têm de ser aceites também aqui: se um for
+     * recusado (ou o jogo não existir), o standby divergiu do servidor principal.
+     * @return false se o registo for inválido ou não puder ser repetido, e a replicação tiver de terminar
+     */
+    private boolean apply(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        long id = in.readLong();
+        GameSession session = sessions.get(id);
+        switch (kind) {
+            case GameProtocol.REPL_CHECKPOINT -> {
+                int size = in.readInt();
+                if (size < 0 || size > GameProtocol.MAX_RECORD_SIZE) {
+                    return false;
+                }
+                byte[] record = new byte[size];
+                in.readFully(record);
+                GameSession restored = GameSession.restore(id, record);
+                if (restored == null) {
+                    return false;
+                }
+                sessions.put(id, restored);
+            }
+            case GameProtocol.REPL_MOVES -> {
+                int[] moves = new int[in.readUnsignedShort()];
+                for (int i = 0; i < moves.length; i++) {
+                    moves[i] = in.readUnsignedShort();
+                }
+                return session != null && session.moves(moves).isOk();
+            }
+            case GameProtocol.REPL_UNDO -> {
+                return session != null && session.undo().isOk();
+            }
+            case GameProtocol.REPL_REDO -> {
+                return session != null && session.redo().isOk();
+            }
+            case GameProtocol.REPL_GOTO -> {
+                int ply = in.readUnsignedShort();
+                return session != null && session.goToPly(ply).isOk();
+            }
+            case GameProtocol.REPL_CLOSE -> sessions.remove(id);
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+}
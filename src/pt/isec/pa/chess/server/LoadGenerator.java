@@ -0,0 +1,289 @@
+package pt.isec.pa.chess.server;
+
+import pt.isec.pa.chess.model.engine.EngineBoard;
+import pt.isec.pa.chess.model.engine.Evaluator;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gerador de carga para o GameServer: N clientes simulados, cada um numa thread virtual,
+ * jogam jogos legais (movimentos aleatórios ou escolhidos pelo Evaluator) contra o servidor.
+ * <p>
+ * Mede os movimentos por segundo, os percentis da latência de cada pedido e, quando o servidor
+ * corre no mesmo processo, a memória ocupada por cada sessão: no fim os clientes desligam-se
+ * sem fechar os jogos, pelo que o que fica na heap (depois de um GC) são as sessões.
+ * <p>
+ * Uso: LoadGenerator [--clients N] [--games N] [--plies N] [--engine] [--host H] [--port N]
+ * <p>
+ * Sem --port é iniciado um servidor no próprio processo. Cada cliente confirma a resposta a
+ * cada movimento (código e meio-lance); qualquer diferença conta como erro.
+ *
+ * @author Nuno Tomás Paiva & Rui Santos
+ * @version final
+ *
+ * @see GameServer
+ */
+public final class LoadGenerator {
+    private static final int CONNECT_ATTEMPTS = 50;
+    private static final long CONNECT_RETRY_MS = 20;
+
+    /**
+     * Histograma de latências com buckets logarítmicos (16 subdivisões por potência de 2),
+     * que pode ser atualizado por muitas threads sem locks. O erro relativo é inferior a 1/16.
+     */
+    static final class LatencyHistogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB = 1 << SUB_BITS;
+        private final AtomicLongArray counts = new AtomicLongArray(64 * SUB);
+        private final LongAdder total = new LongAdder();
+
+        void record(long nanos) {
+            counts.incrementAndGet(bucket(Math.max(1, nanos)));
+            total.increment();
+        }
+
+        long count() {
+            return total.sum();
+        }
+
+        /**
+         * Obtém o valor do percentil pedido.
+         * @param percentile Percentil (0 a 100)
+         * @return Limite superior do bucket onde cai o percentil, em nanossegundos
+         */
+        long percentile(double percentile) {
+            long wanted = (long) Math.ceil(count() * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= wanted && seen > 0) {
+                    return upperBound(i);
+                }
+            }
+            return 0;
+        }
+
+        static int bucket(long value) {
+            int magnitude = 63 - Long.numberOfLeadingZeros(value);
+            if (magnitude < SUB_BITS) {
+                return (int) value;
+            }
+            int sub = (int) (value >>> (magnitude - SUB_BITS)) & (SUB - 1);
+            return (magnitude - SUB_BITS + 1) * SUB + sub;
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < SUB) {
+                return bucket;
+            }
+            int magnitude = bucket / SUB + SUB_BITS - 1;
+            long base = 1L << magnitude;
+            long step = 1L << (magnitude - SUB_BITS);
+            return base + (bucket % SUB + 1) * step - 1;
+        }
+    }
+
+    /**
+     * Um pedido de um cliente ao servidor.
+     */
+    private interface Request {
+        GameProtocol.Reply send() throws IOException;
+    }
+
+    private final String host;
+    private final int port;
+    private final int clients;
+    private final int games;
+    private final int plies;
+    private final boolean engine;
+    private final boolean closeGames;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private LoadGenerator(String host, int port, int clients, int games, int plies, boolean engine, boolean closeGames) {
+        this.host = host;
+        this.port = port;
+        this.clients = clients;
+        this.games = games;
+        this.plies = plies;
+        this.engine = engine;
+        this.closeGames = closeGames;
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out));
+    }
+
+    /**
+     * Executa o teste de carga a partir dos argumentos da linha de comandos.
+     * @param args Argumentos
+     * @param out Destino do relatório
+     * @return Código de saída (1 se algum pedido falhar)
+     */
+    public static int run(String[] args, PrintStream out) {
+        int clients = 1000;
+        int games = 1;
+        int plies = 100;
+        boolean engine = false;
+        String host = "127.0.0.1";
+        int port = -1;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--clients" -> clients = Integer.parseInt(args[++i]);
+                    case "--games" -> games = Integer.parseInt(args[++i]);
+                    case "--plies" -> plies = Integer.parseInt(args[++i]);
+                    case "--engine" -> engine = true;
+                    case "--host" -> host = args[++i];
+                    case "--port" -> port = Integer.parseInt(args[++i]);
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            out.println("Usage: LoadGenerator [--clients N] [--games N] [--plies N] [--engine] [--host H] [--port N]");
+            return 2;
+        }
+
+        if (port >= 0) {
+            return new LoadGenerator(host, port, clients, games, plies, engine, true).report(out, null);
+        }
+        try (GameServer server = new GameServer(0)) {
+            return new LoadGenerator(host, server.getPort(), clients, games, plies, engine, false).report(out, server);
+        } catch (IOException e) {
+            out.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private int report(PrintStream out, GameServer server) {
+        long baseline = server == null ? 0 : usedHeap();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                long seed = c;
+                executor.execute(() -> playClient(new SplittableRandom(seed)));
+            }
+        }
+        long nanos = System.nanoTime() - start;
+
+        out.printf("%d clients, %d games, %d moves in %.2f s: %.0f moves/s%n", clients, finished.sum(),
+                moves.sum(), nanos / 1e9, moves.sum() * 1e9 / nanos);
+        out.printf("latency p50 %s  p90 %s  p99 %s  p99.9 %s  max %s%n", micros(latency.percentile(50)),
+                micros(latency.percentile(90)), micros(latency.percentile(99)), micros(latency.percentile(99.9)),
+                micros(latency.percentile(100)));
+        if (server != null) {
+            int sessions = server.getSessionCount();
+            long heap = usedHeap() - baseline;
+            out.printf("%d sessions, %.1f KB heap per session%n", sessions, sessions == 0 ? 0 : heap / 1024.0 / sessions);
+        }
+        if (errors.sum() > 0) {
+            out.println(errors.sum() + " errors");
+            return 1;
+        }
+        return 0;
+    }
+
+    private void playClient(SplittableRandom random) {
+        EngineBoard board = new EngineBoard();
+        int[] legal = new int[EngineBoard.MAX_MOVES];
+        Evaluator evaluator = engine ? new Evaluator() : null;
+        try (GameClient client = connect()) {
+            GameProtocol.Reply reply = timed(() -> client.open(0));
+            if (!reply.isOk()) {
+                errors.increment();
+                return;
+            }
+            for (int g = 0; g < games; g++) {
+                if (g > 0 && !timed(client::reset).isOk()) {
+                    errors.increment();
+                    return;
+                }
+                board.copyFrom(EngineBoard.startPosition());
+                for (int ply = 1; ply <= plies; ply++) {
+                    int count = board.generateLegalMoves(legal);
+                    if (count == 0) break;
+                    int move = engine ? choose(board, legal, count, evaluator, random) : legal[random.nextInt(count)];
+                    reply = timed(() -> client.move(move));
+                    if (!reply.isOk() || reply.ply() != ply) {
+                        errors.increment();
+                        return;
+                    }
+                    board.makeMove(move);
+                    moves.increment();
+                    if (reply.isGameOver()) break;
+                }
+                finished.increment();
+            }
+            if (closeGames) {
+                client.closeGame();
+            }
+        } catch (IOException e) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Envia um pedido e regista a sua latência.
+     */
+    private GameProtocol.Reply timed(Request request) throws IOException {
+        long start = System.nanoTime();
+        GameProtocol.Reply reply = request.send();
+        latency.record(System.nanoTime() - start);
+        return reply;
+    }
+
+    /**
+     * Escolhe o movimento com melhor avaliação a um meio-lance, com desempate aleatório.
+     */
+    private static int choose(EngineBoard board, int[] legal, int count, Evaluator evaluator, SplittableRandom random) {
+        int best = legal[0];
+        int bestScore = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(legal[i]);
+            int score = -evaluator.evaluate(board) * 4 + random.nextInt(4);
+            board.unmakeMove(legal[i]);
+            if (score > bestScore) {
+                bestScore = score;
+                best = legal[i];
+            }
+        }
+        return best;
+    }
+
+    private GameClient connect() throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return new GameClient(host, port);
+            } catch (ConnectException e) {
+                if (attempt == CONNECT_ATTEMPTS) throw e;
+                try {
+                    Thread.sleep(CONNECT_RETRY_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.0f us", nanos / 1e3);
+    }
+}
@@ -0,0 +1,245 @@
+package pt.isec.pa.chess.ui;
+
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.HBox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Executa operações de ficheiros numa thread de fundo, para não bloquear a interface.
+ * Mostra o progresso e um botão para cancelar enquanto a operação decorre; o resultado é
+ * entregue na thread do JavaFX, onde pode ser aplicado ao ChessGameManager.
+ * Só corre uma operação de cada vez.
+ */
+public final class BackgroundIo extends HBox {
+    private static final int CHUNK = 1 << 16;
+
+    /**
+     * Trabalho a executar na thread de fundo.
+     */
+    public interface Work<T> {
+        T run(Progress progress) throws Exception;
+    }
+
+    /**
+     * Permite a um trabalho indicar o progresso e saber se foi cancelado.
+     */
+    public interface Progress {
+        void update(long done, long total);
+
+        boolean isCancelled();
+    }
+
+    private final ExecutorService executor;
+    private final ReadOnlyBooleanWrapper busy;
+    private Task<?> current;
+    Label lblTask;
+    ProgressBar progressBar;
+    Button btnCancel;
+
+    public BackgroundIo() {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "file-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+        busy = new ReadOnlyBooleanWrapper(false);
+        createViews();
+        registerHandlers();
+    }
+
+    private void createViews() {
+        lblTask = new Label();
+        progressBar = new ProgressBar();
+        progressBar.setPrefWidth(200);
+        btnCancel = new Button("Cancel");
+
+        this.setPadding(new Insets(2, 10, 2, 10));
+        this.setAlignment(Pos.CENTER_LEFT);
+        this.setSpacing(10);
+        this.getChildren().addAll(lblTask, progressBar, btnCancel);
+    }
+
+    private void registerHandlers() {
+        visibleProperty().bind(busy);
+        managedProperty().bind(busy);
+        btnCancel.setOnAction(e -> {
+            if (current != null) {
+                current.cancel(true);
+            }
+        });
+    }
+
+    public ReadOnlyBooleanProperty busyProperty() {
+        return busy.getReadOnlyProperty();
+    }
+
+    /**
+     * Inicia uma operação na thread de fundo.
+     * @param title Descrição mostrada durante a operação
+     * @param work Trabalho a executar (não pode alterar o ChessGameManager)
+     * @param onSuccess Recebe o resultado, na thread do JavaFX
+     * @param onError Recebe o erro, na thread do JavaFX (não é chamado se a operação for cancelada)
+     * @return false se já estiver a decorrer outra operação
+     */
+    public <T> boolean run(String title, Work<T> work, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        if (busy.get()) {
+            return false;
+        }
+        Task<T> task = new Task<>() {
+            @Override
+            protected T call() throws Exception {
+                Task<T> self = this;
+                return work.run(new Progress() {
+                    @Override
+                    public void update(long done, long total) {
+                        updateProgress(done, total);
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return self.isCancelled();
+                    }
+                });
+            }
+        };
+        task.setOnSucceeded(e -> {
+            finish();
+            onSuccess.accept(task.getValue());
+        });
+        task.setOnFailed(e -> {
+            finish();
+            onError.accept(task.getException());
+        });
+        task.setOnCancelled(e -> finish());
+
+        current = task;
+        lblTask.setText(title);
+        progressBar.progressProperty().bind(task.progressProperty());
+        busy.set(true);
+        executor.submit(task);
+        return true;
+    }
+
+    private void finish() {
+        progressBar.progressProperty().unbind();
+        current = null;
+        busy.set(false);
+    }
+
+    /**
+     * Lança CancellationException se a operação tiver sido cancelada.
+     * @param progress Progresso da operação
+     */
+    public static void checkCancelled(Progress progress) {
+        if (progress.isCancelled()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Executa um passo que não pode ser interrompido a meio (por exemplo, um acesso à base de
+     * dados): o cancelamento é verificado antes do passo e a barra fica indeterminada até ao fim.
+     * Se a operação for cancelada durante o passo, o resultado não é entregue.
+     * @param progress Progresso da operação
+     * @param step Passo a executar
+     * @return O resultado do passo
+     * @throws Exception Se o passo falhar
+     */
+    public static <T> T step(Progress progress, Callable<T> step) throws Exception {
+        checkCancelled(progress);
+        T result = step.call();
+        progress.update(1, 1);
+        return result;
+    }
+
+    /**
+     * Lê um ficheiro por blocos, indicando o progresso.
+     * @param path Ficheiro a ler
+     * @param progress Progresso da operação
+     * @return O conteúdo do ficheiro
+     * @throws IOException Se o ficheiro não puder ser lido
+     */
+    public static byte[] readBytes(Path path, Progress progress) throws IOException {
+        long total = Files.size(path);
+        byte[] buffer = new byte[CHUNK];
+        ByteArrayOutputStream content = new ByteArrayOutputStream((int) Math.min(total, Integer.MAX_VALUE - 8));
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                checkCancelled(progress);
+                content.write(buffer, 0, read);
+                progress.update(content.size(), total);
+            }
+        }
+        return content.toByteArray();
+    }
+
+    /**
+     * Escreve um ficheiro por blocos, indicando o progresso. Os dados são escritos num ficheiro
+     * temporário ao lado do ficheiro final, que só é substituído quando a escrita termina: se a
+     * operação for cancelada ou falhar, o ficheiro anterior fica intacto e o temporário é apagado.
+     * @param path Ficheiro a escrever
+     * @param bytes Conteúdo
+     * @param progress Progresso da operação
+     * @throws IOException Se o ficheiro não puder ser escrito
+     */
+    public static void writeBytes(Path path, byte[] bytes, Progress progress) throws IOException {
+        Path target = path.toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                for (int done = 0; done < bytes.length; done += CHUNK) {
+                    checkCancelled(progress);
+                    out.write(bytes, done, Math.min(CHUNK, bytes.length - done));
+                    progress.update(Math.min(done + CHUNK, bytes.length), bytes.length);
+                }
+            }
+            checkCancelled(progress);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Lê um ficheiro de texto (UTF-8) por blocos, indicando o progresso.
+     * @param path Ficheiro a ler
+     * @param progress Progresso da operação
+     * @return O conteúdo do ficheiro
+     * @throws IOException Se o ficheiro não puder ser lido
+     */
+    public static String readText(Path path, Progress progress) throws IOException {
+        return new String(readBytes(path, progress), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Escreve um ficheiro de texto (UTF-8) por blocos, indicando o progresso (ver writeBytes).
+     * @param path Ficheiro a escrever
+     * @param text Conteúdo
+     * @param progress Progresso da operação
+     * @throws IOException Se o ficheiro não puder ser escrito
+     */
+    public static void writeText(Path path, String text, Progress progress) throws IOException {
+        writeBytes(path, text.getBytes(StandardCharsets.UTF_8), progress);
+    }
+}
@@ -5,6 +5,7 @@ import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
+import pt.isec.pa.chess.model.BoardChange;
 import pt.isec.pa.chess.model.ChessGameManager;
 import pt.isec.pa.chess.model.MoveResult;
 import pt.isec.pa.chess.model.WinnerEnum;
@@ -22,11 +23,15 @@ public class BoardView extends Canvas {
     ChessGameManager data;
     ModelUi dataUi;
     private int[] selectedSource = null;
+    private long highlighted;
 
-    public BoardView(ChessGameManager data, ModelUi dataUi) {
+    PulseNotifier notifier;
+
+    public BoardView(ChessGameManager data, ModelUi dataUi, PulseNotifier notifier) {
         super(550, 550);
         this.data = data;
         this.dataUi = dataUi;
+        this.notifier = notifier;
         registerHandlers();
         update();
     }
@@ -61,36 +66,36 @@ public class BoardView extends Canvas {
         return ImageManager.getImage(imageName);
     }
 
-    private void drawPieces(GraphicsContext gc) {
-        int boardSize = data.getBoardSize();
-        double squareSize = (Math.min(getWidth(), getHeight()) - 2 * MARGIN) / boardSize;
-
-        if (data.queryBoardState().isEmpty()) {
-            return;
-        }
-        String[] pieces = data.queryBoardState().split(",");
-        for (String p : pieces) {
-            int row = boardSize - Character.getNumericValue(p.charAt(2));
-            int col = p.charAt(1) - 'A';
-            Image pieceImage = getPieceImage(p.charAt(0));
-            double x = MARGIN + col * squareSize;
-            double y = MARGIN + row * squareSize;
-            gc.drawImage(pieceImage, x, y, squareSize, squareSize);
-        }
-    }
-
-
     private void createViews() {
     }
 
-    private void drawBoard(GraphicsContext gc) {
-        gc.clearRect(0, 0, getWidth(), getHeight());
-
+    private void drawSquares(GraphicsContext gc, long squares) {
         int boardSize = data.getBoardSize();
         double squareSize = (Math.min(getWidth(), getHeight()) - 2 * MARGIN) / boardSize;
 
+        long selected = 0;
+        long possible = 0;
+        if (selectedSource != null) {
+            selected = 1L << square(selectedSource[1], selectedSource[0] + 1);
+            if (dataUi.getShowPossibleMoves()) {
+                List<String> possibleMoves = data.getPossibleMoves((char) ('A' + selectedSource[1]), selectedSource[0] + 1);
+                if (possibleMoves != null) {
+                    for (String move : possibleMoves) {
+                        possible |= 1L << square(move.charAt(0) - 'A', Integer.parseInt(move.substring(1)));
+                    }
+                }
+            }
+        }
+        // as casas que deixaram de estar destacadas também têm de ser redesenhadas
+        squares |= highlighted | selected | possible;
+        highlighted = selected | possible;
+
         for (int row = 0; row < boardSize; row++) {
             for (int col = 0; col < boardSize; col++) {
+                int sq = square(col, boardSize - row);
+                if ((squares & 1L << sq) == 0) {
+                    continue;
+                }
                 double x = MARGIN + col * squareSize;
                 double y = MARGIN + row * squareSize;
                 boolean light = (row + col) % 2 == 0;
@@ -101,35 +106,30 @@ public class BoardView extends Canvas {
                 gc.strokeRect(x, y, squareSize, squareSize);
 
                 // Destacar casa selecionada
-                if (selectedSource != null && 7 - selectedSource[0] == row && selectedSource[1] == col) {
+                if ((selected & 1L << sq) != 0) {
                     gc.setStroke(Color.BROWN);
                     gc.setLineWidth(3);
                     gc.strokeRect(x + 1.5, y + 1.5, squareSize - 3, squareSize - 3);
                 }
 
-                if (selectedSource != null && dataUi.getShowPossibleMoves()) {
-                    List<String> possibleMoves = data.getPossibleMoves((char) ('A' + selectedSource[1]), selectedSource[0] + 1);
-                    if (possibleMoves == null) {
-                        continue;
-                    }
-                    for (String move : possibleMoves) {
-                        char moveCol = move.charAt(0);
-                        int moveRow = Integer.parseInt(move.substring(1));
-
-                        int moveColIdx = moveCol - 'A';
-                        int moveRowIdx = boardSize - moveRow;
+                if ((possible & 1L << sq) != 0) {
+                    gc.setStroke(Color.GREEN);
+                    gc.setLineWidth(3);
+                    gc.strokeRect(x + 1.5, y + 1.5, squareSize - 3, squareSize - 3);
+                }
 
-                        if (moveRowIdx == row && moveColIdx == col) {
-                            gc.setStroke(Color.GREEN);
-                            gc.setLineWidth(3);
-                            gc.strokeRect(x + 1.5, y + 1.5, squareSize - 3, squareSize - 3);
-                        }
-                    }
+                Character piece = data.getCharPieceTypeAt((char) ('A' + col), boardSize - row);
+                if (piece != null) {
+                    gc.drawImage(getPieceImage(piece), x, y, squareSize, squareSize);
                 }
             }
         }
     }
 
+    private static int square(int col, int row) {
+        return (row - 1) * 8 + col;
+    }
+
     private void drawLabels(GraphicsContext gc) {
         int boardSize = data.getBoardSize();
         double squareSize = (Math.min(getWidth(), getHeight()) - 2 * MARGIN) / boardSize;
@@ -156,8 +156,8 @@ public class BoardView extends Canvas {
     }
 
     private void registerHandlers() {
-        data.addPropertyChangeListener(ChessGameManager.PROP_VALUE_BOARD, evt -> {
-            update();
+        notifier.addPropertyChangeListener(PulseNotifier.PROP_VALUE_BOARD, evt -> {
+            update((BoardChange) evt.getNewValue());
         });
         dataUi.addPropertyChangeListener(ModelUi.PROP_VALUE_SOUND, evt -> {
             update();
@@ -195,7 +195,7 @@ public class BoardView extends Canvas {
             if (selectedSource == null) {
                 if (isCurrentTeamPiece) {
                     selectedSource = new int[]{row, col};
-                    update();
+                    updateSelection();
                 }
             } else {
                 char fromCol = (char) ('A' + selectedSource[1]);
@@ -206,7 +206,7 @@ public class BoardView extends Canvas {
                     if (!dataUi.getIsNormalMode() || possibleMoves.isEmpty()) {
                         selectedSource = new int[]{row, col};
                     }
-                    update();
+                    updateSelection();
                     return;
                 }
 
@@ -249,7 +249,9 @@ public class BoardView extends Canvas {
                     if (dataUi.getSoundOn()) {
                         SoundManager.playSequence(seq);
                     }
+                    // o tabuleiro é redesenhado com a notificação do modelo, no próximo frame
                     selectedSource = null;
+                    return;
                 } else if (data.getWinner() != null) {
                     checkWinner();
                     return;
@@ -257,7 +259,7 @@ public class BoardView extends Canvas {
                     selectedSource = null;
                 }
             }
-            update();
+            updateSelection();
         });
     }
 
@@ -278,14 +280,25 @@ public class BoardView extends Canvas {
     private void showPromotionDialog(char col, int row) {
         PieceTypeEnum chosenPiece = PromotionDialog.show();
         data.pawnPromotion(col, row, chosenPiece);
-        update();
     }
 
     public void update() {
         GraphicsContext gc = this.getGraphicsContext2D();
-        drawBoard(gc);
+        gc.clearRect(0, 0, getWidth(), getHeight());
+        drawSquares(gc, -1L);
         drawLabels(gc);
-        drawPieces(gc);
+    }
+
+    private void update(BoardChange change) {
+        if (change.isFull()) {
+            update();
+            return;
+        }
+        drawSquares(this.getGraphicsContext2D(), change.squares());
+    }
+
+    private void updateSelection() {
+        drawSquares(this.getGraphicsContext2D(), 0);
     }
 
 private void showAlert(String title, String message, javafx.scene.control.Alert.AlertType type) {
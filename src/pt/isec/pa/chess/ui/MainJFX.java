@@ -2,12 +2,19 @@ package pt.isec.pa.chess.ui;
 
 import javafx.application.Application;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonType;
 import javafx.stage.Stage;
 import pt.isec.pa.chess.model.ChessGame;
 import pt.isec.pa.chess.model.ChessGameManager;
+import pt.isec.pa.chess.model.GameDatabase;
 import pt.isec.pa.chess.model.data.Board;
 
+import java.io.File;
+
 public class MainJFX extends Application {
+    private static final String AUTOSAVE = "autosave";
+
     ChessGameManager chessGameManager;
     ModelUi modelUi;
 
@@ -18,21 +25,47 @@ public class MainJFX extends Application {
 
     @Override
     public void start(Stage stage) throws Exception {
-        createChessStage(stage);
+        RootPane root = createChessStage(stage);
+        String database = null;
+        for (String arg : getParameters().getRaw()) {
+            if (arg.endsWith(GameDatabase.EXTENSION)) {
+                database = arg;
+            }
+        }
+        if (database != null) {
+            root.openExplorer(new File(database));
+        }
         Stage stageModelLog = new Stage();
         createModelLog(stageModelLog, stage.getX()+stage.getWidth(),stage.getY());
+        recoverAutosave();
+        chessGameManager.startAutosave(AUTOSAVE);
 
         stage.setOnCloseRequest(windowEvent -> {
+            chessGameManager.stopAutosave(true);
             stageModelLog.close();
         });
     }
 
-    private void createChessStage(Stage stage) {
+    private void recoverAutosave() {
+        if (!chessGameManager.hasAutosave(AUTOSAVE)) {
+            return;
+        }
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Recover Game");
+        alert.setHeaderText(null);
+        alert.setContentText("The last game was not closed properly. Do you want to recover it?");
+        if (alert.showAndWait().filter(button -> button == ButtonType.OK).isPresent()) {
+            chessGameManager.recoverAutosave(AUTOSAVE);
+        }
+    }
+
+    private RootPane createChessStage(Stage stage) {
         RootPane root = new RootPane(chessGameManager, modelUi);
         Scene scene = new Scene(root, 800, 1000);
         stage.setScene(scene);
         stage.setTitle("PA Chess Game");
         stage.show();
+        return root;
     }
 
     private void createModelLog(Stage stage, double x, double y) {
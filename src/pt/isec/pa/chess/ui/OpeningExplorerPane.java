@@ -0,0 +1,123 @@
+package pt.isec.pa.chess.ui;
+
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
+import pt.isec.pa.chess.model.ChessGameManager;
+import pt.isec.pa.chess.model.OpeningExplorer;
+
+import java.io.File;
+import java.util.List;
+
+public class OpeningExplorerPane extends VBox {
+    ChessGameManager data;
+    Label lblTitle, lblStatus;
+    Button btnOpen;
+    ListView<String> movesList;
+    PulseNotifier notifier;
+    BackgroundIo backgroundIo;
+
+    public OpeningExplorerPane(ChessGameManager data, PulseNotifier notifier, BackgroundIo backgroundIo) {
+        this.data = data;
+        this.notifier = notifier;
+        this.backgroundIo = backgroundIo;
+        createViews();
+        registerHandlers();
+        update();
+    }
+
+    private void createViews() {
+        lblTitle = new Label("Opening Explorer");
+        lblTitle.setStyle("-fx-font-size: 15px; -fx-font-weight: bold;");
+        btnOpen = new Button("Open database...");
+        lblStatus = new Label();
+        movesList = new ListView<>();
+        movesList.setStyle("-fx-font-family: monospace;");
+        VBox.setVgrow(movesList, Priority.ALWAYS);
+
+        this.setPadding(new Insets(10));
+        this.setAlignment(Pos.TOP_CENTER);
+        this.setSpacing(5);
+        this.setPrefWidth(220);
+
+        this.getChildren().addAll(lblTitle, btnOpen, lblStatus, movesList);
+    }
+
+    private void registerHandlers() {
+        btnOpen.disableProperty().bind(backgroundIo.busyProperty());
+        // a árvore é construída na thread de fundo: o painel volta a ficar ativo quando a operação
+        // termina, mesmo que seja cancelada
+        backgroundIo.busyProperty().addListener((obs, wasBusy, busy) -> {
+            if (!busy && this.isDisabled()) {
+                this.setDisable(false);
+                update();
+            }
+        });
+        notifier.addPropertyChangeListener(PulseNotifier.PROP_VALUE_BOARD, evt -> {
+            update();
+        });
+        data.addPropertyChangeListener(ChessGameManager.PROP_VALUE_EXPLORER, evt -> {
+            update();
+        });
+        btnOpen.setOnAction(e -> {
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Open Database");
+            fileChooser.setInitialDirectory(new File("."));
+            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Files (*.pdb)", "*.pdb"));
+            File file = fileChooser.showOpenDialog(this.getScene().getWindow());
+            if (file != null) {
+                open(file);
+            }
+        });
+    }
+
+    public void open(File file) {
+        boolean started = backgroundIo.run("Building explorer for " + file.getName(), progress -> {
+            OpeningExplorer opened = BackgroundIo.step(progress, () -> ChessGameManager.loadExplorer(file.getAbsolutePath()));
+            if (opened != null && progress.isCancelled()) {
+                opened.close();
+            }
+            return opened;
+        }, opened -> {
+            if (!data.attachExplorer(opened)) {
+                showError();
+            }
+        }, ex -> showError());
+        if (started) {
+            this.setDisable(true);
+            lblStatus.setText("Building explorer...");
+        }
+    }
+
+    private void showError() {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Error");
+        alert.setHeaderText(null);
+        alert.setContentText("Error on opening the database");
+        alert.showAndWait();
+    }
+
+    private void update() {
+        if (!data.hasExplorer()) {
+            lblStatus.setText("No database open");
+            movesList.getItems().clear();
+            return;
+        }
+        List<OpeningExplorer.MoveStats> moves = data.getExplorerMoves();
+        lblStatus.setText(moves.isEmpty() ? "Position not in the database" : "");
+        movesList.getItems().setAll(moves.stream().map(OpeningExplorerPane::format).toList());
+    }
+
+    private static String format(OpeningExplorer.MoveStats stats) {
+        double score = stats.whiteScore();
+        return String.format("%-6s %5d  %s  +%d =%d -%d", stats.move(), stats.games(),
+                score < 0 ? "  -  " : String.format("%4.0f%%", score * 100),
+                stats.whiteWins(), stats.draws(), stats.blackWins());
+    }
+}
@@ -0,0 +1,61 @@
+package pt.isec.pa.chess.ui;
+
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import pt.isec.pa.chess.model.BoardChange;
+import pt.isec.pa.chess.model.ChessGameManager;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+
+public final class PulseNotifier {
+    public static final String PROP_VALUE_BOARD = "prop_pulse_board";
+    public static final String PROP_VALUE_PLAYER = "prop_pulse_player";
+
+    private final PropertyChangeSupport pcs;
+    private final Runnable pulseListener = this::flush;
+    private BoardChange pendingBoard;
+    private boolean pendingPlayer;
+
+    public PulseNotifier(ChessGameManager data, Node owner) {
+        this.pcs = new PropertyChangeSupport(this);
+        data.addPropertyChangeListener(ChessGameManager.PROP_VALUE_BOARD, evt -> {
+            BoardChange change = evt.getNewValue() instanceof BoardChange boardChange ? boardChange : BoardChange.FULL;
+            pendingBoard = pendingBoard == null ? change : pendingBoard.merge(change);
+            Platform.requestNextPulse();
+        });
+        data.addPropertyChangeListener(ChessGameManager.PROP_VALUE_PLAYER, evt -> {
+            pendingPlayer = true;
+            Platform.requestNextPulse();
+        });
+        owner.sceneProperty().addListener((observable, oldScene, newScene) -> attach(oldScene, newScene));
+        attach(null, owner.getScene());
+    }
+
+    public void addPropertyChangeListener(String property, PropertyChangeListener listener) {
+        pcs.addPropertyChangeListener(property, listener);
+    }
+
+    private void attach(Scene oldScene, Scene newScene) {
+        if (oldScene != null) {
+            oldScene.removePreLayoutPulseListener(pulseListener);
+        }
+        if (newScene != null) {
+            newScene.addPreLayoutPulseListener(pulseListener);
+        }
+    }
+
+    private void flush() {
+        BoardChange board = pendingBoard;
+        boolean player = pendingPlayer;
+        pendingBoard = null;
+        pendingPlayer = false;
+        if (board != null) {
+            pcs.firePropertyChange(PROP_VALUE_BOARD, null, board);
+        }
+        if (player) {
+            pcs.firePropertyChange(PROP_VALUE_PLAYER, null, null);
+        }
+    }
+}
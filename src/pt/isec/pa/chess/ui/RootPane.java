@@ -11,6 +11,8 @@ import pt.isec.pa.chess.model.ChessGameManager;
 import pt.isec.pa.chess.model.WinnerEnum;
 import pt.isec.pa.chess.model.data.PieceTeamEnum;
 
+import java.io.File;
+
 public class RootPane extends BorderPane {
     ChessGameManager data;
     ModelUi dataUi;
@@ -18,19 +20,22 @@ public class RootPane extends BorderPane {
     Label lblTitle, lblPlayerWhite, lblPlayerBlack, lblCurrentPlayer;
     Button btnSound;
     TopMenuBar topMenuBar;
+    OpeningExplorerPane explorerPane;
     VBox infoBox;
+    PulseNotifier notifier;
 
     public RootPane(ChessGameManager data, ModelUi dataUi) {
         this.data = data;
         this.dataUi = dataUi;
+        this.notifier = new PulseNotifier(data, this);
         createViews();
         registerHandlers();
         update();
     }
 
     private void createViews() {
-        boardView = new BoardView(data, dataUi);
-        topMenuBar = new TopMenuBar(data, dataUi);
+        boardView = new BoardView(data, dataUi, notifier);
+        topMenuBar = new TopMenuBar(data, dataUi, notifier);
         setTop(topMenuBar);
 
         infoBox = createInfo();
@@ -39,6 +44,9 @@ public class RootPane extends BorderPane {
         centerBox.setSpacing(5);
 
         setCenter(centerBox);
+
+        explorerPane = new OpeningExplorerPane(data, notifier, topMenuBar.getBackgroundIo());
+        setRight(explorerPane);
     }
 
     private VBox createInfo() {
@@ -58,7 +66,7 @@ public class RootPane extends BorderPane {
     }
 
     private void registerHandlers() {
-        data.addPropertyChangeListener(ChessGameManager.PROP_VALUE_PLAYER, evt -> {
+        notifier.addPropertyChangeListener(PulseNotifier.PROP_VALUE_PLAYER, evt -> {
             update();
         });
         dataUi.addPropertyChangeListener(ModelUi.PROP_VALUE_SOUND, evt -> {
@@ -68,11 +76,15 @@ public class RootPane extends BorderPane {
             dataUi.setSoundOn(!dataUi.getSoundOn());
         });
         boardView.widthProperty().bind(Bindings.createDoubleBinding(() ->
-                        Math.min(getWidth(), getHeight() - topMenuBar.getHeight() - infoBox.prefHeight(-1) - 20),
-                widthProperty(), heightProperty(), topProperty()));
+                        Math.min(getWidth() - explorerPane.getWidth(), getHeight() - topMenuBar.getHeight() - infoBox.prefHeight(-1) - 20),
+                widthProperty(), heightProperty(), topProperty(), explorerPane.widthProperty()));
         boardView.heightProperty().bind(boardView.widthProperty());
     }
 
+    public void openExplorer(File file) {
+        explorerPane.open(file);
+    }
+
     private void update() {
         String playerWhite = data.getPlayerWhite() != null ? data.getPlayerWhite() : "Not defined";
         String playerBlack = data.getPlayerBlack() != null ? data.getPlayerBlack() : "Not defined";
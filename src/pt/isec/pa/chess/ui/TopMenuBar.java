@@ -5,24 +5,36 @@ import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import pt.isec.pa.chess.model.ChessGameManager;
+import pt.isec.pa.chess.model.DetachedGame;
+import pt.isec.pa.chess.model.PositionIndex;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 
 public class TopMenuBar extends VBox {
+    private static final int MAX_POSITION_HITS = 50;
+
     ChessGameManager data;
     ModelUi dataUi;
     MenuBar menuBar;
     Menu mnGame, mnMode;
-    MenuItem mnNew, mnOpen, mnSave, mnImport, mnExport, mnQuit;
+    MenuItem mnNew, mnOpen, mnOpenDb, mnSave, mnSaveDb, mnFindPosition, mnImport, mnExport, mnQuit;
     RadioMenuItem mnNormal, mnLearning, mnShowPossibleMoves;
-    MenuItem mnUndo, mnRedo;
+    MenuItem mnUndo, mnRedo, mnGoToPly;
     AskName askName;
+    BackgroundIo backgroundIo;
+    PulseNotifier notifier;
 
-    public TopMenuBar(ChessGameManager data, ModelUi dataUi) {
+    public TopMenuBar(ChessGameManager data, ModelUi dataUi, PulseNotifier notifier) {
         this.data = data;
         this.dataUi = dataUi;
+        this.notifier = notifier;
         createViews();
         registerHandlers();
         update();
@@ -35,12 +47,15 @@ public class TopMenuBar extends VBox {
         mnGame = new Menu("Game");
         mnNew = new MenuItem("_New");
         mnOpen = new MenuItem("_Open");
+        mnOpenDb = new MenuItem("Open from _database...");
         mnSave = new MenuItem("_Save");
+        mnSaveDb = new MenuItem("Save to d_atabase...");
+        mnFindPosition = new MenuItem("Games with this _position...");
         mnImport = new MenuItem("_Import");
         mnExport = new MenuItem("_Export");
         mnQuit = new MenuItem("_Quit");
 
-        mnGame.getItems().addAll(mnNew, new SeparatorMenuItem(), mnOpen, mnSave, new SeparatorMenuItem(),
+        mnGame.getItems().addAll(mnNew, new SeparatorMenuItem(), mnOpen, mnOpenDb, mnSave, mnSaveDb, mnFindPosition, new SeparatorMenuItem(),
                 mnImport, mnExport, new SeparatorMenuItem(), mnQuit);
 
         mnMode = new Menu("Mode");
@@ -53,19 +68,25 @@ public class TopMenuBar extends VBox {
 
         mnUndo = new MenuItem("Undo");
         mnRedo = new MenuItem("Redo");
+        mnGoToPly = new MenuItem("Go to move...");
         mnShowPossibleMoves = new RadioMenuItem("Possible Moves");
         mnUndo.setDisable(true);
         mnRedo.setDisable(true);
+        mnGoToPly.setDisable(true);
         mnShowPossibleMoves.setDisable(true);
 
-        mnMode.getItems().addAll(mnNormal, mnLearning, new SeparatorMenuItem(), mnUndo, mnRedo, mnShowPossibleMoves);
+        mnMode.getItems().addAll(mnNormal, mnLearning, new SeparatorMenuItem(), mnUndo, mnRedo, mnGoToPly, mnShowPossibleMoves);
 
         menuBar.getMenus().addAll(mnGame, mnMode);
-        this.getChildren().add(menuBar);
+        backgroundIo = new BackgroundIo();
+        this.getChildren().addAll(menuBar, backgroundIo);
     }
 
     public void registerHandlers() {
-        data.addPropertyChangeListener(ChessGameManager.PROP_VALUE_BOARD, evt -> {
+        for (MenuItem item : List.of(mnOpen, mnOpenDb, mnSave, mnSaveDb, mnFindPosition, mnImport, mnExport)) {
+            item.disableProperty().bind(backgroundIo.busyProperty());
+        }
+        notifier.addPropertyChangeListener(PulseNotifier.PROP_VALUE_BOARD, evt -> {
             update();
         });
 
@@ -79,63 +100,121 @@ public class TopMenuBar extends VBox {
 
         mnOpen.setOnAction(e -> {
             File file = chooseFile("Open Chess Game", "*.paf");
-            if (file != null && data.importPartialGameFromFileBin(file.getAbsolutePath())) {
-                showAlert("Success", "Game successfully loaded: " + file.getName(), Alert.AlertType.INFORMATION);
-            } else {
+            if (file == null) {
                 showAlert("Error", "Error on loading a game", Alert.AlertType.ERROR);
+                return;
             }
+            backgroundIo.run("Opening " + file.getName(), progress -> DetachedGame.fromBin(BackgroundIo.readBytes(file.toPath(), progress)),
+                    game -> {
+                        if (data.attachGame(game)) {
+                            showAlert("Success", "Game successfully loaded: " + file.getName(), Alert.AlertType.INFORMATION);
+                        } else {
+                            showAlert("Error", "Error on loading a game", Alert.AlertType.ERROR);
+                        }
+                    }, onError("Error on loading a game"));
+        });
+
+        mnOpenDb.setOnAction(e -> {
+            File file = chooseFile("Open from Database", "*.pdb");
+            if (file == null) {
+                return;
+            }
+            backgroundIo.run("Opening " + file.getName(), progress -> BackgroundIo.step(progress, () -> data.getDatabaseSize(file.getAbsolutePath())),
+                    size -> openFromDatabase(file, size), onError("Error on opening the database"));
+        });
+
+        mnFindPosition.setOnAction(e -> {
+            File file = chooseFile("Games with this Position", "*.pdb");
+            if (file == null) {
+                return;
+            }
+            long key = data.getPositionKey();
+            backgroundIo.run("Searching " + file.getName(),
+                    progress -> BackgroundIo.step(progress,
+                            () -> ChessGameManager.findGamesReachingPosition(file.getAbsolutePath(), key, MAX_POSITION_HITS)),
+                    this::showPositionHits, onError("Error on searching the database"));
+        });
+
+        mnSaveDb.setOnAction(e -> {
+            File file = chooseSaveFile("Save to Database", "*.pdb");
+            if (file == null) {
+                return;
+            }
+            DetachedGame game = data.detachGame();
+            backgroundIo.run("Saving to " + file.getName(), progress -> BackgroundIo.step(progress, () -> game.writeToDatabase(file.getAbsolutePath())),
+                    id -> {
+                        if (id >= 0) {
+                            showAlert("Success", "Game saved with id " + id, Alert.AlertType.INFORMATION);
+                        } else {
+                            showAlert("Error", "Error on saving a game", Alert.AlertType.ERROR);
+                        }
+                    }, onError("Error on saving a game"));
         });
 
         mnSave.setOnAction(e -> {
             File file = chooseSaveFile("Save Game", "*.paf", ".paf");
-            if (file != null && data.exportPartialGameBin(file.getAbsolutePath())) {
-                showAlert("Success", "Game successfully saved", Alert.AlertType.INFORMATION);
-            } else {
+            if (file == null) {
                 showAlert("Error", "Error on saving a game", Alert.AlertType.ERROR);
+                return;
             }
+            DetachedGame game = data.detachGame();
+            backgroundIo.run("Saving " + file.getName(), progress -> {
+                BackgroundIo.writeBytes(file.toPath(), game.toBin(), progress);
+                return true;
+            }, this::showSaveResult, onError("Error on saving a game"));
         });
 
         mnImport.setOnAction(e -> {
-            File file = chooseFile("Import Chess Partial Game", "*.txt", "*.csv");
-            if (file != null) {
-                try {
-                    String content = Files.readString(file.toPath());
-
-                    if (file.getName().toLowerCase().endsWith(".csv")) {
-                        content = content.replace("\n", "").replace("\r", "");
-                    }
-
-                    askName.showAndWait();
-                    if(dataUi.getAreNamesConfirmed()) {
-                        if (data.importPartialGameTxt(content)) {
-                            showAlert("Success", "Game successfully loaded: " + file.getName(), Alert.AlertType.INFORMATION);
-                        } else {
-                            showAlert("Error", "Invalid file format", Alert.AlertType.ERROR);
-                        }
-                        dataUi.setAreNamesConfirmed(!dataUi.getAreNamesConfirmed());
-                    }
-                } catch (IOException ex) {
-                    showAlert("Error", "Error reading file", Alert.AlertType.ERROR);
-                }
+            File file = chooseFile("Import Chess Partial Game", "*.txt", "*.csv", "*.fen", "*.pgn");
+            if (file == null) {
+                return;
             }
+            String name = file.getName().toLowerCase();
+            if (name.endsWith(".pgn")) {
+                backgroundIo.run("Importing " + file.getName(), progress -> DetachedGame.fromPgn(BackgroundIo.readText(file.toPath(), progress)),
+                        game -> {
+                            if (data.attachGame(game)) {
+                                showAlert("Success", "Game successfully loaded: " + file.getName(), Alert.AlertType.INFORMATION);
+                            } else {
+                                showAlert("Error", "Invalid file format", Alert.AlertType.ERROR);
+                            }
+                        }, onError("Invalid file format"));
+                return;
+            }
+            backgroundIo.run("Importing " + file.getName(),
+                    progress -> name.endsWith(".fen") ? firstLine(file) : BackgroundIo.readText(file.toPath(), progress),
+                    content -> importText(file, content), onError("Error reading file"));
         });
 
         mnExport.setOnAction(e -> {
-            File file = chooseSaveFile("Export Game", "*.txt", "*.csv");
-            if (file != null) {
-                try {
-                    String content = data.exportPartialGameTxt();
-
-                    if (file.getName().toLowerCase().endsWith(".csv")) {
-                        content = content.replace("\n", "").replace("\r", "");
+            File file = chooseSaveFile("Export Game", "*.txt", "*.csv", "*.fen", "*.pgn");
+            if (file == null) {
+                return;
+            }
+            String name = file.getName().toLowerCase();
+            if (name.endsWith(".pgn")) {
+                DetachedGame game = data.detachGame();
+                backgroundIo.run("Exporting " + file.getName(), progress -> {
+                    String pgn = game.toPgn();
+                    if (pgn == null) {
+                        return false;
                     }
-
-                    Files.writeString(file.toPath(), content);
-                    showAlert("Success", "Game successfully saved", Alert.AlertType.INFORMATION);
-                } catch (IOException ex) {
-                    showAlert("Error", "Error on saving a game", Alert.AlertType.ERROR);
-                }
+                    BackgroundIo.writeText(file.toPath(), pgn, progress);
+                    return true;
+                }, this::showSaveResult, onError("Error on saving a game"));
+                return;
             }
+            String content = name.endsWith(".fen")
+                    ? data.exportFen() + System.lineSeparator()
+                    : data.exportPartialGameTxt();
+            if (name.endsWith(".csv")) {
+                content = content.replace("\n", "").replace("\r", "");
+            }
+            String text = content;
+            backgroundIo.run("Exporting " + file.getName(), progress -> {
+                BackgroundIo.writeText(file.toPath(), text, progress);
+                return true;
+            }, this::showSaveResult, onError("Error on saving a game"));
         });
 
         mnQuit.setOnAction(e -> Platform.exit());
@@ -145,6 +224,7 @@ public class TopMenuBar extends VBox {
             mnShowPossibleMoves.setSelected(false);
             mnUndo.setDisable(true);
             mnRedo.setDisable(true);
+            mnGoToPly.setDisable(true);
             dataUi.setShowPossibleMoves(false);
             dataUi.setNormalMode(true);
         });
@@ -153,6 +233,7 @@ public class TopMenuBar extends VBox {
             mnShowPossibleMoves.setDisable(false);
             mnUndo.setDisable(!data.hasUndo());
             mnRedo.setDisable(!data.hasRedo());
+            mnGoToPly.setDisable(data.getHistorySize() == 0);
             dataUi.setNormalMode(false);
         });
 
@@ -164,15 +245,34 @@ public class TopMenuBar extends VBox {
             data.redo();
         });
 
+        mnGoToPly.setOnAction(e -> {
+            TextInputDialog dialog = new TextInputDialog(String.valueOf(data.getPly()));
+            dialog.setTitle("Go to move");
+            dialog.setHeaderText(null);
+            dialog.setContentText("Half-move (0 - " + data.getHistorySize() + "):");
+            dialog.showAndWait().ifPresent(text -> {
+                try {
+                    data.goToPly(Integer.parseInt(text.trim()));
+                } catch (NumberFormatException ex) {
+                    showAlert("Error", "Invalid move number", Alert.AlertType.ERROR);
+                }
+            });
+        });
+
         mnShowPossibleMoves.setOnAction(e -> {
             dataUi.setShowPossibleMoves(mnShowPossibleMoves.isSelected());
         });
     }
 
+    public BackgroundIo getBackgroundIo() {
+        return backgroundIo;
+    }
+
     public void update() {
         if(mnLearning.isSelected()) {
             mnUndo.setDisable(!data.hasUndo());
             mnRedo.setDisable(!data.hasRedo());
+            mnGoToPly.setDisable(data.getHistorySize() == 0);
         }
     }
 
@@ -217,6 +317,95 @@ public class TopMenuBar extends VBox {
         return file;
     }
 
+    private void openFromDatabase(File file, int size) {
+        if (size <= 0) {
+            showAlert("Error", size == 0 ? "The database is empty" : "Error on opening the database", Alert.AlertType.ERROR);
+            return;
+        }
+        TextInputDialog dialog = new TextInputDialog(String.valueOf(size - 1));
+        dialog.setTitle("Open from Database");
+        dialog.setHeaderText(null);
+        dialog.setContentText("Game id (0 - " + (size - 1) + "):");
+        dialog.showAndWait().ifPresent(text -> {
+            int id;
+            try {
+                id = Integer.parseInt(text.trim());
+            } catch (NumberFormatException ex) {
+                showAlert("Error", "Invalid game id", Alert.AlertType.ERROR);
+                return;
+            }
+            backgroundIo.run("Opening game " + id, progress -> BackgroundIo.step(progress, () -> DetachedGame.readFromDatabase(file.getAbsolutePath(), id)),
+                    game -> {
+                        if (data.attachGame(game)) {
+                            showAlert("Success", "Game " + id + " successfully loaded: " + file.getName(), Alert.AlertType.INFORMATION);
+                        } else {
+                            showAlert("Error", "Error on loading a game", Alert.AlertType.ERROR);
+                        }
+                    }, onError("Error on loading a game"));
+        });
+    }
+
+    private void showPositionHits(List<PositionIndex.Hit> hits) {
+        if (hits == null) {
+            showAlert("Error", "Error on searching the database", Alert.AlertType.ERROR);
+            return;
+        }
+        if (hits.isEmpty()) {
+            showAlert("Games with this Position", "No game reached this position", Alert.AlertType.INFORMATION);
+            return;
+        }
+        Map<String, Integer> continuations = new TreeMap<>();
+        StringBuilder sb = new StringBuilder();
+        for (PositionIndex.Hit hit : hits) {
+            String next = hit.nextMove() == null ? "(end)" : hit.nextMove();
+            continuations.merge(next, 1, Integer::sum);
+            sb.append("Game ").append(hit.gameId()).append(" (ply ").append(hit.ply()).append(") -> ")
+                    .append(next).append(System.lineSeparator());
+        }
+        sb.append(System.lineSeparator()).append("Continuations:").append(System.lineSeparator());
+        continuations.forEach((move, count) ->
+                sb.append(move).append(": ").append(count).append(System.lineSeparator()));
+        showAlert("Games with this Position", sb.toString(), Alert.AlertType.INFORMATION);
+    }
+
+    private void importText(File file, String content) {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".csv")) {
+            content = content.replace("\n", "").replace("\r", "");
+        }
+        askName.showAndWait();
+        if(dataUi.getAreNamesConfirmed()) {
+            boolean imported = name.endsWith(".fen")
+                    ? data.importFen(content.trim())
+                    : data.importPartialGameTxt(content);
+            if (imported) {
+                showAlert("Success", "Game successfully loaded: " + file.getName(), Alert.AlertType.INFORMATION);
+            } else {
+                showAlert("Error", "Invalid file format", Alert.AlertType.ERROR);
+            }
+            dataUi.setAreNamesConfirmed(!dataUi.getAreNamesConfirmed());
+        }
+    }
+
+    private void showSaveResult(boolean saved) {
+        if (saved) {
+            showAlert("Success", "Game successfully saved", Alert.AlertType.INFORMATION);
+        } else {
+            showAlert("Error", "Error on saving a game", Alert.AlertType.ERROR);
+        }
+    }
+
+    private Consumer<Throwable> onError(String message) {
+        return ex -> showAlert("Error", message, Alert.AlertType.ERROR);
+    }
+
+    private static String firstLine(File file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath())) {
+            String line = reader.readLine();
+            return line == null ? "" : line;
+        }
+    }
+
     private void showAlert(String title, String message, Alert.AlertType type) {
         Alert alert = new Alert(type);
         alert.setTitle(title);
@@ -0,0 +1,214 @@
+package pt.isec.pa.chess.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import pt.isec.pa.chess.model.engine.EngineBoard;
+import pt.isec.pa.chess.model.engine.Fen;
+import pt.isec.pa.chess.model.engine.Move;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UciEngineTest {
+    private static final long TIMEOUT_MS = 10_000;
+
+    // interface de xadrez simulada: escreve comandos no stdin do motor e lê as linhas do stdout por um pipe
+    static final class PipedGui implements AutoCloseable {
+        final PipedOutputStream commands = new PipedOutputStream();
+        final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        final ExecutorService threads = Executors.newFixedThreadPool(2);
+        final Future<Integer> exitCode;
+
+        PipedGui() throws IOException {
+            PipedInputStream stdin = new PipedInputStream(commands, 1 << 16);
+            PipedInputStream stdout = new PipedInputStream(1 << 16);
+            PrintStream out = new PrintStream(new PipedOutputStream(stdout), false, StandardCharsets.UTF_8);
+            UciEngine engine = new UciEngine(stdin, out);
+            exitCode = threads.submit(engine::run);
+            threads.submit(() -> {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(stdout, StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        lines.add(line);
+                    }
+                } catch (IOException e) {
+                    // o motor terminou
+                }
+                return null;
+            });
+        }
+
+        void send(String command) throws IOException {
+            commands.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+            commands.flush();
+        }
+
+        // lê linhas até uma que comece pelo prefixo; devolve todas as linhas lidas
+        List<String> readUntil(String prefix) throws InterruptedException {
+            List<String> read = new ArrayList<>();
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (true) {
+                String line = lines.poll(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                assertNotNull(line, "no \"" + prefix + "\" after " + read);
+                read.add(line);
+                if (line.startsWith(prefix)) {
+                    return read;
+                }
+            }
+        }
+
+        // o movimento de "bestmove e2e4 [ponder e7e5]"
+        String bestMove() throws InterruptedException {
+            List<String> read = readUntil("bestmove");
+            return read.get(read.size() - 1).split("\\s+")[1];
+        }
+
+        @Override
+        public void close() throws Exception {
+            try {
+                commands.close();
+            } finally {
+                threads.shutdownNow();
+            }
+        }
+    }
+
+    // posição de um comando "position", para validar o bestmove
+    static EngineBoard boardOf(String position) {
+        String[] tokens = position.split("\\s+");
+        int movesAt = List.of(tokens).indexOf("moves");
+        EngineBoard board = new EngineBoard();
+        String fen = tokens[1].equals("fen")
+                ? String.join(" ", List.of(tokens).subList(2, movesAt < 0 ? tokens.length : movesAt))
+                : Fen.START_POSITION;
+        assertTrue(Fen.parse(fen, board));
+        for (int i = movesAt + 1; movesAt >= 0 && i < tokens.length; i++) {
+            int move = board.parseMove(tokens[i]);
+            assertNotEquals(Move.NONE, move, tokens[i]);
+            board.makeMove(move);
+        }
+        return board;
+    }
+
+    // ----
+
+    @Test
+    void run_AnswersHandshakeAndQuits() throws Exception {
+        try (PipedGui gui = new PipedGui()) {
+            // Act
+            gui.send("uci");
+            List<String> handshake = gui.readUntil("uciok");
+            gui.send("isready");
+            List<String> ready = gui.readUntil("readyok");
+            gui.send("quit");
+
+            // Assert
+            assertTrue(handshake.stream().anyMatch(line -> line.startsWith("id name ")));
+            assertTrue(handshake.stream().anyMatch(line -> line.startsWith("option name Hash type spin")));
+            assertEquals(List.of("readyok"), ready);
+            assertEquals(0, gui.exitCode.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_go_SendsLegalBestMove() {
+        return Stream.of(
+                Arguments.arguments("position startpos", "go nodes 200", null),
+                Arguments.arguments("position startpos moves e2e4 e7e5 g1f3", "go depth 1", null),
+                Arguments.arguments("position startpos moves e2e4", "go movetime 100", null),
+                Arguments.arguments("position startpos moves d2d4 d7d5", "go wtime 2000 btime 2000 winc 0 binc 0", null),
+                // a promoção em "moves" leva a peça escolhida
+                Arguments.arguments("position fen 4k3/P7/8/8/8/8/8/4K3 w - - 0 1 moves a7a8n e8d7", "go nodes 100", null),
+                // o rei em xeque só pode capturar a torre
+                Arguments.arguments("position fen k7/8/8/8/8/8/1r6/K1r5 w - - 0 1", "go nodes 50", "a1b2"),
+                // xeque-mate: não há movimento
+                Arguments.arguments("position fen 7k/8/8/8/8/8/r7/1r5K w - - 0 1", "go nodes 50", "0000")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_go_SendsLegalBestMove")
+    void go_SendsLegalBestMove(String position, String go, String expectedMove) throws Exception {
+        try (PipedGui gui = new PipedGui()) {
+            // Arrange
+            gui.send("uci");
+            gui.readUntil("uciok");
+            gui.send("ucinewgame");
+            gui.send(position);
+            gui.send("isready");
+            gui.readUntil("readyok");
+
+            // Act
+            gui.send(go);
+            String best = gui.bestMove();
+
+            // Assert
+            if (expectedMove == null) {
+                assertNotEquals(Move.NONE, boardOf(position).parseMove(best), best);
+            } else {
+                assertEquals(expectedMove, best);
+            }
+            gui.send("quit");
+            assertEquals(0, gui.exitCode.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_stop_EndsOpenSearch() {
+        return Stream.of(
+                // pesquisa sem limites: o bestmove só chega depois de stop
+                Arguments.arguments("go infinite", "stop"),
+                // ponder: ponderhit sem tempo continua até stop
+                Arguments.arguments("go ponder", "stop"),
+                // o fim do input termina a pesquisa e o motor, como quit
+                Arguments.arguments("go infinite", null)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_stop_EndsOpenSearch")
+    void stop_EndsOpenSearch(String go, String stop) throws Exception {
+        try (PipedGui gui = new PipedGui()) {
+            // Arrange
+            gui.send("position startpos moves e2e4 c7c5");
+            gui.send(go);
+            gui.send("isready");
+            gui.readUntil("readyok");
+
+            // Act
+            if (stop == null) {
+                gui.commands.close();
+            } else {
+                gui.send(stop);
+            }
+            String best = gui.bestMove();
+
+            // Assert
+            assertNotEquals(Move.NONE, boardOf("position startpos moves e2e4 c7c5").parseMove(best), best);
+            if (stop != null) {
+                gui.send("quit");
+            }
+            assertEquals(0, gui.exitCode.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package pt.isec.pa.chess.model;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import pt.isec.pa.chess.model.data.PieceTypeEnum;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChessGameManagerTest {
+    static ChessGameManager getManagerForTesting(String fen) {
+        ChessGameManager manager = new ChessGameManager(message -> {});
+        assertTrue(manager.importFen(fen));
+        return manager;
+    }
+
+    // joga um movimento no formato "E1G1" ou, com promoção, "A7A8N"
+    static void play(ChessGameManager manager, String move) {
+        char colPiece = move.charAt(0), colToMove = move.charAt(2);
+        int rowPiece = move.charAt(1) - '0', rowToMove = move.charAt(3) - '0';
+        MoveResult result = manager.executeMove(colPiece, rowPiece, colToMove, rowToMove);
+        assertNotEquals(MoveResult.INVALID, result, move);
+        if (result == MoveResult.VALID_PROMOTION) {
+            PieceTypeEnum type = switch (move.length() > 4 ? move.charAt(4) : 'Q') {
+                case 'N' -> PieceTypeEnum.KNIGHT;
+                case 'B' -> PieceTypeEnum.BISHOP;
+                case 'R' -> PieceTypeEnum.ROOK;
+                default -> PieceTypeEnum.QUEEN;
+            };
+            manager.pawnPromotion(colToMove, rowToMove, type);
+        }
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_undoRedo_RestoresPosition() {
+        return Stream.of(
+                // roque pequeno: rei e torre voltam ao sítio e os direitos de roque são repostos
+                Arguments.arguments("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1", new String[]{"E1G1"},
+                        "r3k2r/8/8/8/8/8/8/R4RK1 b kq - 1 1"),
+                // en passant: o peão capturado volta e a casa de en passant é reposta
+                Arguments.arguments("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1", new String[]{"E5D6"},
+                        "4k3/8/3P4/8/8/8/8/4K3 b - - 0 1"),
+                // promoção a cavalo: volta o peão e o redo repete a mesma promoção
+                Arguments.arguments("4k3/P7/8/8/8/8/8/4K3 w - - 0 1", new String[]{"A7A8N"},
+                        "N3k3/8/8/8/8/8/8/4K3 b - - 0 1"),
+                // hasMoved: a torre sai e volta, o roque pequeno só é recuperado com undo
+                Arguments.arguments("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1", new String[]{"H1H2", "E8D8", "H2H1"},
+                        "r2k3r/8/8/8/8/8/8/R3K2R b Q - 3 2")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_undoRedo_RestoresPosition")
+    void undoRedo_RestoresPosition(String fen, String[] moves, String expectedFen) {
+        // Arrange
+        var manager = getManagerForTesting(fen);
+        for (String move : moves) {
+            play(manager, move);
+        }
+        assertEquals(expectedFen, manager.exportFen());
+
+        // Act
+        for (int i = 0; i < moves.length; i++) {
+            manager.undo();
+        }
+        var undoneFen = manager.exportFen();
+        var hasUndo = manager.hasUndo();
+        for (int i = 0; i < moves.length; i++) {
+            manager.redo();
+        }
+
+        // Assert
+        assertEquals(fen, undoneFen);
+        assertFalse(hasUndo);
+        assertEquals(expectedFen, manager.exportFen());
+        assertFalse(manager.hasRedo());
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_undoRedo_RestoresCheck() {
+        return Stream.of(
+                // o movimento dá xeque
+                Arguments.arguments("4k3/8/8/8/8/8/8/R3K3 w - - 0 1", "A1A8", false, true),
+                // o movimento tira o rei de xeque
+                Arguments.arguments("4k3/8/8/8/8/8/8/r3K3 w - - 0 1", "E1E2", true, false)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_undoRedo_RestoresCheck")
+    void undoRedo_RestoresCheck(String fen, String move, boolean checkBefore, boolean checkAfter) {
+        // Arrange
+        var manager = getManagerForTesting(fen);
+        play(manager, move);
+        assertEquals(checkAfter, manager.getIsAnyTeamInCheck());
+
+        // Act
+        manager.undo();
+        var undoneCheck = manager.getIsAnyTeamInCheck();
+        manager.redo();
+
+        // Assert
+        assertEquals(checkBefore, undoneCheck);
+        assertEquals(checkAfter, manager.getIsAnyTeamInCheck());
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_goToPlyThenMove_UndoRestoresAbandonedLine() {
+        return Stream.of(
+                Arguments.arguments(false),
+                // o mesmo, depois de transferir o jogo com exportRecord/importRecord
+                Arguments.arguments(true)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_goToPlyThenMove_UndoRestoresAbandonedLine")
+    void goToPlyThenMove_UndoRestoresAbandonedLine(boolean transfer) {
+        // Arrange
+        var manager = new ChessGameManager(message -> {});
+        manager.start();
+        for (String move : new String[]{"E2E4", "E7E5", "G1F3", "B8C6"}) {
+            play(manager, move);
+        }
+        var knightFen = manager.exportFen();
+        manager.goToPly(2);
+        var jumpFen = manager.exportFen();
+        play(manager, "D2D4");
+        var pawnFen = manager.exportFen();
+        if (transfer) {
+            var record = manager.exportRecord();
+            manager = new ChessGameManager(message -> {});
+            assertTrue(manager.importRecord(record));
+        }
+
+        // Act
+        manager.undo();
+        var firstUndoFen = manager.exportFen();
+        manager.undo();
+        var secondUndoFen = manager.exportFen();
+        var secondUndoPly = manager.getPly();
+        manager.redo();
+        manager.redo();
+
+        // Assert
+        assertEquals(jumpFen, firstUndoFen);
+        assertEquals(knightFen, secondUndoFen);
+        assertEquals(4, secondUndoPly);
+        assertEquals(pawnFen, manager.exportFen());
+        assertEquals(3, manager.getHistorySize());
+    }
+
+    // ----
+
+    // réplica que repete os registos noutro ChessGameManager, como o GameStandby, e conta os recusados
+    static final class ReplayingReplica implements IGameReplica {
+        final ChessGameManager copy = new ChessGameManager(message -> {});
+        int records;
+        int rejected;
+
+        @Override
+        public void checkpoint(byte[] record) {
+            count(copy.importRecord(record));
+        }
+
+        @Override
+        public void moved(int[] moves) {
+            count(copy.applyMoves(moves) == -1);
+        }
+
+        @Override
+        public void undone() {
+            count(copy.hasUndo());
+            copy.undo();
+        }
+
+        @Override
+        public void redone() {
+            count(copy.hasRedo());
+            copy.redo();
+        }
+
+        @Override
+        public void wentTo(int ply) {
+            count(ply <= copy.getHistorySize());
+            copy.goToPly(ply);
+        }
+
+        private void count(boolean accepted) {
+            records++;
+            if (!accepted) {
+                rejected++;
+            }
+        }
+    }
+
+    static Stream<Arguments> provider_pawnPromotion_ReplicatesMoveOnce() {
+        return Stream.of(
+                // a mesma promoção outra vez
+                Arguments.arguments(PieceTypeEnum.KNIGHT),
+                // outra peça, depois de a promoção já ter sido feita
+                Arguments.arguments(PieceTypeEnum.QUEEN)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_pawnPromotion_ReplicatesMoveOnce")
+    void pawnPromotion_ReplicatesMoveOnce(PieceTypeEnum repeated) {
+        // Arrange
+        var manager = getManagerForTesting("4k3/P7/8/8/8/8/8/4K3 w - - 0 1");
+        var replica = new ReplayingReplica();
+        manager.setReplica(replica);
+        play(manager, "A7A8N");
+
+        // Act
+        var promoted = manager.pawnPromotion('A', 8, repeated);
+        for (String move : new String[]{"E8D7", "A8B6"}) {
+            play(manager, move);
+        }
+        manager.undo();
+
+        // Assert
+        assertFalse(promoted);
+        assertEquals(5, replica.records);
+        assertEquals(0, replica.rejected);
+        assertEquals(manager.exportFen(), replica.copy.exportFen());
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_applyMoves_PlaysWholeBatchOrNothing() {
+        String start = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+        return Stream.of(
+                // sequência válida: jogada por inteiro, com um único ponto de undo
+                Arguments.arguments(start, new String[]{"E2E4", "E7E5", "G1F3"}, -1,
+                        "rnbqkbnr/pppp1ppp/8/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R b KQkq - 1 2", null),
+                // o terceiro movimento é ilegal: nenhum movimento é jogado
+                Arguments.arguments(start, new String[]{"E2E4", "E7E5", "E4E5"}, 2, start, null),
+                // sequência que acaba em xeque-mate: o fim do jogo é verificado no fim
+                Arguments.arguments(start, new String[]{"F2F3", "E7E5", "G2G4", "D8H4"}, -1,
+                        "rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3", WinnerEnum.BLACK),
+                // um movimento depois do xeque-mate: a sequência é recusada por inteiro
+                Arguments.arguments(start, new String[]{"F2F3", "E7E5", "G2G4", "D8H4", "E2E4"}, 4, start, null),
+                // sequência que acaba em afogamento
+                Arguments.arguments("k7/8/8/1Q6/8/8/8/7K w - - 0 1", new String[]{"H1G1", "A8A7", "G1H1", "A7A8", "B5B6"}, -1,
+                        "k7/8/1Q6/8/8/8/8/7K b - - 5 3", WinnerEnum.DRAW)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_applyMoves_PlaysWholeBatchOrNothing")
+    void applyMoves_PlaysWholeBatchOrNothing(String fen, String[] moves, int expectedFailed, String expectedFen,
+                                             WinnerEnum expectedWinner) {
+        // Arrange
+        var manager = getManagerForTesting(fen);
+        var replica = new ReplayingReplica();
+        manager.setReplica(replica);
+        int[] events = new int[1];
+        manager.addPropertyChangeListener(ChessGameManager.PROP_VALUE_BOARD, evt -> events[0]++);
+
+        // Act
+        int failed = manager.applyMoves(List.of(moves));
+
+        // Assert
+        assertEquals(expectedFailed, failed);
+        assertEquals(expectedFen, manager.exportFen());
+        assertEquals(expectedWinner, manager.getWinner());
+        assertEquals(expectedFailed == -1 ? 1 : 0, events[0]);
+        assertEquals(expectedFailed == -1, manager.hasUndo());
+        assertEquals(manager.exportFen(), replica.copy.exportFen());
+        assertEquals(0, replica.rejected);
+        if (expectedFailed == -1) {
+            manager.undo();
+            assertEquals(fen, manager.exportFen());
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package pt.isec.pa.chess.model;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import pt.isec.pa.chess.model.data.Board;
+import pt.isec.pa.chess.model.data.PieceTypeEnum;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChessGameSerializationTest {
+    // offset da versão, depois de "PAF"
+    private static final int VERSION_OFFSET = 3;
+    // offset do primeiro byte das peças (casas A1 e B1), depois de "PAF" e da versão
+    private static final int PIECES_OFFSET = 4;
+    // offset da casa do peão en passant, depois das peças, da máscara e das duas equipas
+    private static final int EN_PASSANT_OFFSET = PIECES_OFFSET + 32 + 8 + 2;
+
+    // jogo com os movimentos no formato "E2E4" ("A7A8N" nas promoções), recuado até ao meio-lance ply
+    static ChessGame getGameForTesting(String fen, int ply, String... moves) {
+        ChessGame game = new ChessGame(new Board());
+        game.setLogger(message -> {});
+        if (fen == null) {
+            game.startCompleteGame();
+        } else {
+            assertTrue(game.importFen(fen));
+        }
+        for (String move : moves) {
+            MoveResult result = game.executeMove(move.charAt(0), move.charAt(1) - '0', move.charAt(2), move.charAt(3) - '0');
+            assertNotEquals(MoveResult.INVALID, result, move);
+            if (result == MoveResult.VALID_PROMOTION) {
+                game.pawnPromotion(move.charAt(2), move.charAt(3) - '0', PieceTypeEnum.KNIGHT);
+            }
+        }
+        game.goToPly(ply);
+        return game;
+    }
+
+    static ChessGame getGameForTesting() {
+        return getGameForTesting(null, 2, "E2E4", "E7E5", "G1F3");
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_decode_RoundTripsThroughEncode() {
+        return Stream.of(
+                Arguments.arguments(getGameForTesting()),
+                // roques e captura en passant, no fim do histórico
+                Arguments.arguments(getGameForTesting("r3k2r/8/8/8/3p4/8/4P3/R3K2R w KQkq - 0 1", 4,
+                        "E2E4", "D4E3", "E1G1", "E8C8")),
+                // promoção a cavalo, a meio do histórico
+                Arguments.arguments(getGameForTesting("4k3/P7/8/8/8/8/8/4K3 w - - 0 1", 1, "A7A8N", "E8D7"))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_decode_RoundTripsThroughEncode")
+    void decode_RoundTripsThroughEncode(ChessGame game) {
+        // Arrange
+        game.setPlayerWhite("Ana");
+        game.setPlayerBlack("Rui");
+
+        // Act
+        var decoded = ChessGameSerialization.decode(ChessGameSerialization.encode(game));
+
+        // Assert
+        assertNotNull(decoded);
+        assertEquals(game.exportFen(), decoded.exportFen());
+        assertEquals(game.getStartFen(), decoded.getStartFen());
+        assertEquals(game.getPly(), decoded.getPly());
+        assertArrayEquals(game.getMoveRecords(), decoded.getMoveRecords());
+        assertEquals("Ana", decoded.getPlayerWhite());
+        assertEquals("Rui", decoded.getPlayerBlack());
+        game.goToPly(game.getHistorySize());
+        decoded.goToPly(decoded.getHistorySize());
+        assertEquals(game.exportFen(), decoded.exportFen());
+    }
+
+    // ----
+
+    @ParameterizedTest
+    @MethodSource("provider_decode_RoundTripsThroughEncode")
+    void decode_ReadsLegacyFormat(ChessGame game) throws IOException {
+        // Arrange
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(game);
+        }
+        var buffer = ByteBuffer.wrap(bytes.toByteArray());
+
+        // Act
+        var isLegacy = ChessGameSerialization.isLegacy(buffer);
+        var decoded = ChessGameSerialization.decode(buffer);
+
+        // Assert
+        assertTrue(isLegacy);
+        assertNotNull(decoded);
+        assertEquals(game.exportFen(), decoded.exportFen());
+        assertEquals(game.getPly(), decoded.getPly());
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_decode_RejectsCorruptInput() {
+        UnaryOperator<ByteBuffer> pieceSeven = buffer -> buffer.put(PIECES_OFFSET, (byte) 0x77);
+        UnaryOperator<ByteBuffer> pieceFifteen = buffer -> buffer.put(PIECES_OFFSET + 1, (byte) 0xFF);
+        UnaryOperator<ByteBuffer> plyAfterCount = buffer -> buffer.putInt(plyOffset(buffer), 4);
+        UnaryOperator<ByteBuffer> negativePly = buffer -> buffer.putInt(plyOffset(buffer), -1);
+        UnaryOperator<ByteBuffer> recordPieceSeven = buffer -> buffer.putLong(plyOffset(buffer) + 4,
+                buffer.getLong(plyOffset(buffer) + 4) | (7L << 12));
+        // E7E5 trocado com G1F3: o cavalo não está em F3 no meio-lance 2
+        UnaryOperator<ByteBuffer> recordsSwapped = buffer -> {
+            int second = plyOffset(buffer) + 4 + Long.BYTES;
+            long record = buffer.getLong(second);
+            return buffer.putLong(second, buffer.getLong(second + 8)).putLong(second + 8, record);
+        };
+        UnaryOperator<ByteBuffer> badEnPassant = buffer -> buffer.put(EN_PASSANT_OFFSET, (byte) -5);
+        UnaryOperator<ByteBuffer> truncated = buffer -> buffer.limit(buffer.limit() - 3);
+        UnaryOperator<ByteBuffer> versionZero = buffer -> buffer.put(VERSION_OFFSET, (byte) 0);
+        UnaryOperator<ByteBuffer> versionNegative = buffer -> buffer.put(VERSION_OFFSET, (byte) -1);
+        UnaryOperator<ByteBuffer> versionNext = buffer -> buffer.put(VERSION_OFFSET, (byte) (ChessGameSerialization.VERSION + 1));
+        return Stream.of(
+                Arguments.arguments(pieceSeven),
+                Arguments.arguments(pieceFifteen),
+                Arguments.arguments(plyAfterCount),
+                Arguments.arguments(negativePly),
+                Arguments.arguments(recordPieceSeven),
+                Arguments.arguments(recordsSwapped),
+                Arguments.arguments(badEnPassant),
+                Arguments.arguments(truncated),
+                Arguments.arguments(versionZero),
+                Arguments.arguments(versionNegative),
+                Arguments.arguments(versionNext)
+        );
+    }
+
+    // offset do meio-lance atual, entre o número de registos e os 3 registos do jogo de teste
+    static int plyOffset(ByteBuffer buffer) {
+        return buffer.limit() - 3 * Long.BYTES - Integer.BYTES;
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_decode_RejectsCorruptInput")
+    void decode_RejectsCorruptInput(UnaryOperator<ByteBuffer> corruption) {
+        // Arrange
+        var buffer = corruption.apply(ChessGameSerialization.encode(getGameForTesting()));
+
+        // Act
+        var decoded = ChessGameSerialization.decode(buffer);
+
+        // Assert
+        assertNull(decoded);
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_decode_KeepsEmptyNameDistinctFromNoName() {
+        return Stream.of(
+                Arguments.arguments("", null, ChessGameSerialization.VERSION, "", null),
+                Arguments.arguments(null, "", ChessGameSerialization.VERSION, null, ""),
+                Arguments.arguments("Ana", null, ChessGameSerialization.VERSION, "Ana", null),
+                // na versão 1, o nome vazio era lido como um jogador sem nome
+                Arguments.arguments("", "Rui", 1, null, "Rui")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_decode_KeepsEmptyNameDistinctFromNoName")
+    void decode_KeepsEmptyNameDistinctFromNoName(String white, String black, int version,
+                                                 String expectedWhite, String expectedBlack) {
+        // Arrange
+        var game = getGameForTesting();
+        game.setPlayerWhite(white);
+        game.setPlayerBlack(black);
+        var buffer = ChessGameSerialization.encode(game).put(VERSION_OFFSET, (byte) version);
+
+        // Act
+        var decoded = ChessGameSerialization.decode(buffer);
+
+        // Assert
+        assertNotNull(decoded);
+        assertEquals(expectedWhite, decoded.getPlayerWhite());
+        assertEquals(expectedBlack, decoded.getPlayerBlack());
+    }
+}
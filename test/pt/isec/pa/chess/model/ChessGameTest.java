@@ -111,4 +111,39 @@ class ChessGameTest {
         // Assert
         assertEquals(expectedValue, isCheckMate);
     }
-}
\ No newline at end of file
+
+    // ----
+
+    static Stream<Arguments> provider_exportFen_ContinuesImportedCounters() {
+        return Stream.of(
+                Arguments.arguments("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 5 40", 0, new String[]{},
+                        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 5 40"),
+                Arguments.arguments("4k3/8/8/8/8/8/8/R3K3 w Q - 5 40", 1, new String[]{"A1A2"},
+                        "4k3/8/8/8/8/8/R7/4K3 b - - 6 40"),
+                Arguments.arguments("4k3/8/8/8/8/8/8/R3K3 w Q - 5 40", 2, new String[]{"A1A2", "E8D7"},
+                        "8/3k4/8/8/8/8/R7/4K3 w - - 7 41"),
+                // de volta ao início do histórico
+                Arguments.arguments("4k3/8/8/8/8/8/8/R3K3 w Q - 5 40", 0, new String[]{"A1A2", "E8D7"},
+                        "4k3/8/8/8/8/8/8/R3K3 w Q - 5 40"),
+                // as pretas a jogar primeiro; o movimento de peão reinicia o contador
+                Arguments.arguments("4k3/8/8/8/8/8/4P3/4K3 b - - 3 12", 1, new String[]{"E8D7"},
+                        "8/3k4/8/8/8/8/4P3/4K3 w - - 4 13"),
+                Arguments.arguments("4k3/8/8/8/8/8/4P3/4K3 b - - 3 12", 3, new String[]{"E8D7", "E2E4", "D7E6"},
+                        "8/8/4k3/8/4P3/8/8/4K3 w - - 1 14")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_exportFen_ContinuesImportedCounters")
+    void exportFen_ContinuesImportedCounters(String fen, int ply, String[] moves, String expectedFen) {
+        // Arrange
+        var chessGame = ChessGameSerializationTest.getGameForTesting(fen, ply, moves);
+
+        // Act
+        var exported = chessGame.exportFen();
+
+        // Assert
+        assertEquals(expectedFen, exported);
+        assertEquals(fen, chessGame.getStartFen());
+    }
+}
@@ -0,0 +1,122 @@
+package pt.isec.pa.chess.model;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameDatabaseTest {
+    private static final String[][] OPENINGS = {
+            {"E2E4", "E7E5", "G1F3", "B8C6", "F1C4"},
+            {"D2D4", "D7D5", "C2C4"},
+            {"E2E4", "C7C5"},
+            {"G1F3", "G8F6", "G2G3", "G7G6", "F1G2", "F8G7", "E1G1"}
+    };
+
+    // jogos de tamanhos diferentes: aberturas alternadas, paradas em meios-lances diferentes
+    static List<ChessGame> getGamesForTesting(int count) {
+        List<ChessGame> games = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String[] moves = OPENINGS[i % OPENINGS.length];
+            ChessGame game = ChessGameSerializationTest.getGameForTesting(null, i % (moves.length + 1), moves);
+            game.setPlayerWhite("White " + i);
+            games.add(game);
+        }
+        return games;
+    }
+
+    static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    // lê os jogos por uma ordem aleatória e compara-os com os originais
+    static void assertGames(List<ChessGame> expected, GameDatabase database) {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < database.size(); id++) {
+            ids.add(id);
+        }
+        Collections.shuffle(ids, new Random(ids.size()));
+        for (int id : ids) {
+            ChessGame game = database.read(id);
+            assertNotNull(game, "id " + id);
+            assertArrayEquals(bytes(ChessGameSerialization.encode(expected.get(id))),
+                    bytes(ChessGameSerialization.encode(game)), "id " + id);
+        }
+        assertNull(database.read(-1));
+        assertNull(database.read(database.size()));
+    }
+
+    static void truncate(Path file, long bytesToRemove) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Math.max(0, channel.size() - bytesToRemove));
+        }
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_open_RecoversAfterDamage() {
+        return Stream.of(
+                // sem danos
+                Arguments.arguments(50, 0, 0, 50),
+                // índice truncado: os jogos que ficaram só nos dados voltam a ser indexados
+                Arguments.arguments(50, Long.BYTES * 7, 0, 50),
+                // índice truncado a meio de uma entrada
+                Arguments.arguments(50, Long.BYTES * 3 + 5, 0, 50),
+                // índice vazio
+                Arguments.arguments(50, Long.MAX_VALUE, 0, 50),
+                // escrita interrompida a meio do último jogo: o jogo é descartado
+                Arguments.arguments(50, 0, 3, 49),
+                // escrita interrompida no tamanho do último jogo, com o índice também truncado
+                Arguments.arguments(20, Long.BYTES * 2, 5, 19),
+                Arguments.arguments(1, Long.BYTES, 1, 0)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_open_RecoversAfterDamage")
+    void open_RecoversAfterDamage(int games, long indexBytesLost, long dataBytesLost, int expectedSize,
+                                  @TempDir Path directory) throws IOException {
+        // Arrange
+        Path file = directory.resolve("games" + GameDatabase.EXTENSION);
+        Path index = directory.resolve("games" + GameDatabase.EXTENSION + ".idx");
+        List<ChessGame> expected = getGamesForTesting(games + 1);
+        try (GameDatabase database = GameDatabase.open(file)) {
+            for (int id = 0; id < games; id++) {
+                assertEquals(id, database.append(expected.get(id)));
+            }
+            assertGames(expected, database);
+        }
+        truncate(index, indexBytesLost);
+        truncate(file, dataBytesLost);
+
+        // Act
+        try (GameDatabase database = GameDatabase.open(file)) {
+
+            // Assert
+            assertEquals(expectedSize, database.size());
+            assertGames(expected, database);
+            assertEquals(expectedSize, database.append(expected.get(expectedSize)));
+        }
+        assertEquals((long) (expectedSize + 1) * Long.BYTES, Files.size(index));
+        try (GameDatabase database = GameDatabase.open(file)) {
+            assertEquals(expectedSize + 1, database.size());
+            assertGames(expected, database);
+        }
+    }
+}
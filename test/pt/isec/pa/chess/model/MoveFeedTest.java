@@ -0,0 +1,185 @@
+package pt.isec.pa.chess.model;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoveFeedTest {
+    private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // observador que guarda os lotes e só pede mais quando o teste o indica
+    static final class RecordingSubscriber implements Flow.Subscriber<MoveFeed.Batch> {
+        final List<MoveFeed.Batch> batches = new ArrayList<>();
+        Flow.Subscription subscription;
+        boolean completed;
+        private final long initialRequest;
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(MoveFeed.Batch batch) {
+            batches.add(batch);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    // aplica uma alteração ao feed: "m<movimento>@<meio-lance>" ou "g<meio-lance>"
+    static void publish(MoveFeed feed, String change) {
+        if (change.startsWith("g")) {
+            feed.wentTo(Integer.parseInt(change.substring(1)));
+        } else {
+            int at = change.indexOf('@');
+            feed.moved(Integer.parseInt(change.substring(1, at)), Integer.parseInt(change.substring(at + 1)));
+        }
+    }
+
+    // descreve um delta no mesmo formato de publish
+    static String describe(int delta) {
+        return MoveFeed.Batch.isGoTo(delta)
+                ? "g" + MoveFeed.Batch.ply(delta)
+                : "m" + MoveFeed.Batch.move(delta) + "@" + MoveFeed.Batch.ply(delta);
+    }
+
+    static List<String> describe(List<MoveFeed.Batch> batches) {
+        List<String> changes = new ArrayList<>();
+        for (MoveFeed.Batch batch : batches) {
+            for (int delta : batch.deltas()) {
+                changes.add(describe(delta));
+            }
+        }
+        return changes;
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_publish_DeliversDeltasInOrder() {
+        return Stream.of(
+                // movimentos seguidos
+                Arguments.arguments(0, new String[]{"m796@1", "m3380@2", "m1349@3"}),
+                // undo, redo e salto, seguidos de um movimento que substitui o resto do histórico
+                Arguments.arguments(0, new String[]{"m796@1", "m3380@2", "g1", "g2", "g0", "m32767@1"}),
+                // meios-lances acima de 0x7FFF não se confundem com navegações
+                Arguments.arguments(0x7FFE, new String[]{"m1@32767", "m2@32768", "g32767", "g32768", "m32767@32769"}),
+                // o maior meio-lance que cabe num delta
+                Arguments.arguments(MoveFeed.MAX_PLY - 1, new String[]{"m5@65535", "g65534", "g65535"})
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_publish_DeliversDeltasInOrder")
+    void publish_DeliversDeltasInOrder(int startPly, String[] changes) {
+        // Arrange
+        MoveFeed feed = new MoveFeed(Runnable::run, Integer.MAX_VALUE);
+        feed.reset(START, new int[startPly], startPly);
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        feed.subscribe(subscriber);
+
+        // Act
+        for (String change : changes) {
+            publish(feed, change);
+        }
+
+        // Assert
+        assertTrue(subscriber.batches.get(0).isSnapshot());
+        assertEquals(startPly, subscriber.batches.get(0).deltas().length);
+        assertEquals(List.of(changes), describe(subscriber.batches.subList(1, subscriber.batches.size())));
+        assertFalse(subscriber.completed);
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_request_SlowSubscriberGetsSnapshot() {
+        return Stream.of(
+                // a fila não enche: recebe os deltas pendentes num só lote
+                Arguments.arguments(3, false),
+                // a fila enche: os deltas são descartados e recebe um snapshot
+                Arguments.arguments(4, true),
+                Arguments.arguments(10, true)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_request_SlowSubscriberGetsSnapshot")
+    void request_SlowSubscriberGetsSnapshot(int moves, boolean expectedSnapshot) {
+        // Arrange
+        MoveFeed feed = new MoveFeed(Runnable::run, 4);
+        feed.reset(START, new int[0], 0);
+        RecordingSubscriber slow = new RecordingSubscriber(1);
+        RecordingSubscriber fast = new RecordingSubscriber(Long.MAX_VALUE);
+        feed.subscribe(slow);
+        feed.subscribe(fast);
+        for (int ply = 1; ply <= moves; ply++) {
+            feed.moved(ply, ply);
+        }
+        feed.wentTo(moves - 1);
+
+        // Act
+        int before = slow.batches.size();
+        slow.subscription.request(1);
+
+        // Assert
+        assertEquals(1, before);
+        assertEquals(2, slow.batches.size());
+        MoveFeed.Batch batch = slow.batches.get(1);
+        assertEquals(expectedSnapshot, batch.isSnapshot());
+        List<String> expected = new ArrayList<>();
+        for (int ply = 1; ply <= moves; ply++) {
+            expected.add("m" + ply + "@" + ply);
+        }
+        expected.add("g" + (moves - 1));
+        assertEquals(expected, describe(List.of(batch)));
+        // o observador lento não atrasou o outro
+        assertEquals(moves + 1, describe(fast.batches).size());
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_publish_CompletesAfterMaxPly() {
+        return Stream.of(
+                Arguments.arguments("m1@" + (MoveFeed.MAX_PLY + 1)),
+                Arguments.arguments("g" + (MoveFeed.MAX_PLY + 1))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_publish_CompletesAfterMaxPly")
+    void publish_CompletesAfterMaxPly(String change) {
+        // Arrange
+        MoveFeed feed = new MoveFeed(Runnable::run, Integer.MAX_VALUE);
+        feed.reset(START, new int[MoveFeed.MAX_PLY], MoveFeed.MAX_PLY);
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        feed.subscribe(subscriber);
+
+        // Act
+        publish(feed, change);
+
+        // Assert
+        assertEquals(1, subscriber.batches.size());
+        assertTrue(subscriber.completed);
+        assertEquals(0, feed.getSubscriberCount());
+    }
+}
@@ -0,0 +1,217 @@
+package pt.isec.pa.chess.model;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import pt.isec.pa.chess.model.data.PieceTypeEnum;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoveJournalTest {
+    // tamanho do cabeçalho do diário: "PAJ", a versão e o CRC do snapshot
+    private static final int HEADER = 4 + Long.BYTES;
+
+    // joga um movimento ("E2E4", "A7A8N" nas promoções) ou salta para um meio-lance ("@2") e regista-o no diário
+    static void play(ChessGame game, MoveJournal journal, String entry) throws IOException {
+        if (entry.startsWith("@")) {
+            game.goToPly(Integer.parseInt(entry.substring(1)));
+            journal.appendGoTo(game.getPly());
+            return;
+        }
+        char colPiece = entry.charAt(0), colToMove = entry.charAt(2);
+        int rowPiece = entry.charAt(1) - '0', rowToMove = entry.charAt(3) - '0';
+        MoveResult result = game.executeMove(colPiece, rowPiece, colToMove, rowToMove);
+        assertNotEquals(MoveResult.INVALID, result, entry);
+        if (result == MoveResult.VALID_PROMOTION) {
+            PieceTypeEnum type = switch (entry.length() > 4 ? entry.charAt(4) : 'Q') {
+                case 'N' -> PieceTypeEnum.KNIGHT;
+                case 'B' -> PieceTypeEnum.BISHOP;
+                case 'R' -> PieceTypeEnum.ROOK;
+                default -> PieceTypeEnum.QUEEN;
+            };
+            game.pawnPromotion(colToMove, rowToMove, type);
+        }
+        journal.appendLastMove(game);
+    }
+
+    static Path journalOf(Path base) {
+        return base.resolveSibling(base.getFileName() + MoveJournal.JOURNAL_EXTENSION);
+    }
+
+    static Path snapshotOf(Path base) {
+        return base.resolveSibling(base.getFileName() + MoveJournal.SNAPSHOT_EXTENSION);
+    }
+
+    static void assertSameGame(ChessGame expected, ChessGame actual) {
+        assertNotNull(actual);
+        assertEquals(expected.exportFen(), actual.exportFen());
+        assertEquals(expected.getPly(), actual.getPly());
+        assertArrayEquals(expected.getMoveRecords(), actual.getMoveRecords());
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_recover_ReplaysJournalOverSnapshot() {
+        return Stream.of(
+                // movimentos simples depois do snapshot
+                Arguments.arguments(null, new String[]{"E2E4", "E7E5"}, new String[]{"G1F3", "B8C6", "F1B5"}),
+                // promoções a cavalo e a torre: o diário guarda a peça escolhida
+                Arguments.arguments("4k3/P6P/8/8/8/8/8/4K3 w - - 0 1", new String[]{},
+                        new String[]{"A7A8N", "E8E7", "H7H8R"}),
+                // navegação no histórico: o jogo fica a meio do histórico
+                Arguments.arguments(null, new String[]{"E2E4"}, new String[]{"E7E5", "G1F3", "@1", "@3", "@2"}),
+                // um movimento depois de um salto substitui os movimentos seguintes
+                Arguments.arguments(null, new String[]{"E2E4", "E7E5", "G1F3"}, new String[]{"@1", "C7C5", "G1F3"})
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_recover_ReplaysJournalOverSnapshot")
+    void recover_ReplaysJournalOverSnapshot(String fen, String[] snapshotMoves, String[] journalEntries,
+                                            @TempDir Path directory) throws IOException {
+        // Arrange
+        Path base = directory.resolve("autosave");
+        ChessGame game = ChessGameSerializationTest.getGameForTesting(fen, snapshotMoves.length, snapshotMoves);
+        try (MoveJournal journal = MoveJournal.create(base, game)) {
+            for (String entry : journalEntries) {
+                play(game, journal, entry);
+            }
+
+            // Act
+            var recovered = MoveJournal.recover(base);
+
+            // Assert
+            assertSameGame(game, recovered);
+            assertEquals(journalEntries.length, journal.size());
+        }
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_recover_IgnoresTornFinalEntry() {
+        return Stream.of(
+                // a última entrada ficou com 1 dos 2 bytes: só as 2 primeiras são repetidas
+                Arguments.arguments(HEADER + 2 * Short.BYTES + 1, 2),
+                // só o cabeçalho chegou ao disco: fica o estado do snapshot
+                Arguments.arguments(HEADER, 0),
+                // o cabeçalho está incompleto: o diário é ignorado
+                Arguments.arguments(HEADER - 1, 0)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_recover_IgnoresTornFinalEntry")
+    void recover_IgnoresTornFinalEntry(long journalSize, int replayed, @TempDir Path directory) throws IOException {
+        // Arrange
+        Path base = directory.resolve("autosave");
+        ChessGame game = ChessGameSerializationTest.getGameForTesting(null, 0);
+        List<String> fens = new ArrayList<>();
+        try (MoveJournal journal = MoveJournal.create(base, game)) {
+            fens.add(game.exportFen());
+            for (String move : new String[]{"E2E4", "E7E5", "G1F3"}) {
+                play(game, journal, move);
+                fens.add(game.exportFen());
+            }
+        }
+        try (FileChannel channel = FileChannel.open(journalOf(base), StandardOpenOption.WRITE)) {
+            channel.truncate(journalSize);
+        }
+
+        // Act
+        var recovered = MoveJournal.recover(base);
+
+        // Assert
+        assertNotNull(recovered);
+        assertEquals(fens.get(replayed), recovered.exportFen());
+        assertEquals(replayed, recovered.getPly());
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_recover_IgnoresJournalOfAnotherSnapshot() {
+        return Stream.of(
+                // checkpoint interrompido: o snapshot novo já substituiu o antigo, mas o diário
+                // ainda tem o cabeçalho e as entradas do snapshot antigo
+                Arguments.arguments(true),
+                // o CRC do cabeçalho não corresponde ao snapshot
+                Arguments.arguments(false)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_recover_IgnoresJournalOfAnotherSnapshot")
+    void recover_IgnoresJournalOfAnotherSnapshot(boolean interruptedCheckpoint, @TempDir Path directory) throws IOException {
+        // Arrange
+        Path base = directory.resolve("autosave");
+        ChessGame game = ChessGameSerializationTest.getGameForTesting(null, 1, "E2E4");
+        ChessGame expected = ChessGameSerializationTest.getGameForTesting(null, 1, "E2E4");
+        try (MoveJournal journal = MoveJournal.create(base, game)) {
+            for (String move : new String[]{"E7E5", "G1F3"}) {
+                play(game, journal, move);
+            }
+        }
+        if (interruptedCheckpoint) {
+            expected = ChessGameSerializationTest.getGameForTesting(null, 2, "D2D4", "D7D5");
+            ByteBuffer encoded = ChessGameSerialization.encode(expected);
+            byte[] data = new byte[encoded.remaining()];
+            encoded.get(data);
+            Files.write(snapshotOf(base), data);
+        } else {
+            byte[] journal = Files.readAllBytes(journalOf(base));
+            journal[HEADER - 1] ^= 1;
+            Files.write(journalOf(base), journal);
+        }
+
+        // Act
+        var recovered = MoveJournal.recover(base);
+
+        // Assert
+        assertSameGame(expected, recovered);
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_recover_IgnoresRepeatedPromotion() {
+        return Stream.of(
+                // a mesma promoção outra vez
+                Arguments.arguments(PieceTypeEnum.KNIGHT),
+                // outra peça, depois de a promoção já ter sido feita
+                Arguments.arguments(PieceTypeEnum.QUEEN)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_recover_IgnoresRepeatedPromotion")
+    void recover_IgnoresRepeatedPromotion(PieceTypeEnum repeated, @TempDir Path directory) {
+        // Arrange
+        Path base = directory.resolve("autosave");
+        var manager = ChessGameManagerTest.getManagerForTesting("4k3/P7/8/8/8/8/8/4K3 w - - 0 1");
+        assertTrue(manager.startAutosave(base.toString()));
+        ChessGameManagerTest.play(manager, "A7A8N");
+
+        // Act
+        var promoted = manager.pawnPromotion('A', 8, repeated);
+        for (String move : new String[]{"E8D7", "A8B6", "D7D6"}) {
+            ChessGameManagerTest.play(manager, move);
+        }
+        var recovered = MoveJournal.recover(base);
+        manager.stopAutosave(false);
+
+        // Assert
+        assertFalse(promoted);
+        assertNotNull(recovered);
+        assertEquals(manager.exportFen(), recovered.exportFen());
+        assertEquals(4, recovered.getPly());
+    }
+}
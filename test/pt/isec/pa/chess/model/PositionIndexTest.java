@@ -0,0 +1,77 @@
+package pt.isec.pa.chess.model;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import pt.isec.pa.chess.model.engine.EngineBoard;
+import pt.isec.pa.chess.model.engine.Zobrist;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PositionIndexTest {
+    // base de dados com jogos que partilham posições (a inicial e as aberturas com e4)
+    static GameDatabase getDatabaseForTesting(Path directory) throws IOException {
+        GameDatabase database = GameDatabase.open(directory.resolve("games.pdb"));
+        database.append(ChessGameSerializationTest.getGameForTesting(null, 0, "E2E4", "E7E5", "G1F3", "B8C6"));
+        database.append(ChessGameSerializationTest.getGameForTesting(null, 0, "E2E4", "C7C5", "G1F3"));
+        database.append(ChessGameSerializationTest.getGameForTesting(null, 0, "D2D4", "D7D5"));
+        database.append(ChessGameSerializationTest.getGameForTesting(null, 0, "G1F3", "B8C6", "E2E4", "E7E5"));
+        database.append(ChessGameSerializationTest.getGameForTesting("4k3/P7/8/8/8/8/8/4K3 w - - 0 1", 0, "A7A8N", "E8D7"));
+        return database;
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_build_MergesSortedRuns() {
+        return Stream.of(
+                // um único bloco por thread
+                Arguments.arguments(1, 1 << 10),
+                // vários blocos por thread, intercalados no fim
+                Arguments.arguments(2, 3),
+                // um bloco por entrada
+                Arguments.arguments(3, 1)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_build_MergesSortedRuns")
+    void build_MergesSortedRuns(int threads, int runEntries, @TempDir Path directory) throws IOException {
+        // Arrange
+        Path reference = directory.resolve("reference.pix");
+        Path file = directory.resolve("games.pix");
+        try (GameDatabase database = getDatabaseForTesting(directory)) {
+            PositionIndex.build(database, reference, 1, 1 << 10).close();
+
+            // Act
+            try (PositionIndex index = PositionIndex.build(database, file, threads, runEntries)) {
+
+                // Assert
+                assertEquals(5, index.getGames());
+                assertEquals(4 + 1 + 3 + 1 + 2 + 1 + 4 + 1 + 2 + 1, index.size());
+                for (long i = 1; i < index.size(); i++) {
+                    assertTrue(Long.compareUnsigned(index.keyAt(i - 1), index.keyAt(i)) <= 0);
+                }
+                for (int id = 0; id < database.size(); id++) {
+                    ChessGame game = database.read(id);
+                    game.setSilent(true);
+                    for (int ply = 0; ply <= game.getHistorySize(); ply++) {
+                        game.goToPly(ply);
+                        int expectedPly = ply, expectedId = id;
+                        assertTrue(index.find(Zobrist.hash(EngineBoard.fromGame(game)), Integer.MAX_VALUE).stream()
+                                .anyMatch(hit -> hit.gameId() == expectedId && hit.ply() == expectedPly));
+                    }
+                }
+            }
+        }
+        assertArrayEquals(Files.readAllBytes(reference), Files.readAllBytes(file));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.noneMatch(path -> path.toString().endsWith(".run")));
+        }
+    }
+}
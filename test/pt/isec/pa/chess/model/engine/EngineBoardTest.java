@@ -0,0 +1,76 @@
+package pt.isec.pa.chess.model.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import pt.isec.pa.chess.model.ChessGame;
+import pt.isec.pa.chess.model.data.Board;
+
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EngineBoardTest {
+    static Stream<Arguments> provider_perft_ReturnsExpectedNodeCount() {
+        return Stream.of(
+                Arguments.arguments(1, 20L),
+                Arguments.arguments(2, 400L),
+                Arguments.arguments(3, 8902L),
+                Arguments.arguments(4, 197281L)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_perft_ReturnsExpectedNodeCount")
+    void perft_ReturnsExpectedNodeCount(int depth, long expectedNodes) {
+        // Arrange
+        var board = EngineBoard.startPosition();
+
+        // Act
+        var nodes = board.perft(depth);
+
+        // Assert
+        assertEquals(expectedNodes, nodes);
+    }
+
+    // ----
+
+    @Test
+    void fromGame_MatchesChessGameLegalMoves() {
+        // Arrange
+        var chessGame = new ChessGame(new Board());
+        chessGame.setSilent(true);
+        chessGame.startCompleteGame();
+
+        // Act
+        var board = EngineBoard.fromGame(chessGame);
+        var moves = new int[EngineBoard.MAX_MOVES];
+        var count = board.generateLegalMoves(moves);
+
+        // Assert
+        assertEquals(chessGame.getLegalMoves().size(), count);
+        assertEquals(EngineBoard.KING | EngineBoard.BLACK_BIT, board.getPiece(EngineBoard.square('E', 8)));
+    }
+
+    // ----
+
+    @Test
+    void unmakeMove_RestoresPosition() {
+        // Arrange
+        var board = EngineBoard.startPosition();
+        var before = board.copy();
+        var move = board.parseMove("E2E4");
+
+        // Act
+        board.makeMove(move);
+        board.unmakeMove(move);
+
+        // Assert
+        for (int sq = 0; sq < 64; sq++) {
+            assertEquals(before.getPiece(sq), board.getPiece(sq));
+        }
+        assertEquals(before.getEpSquare(), board.getEpSquare());
+        assertEquals(EngineBoard.WHITE, board.getSideToMove());
+    }
+}
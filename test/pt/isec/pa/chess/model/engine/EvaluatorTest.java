@@ -0,0 +1,101 @@
+package pt.isec.pa.chess.model.engine;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EvaluatorTest {
+    static EngineBoard getBoardForTesting(String fen) {
+        EngineBoard board = new EngineBoard();
+        assertTrue(Fen.parse(fen, board));
+        return board;
+    }
+
+    // a mesma posição com as cores trocadas (tabuleiro espelhado na horizontal)
+    static String mirror(String fen) {
+        String[] fields = fen.split(" ");
+        String[] ranks = fields[0].split("/");
+        StringBuilder sb = new StringBuilder();
+        for (int i = ranks.length - 1; i >= 0; i--) {
+            sb.append(swapCase(ranks[i])).append(i > 0 ? "/" : "");
+        }
+        sb.append(fields[1].equals("w") ? " b " : " w ");
+        sb.append(fields[2].equals("-") ? "-" : swapCase(fields[2]).chars()
+                .sorted().collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append));
+        sb.append(' ').append(fields[3].equals("-") ? "-" : fields[3].charAt(0) + (fields[3].charAt(1) == '3' ? "6" : "3"));
+        return sb.append(" 0 1").toString();
+    }
+
+    static String swapCase(String text) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            sb.append(Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c));
+        }
+        return sb.toString();
+    }
+
+    static Stream<Arguments> provider_positions() {
+        return Stream.of(
+                Arguments.arguments(Fen.START_POSITION),
+                Arguments.arguments("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1"),
+                Arguments.arguments("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1"),
+                Arguments.arguments("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3"),
+                // peões dobrados, isolados e passados, e um par de bispos de um só lado
+                Arguments.arguments("4k3/1p6/8/2P5/2P4P/8/6P1/2B1KB2 b - - 0 1"),
+                // rei atacado por dama e torre
+                Arguments.arguments("6k1/5ppp/8/8/8/8/5PPP/3QR1K1 b - - 0 1")
+        );
+    }
+
+    // ----
+
+    @ParameterizedTest
+    @MethodSource("provider_positions")
+    void evaluate_MatchesTermByTermSum(String fen) {
+        // Arrange
+        EngineBoard board = getBoardForTesting(fen);
+        int sign = board.getSideToMove() == EngineBoard.WHITE ? 1 : -1;
+        int[] features = new Evaluator().extractFeatures(board).clone();
+        int[] weights = new int[Evaluator.FEATURES];
+
+        // Act
+        long expected = 0;
+        for (int i = 0; i < Evaluator.FEATURES; i++) {
+            // cada feature sozinha: o produto interno devolve só esse termo
+            int[] unit = new int[Evaluator.FEATURES];
+            unit[i] = 1;
+
+            // Assert
+            assertEquals(sign * features[i], new Evaluator(unit).evaluate(board), "feature " + i);
+            weights[i] = 2 * i + 3;
+            expected += (long) features[i] * weights[i];
+        }
+        assertEquals(sign * expected, new Evaluator(weights).evaluate(board));
+        assertEquals(expected, Evaluator.dot(features, weights, Evaluator.FEATURES));
+    }
+
+    // ----
+
+    @ParameterizedTest
+    @MethodSource("provider_positions")
+    void evaluate_IsSymmetricForBothSides(String fen) {
+        // Arrange
+        Evaluator evaluator = new Evaluator();
+        EngineBoard board = getBoardForTesting(fen);
+        EngineBoard mirrored = getBoardForTesting(mirror(fen));
+
+        // Act
+        int score = evaluator.evaluate(board);
+        int mirroredScore = evaluator.evaluate(mirrored);
+
+        // Assert
+        assertEquals(score, mirroredScore);
+        if (fen.equals(Fen.START_POSITION)) {
+            assertEquals(0, score);
+        }
+    }
+}
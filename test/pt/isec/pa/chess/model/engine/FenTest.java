@@ -0,0 +1,102 @@
+package pt.isec.pa.chess.model.engine;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FenTest {
+    static Stream<Arguments> provider_parse_RoundTripsThroughWrite() {
+        return Stream.of(
+                Arguments.arguments(Fen.START_POSITION),
+                Arguments.arguments("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1"),
+                Arguments.arguments("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1"),
+                Arguments.arguments("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3"),
+                // só os roques com o rei e a torre nas casas iniciais
+                Arguments.arguments("4k2r/8/8/8/8/8/8/R3K3 w Qk - 5 40")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_parse_RoundTripsThroughWrite")
+    void parse_RoundTripsThroughWrite(String fen) {
+        // Arrange
+        var board = new EngineBoard();
+
+        // Act
+        var parsed = Fen.parse(fen, board);
+
+        // Assert
+        assertTrue(parsed);
+        assertEquals(fen, Fen.toString(board));
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_parse_RejectsInvalidText() {
+        return Stream.of(
+                Arguments.arguments("8/8/8/8/8/8/8/8 w - - 0 1"),
+                Arguments.arguments("rnbqkbnr/pppppppp/9/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"),
+                Arguments.arguments("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR x KQkq - 0 1"),
+                Arguments.arguments(""),
+                // casa en passant na linha errada para a equipa a jogar
+                Arguments.arguments("4k3/8/8/3pP3/8/8/8/4K3 w - d3 0 1"),
+                Arguments.arguments("4k3/8/8/8/3Pp3/8/8/4K3 b - d6 0 1"),
+                // reis repetidos
+                Arguments.arguments("4k3/8/8/8/8/8/8/3KK3 w - - 0 1"),
+                Arguments.arguments("3kk3/8/8/8/8/8/8/4K3 w - - 0 1"),
+                // direitos de roque sem a torre ou sem o rei nas casas iniciais
+                Arguments.arguments("4k3/8/8/8/8/8/8/R3K3 w K - 0 1"),
+                Arguments.arguments("4k3/8/8/8/8/8/8/R2K3R w Q - 0 1"),
+                Arguments.arguments("1r2k3/8/8/8/8/8/8/4K3 w q - 0 1"),
+                Arguments.arguments("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNr w KQkq - 0 1")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_parse_RejectsInvalidText")
+    void parse_RejectsInvalidText(String fen) {
+        // Arrange
+        var board = new EngineBoard();
+
+        // Act
+        var parsed = Fen.parse(fen, board);
+
+        // Assert
+        assertFalse(parsed);
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_parse_ReadsLinesFromByteBuffer() {
+        return Stream.of(
+                Arguments.arguments(Fen.START_POSITION + "\n" + "4k3/8/8/8/3Pp3/8/8/4K3 b - d3 0 1\n"),
+                Arguments.arguments("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1\r\n" + Fen.START_POSITION)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_parse_ReadsLinesFromByteBuffer")
+    void parse_ReadsLinesFromByteBuffer(String text) {
+        // Arrange
+        var buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+        var board = new EngineBoard();
+        var written = ByteBuffer.allocate(90);
+
+        // Act
+        for (String line : text.split("\n")) {
+            assertTrue(Fen.parse(buffer, board));
+            written.clear();
+            Fen.write(board, written);
+
+            // Assert
+            assertEquals(line.strip(), new String(written.array(), 0, written.position(), StandardCharsets.US_ASCII));
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+}
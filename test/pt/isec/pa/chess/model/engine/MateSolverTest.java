@@ -0,0 +1,72 @@
+package pt.isec.pa.chess.model.engine;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import pt.isec.pa.chess.model.ChessGame;
+import pt.isec.pa.chess.model.data.Board;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MateSolverTest {
+    static ChessGame getGameForTesting(String gameData) {
+        ChessGame chessGame = new ChessGame(new Board());
+        chessGame.setSilent(true);
+        chessGame.importPartialGameTxt(gameData);
+        return chessGame;
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_solve_ReturnsExpectedStatus() {
+        return Stream.of(
+                Arguments.arguments("WHITE,KG1,RA1,PF2,PG2,PH2,kG8,pF7,pG7,pH7", 1, MateSolver.Status.PROVEN),
+                Arguments.arguments("WHITE,KA1,RA2,RB3,kH8", 3, MateSolver.Status.PROVEN),
+                Arguments.arguments("WHITE,KA1,RA2,kH8", 2, MateSolver.Status.DISPROVEN)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_solve_ReturnsExpectedStatus")
+    void solve_ReturnsExpectedStatus(String gameData, int mateIn, MateSolver.Status expectedStatus) {
+        // Arrange
+        var solver = new MateSolver(getGameForTesting(gameData));
+
+        // Act
+        var result = solver.solve(mateIn);
+
+        // Assert
+        assertEquals(expectedStatus, result.status());
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_solve_ReturnsMatingLine() {
+        return Stream.of(
+                Arguments.arguments("WHITE,KG1,RA1,PF2,PG2,PH2,kG8,pF7,pG7,pH7", 1, List.of("A1A8")),
+                Arguments.arguments("WHITE,KA1,RA7,RB6,kH8", 2, List.of("B6B8")),
+                // a promoção a dama é a primeira das promoções que dão mate
+                Arguments.arguments("WHITE,KG6,PF7,kH8", 1, List.of("F7F8Q")),
+                // com as pretas a jogar; o mate mais curto é encontrado primeiro
+                Arguments.arguments("BLACK,kA8,rB2,rC3,KH1", 2, List.of("C3C1"))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_solve_ReturnsMatingLine")
+    void solve_ReturnsMatingLine(String gameData, int mateIn, List<String> expectedLine) {
+        // Arrange
+        var chessGame = getGameForTesting(gameData);
+        var boardBefore = chessGame.queryBoardState();
+
+        // Act
+        var result = new MateSolver(chessGame).solve(mateIn);
+
+        // Assert
+        assertEquals(expectedLine, result.line());
+        assertEquals(boardBefore, chessGame.queryBoardState());
+    }
+}
@@ -0,0 +1,87 @@
+package pt.isec.pa.chess.model.engine;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import pt.isec.pa.chess.model.ChessGame;
+import pt.isec.pa.chess.model.MoveResult;
+import pt.isec.pa.chess.model.data.Board;
+import pt.isec.pa.chess.model.data.PieceTypeEnum;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PgnGameTest {
+    // joga os movimentos ("E2E4", "A7A8N" nas promoções); uma promoção sem peça fica pendente
+    static ChessGame getGameForTesting(String fen, String... moves) {
+        ChessGame game = new ChessGame(new Board());
+        game.setSilent(true);
+        assertTrue(game.importFen(fen == null ? Fen.START_POSITION : fen));
+        for (String move : moves) {
+            char colTo = move.charAt(2);
+            int rowTo = move.charAt(3) - '0';
+            MoveResult result = game.executeMove(move.charAt(0), move.charAt(1) - '0', colTo, rowTo);
+            assertNotEquals(MoveResult.INVALID, result, move);
+            if (result == MoveResult.VALID_PROMOTION && move.length() > 4) {
+                game.pawnPromotion(colTo, rowTo, switch (move.charAt(4)) {
+                    case 'N' -> PieceTypeEnum.KNIGHT;
+                    case 'B' -> PieceTypeEnum.BISHOP;
+                    case 'R' -> PieceTypeEnum.ROOK;
+                    default -> PieceTypeEnum.QUEEN;
+                });
+            }
+        }
+        return game;
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_of_RoundTripsThroughChessGame() {
+        return Stream.of(
+                Arguments.arguments(null, new String[]{"E2E4", "E7E5", "G1F3", "B8C6", "F1C4", "F8C5", "E1G1"}),
+                Arguments.arguments("4k3/P7/8/8/8/8/8/4K3 w - - 0 1", new String[]{"A7A8N", "E8D7"}),
+                Arguments.arguments("4k3/P7/8/8/8/8/8/4K3 w - - 0 1", new String[]{"A7A8Q"})
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_of_RoundTripsThroughChessGame")
+    void of_RoundTripsThroughChessGame(String fen, String[] moves) {
+        // Arrange
+        ChessGame game = getGameForTesting(fen, moves);
+
+        // Act
+        PgnGame pgn = PgnGame.of(game);
+
+        // Assert
+        assertNotNull(pgn);
+        assertEquals(List.of(moves), pgn.getMoveTexts());
+        ChessGame replayed = pgn.toChessGame();
+        assertNotNull(replayed);
+        assertEquals(game.exportFen(), replayed.exportFen());
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_of_ReturnsNullWithPendingPromotion() {
+        return Stream.of(
+                Arguments.arguments("4k3/P7/8/8/8/8/8/4K3 w - - 0 1", new String[]{"A7A8"}),
+                Arguments.arguments("4k3/P7/8/8/8/8/p7/4K3 w - - 0 1", new String[]{"A7A8Q", "E8D7", "E1D1", "A2A1"})
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_of_ReturnsNullWithPendingPromotion")
+    void of_ReturnsNullWithPendingPromotion(String fen, String[] moves) {
+        // Arrange
+        ChessGame game = getGameForTesting(fen, moves);
+
+        // Act
+        PgnGame pgn = PgnGame.of(game);
+
+        // Assert
+        assertNull(pgn);
+    }
+}
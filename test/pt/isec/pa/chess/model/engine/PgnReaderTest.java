@@ -0,0 +1,119 @@
+package pt.isec.pa.chess.model.engine;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PgnReaderTest {
+    static PgnGame read(String pgn) throws IOException {
+        try (PgnReader reader = new PgnReader(new StringReader(pgn))) {
+            PgnGame game = reader.next();
+            assertNotNull(game);
+            assertNull(reader.next());
+            return game;
+        }
+    }
+
+    static String write(PgnGame game) throws IOException {
+        StringWriter text = new StringWriter();
+        try (PgnWriter writer = new PgnWriter(text)) {
+            writer.write(game);
+        }
+        return text.toString();
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_next_RoundTripsThroughWriter() {
+        return Stream.of(
+                // dois cavalos chegam a b5: é indicada a coluna
+                Arguments.arguments("1. Nf3 Nf6 2. Nc3 Nc6 3. Nd4 Nd5 4. Ndb5 *",
+                        List.of("G1F3", "G8F6", "B1C3", "B8C6", "F3D4", "F6D5", "D4B5"), "4. Ndb5"),
+                // duas torres na mesma coluna: é indicada a linha
+                Arguments.arguments("[SetUp \"1\"]\n[FEN \"4k3/8/8/8/8/R7/8/R3K3 w - - 0 1\"]\n\n1. R1a2 Kf7 *",
+                        List.of("A1A2", "E8F7"), "1. R1a2"),
+                // roques dos dois lados, com "0-0" aceite na leitura
+                Arguments.arguments("1. e4 e5 2. Nf3 Nc6 3. Bc4 Bc5 4. O-O d6 5. d3 Bg4 6. Nc3 Qd7 7. Be3 0-0-0 *",
+                        List.of("E2E4", "E7E5", "G1F3", "B8C6", "F1C4", "F8C5", "E1G1", "D7D6", "D2D3", "C8G4",
+                                "B1C3", "D8D7", "C1E3", "E8C8"),
+                        "4. O-O"),
+                // promoções com e sem "="
+                Arguments.arguments("[SetUp \"1\"]\n[FEN \"4k3/P6P/8/8/8/8/8/4K3 w - - 0 1\"]\n\n1. a8=N Kf7 2. h8Q *",
+                        List.of("A7A8N", "E8F7", "H7H8Q"), "1. a8=N"),
+                // comentários, NAGs, variantes (com variantes dentro) e comentários de linha são ignorados
+                Arguments.arguments("1. e4 {melhor} e5 $1 (1... c5 2. Nf3 (2. c3) d6) 2. Nf3 ; fim da linha\nNc6 $14 *",
+                        List.of("E2E4", "E7E5", "G1F3", "B8C6"), "2. Nf3 Nc6")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_next_RoundTripsThroughWriter")
+    void next_RoundTripsThroughWriter(String pgn, List<String> expectedMoves, String expectedSan) throws IOException {
+        // Arrange
+        PgnGame game = read(pgn);
+
+        // Act
+        String written = write(game);
+        PgnGame reread = read(written);
+
+        // Assert
+        assertTrue(game.isValid(), game.error());
+        assertEquals(expectedMoves, game.getMoveTexts());
+        assertTrue(written.contains(expectedSan), written);
+        assertTrue(reread.isValid(), reread.error());
+        assertArrayEquals(game.moves(), reread.moves());
+        assertEquals(game.getStartFen(), reread.getStartFen());
+        assertEquals(write(game), write(reread));
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_next_RejectsMalformedMovetext() {
+        return Stream.of(
+                // movimento ilegal
+                Arguments.arguments("1. e4 e5 2. e5 *", 2),
+                // casa inexistente
+                Arguments.arguments("1. e4 Nf9 *", 1),
+                // ambíguo: dois cavalos chegam a b5
+                Arguments.arguments("1. Nf3 Nf6 2. Nc3 Nc6 3. Nd4 Nd5 4. Nb5 *", 6),
+                // roque com peças no caminho
+                Arguments.arguments("1. O-O *", 0),
+                // promoção sem peça escolhida para um rei
+                Arguments.arguments("[SetUp \"1\"]\n[FEN \"4k3/P7/8/8/8/8/8/4K3 w - - 0 1\"]\n\n1. a8=K *", 0),
+                // texto que não é um movimento
+                Arguments.arguments("1. e4 xyz *", 1)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_next_RejectsMalformedMovetext")
+    void next_RejectsMalformedMovetext(String pgn, int validMoves) throws IOException {
+        // Arrange
+        String text = pgn + "\n\n1. d4 d5 *\n";
+
+        // Act
+        PgnGame game;
+        PgnGame next;
+        try (PgnReader reader = new PgnReader(new StringReader(text))) {
+            game = reader.next();
+            next = reader.next();
+        }
+
+        // Assert
+        assertNotNull(game);
+        assertFalse(game.isValid());
+        assertEquals(validMoves, game.moves().length);
+        // o jogo seguinte é lido normalmente
+        assertNotNull(next);
+        assertTrue(next.isValid(), next.error());
+        assertEquals(List.of("D2D4", "D7D5"), next.getMoveTexts());
+    }
+}
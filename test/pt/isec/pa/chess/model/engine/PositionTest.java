@@ -0,0 +1,63 @@
+package pt.isec.pa.chess.model.engine;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PositionTest {
+    static Stream<Arguments> provider_apply_SharesUnchangedRanks() {
+        return Stream.of(
+                Arguments.arguments("E2E4", 6),
+                Arguments.arguments("G1F3", 6),
+                Arguments.arguments("B1C3", 6),
+                Arguments.arguments("A2A3", 6)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_apply_SharesUnchangedRanks")
+    void apply_SharesUnchangedRanks(String text, int expectedShared) {
+        // Arrange
+        var position = Position.startPosition();
+        var board = position.toEngineBoard();
+        var move = board.parseMove(text);
+
+        // Act
+        var next = position.apply(move);
+        board.makeMove(move);
+
+        // Assert
+        assertEquals(expectedShared, next.sharedRanks(position));
+        assertEquals(Position.of(board), next);
+        assertEquals(Position.startPosition(), position);
+    }
+
+    static Stream<Arguments> provider_status_ReturnsExpectedValues() {
+        return Stream.of(
+                Arguments.arguments(Fen.START_POSITION, Position.Status.PLAYING),
+                Arguments.arguments("rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3", Position.Status.CHECKMATE),
+                Arguments.arguments("rnbqkbnr/ppppp2p/5p2/6pQ/4P3/8/PPPP1PPP/RNB1KBNR b KQkq - 1 3", Position.Status.CHECKMATE),
+                Arguments.arguments("4k3/8/8/8/8/8/4q3/4K3 w - - 0 1", Position.Status.CHECK),
+                Arguments.arguments("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1", Position.Status.STALEMATE),
+                Arguments.arguments("8/8/8/8/8/8/8/K6k w - - 0 1", Position.Status.INSUFFICIENT_MATERIAL),
+                Arguments.arguments("4k3/8/8/8/8/8/8/R3K3 w - - 100 80", Position.Status.FIFTY_MOVES)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_status_ReturnsExpectedValues")
+    void status_ReturnsExpectedValues(String fen, Position.Status expected) {
+        // Arrange
+        var position = Position.fromFen(fen);
+
+        // Act
+        var status = Position.status(position);
+
+        // Assert
+        assertEquals(expected, status);
+    }
+}
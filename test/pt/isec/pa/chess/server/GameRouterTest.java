@@ -0,0 +1,124 @@
+package pt.isec.pa.chess.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import pt.isec.pa.chess.model.engine.EngineBoard;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameRouterTest {
+    private static final int GAMES = 24;
+
+    // cria GAMES jogos no router, cada um com alguns movimentos aleatórios e um undo; devolve os ids
+    static long[] createGamesForTesting(GameRouter router) throws IOException {
+        long[] ids = new long[GAMES];
+        SplittableRandom random = new SplittableRandom(GAMES);
+        try (GameClient client = new GameClient(router.getPort())) {
+            for (int g = 0; g < GAMES; g++) {
+                GameProtocol.Reply opened = client.open(0);
+                assertTrue(opened.isOk());
+                ids[g] = opened.gameId();
+                EngineBoard board = EngineBoard.startPosition();
+                int[] legal = new int[256];
+                int plies = 4 + random.nextInt(8);
+                for (int ply = 0; ply < plies; ply++) {
+                    int move = legal[random.nextInt(board.generateLegalMoves(legal))];
+                    board.makeMove(move);
+                    assertTrue(client.move(move).isOk());
+                }
+                assertTrue(client.undo().isOk());
+            }
+        }
+        return ids;
+    }
+
+    // FEN e meio-lance de cada jogo, mais o meio-lance depois de um redo
+    static String[] stateOf(GameRouter router, long[] ids) throws IOException {
+        String[] states = new String[ids.length];
+        try (GameClient client = new GameClient(router.getPort())) {
+            for (int g = 0; g < ids.length; g++) {
+                GameProtocol.Reply opened = client.open(ids[g]);
+                assertTrue(opened.isOk());
+                String fen = client.getFen();
+                GameProtocol.Reply redone = client.redo();
+                assertTrue(client.undo().isOk());
+                states[g] = fen + " @" + opened.ply() + " redo " + redone.isOk() + " @" + redone.ply();
+            }
+        }
+        return states;
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_removeWorker_MovesGamesWithTheirState() {
+        return Stream.of(
+                Arguments.arguments(2),
+                Arguments.arguments(3)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_removeWorker_MovesGamesWithTheirState")
+    void removeWorker_MovesGamesWithTheirState(int workers) throws IOException, InterruptedException {
+        try (GameRouter router = new GameRouter(0)) {
+            // Arrange
+            for (int i = 0; i < workers; i++) {
+                router.spawnWorker();
+            }
+            long[] ids = createGamesForTesting(router);
+            String[] before = stateOf(router, ids);
+            GameRouter.Worker removed = router.getWorker(ids[0]);
+
+            // Act
+            int moved = router.removeWorker(removed);
+
+            // Assert
+            assertTrue(moved > 0);
+            assertFalse(router.getWorkers().contains(removed));
+            assertTrue(removed.process().waitFor(10, TimeUnit.SECONDS));
+            for (long id : ids) {
+                assertNotEquals(removed, router.getWorker(id));
+            }
+            assertArrayEquals(before, stateOf(router, ids));
+        }
+    }
+
+    // ----
+
+    @Test
+    void removeWorker_KeepsWorkerWhenGamesCannotMove() throws IOException {
+        try (GameRouter router = new GameRouter(0)) {
+            // Arrange
+            GameRouter.Worker kept = router.spawnWorker();
+            long[] ids = createGamesForTesting(router);
+            String[] before = stateOf(router, ids);
+            // um worker que não responde: as transferências para ele falham e os jogos voltam ao worker antigo
+            int unused;
+            try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                unused = socket.getLocalPort();
+            }
+            router.addWorker(InetAddress.getLoopbackAddress().getHostAddress() + ":" + unused);
+            assertArrayEquals(before, stateOf(router, ids));
+
+            // Act
+            assertThrows(IOException.class, () -> router.removeWorker(kept));
+
+            // Assert
+            assertTrue(router.getWorkers().contains(kept));
+            assertTrue(kept.process().isAlive());
+            for (long id : ids) {
+                assertEquals(kept, router.getWorker(id));
+            }
+            assertArrayEquals(before, stateOf(router, ids));
+        }
+    }
+}
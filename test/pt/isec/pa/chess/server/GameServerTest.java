@@ -0,0 +1,139 @@
+package pt.isec.pa.chess.server;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import pt.isec.pa.chess.model.engine.EngineBoard;
+import pt.isec.pa.chess.model.engine.Fen;
+import pt.isec.pa.chess.model.engine.Move;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameServerTest {
+    // codifica um movimento em texto ("E2E4"), como em Move
+    static int move(String text) {
+        return Move.encode(EngineBoard.square(text.charAt(0), text.charAt(1) - '0'),
+                EngineBoard.square(text.charAt(2), text.charAt(3) - '0'), EngineBoard.EMPTY, 0);
+    }
+
+    // envia um pedido ao servidor: "E2E4" (movimento), "undo", "redo", "goto:<meio-lance>" ou "close"
+    static GameProtocol.Reply request(GameClient client, String request) throws IOException {
+        return switch (request) {
+            case "undo" -> client.undo();
+            case "redo" -> client.redo();
+            case "close" -> client.closeGame();
+            default -> request.startsWith("goto:")
+                    ? client.goToPly(Integer.parseInt(request.substring(5)))
+                    : client.move(move(request));
+        };
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_request_ChangesOpenGame() {
+        String afterE4 = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1";
+        String afterE5 = "rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq e6 0 2";
+        return Stream.of(
+                // movimentos, undo e redo
+                Arguments.arguments(new String[]{"E2E4", "E7E5", "undo", "redo", "undo"},
+                        new boolean[]{true, true, true, true, true}, new int[]{1, 2, 1, 2, 1}, afterE4),
+                // salto para o início e de volta ao fim; undo desfaz o salto
+                Arguments.arguments(new String[]{"E2E4", "E7E5", "goto:0", "goto:2", "undo"},
+                        new boolean[]{true, true, true, true, true}, new int[]{1, 2, 0, 2, 0}, Fen.START_POSITION),
+                // pedidos recusados não mudam o jogo
+                Arguments.arguments(new String[]{"E2E5", "undo", "E2E4", "redo", "goto:2", "E7E5"},
+                        new boolean[]{false, false, true, false, false, true}, new int[]{0, 0, 1, 1, 1, 2}, afterE5)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_request_ChangesOpenGame")
+    void request_ChangesOpenGame(String[] requests, boolean[] expectedOk, int[] expectedPly, String expectedFen) throws IOException {
+        try (GameServer server = new GameServer(0);
+             GameClient client = new GameClient(server.getPort())) {
+            // Arrange
+            GameProtocol.Reply opened = client.open(0);
+            assertTrue(opened.isOk());
+            assertEquals(Fen.START_POSITION, client.getFen());
+
+            // Act
+            for (int i = 0; i < requests.length; i++) {
+                GameProtocol.Reply reply = request(client, requests[i]);
+
+                // Assert
+                assertEquals(expectedOk[i], reply.isOk(), requests[i]);
+                assertEquals(opened.gameId(), reply.gameId(), requests[i]);
+                assertEquals(expectedPly[i], reply.ply(), requests[i]);
+            }
+            assertEquals(expectedFen, client.getFen());
+            assertEquals(expectedFen, server.getSession(opened.gameId()).getFen());
+            assertTrue(request(client, "close").isOk());
+            assertNull(server.getSession(opened.gameId()));
+            assertEquals(0, server.getSessionCount());
+            // sem jogo aberto, os pedidos recebem CODE_ERROR
+            assertEquals(GameProtocol.CODE_ERROR, request(client, "E2E4").code());
+            assertNull(client.getFen());
+        }
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_request_RejectsBadRequestAndKeepsConnection() {
+        return Stream.of(
+                // operação desconhecida, sem argumentos
+                Arguments.arguments((byte) 99, -1, GameProtocol.CODE_ERROR),
+                Arguments.arguments((byte) -1, -1, GameProtocol.CODE_ERROR),
+                // registo maior que MAX_RECORD_SIZE: é descartado
+                Arguments.arguments(GameProtocol.OP_ATTACH, GameProtocol.MAX_RECORD_SIZE + 1, GameProtocol.CODE_INVALID),
+                // registo dentro do limite, mas inválido
+                Arguments.arguments(GameProtocol.OP_ATTACH, 16, GameProtocol.CODE_INVALID)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_request_RejectsBadRequestAndKeepsConnection")
+    void request_RejectsBadRequestAndKeepsConnection(byte op, int recordSize, byte expectedCode) throws IOException {
+        try (GameServer server = new GameServer(0);
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+             DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            // Arrange
+            out.writeByte(GameProtocol.OP_OPEN);
+            out.writeLong(0);
+            out.flush();
+            GameProtocol.Reply opened = GameProtocol.Reply.read(in);
+            assertTrue(opened.isOk());
+
+            // Act
+            out.writeByte(op);
+            if (recordSize >= 0) {
+                out.writeLong(opened.gameId() + 1);
+                out.writeInt(recordSize);
+                out.write(new byte[recordSize]);
+            }
+            out.writeByte(GameProtocol.OP_MOVE);
+            out.writeShort(GameProtocol.encodeMove(move("E2E4")));
+            out.flush();
+            GameProtocol.Reply rejected = GameProtocol.Reply.read(in);
+            GameProtocol.Reply moved = GameProtocol.Reply.read(in);
+
+            // Assert
+            assertEquals(expectedCode, rejected.code());
+            assertTrue(moved.isOk());
+            assertEquals(1, moved.ply());
+            assertEquals(1, server.getSessionCount());
+            try (GameClient client = new GameClient(server.getPort())) {
+                assertTrue(client.open(opened.gameId()).isOk());
+                assertEquals(0, client.undo().ply());
+            }
+        }
+    }
+}
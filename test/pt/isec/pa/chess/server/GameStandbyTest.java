@@ -0,0 +1,170 @@
+package pt.isec.pa.chess.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import pt.isec.pa.chess.model.engine.EngineBoard;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameStandbyTest {
+    private static final int GAMES = 8;
+    private static final long TIMEOUT_MS = 10_000;
+
+    // servidor principal: um GameServer nesta JVM, fechado normalmente, ou numa JVM própria, terminada à força
+    private interface Primary {
+        int port();
+
+        void close() throws Exception;
+    }
+
+    static Primary startPrimary(boolean process, GameStandby standby) throws IOException {
+        String standbyAddress = InetAddress.getLoopbackAddress().getHostAddress() + ":" + standby.getReplicationPort();
+        if (!process) {
+            GameServer server = new GameServer(0);
+            server.replicateTo(InetAddress.getLoopbackAddress().getHostAddress(), standby.getReplicationPort());
+            return new Primary() {
+                public int port() {
+                    return server.getPort();
+                }
+
+                public void close() throws IOException {
+                    server.close();
+                }
+            };
+        }
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process primary = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                GameServer.class.getName(), "--port", "0", "--exit-with-parent", "--standby", standbyAddress)
+                .redirectErrorStream(true)
+                .start();
+        BufferedReader output = new BufferedReader(new InputStreamReader(primary.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = output.readLine()) != null && !line.startsWith(GameServer.LISTENING)) {
+            // "Replicating to standby ..."
+        }
+        assertNotNull(line);
+        int port = Integer.parseInt(line.substring(GameServer.LISTENING.length()).trim());
+        return new Primary() {
+            public int port() {
+                return port;
+            }
+
+            public void close() throws InterruptedException {
+                primary.destroyForcibly().waitFor();
+            }
+        };
+    }
+
+    // ----
+
+    static Stream<Arguments> provider_close_PromotesStandbyWithGames() {
+        return Stream.of(
+                // o servidor principal é fechado
+                Arguments.arguments(false),
+                // o servidor principal falha (processo terminado à força)
+                Arguments.arguments(true)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provider_close_PromotesStandbyWithGames")
+    void close_PromotesStandbyWithGames(boolean killPrimary) throws Exception {
+        try (GameStandby standby = new GameStandby(0, 0)) {
+            // Arrange
+            long[] ids = new long[GAMES];
+            String[][] fens = new String[GAMES][];
+            int[] plies = new int[GAMES];
+            SplittableRandom random = new SplittableRandom(GAMES);
+            Primary primary = startPrimary(killPrimary, standby);
+            try (GameClient client = new GameClient(primary.port())) {
+                for (int g = 0; g < GAMES; g++) {
+                    ids[g] = client.open(0).gameId();
+                    EngineBoard board = EngineBoard.startPosition();
+                    int[] legal = new int[256];
+                    fens[g] = new String[6 + random.nextInt(10)];
+                    fens[g][0] = client.getFen();
+                    for (int ply = 1; ply < fens[g].length; ply++) {
+                        int move = legal[random.nextInt(board.generateLegalMoves(legal))];
+                        board.makeMove(move);
+                        assertTrue(client.move(move).isOk());
+                        fens[g][ply] = client.getFen();
+                    }
+                    // fica um movimento para refazer
+                    assertTrue(client.undo().isOk());
+                    assertTrue(client.undo().isOk());
+                    plies[g] = client.redo().ply();
+                }
+            }
+            // cada alteração só espera pela confirmação da anterior do mesmo jogo: espera pela última
+            for (int g = 0; g < GAMES; g++) {
+                long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+                while (standby.getSession(ids[g]) == null || !fens[g][plies[g]].equals(standby.getSession(ids[g]).getFen())) {
+                    assertTrue(System.currentTimeMillis() < deadline, "game " + ids[g] + " not replicated");
+                    Thread.sleep(10);
+                }
+            }
+
+            // Act
+            primary.close();
+            GameServer promoted = standby.awaitPromotion(TIMEOUT_MS);
+
+            // Assert
+            assertNotNull(promoted);
+            assertEquals(GAMES, promoted.getSessionCount());
+            try (GameClient client = new GameClient(promoted.getPort())) {
+                for (int g = 0; g < GAMES; g++) {
+                    GameProtocol.Reply opened = client.open(ids[g]);
+                    assertTrue(opened.isOk());
+                    assertEquals(plies[g], opened.ply());
+                    assertEquals(fens[g][plies[g]], client.getFen());
+                    assertEquals(plies[g] + 1, client.redo().ply());
+                    assertEquals(fens[g][plies[g] + 1], client.getFen());
+                    assertTrue(client.undo().isOk());
+                    assertTrue(client.undo().isOk());
+                    assertEquals(fens[g][plies[g] - 1], client.getFen());
+                }
+            }
+        }
+    }
+
+    // ----
+
+    @Test
+    void replicate_StopsWithoutPromotionWhenRecordIsRejected() throws Exception {
+        try (GameStandby standby = new GameStandby(0, 0)) {
+            // Arrange
+            byte[] record = new GameSession(1).exportRecord();
+
+            // Act
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), standby.getReplicationPort());
+                 DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+                out.writeByte(GameProtocol.REPL_CHECKPOINT);
+                out.writeLong(1);
+                out.writeInt(record.length);
+                out.write(record);
+                // o jogo acabou de começar: não há nada para desfazer
+                out.writeByte(GameProtocol.REPL_UNDO);
+                out.writeLong(1);
+            }
+            // sem a recusa, o fim da ligação seria tratado como uma falha do servidor principal
+            var promoted = standby.awaitPromotion(TIMEOUT_MS);
+
+            // Assert
+            assertNull(promoted);
+            assertEquals(1, standby.getAppliedCount());
+        }
+    }
+}